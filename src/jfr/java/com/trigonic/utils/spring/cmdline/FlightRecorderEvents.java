@@ -0,0 +1,118 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The JFR side of {@link CommandLineEvents}, only loaded once JFR is known to be present.  This is compiled separately
+ * for Java 11 so that the rest of the library keeps its Java 7 target.
+ */
+final class FlightRecorderEvents implements CommandLineEventRecorder {
+    private static final EventType phaseType = EventType.getEventType(PhaseEvent.class);
+    private static final EventType conversionType = EventType.getEventType(ConversionEvent.class);
+
+    // innermost recorded event on each thread, from which nested events take their command
+    private static final ThreadLocal<CommandEvent> active = new ThreadLocal<CommandEvent>();
+
+    FlightRecorderEvents() {
+    }
+
+    @Override
+    public Object beginPhase(String phase, Class<?> commandClass, int argumentCount) {
+        if (!phaseType.isEnabled()) {
+            return null;
+        }
+        PhaseEvent event = new PhaseEvent();
+        event.phase = phase;
+        return begin(event, commandClass, argumentCount);
+    }
+
+    @Override
+    public Object beginConversion(String property, Class<?> type) {
+        if (!conversionType.isEnabled()) {
+            return null;
+        }
+        ConversionEvent event = new ConversionEvent();
+        event.property = property;
+        event.targetType = type;
+        return begin(event, null, -1);
+    }
+
+    private static CommandEvent begin(CommandEvent event, Class<?> commandClass, int argumentCount) {
+        CommandEvent enclosing = active.get();
+        event.commandClass = commandClass != null || enclosing == null ? commandClass : enclosing.commandClass;
+        event.argumentCount = argumentCount >= 0 || enclosing == null ? argumentCount : enclosing.argumentCount;
+        event.enclosing = enclosing;
+        active.set(event);
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void end(Object token, String outcome) {
+        CommandEvent event = (CommandEvent) token;
+        event.end();
+        event.outcome = outcome;
+        if (event.enclosing == null) {
+            active.remove();
+        } else {
+            active.set(event.enclosing);
+        }
+        event.enclosing = null;
+        event.commit();
+    }
+
+    @Category("Spring Command Line")
+    abstract static class CommandEvent extends Event {
+        @Label("Command Class")
+        Class<?> commandClass;
+
+        @Label("Argument Count")
+        int argumentCount;
+
+        @Label("Outcome")
+        @Description("success, usage or failure")
+        String outcome;
+
+        transient CommandEvent enclosing;
+    }
+
+    @Name("com.trigonic.cmdline.Phase")
+    @Label("Command Line Phase")
+    @Description("A phase of a command's lifecycle")
+    static class PhaseEvent extends CommandEvent {
+        @Label("Phase")
+        String phase;
+    }
+
+    @Name("com.trigonic.cmdline.Conversion")
+    @Label("Command Line Conversion")
+    @Description("Conversion of an option or operand value to the type of its property")
+    static class ConversionEvent extends CommandEvent {
+        @Label("Property")
+        String property;
+
+        @Label("Target Type")
+        Class<?> targetType;
+    }
+}
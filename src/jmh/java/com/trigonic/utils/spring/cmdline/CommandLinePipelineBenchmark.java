@@ -0,0 +1,216 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.beans.SimpleTypeConverter;
+import org.springframework.core.io.ClassPathResource;
+
+/**
+ * Measures each stage of the parse-and-bind pipeline separately against the sample {@link Grep} command, so a
+ * regression can be attributed to argument parsing, the Spring binding or the application context.  Run with
+ * {@code gradle jmh}, optionally passing JMH arguments through {@code -Pjmh.args="..."}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CommandLinePipelineBenchmark {
+    @Param({"1", "100", "10000", "1000000"})
+    private int operandCount;
+
+    private String[] args;
+    private CommandLineMetaData metaData;
+    private OptionParser parser;
+    private OptionSet optionSet;
+    private ArgumentTokenizer tokenizer;
+    private ParsedArguments parsedArguments;
+    private CommandLineBeanDefinition beanDefinition;
+    private CommandLineBindingPlan bindingPlan;
+    private Object[] bindingValues;
+    private List<String> numbers;
+    private File argumentFile;
+    private SimpleTypeConverter typeConverter;
+    private final OutputStream nullOutput = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        args = new String[operandCount + 2];
+        args[0] = "-i";
+        args[1] = "pattern";
+        for (int i = 0; i < operandCount; ++i) {
+            args[i + 2] = "file" + i;
+        }
+        metaData = new CommandLineMetaData(Grep.class);
+        parser = new OptionParser();
+        metaData.register(parser);
+        optionSet = parser.parse(args);
+        tokenizer = new ArgumentTokenizer(metaData.getOptionHandlers());
+        parsedArguments = tokenizer.parse(args);
+        beanDefinition = new CommandLineBeanDefinition(Grep.class, metaData, optionSet);
+        bindingPlan = new CommandLineBindingPlan(Grep.class, metaData);
+        bindingValues = bindingPlan.resolve(optionSet, Arrays.asList(args).subList(1, args.length));
+        numbers = new ArrayList<String>(operandCount);
+        for (int i = 0; i < operandCount; ++i) {
+            numbers.add(Integer.toString(i));
+        }
+        argumentFile = File.createTempFile("operands", ".txt");
+        argumentFile.deleteOnExit();
+        PrintWriter writer = new PrintWriter(argumentFile);
+        try {
+            for (int i = 2; i < args.length; ++i) {
+                writer.println(args[i]);
+            }
+        } finally {
+            writer.close();
+        }
+        typeConverter = new SimpleTypeConverter();
+    }
+
+    @Benchmark
+    public CommandLineMetaData metaDataReflection() {
+        return new CommandLineMetaData(Grep.class);
+    }
+
+    @Benchmark
+    public CommandLineMetaData metaDataGenerated() {
+        return CommandLineMetaData.forClass(Grep.class);
+    }
+
+    @Benchmark
+    public OptionParser register() {
+        OptionParser result = new OptionParser();
+        metaData.register(result);
+        return result;
+    }
+
+    @Benchmark
+    public OptionSet parse() {
+        return parser.parse(args);
+    }
+
+    @Benchmark
+    public ParsedArguments tokenize() {
+        return tokenizer.parse(args);
+    }
+
+    @Benchmark
+    public CommandLineBeanDefinition populate() {
+        return new CommandLineBeanDefinition(Grep.class, metaData, optionSet);
+    }
+
+    @Benchmark
+    public CommandLineBeanDefinition populateTokenized() {
+        return new CommandLineBeanDefinition(Grep.class, metaData, parsedArguments, parsedArguments.getOperands());
+    }
+
+    @Benchmark
+    public CommandLineBeanDefinition populateArgumentFile() {
+        return CommandLineBeanDefinitionReader.createBeanDefinition(Grep.class, new String[] {"-i", "pattern", "@" + argumentFile});
+    }
+
+    @Benchmark
+    public Grep convert() {
+        Grep grep = new Grep();
+        BeanWrapper wrapper = new BeanWrapperImpl(grep);
+        wrapper.setPropertyValues(beanDefinition.getPropertyValues());
+        return grep;
+    }
+
+    @Benchmark
+    public Grep bindCompiled() {
+        Grep grep = new Grep();
+        bindingPlan.bind(grep, bindingValues, typeConverter);
+        return grep;
+    }
+
+    @Benchmark
+    public Object parseNumbersPrimitive() {
+        return NumericValues.parseArray(numbers, int[].class, "numbers");
+    }
+
+    @Benchmark
+    public Object parseNumbersConverted() {
+        return typeConverter.convertIfNecessary(numbers, Integer[].class);
+    }
+
+    @Benchmark
+    public void printBuffered() {
+        print(new ChannelPrintStream(Channels.newChannel(nullOutput), false));
+    }
+
+    @Benchmark
+    public void printSynchronized() {
+        print(new PrintStream(new BufferedOutputStream(nullOutput), false));
+    }
+
+    private void print(PrintStream out) {
+        for (String number : numbers) {
+            out.println(number);
+        }
+        out.flush();
+    }
+
+    @Benchmark
+    public void run() {
+        new CommandLineAppContext(new ClassPathResource("Grep-context.xml", Grep.class)).run(Grep.class, args);
+    }
+
+    @Benchmark
+    public void runGeneric() {
+        new GenericCommandLineAppContext().run(Grep.class, args);
+    }
+}
@@ -1,72 +1,151 @@
-/*
- * Copyright 2011 the original author or authors.
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- * http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-
-package com.trigonic.utils.spring.cmdline;
-
-import java.util.List;
-
-import joptsimple.OptionSet;
-
-import org.springframework.beans.MutablePropertyValues;
-
-public abstract class AbstractOperandHandler implements OperandHandler {
-    protected final Operand operand;
-    protected final String propertyName;
-    protected final Class<?> valueType;
-    
-    public AbstractOperandHandler(Operand operand, String propertyName, Class<?> valueType) {
-        this.operand = operand;
-        this.propertyName = propertyName;
-        this.valueType = valueType;
-        if (operand.index() < 0) {
-            throw new IllegalArgumentException("operand index cannot be < 0");
-        }
-    }
-    
-    public boolean addPropertyValue(MutablePropertyValues propertyValues, OptionSet optionSet) {
-        boolean result = false;
-        List<String> nonOptionArgs = optionSet.nonOptionArguments();
-        if (operand.index() < nonOptionArgs.size()) {
-            Object propertyValue = nonOptionArgs.get(operand.index());
-            if (hasMultipleValues()) {
-                propertyValue = nonOptionArgs.subList(operand.index(), nonOptionArgs.size());
-            }
-            propertyValues.add(propertyName, propertyValue);
-            result = true;
-        }
-        return result;
-    }
-    
-    public int getIndex() {
-        return operand.index();
-    }
-    
-    public String getName() {
-        return propertyName;
-    }
-    
-    public boolean isRequired() {
-        return operand.required();
-    }
-    
-    public Object getDescription() {
-        return operand.description();
-    }
-    
-    public boolean hasMultipleValues() {
-        return Iterable.class.isAssignableFrom(valueType) || valueType.isArray();
-    }
-}
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.util.Iterator;
+import java.util.List;
+
+import org.springframework.beans.MutablePropertyValues;
+
+public abstract class AbstractOperandHandler implements OperandHandler {
+    protected final Operand operand;
+    protected final String propertyName;
+    protected final Class<?> valueType;
+    protected final Class<?> elementType;
+    private Glob glob;
+    
+    public AbstractOperandHandler(Operand operand, String propertyName, Class<?> valueType) {
+        this(operand, propertyName, valueType, String.class);
+    }
+    
+    /**
+     * @param elementType element type of an {@code Iterable} or {@code Iterator} value type, to which operands are
+     * converted lazily
+     */
+    public AbstractOperandHandler(Operand operand, String propertyName, Class<?> valueType, Class<?> elementType) {
+        this.operand = operand;
+        this.propertyName = propertyName;
+        this.valueType = valueType;
+        this.elementType = elementType;
+        if (operand.index() < 0) {
+            throw new IllegalArgumentException("operand index cannot be < 0");
+        }
+    }
+    
+    public boolean addPropertyValue(MutablePropertyValues propertyValues, List<String> operands) {
+        boolean result = false;
+        if (operand.index() < operands.size()) {
+            propertyValues.add(propertyName, getValue(operands));
+            result = true;
+        }
+        return result;
+    }
+    
+    @SuppressWarnings("unchecked")
+    public Object getValue(List<String> operands) {
+        if (operand.index() >= operands.size()) {
+            return null;
+        }
+        Object result;
+        if (hasMultipleValues()) {
+            List<String> values = operands.subList(operand.index(), operands.size());
+            if (glob != null) {
+                values = GlobExpansion.expand(values, glob);
+            }
+            if (NumericValues.isSupportedArray(valueType)) {
+                result = NumericValues.parseArray(values, valueType, propertyName);
+            } else if (FileValues.isSupportedArray(valueType)) {
+                result = FileValues.openArray(values, valueType, propertyName);
+            } else if (valueType == Iterable.class) {
+                result = new OperandIterable<Object>(values, (Class<Object>) elementType);
+            } else if (valueType == Iterator.class) {
+                result = new OperandIterable<Object>(values, (Class<Object>) elementType).iterator();
+            } else {
+                result = values;
+            }
+        } else {
+            String value = operands.get(operand.index());
+            if (glob != null) {
+                value = GlobExpansion.expandSingle(value, glob, propertyName);
+            }
+            if (NumericValues.isSupported(valueType)) {
+                result = NumericValues.parse(value, valueType, propertyName);
+            } else if (FileValues.isSupported(valueType)) {
+                result = FileValues.open(value, valueType, propertyName);
+            } else {
+                result = value;
+            }
+        }
+        return result;
+    }
+    
+    public Glob getGlob() {
+        return glob;
+    }
+    
+    /**
+     * Enables expansion of glob patterns in the operand's values, or disables it if {@code null}.
+     */
+    public void setGlob(Glob glob) {
+        this.glob = glob;
+    }
+    
+    public Class<?> getValueType() {
+        return valueType;
+    }
+    
+    public int getIndex() {
+        return operand.index();
+    }
+    
+    public String getName() {
+        return propertyName;
+    }
+    
+    public boolean isRequired() {
+        return operand.required();
+    }
+    
+    public Object getDescription() {
+        return operand.description();
+    }
+    
+    public boolean hasMultipleValues() {
+        return Iterable.class.isAssignableFrom(valueType) || valueType == Iterator.class || valueType.isArray();
+    }
+    
+    /**
+     * Returns the type argument of a generic {@code Iterable} or {@code Iterator} type, or {@code String} if there is
+     * none to be found.
+     */
+    protected static Class<?> getElementType(Type genericType) {
+        if (genericType instanceof ParameterizedType) {
+            Type[] arguments = ((ParameterizedType) genericType).getActualTypeArguments();
+            Type argument = arguments.length == 1 ? arguments[0] : null;
+            if (argument instanceof WildcardType) {
+                argument = ((WildcardType) argument).getUpperBounds()[0];
+            }
+            if (argument instanceof Class) {
+                return (Class<?>) argument;
+            }
+        }
+        return String.class;
+    }
+}
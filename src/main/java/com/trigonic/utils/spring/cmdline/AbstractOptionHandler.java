@@ -1,103 +1,158 @@
-/*
- * Copyright 2011 the original author or authors.
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- * http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-
-package com.trigonic.utils.spring.cmdline;
-
-import static java.util.Arrays.asList;
-import static java.util.Collections.unmodifiableSet;
-
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
-
-import joptsimple.ArgumentAcceptingOptionSpec;
-import joptsimple.OptionParser;
-import joptsimple.OptionSet;
-import joptsimple.OptionSpecBuilder;
-
-import org.springframework.beans.MutablePropertyValues;
-
-public abstract class AbstractOptionHandler implements OptionHandler {
-    private static final Set<Class<?>> booleanTypes;
-    
-    static {
-        @SuppressWarnings("unchecked")
-        Set<Class<?>> temp = unmodifiableSet(new HashSet<Class<?>>(asList(boolean.class, Boolean.class)));
-        booleanTypes = temp;
-    }
-    
-    protected final Option option;
-    protected final String propertyName;
-    protected final Class<?> valueType;
-    
-    public AbstractOptionHandler(Option option, String propertyName, Class<?> valueType) {
-        this.option = option;
-        this.propertyName = propertyName;
-        this.valueType = valueType;
-    }
-    
-    public boolean hasValue() {
-        return !booleanTypes.contains(valueType);
-    }
-
-    public OptionSpecBuilder register(OptionParser parser) {
-        OptionSpecBuilder builder = parser.acceptsAll(names(), option.description());
-        if (hasValue()) {
-            ArgumentAcceptingOptionSpec<String> spec = option.requiresValue() ? builder.withRequiredArg() : builder.withOptionalArg();
-            // NOTE: don't specify a type here, leverage Spring's more robust type conversions
-            if (option.required()) {
-                spec = spec.required();
-            }
-        }
-        return builder;
-    }
-    
-    public boolean addPropertyValue(MutablePropertyValues propertyValues, OptionSet optionSet) {
-        boolean result;
-        if (hasValue()) {
-            result = addPropertyValue(propertyValues, optionSet, option.shortName()) ||
-                addPropertyValue(propertyValues, optionSet, option.longName());
-        } else {
-            propertyValues.add(propertyName, optionSet.has(option.shortName()) || optionSet.has(option.longName()));
-            result = true;
-        }
-        return result;
-    }
-    
-    private boolean addPropertyValue(MutablePropertyValues propertyValues, OptionSet optionSet, String optionName) {
-        boolean result = false;
-        if (optionSet.has(optionName)) {
-            propertyValues.add(propertyName, optionSet.valueOf(optionName));
-            result = true;
-        }
-        return result;
-    }
-    
-    private Collection<String> names() {
-        List<String> result = new ArrayList<String>(2);
-        addIfNotEmpty(result, option.shortName());
-        addIfNotEmpty(result, option.longName());
-        return result;
-    }
-
-    private static void addIfNotEmpty(List<String> result, String name) {
-        if (name.length() > 0) {
-            result.add(name);
-        }
-    }
-}
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.unmodifiableSet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import joptsimple.ArgumentAcceptingOptionSpec;
+import joptsimple.OptionParser;
+import joptsimple.OptionSpecBuilder;
+
+import org.springframework.beans.MutablePropertyValues;
+
+public abstract class AbstractOptionHandler implements OptionHandler {
+    private static final Set<Class<?>> booleanTypes;
+    
+    static {
+        @SuppressWarnings("unchecked")
+        Set<Class<?>> temp = unmodifiableSet(new HashSet<Class<?>>(asList(boolean.class, Boolean.class)));
+        booleanTypes = temp;
+    }
+    
+    protected final Option option;
+    protected final String propertyName;
+    protected final Class<?> valueType;
+    // parsers find an option by any of its names, so one is enough
+    private final String optionName;
+    private Glob glob;
+    
+    public AbstractOptionHandler(Option option, String propertyName, Class<?> valueType) {
+        this.option = option;
+        this.propertyName = propertyName;
+        this.valueType = valueType;
+        this.optionName = option.shortName().length() > 0 ? option.shortName() : option.longName();
+    }
+    
+    public boolean hasValue() {
+        return !booleanTypes.contains(valueType);
+    }
+
+    public OptionSpecBuilder register(OptionParser parser) {
+        OptionSpecBuilder builder = parser.acceptsAll(names(), option.description());
+        if (hasValue()) {
+            ArgumentAcceptingOptionSpec<String> spec = option.requiresValue() ? builder.withRequiredArg() : builder.withOptionalArg();
+            // NOTE: don't specify a type here, leverage Spring's more robust type conversions
+            if (option.required()) {
+                spec = spec.required();
+            }
+        }
+        return builder;
+    }
+    
+    public boolean addPropertyValue(MutablePropertyValues propertyValues, ParsedArguments arguments) {
+        boolean result;
+        if (hasValue()) {
+            result = arguments.has(optionName);
+            if (result) {
+                propertyValues.add(propertyName, parseValue(arguments.valueOf(optionName)));
+            }
+        } else {
+            propertyValues.add(propertyName, arguments.has(optionName));
+            result = true;
+        }
+        return result;
+    }
+    
+    public String getName() {
+        return propertyName;
+    }
+    
+    public Option getOption() {
+        return option;
+    }
+    
+    public Glob getGlob() {
+        return glob;
+    }
+    
+    /**
+     * Enables expansion of glob patterns in the option's value, or disables it if {@code null}.
+     */
+    public void setGlob(Glob glob) {
+        this.glob = glob;
+    }
+    
+    public Class<?> getValueType() {
+        return valueType;
+    }
+    
+    public Object getValue(ParsedArguments arguments) {
+        Object result;
+        if (hasValue()) {
+            result = arguments.has(optionName) ? parseValue(arguments.valueOf(optionName)) : null;
+        } else {
+            result = arguments.has(optionName);
+        }
+        return result;
+    }
+    
+    /**
+     * Parses numeric primitives here rather than leaving them to Spring conversion, so that bad values are usage errors.
+     */
+    private Object parseValue(Object value) {
+        if (value instanceof String && glob != null) {
+            if (valueType.isArray() || Collection.class.isAssignableFrom(valueType)) {
+                List<String> values = GlobExpansion.expand(asList(((String) value).split(",")), glob);
+                value = values.toArray(new String[values.size()]);
+            } else {
+                value = GlobExpansion.expandSingle((String) value, glob, propertyName);
+            }
+        }
+        if (value instanceof String) {
+            if (NumericValues.isSupported(valueType)) {
+                value = NumericValues.parse((String) value, valueType, propertyName);
+            } else if (NumericValues.isSupportedArray(valueType)) {
+                value = NumericValues.parseArray((String) value, valueType, propertyName);
+            } else if (FileValues.isSupported(valueType)) {
+                value = FileValues.open((String) value, valueType, propertyName);
+            } else if (FileValues.isSupportedArray(valueType)) {
+                value = FileValues.openArray(asList(((String) value).split(",")), valueType, propertyName);
+            }
+        }
+        return value;
+    }
+    
+    private Collection<String> names() {
+        List<String> result = new ArrayList<String>(2);
+        addIfNotEmpty(result, option.shortName());
+        addIfNotEmpty(result, option.longName());
+        return result;
+    }
+
+    private static void addIfNotEmpty(List<String> result, String name) {
+        if (name.length() > 0) {
+            result.add(name);
+        }
+    }
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Expansion of {@code @file} operands into the arguments listed in the file, for argument lists too long for the
+ * command line.  Commands opt in with {@link Operand#argumentFiles()} on their multi-value operand, so that an
+ * ordinary operand such as {@code @user} is left alone unless it is passed where argument files are expected.
+ * <p>
+ * A file holding a NUL byte is read as NUL-delimited, as written by {@code find -print0}, and taken literally; any
+ * other file holds one argument per line, taken literally unless it starts with a quote, in which case it is unquoted
+ * as by {@link CommandLineTokenizer} and must hold exactly one argument.  Empty entries are skipped, {@code @-} reads
+ * standard input, and {@code @@} escapes a literal leading {@code @}.  Relative paths are resolved against the working
+ * directory of the current {@link CommandLineInvocation}, if any.
+ * <p>
+ * Regular files are memory-mapped, anything else, such as a pipe, is read fully up to {@link #MAX_FILE_LENGTH}, and
+ * the arguments are only indexed by offset, each being decoded in the platform charset, like the JVM's own arguments,
+ * when it is retrieved.
+ */
+public final class ArgumentFiles {
+    /** Most arguments all argument files of one command line may hold together. */
+    public static final int MAX_ARGUMENTS = 16 * 1024 * 1024;
+
+    /** Longest argument in bytes, the limit Linux places on a single command-line argument. */
+    public static final int MAX_ARGUMENT_LENGTH = 128 * 1024;
+
+    /** Longest argument file in bytes, so that reading standard input or a pipe cannot exhaust the heap. */
+    public static final int MAX_FILE_LENGTH = 256 * 1024 * 1024;
+
+    private ArgumentFiles() {
+    }
+
+    /**
+     * Returns the given operands with each {@code @file} replaced by the file's arguments, or the operands themselves if
+     * there is nothing to expand.
+     * 
+     * @throws ArgumentValueException if a file cannot be read, is malformed or exceeds the limits
+     */
+    public static List<String> expand(List<String> operands) {
+        return expand(operands, 0);
+    }
+
+    /**
+     * Returns the given operands with each {@code @file} at or after {@code fromIndex} replaced by the file's arguments,
+     * or the operands themselves if there is nothing to expand.
+     * 
+     * @throws ArgumentValueException if a file cannot be read, is malformed or exceeds the limits
+     */
+    public static List<String> expand(List<String> operands, int fromIndex) {
+        List<List<String>> segments = null;
+        int argumentCount = 0;
+        int start = 0;
+        for (int i = fromIndex; i < operands.size(); ++i) {
+            String operand = operands.get(i);
+            if (operand.length() > 1 && operand.charAt(0) == '@') {
+                if (segments == null) {
+                    segments = new ArrayList<List<String>>();
+                }
+                if (i > start) {
+                    segments.add(operands.subList(start, i));
+                }
+                List<String> segment = operand.charAt(1) == '@' ? Arrays.asList(operand.substring(1)) : read(operand.substring(1));
+                argumentCount += segment.size();
+                if (argumentCount > MAX_ARGUMENTS) {
+                    throw new ArgumentValueException(String.format("Argument files hold more than %d arguments", MAX_ARGUMENTS));
+                }
+                segments.add(segment);
+                start = i + 1;
+            }
+        }
+        if (segments == null) {
+            return operands;
+        }
+        if (start < operands.size()) {
+            segments.add(operands.subList(start, operands.size()));
+        }
+        return new CompositeList(segments);
+    }
+
+    private static List<String> read(String path) {
+        ByteBuffer buffer;
+        try {
+            buffer = "-".equals(path) ? readStandardInput(path) : read(path, resolve(path));
+        } catch (IOException e) {
+            throw new ArgumentValueException(String.format("Cannot read argument file [%s]: %s", path, e.getMessage()), e);
+        }
+        return indexOf(buffer, (byte) 0) >= 0 ? new ArgumentFile(path, buffer, (byte) 0) : new ArgumentFile(path, buffer, (byte) '\n');
+    }
+
+    private static File resolve(String path) {
+        CommandLineInvocation invocation = CommandLineInvocation.current();
+        return invocation == null ? new File(path) : invocation.resolve(path);
+    }
+
+    private static ByteBuffer readStandardInput(String path) throws IOException {
+        CommandLineInvocation invocation = CommandLineInvocation.current();
+        return readFully(path, invocation == null ? System.in : invocation.getIn());
+    }
+
+    private static ByteBuffer read(String path, File file) throws IOException {
+        if (!file.isFile()) {
+            // pipes and process substitutions cannot be mapped
+            InputStream in = new FileInputStream(file);
+            try {
+                return readFully(path, in);
+            } finally {
+                in.close();
+            }
+        }
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            if (channel.size() > MAX_FILE_LENGTH) {
+                throw tooLong(path);
+            }
+            // the mapping remains valid once the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private static ByteBuffer readFully(String path, InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int count = in.read(buffer); count >= 0; count = in.read(buffer)) {
+            if (out.size() + count > MAX_FILE_LENGTH) {
+                throw tooLong(path);
+            }
+            out.write(buffer, 0, count);
+        }
+        return ByteBuffer.wrap(out.toByteArray());
+    }
+
+    private static ArgumentValueException tooLong(String path) {
+        return new ArgumentValueException(String.format("Argument file [%s] is longer than %d bytes", path, MAX_FILE_LENGTH));
+    }
+
+    private static int indexOf(ByteBuffer buffer, byte b) {
+        for (int i = 0; i < buffer.limit(); ++i) {
+            if (buffer.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The arguments of one file, held as offsets into its contents.
+     */
+    private static class ArgumentFile extends AbstractList<String> implements RandomAccess {
+        private static final Charset charset = Charset.defaultCharset();
+
+        private final ByteBuffer buffer;
+        private int[] starts = new int[16];
+        private int[] ends = new int[16];
+        private int size;
+        private final Map<Integer, String> unquoted = new HashMap<Integer, String>();
+
+        public ArgumentFile(String path, ByteBuffer buffer, byte delimiter) {
+            this.buffer = buffer;
+            int limit = buffer.limit();
+            int entry = 0;
+            for (int start = 0; start < limit;) {
+                int end = start;
+                while (end < limit && buffer.get(end) != delimiter) {
+                    ++end;
+                }
+                ++entry;
+                int argumentEnd = end;
+                if (delimiter == '\n' && argumentEnd > start && buffer.get(argumentEnd - 1) == '\r') {
+                    --argumentEnd;
+                }
+                if (argumentEnd - start > MAX_ARGUMENT_LENGTH) {
+                    throw new ArgumentValueException(String.format("Argument file [%s] entry %d is longer than %d bytes",
+                        path, entry, MAX_ARGUMENT_LENGTH));
+                }
+                if (argumentEnd > start) {
+                    add(start, argumentEnd);
+                    byte first = buffer.get(start);
+                    if (delimiter == '\n' && (first == '\'' || first == '"')) {
+                        unquoted.put(size - 1, unquote(path, entry, decode(start, argumentEnd)));
+                    }
+                }
+                start = end + 1;
+            }
+        }
+
+        private void add(int start, int end) {
+            if (size == starts.length) {
+                if (size == MAX_ARGUMENTS) {
+                    throw new ArgumentValueException(String.format("Argument files hold more than %d arguments", MAX_ARGUMENTS));
+                }
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+            }
+            starts[size] = start;
+            ends[size] = end;
+            ++size;
+        }
+
+        private static String unquote(String path, int line, String text) {
+            String[] tokens;
+            try {
+                tokens = CommandLineTokenizer.tokenize(text);
+            } catch (IllegalArgumentException e) {
+                throw new ArgumentValueException(String.format("Argument file [%s] line %d: %s", path, line, e.getMessage()));
+            }
+            if (tokens.length != 1) {
+                throw new ArgumentValueException(String.format("Argument file [%s] line %d: expected one quoted argument but found %d",
+                    path, line, tokens.length));
+            }
+            return tokens[0];
+        }
+
+        private String decode(int start, int end) {
+            byte[] bytes = new byte[end - start];
+            ByteBuffer slice = buffer.duplicate();
+            slice.position(start);
+            slice.get(bytes);
+            return new String(bytes, charset);
+        }
+
+        @Override
+        public String get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException(String.format("Index: %d, Size: %d", index, size));
+            }
+            String result = unquoted.isEmpty() ? null : unquoted.get(index);
+            return result != null ? result : decode(starts[index], ends[index]);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Read-only concatenation of lists.
+     */
+    private static class CompositeList extends AbstractList<String> implements RandomAccess {
+        private final List<List<String>> segments;
+        private final int[] offsets;
+
+        public CompositeList(List<List<String>> segments) {
+            this.segments = segments;
+            offsets = new int[segments.size() + 1];
+            for (int i = 0; i < segments.size(); ++i) {
+                offsets[i + 1] = offsets[i] + segments.get(i).size();
+            }
+        }
+
+        @Override
+        public String get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException(String.format("Index: %d, Size: %d", index, size()));
+            }
+            int segment = Arrays.binarySearch(offsets, index);
+            if (segment < 0) {
+                segment = -segment - 2;
+            } else {
+                // skip empty segments starting at the same offset
+                while (offsets[segment + 1] == index) {
+                    ++segment;
+                }
+            }
+            return segments.get(segment).get(index - offsets[segment]);
+        }
+
+        @Override
+        public int size() {
+            return offsets[segments.size()];
+        }
+    }
+}
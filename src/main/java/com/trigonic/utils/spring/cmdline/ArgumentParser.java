@@ -0,0 +1,30 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import joptsimple.OptionException;
+
+/**
+ * Parses the arguments of one bean class into {@link ParsedArguments}, as created for the class's
+ * {@link CommandLineParserTemplate} by an {@link ArgumentParserFactory}.  Parsers are shared, so must be thread-safe.
+ */
+public interface ArgumentParser {
+    /**
+     * @throws OptionException if the arguments are not valid for the options, with jopt-simple's messages
+     */
+    ParsedArguments parse(String[] args) throws OptionException;
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.util.Collection;
+import java.util.Collections;
+
+import joptsimple.OptionException;
+
+/**
+ * The errors reported by {@link ArgumentTokenizer}, worded as jopt-simple words them so that usage errors read the
+ * same whichever parser is used.
+ */
+class ArgumentSyntaxException extends OptionException {
+    private static final long serialVersionUID = 1L;
+
+    enum Problem {
+        UNRECOGNIZED_OPTION,
+        MISSING_ARGUMENT,
+        MISSING_REQUIRED_OPTION,
+        MULTIPLE_ARGUMENTS
+    }
+
+    private final Problem problem;
+
+    public ArgumentSyntaxException(Problem problem, String option) {
+        this(problem, Collections.singletonList(option));
+    }
+
+    public ArgumentSyntaxException(Problem problem, Collection<String> options) {
+        super(options);
+        this.problem = problem;
+    }
+
+    public Problem getProblem() {
+        return problem;
+    }
+
+    @Override
+    public String getMessage() {
+        switch (problem) {
+        case UNRECOGNIZED_OPTION:
+            return singleOptionMessage() + " is not a recognized option";
+        case MISSING_ARGUMENT:
+            return "Option " + multipleOptionMessage() + " requires an argument";
+        case MISSING_REQUIRED_OPTION:
+            return "Missing required option " + multipleOptionMessage();
+        default:
+            return "Found multiple arguments for option " + multipleOptionMessage() + ", but you asked for only one";
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import static com.trigonic.utils.spring.cmdline.ArgumentSyntaxException.Problem.MISSING_ARGUMENT;
+import static com.trigonic.utils.spring.cmdline.ArgumentSyntaxException.Problem.MISSING_REQUIRED_OPTION;
+import static com.trigonic.utils.spring.cmdline.ArgumentSyntaxException.Problem.MULTIPLE_ARGUMENTS;
+import static com.trigonic.utils.spring.cmdline.ArgumentSyntaxException.Problem.UNRECOGNIZED_OPTION;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import joptsimple.OptionException;
+
+/**
+ * An {@link ArgumentParser} that parses in one pass over the arguments into arrays indexed by option ordinal, the
+ * position of the option's handler, with none of the per-parse objects jopt-simple builds.  It follows jopt-simple's
+ * default rules and reports its errors:
+ * <ul>
+ * <li>{@code --name} and {@code --name=value} give long options, which may be abbreviated to any unique prefix;</li>
+ * <li>{@code -abc} clusters short options, the first one taking an argument consuming the rest, unless {@code abc}
+ * names an option itself, and {@code -f=value} gives a short option's argument;</li>
+ * <li>an option requiring an argument not given in the same word takes the next argument, whatever it is, while one
+ * accepting an optional argument only takes it if it does not look like an option;</li>
+ * <li>options may follow operands, and {@code --} makes every later argument an operand.</li>
+ * </ul>
+ */
+public class ArgumentTokenizer implements ArgumentParser {
+    private static final byte NO_ARGUMENT = 0;
+    private static final byte REQUIRED_ARGUMENT = 1;
+    private static final byte OPTIONAL_ARGUMENT = 2;
+
+    private final List<List<String>> names = new ArrayList<List<String>>();
+    private final byte[] argumentKinds;
+    private final boolean[] required;
+    private final Map<String, Integer> ordinals = new HashMap<String, Integer>();
+    private final String[] sortedNames;
+
+    public ArgumentTokenizer(Collection<? extends OptionHandler> optionHandlers) {
+        argumentKinds = new byte[optionHandlers.size()];
+        required = new boolean[optionHandlers.size()];
+        int ordinal = 0;
+        for (OptionHandler handler : optionHandlers) {
+            Option option = handler.getOption();
+            List<String> optionNames = arrange(option.shortName(), option.longName());
+            for (String name : optionNames) {
+                // as with jopt-simple, a name declared again is taken by the later option
+                ordinals.put(name, ordinal);
+            }
+            names.add(optionNames);
+            if (handler.hasValue()) {
+                argumentKinds[ordinal] = option.requiresValue() ? REQUIRED_ARGUMENT : OPTIONAL_ARGUMENT;
+                required[ordinal] = option.required();
+            }
+            ++ordinal;
+        }
+        sortedNames = ordinals.keySet().toArray(new String[ordinals.size()]);
+        Arrays.sort(sortedNames);
+    }
+
+    public ParsedArguments parse(String[] args) throws OptionException {
+        Arguments result = new Arguments(argumentKinds.length, args.length);
+        boolean options = true;
+        for (int i = 0; i < args.length; ++i) {
+            String arg = args[i];
+            if (!options || arg.length() < 2 || arg.charAt(0) != '-') {
+                result.operands[result.operandCount++] = arg;
+            } else if (arg.equals("--")) {
+                options = false;
+            } else if (arg.charAt(1) == '-') {
+                i = parseLong(args, i, result);
+            } else {
+                i = parseShort(args, i, result);
+            }
+        }
+
+        Set<String> missing = null;
+        for (int ordinal = 0; ordinal < required.length; ++ordinal) {
+            if (required[ordinal] && !result.present[ordinal]) {
+                if (missing == null) {
+                    missing = new HashSet<String>();
+                }
+                missing.addAll(names.get(ordinal));
+            }
+        }
+        if (missing != null) {
+            throw new ArgumentSyntaxException(MISSING_REQUIRED_OPTION, missing);
+        }
+        return result;
+    }
+
+    private int parseLong(String[] args, int index, Arguments result) {
+        String word = args[index];
+        int equals = word.indexOf('=');
+        String name = equals < 0 ? word.substring(2) : word.substring(2, equals);
+        int ordinal = resolve(name);
+        if (ordinal < 0) {
+            throw new ArgumentSyntaxException(UNRECOGNIZED_OPTION, name);
+        }
+        return detect(ordinal, equals < 0 ? null : word.substring(equals + 1), args, index, result);
+    }
+
+    private int parseShort(String[] args, int index, Arguments result) {
+        String word = args[index];
+        int equals = word.indexOf('=');
+        int ordinal = resolve(equals < 0 ? word.substring(1) : word.substring(1, equals));
+        if (ordinal >= 0) {
+            return detect(ordinal, equals < 0 ? null : word.substring(equals + 1), args, index, result);
+        }
+
+        // a cluster, in which every option before the first accepting an argument must be recognized
+        int length = word.length();
+        for (int i = 1; i < length; ++i) {
+            int each = resolve(String.valueOf(word.charAt(i)));
+            if (each < 0) {
+                throw new ArgumentSyntaxException(UNRECOGNIZED_OPTION, String.valueOf(word.charAt(i)));
+            }
+            if (argumentKinds[each] != NO_ARGUMENT) {
+                break;
+            }
+        }
+        for (int i = 1; i < length; ++i) {
+            int each = resolve(String.valueOf(word.charAt(i)));
+            if (argumentKinds[each] != NO_ARGUMENT && i + 1 < length) {
+                return detect(each, word.substring(i + 1), args, index, result);
+            }
+            index = detect(each, null, args, index, result);
+        }
+        return index;
+    }
+
+    /**
+     * Records the option, with the given argument or one taken from the following arguments.
+     * 
+     * @return the index of the last argument used
+     */
+    private int detect(int ordinal, String argument, String[] args, int index, Arguments result) {
+        byte kind = argumentKinds[ordinal];
+        if (kind == NO_ARGUMENT) {
+            result.present[ordinal] = true;
+        } else if (argument != null && argument.length() > 0) {
+            result.add(ordinal, argument);
+        } else if (kind == REQUIRED_ARGUMENT) {
+            if (index + 1 == args.length) {
+                throw new ArgumentSyntaxException(MISSING_ARGUMENT, names.get(ordinal));
+            }
+            result.add(ordinal, args[++index]);
+        } else if (index + 1 < args.length && !looksLikeOption(args[index + 1])) {
+            result.add(ordinal, args[++index]);
+        } else {
+            result.present[ordinal] = true;
+        }
+        return index;
+    }
+
+    private static boolean looksLikeOption(String arg) {
+        return arg.startsWith("-") && !arg.equals("-");
+    }
+
+    /**
+     * Returns the ordinal of the option with the given name, or with a name of which it is the only abbreviation, or
+     * -1 if there is none.
+     */
+    private int resolve(String name) {
+        Integer ordinal = ordinals.get(name);
+        if (ordinal != null) {
+            return ordinal;
+        }
+        if (name.length() == 0) {
+            return -1;
+        }
+        int index = -Arrays.binarySearch(sortedNames, name) - 1;
+        if (index < sortedNames.length && sortedNames[index].startsWith(name)
+                && (index + 1 == sortedNames.length || !sortedNames[index + 1].startsWith(name))) {
+            return ordinals.get(sortedNames[index]);
+        }
+        return -1;
+    }
+
+    /**
+     * Orders an option's names as jopt-simple does in its messages, single characters first.
+     */
+    private static List<String> arrange(String shortName, String longName) {
+        List<String> result = new ArrayList<String>(2);
+        if (shortName.length() > 0) {
+            result.add(shortName);
+        }
+        if (longName.length() > 0) {
+            result.add(longName);
+        }
+        if (result.size() == 2 && (result.get(0).length() == 1) == (result.get(1).length() == 1)) {
+            Collections.sort(result);
+        } else if (result.size() == 2 && result.get(1).length() == 1) {
+            Collections.reverse(result);
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private class Arguments implements ParsedArguments {
+        final boolean[] present;
+        final String[] values;
+        final int[] valueCounts;
+        final String[] operands;
+        int operandCount;
+
+        public Arguments(int optionCount, int argumentCount) {
+            present = new boolean[optionCount];
+            values = new String[optionCount];
+            valueCounts = new int[optionCount];
+            operands = new String[argumentCount];
+        }
+
+        void add(int ordinal, String value) {
+            present[ordinal] = true;
+            if (valueCounts[ordinal]++ == 0) {
+                values[ordinal] = value;
+            }
+        }
+
+        public boolean has(String optionName) {
+            Integer ordinal = ordinals.get(optionName);
+            return ordinal != null && present[ordinal];
+        }
+
+        public String valueOf(String optionName) {
+            Integer ordinal = ordinals.get(optionName);
+            if (ordinal == null) {
+                return null;
+            }
+            if (valueCounts[ordinal] > 1) {
+                throw new ArgumentSyntaxException(MULTIPLE_ARGUMENTS, names.get(ordinal));
+            }
+            return values[ordinal];
+        }
+
+        public List<String> getOperands() {
+            return Collections.unmodifiableList(Arrays.asList(operands).subList(0, operandCount));
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Input stream reading a channel through a large buffer; reads at least as large as the buffer go straight to the
+ * channel.  Unlike {@link java.io.BufferedInputStream} it takes no locks, so it must only be used by one thread at a
+ * time.  Closing it leaves the channel open.
+ */
+final class ChannelInputStream extends InputStream {
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(ChannelPrintStream.BUFFER_SIZE);
+    private boolean eof;
+
+    public ChannelInputStream(ReadableByteChannel channel) {
+        this.channel = channel;
+        buffer.limit(0);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!buffer.hasRemaining() && !fill()) {
+            return -1;
+        }
+        return buffer.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!buffer.hasRemaining()) {
+            if (len >= buffer.capacity()) {
+                return readDirect(ByteBuffer.wrap(b, off, len));
+            }
+            if (!fill()) {
+                return -1;
+            }
+        }
+        int count = Math.min(len, buffer.remaining());
+        buffer.get(b, off, count);
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+
+    private boolean fill() throws IOException {
+        buffer.clear();
+        int count = readDirect(buffer);
+        buffer.flip();
+        return count > 0;
+    }
+
+    private int readDirect(ByteBuffer dst) throws IOException {
+        if (eof) {
+            return -1;
+        }
+        int count;
+        do {
+            count = channel.read(dst);
+        } while (count == 0);
+        eof = count < 0;
+        return count;
+    }
+}
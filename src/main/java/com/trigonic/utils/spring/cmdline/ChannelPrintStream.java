@@ -0,0 +1,212 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Print stream encoding text straight into a large buffer that is written to a channel when full, on
+ * {@link #flush()} and, if line flushing, after each line.  Unlike {@link PrintStream} it takes no locks, so it must
+ * only be used by one thread at a time.  Closing it flushes it but leaves the channel open.
+ */
+final class ChannelPrintStream extends PrintStream {
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String lineSeparator = System.getProperty("line.separator");
+
+    private final WritableByteChannel channel;
+    private final boolean lineFlush;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final CharsetEncoder encoder = Charset.defaultCharset().newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private boolean error;
+    private boolean closed;
+
+    public ChannelPrintStream(WritableByteChannel channel, boolean lineFlush) {
+        super(Channels.newOutputStream(channel));
+        this.channel = channel;
+        this.lineFlush = lineFlush;
+    }
+
+    public boolean isLineFlush() {
+        return lineFlush;
+    }
+
+    @Override
+    public void write(int b) {
+        if (ensureOpen()) {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            buffer.put((byte) b);
+            if (lineFlush && b == '\n') {
+                drain();
+            }
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        if (ensureOpen()) {
+            if (len >= buffer.capacity()) {
+                drain();
+                writeFully(ByteBuffer.wrap(b, off, len));
+            } else {
+                int end = off + len;
+                while (off < end) {
+                    if (!buffer.hasRemaining()) {
+                        drain();
+                    }
+                    int count = Math.min(buffer.remaining(), end - off);
+                    buffer.put(b, off, count);
+                    off += count;
+                }
+                if (lineFlush && containsNewline(b, end - len, end)) {
+                    drain();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void print(String s) {
+        if (ensureOpen()) {
+            encode(s == null ? "null" : s);
+        }
+    }
+
+    @Override
+    public void print(char c) {
+        if (c < 0x80) {
+            write(c);
+        } else {
+            print(String.valueOf(c));
+        }
+    }
+
+    @Override
+    public void print(Object obj) {
+        print(String.valueOf(obj));
+    }
+
+    @Override
+    public void println() {
+        print(lineSeparator);
+    }
+
+    @Override
+    public void println(String x) {
+        print(x);
+        println();
+    }
+
+    @Override
+    public void println(Object x) {
+        print(String.valueOf(x));
+        println();
+    }
+
+    @Override
+    public void flush() {
+        if (!closed) {
+            drain();
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+        closed = true;
+    }
+
+    @Override
+    public boolean checkError() {
+        flush();
+        return error;
+    }
+
+    @Override
+    protected void setError() {
+        error = true;
+    }
+
+    @Override
+    protected void clearError() {
+        error = false;
+    }
+
+    private boolean ensureOpen() {
+        if (closed) {
+            error = true;
+        }
+        return !closed;
+    }
+
+    private void encode(String s) {
+        CharBuffer chars = CharBuffer.wrap(s);
+        CoderResult result;
+        do {
+            result = encoder.encode(chars, buffer, true);
+            if (result.isOverflow()) {
+                drain();
+            }
+        } while (result.isOverflow());
+        while (encoder.flush(buffer).isOverflow()) {
+            drain();
+        }
+        encoder.reset();
+        if (lineFlush && s.indexOf('\n') >= 0) {
+            drain();
+        }
+    }
+
+    private void drain() {
+        buffer.flip();
+        if (buffer.hasRemaining()) {
+            writeFully(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer src) {
+        try {
+            while (src.hasRemaining()) {
+                channel.write(src);
+            }
+        } catch (IOException e) {
+            error = true;
+        }
+    }
+
+    private static boolean containsNewline(byte[] b, int off, int end) {
+        for (int i = off; i < end; ++i) {
+            if (b[i] == '\n') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
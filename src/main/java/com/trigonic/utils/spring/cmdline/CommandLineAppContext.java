@@ -1,51 +1,166 @@
-/*
- * Copyright 2011 the original author or authors.
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- * http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-
-package com.trigonic.utils.spring.cmdline;
-
-import org.springframework.beans.factory.support.DefaultListableBeanFactory;
-
-import com.trigonic.utils.spring.context.XmlResourceApplicationContext;
-
-public class CommandLineAppContext extends XmlResourceApplicationContext {
-    private final CommandLineBeanDefinitionReader reader;
-
-    public CommandLineAppContext(Object... resources) {
-        super(resources);
-        reader = new CommandLineBeanDefinitionReader((DefaultListableBeanFactory) getBeanFactory());
-    }
-    
-    public void parse(Class<?> beanClass, String[] args) {
-        reader.parse(beanClass, args);
-    }
-    
-    public <T> T parseAndGet(Class<T> beanClass, String[] args) {
-        parse(beanClass, args);
-        return getBean(beanClass);
-    }
-    
-    public <T extends Runnable> void run(Class<T> beanClass, String[] args) {
-        try {
-            parseAndGet(beanClass, args).run();
-        } catch (UsageException e) {
-            e.printUsage();
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            close();
-        }
-    }
-}
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Set;
+
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import com.trigonic.utils.spring.context.XmlResourceApplicationContext;
+
+public class CommandLineAppContext extends XmlResourceApplicationContext implements CommandLineContext {
+    // created on first use, which may be during the refresh in the superclass constructor
+    private CommandLineContextSupport support;
+
+    public CommandLineAppContext(Object... resources) {
+        super(resources);
+    }
+    
+    private synchronized CommandLineContextSupport getSupport() {
+        if (support == null) {
+            support = new CommandLineContextSupport(this);
+        }
+        return support;
+    }
+    
+    @Override
+    protected DefaultListableBeanFactory createBeanFactory() {
+        return new CommandLineBeanFactory(getInternalParentBeanFactory());
+    }
+    
+    @Override
+    public void refresh() {
+        CommandLineContextSupport.refresh(new Runnable() {
+            public void run() {
+                CommandLineAppContext.super.refresh();
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        CommandLineContextSupport.close(new Runnable() {
+            public void run() {
+                CommandLineAppContext.super.close();
+            }
+        });
+    }
+    
+    /**
+     * Registers the definitions of the context resources through the {@link CommandLineContextInitializer} generated
+     * from them, if there is one, rather than by parsing them.
+     */
+    @Override
+    protected void loadBeanDefinitions(DefaultListableBeanFactory beanFactory) throws IOException {
+        long start = CommandLineProfile.start();
+        CommandLineContextInitializer initializer = ContextInitializerIndex.find(getConfigResources(), getClassLoader());
+        if (initializer == null) {
+            super.loadBeanDefinitions(beanFactory);
+        } else {
+            initializer.initialize(beanFactory);
+        }
+        CommandLineProfile.end("load definitions", start);
+    }
+    
+    /**
+     * @see CommandLineContext
+     */
+    protected boolean isPruningSingletons() {
+        return CommandLineBeanFactory.isPruningEnabled();
+    }
+    
+    /**
+     * @see CommandLineContext
+     */
+    protected int getSingletonParallelism() {
+        return CommandLineBeanFactory.getDefaultSingletonParallelism();
+    }
+    
+    @Override
+    protected void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) {
+        super.postProcessBeanFactory(beanFactory);
+        CommandLineContextSupport.postProcessBeanFactory(this, beanFactory, isPruningSingletons(),
+            getSingletonParallelism());
+    }
+    
+    public StandardStreams getStandardStreams() {
+        return getSupport().getStandardStreams();
+    }
+    
+    public Set<String> getDeferredSingletons() {
+        return getSupport().getDeferredSingletons();
+    }
+    
+    public void setCompiledBinding(boolean compiledBinding) {
+        getSupport().setCompiledBinding(compiledBinding);
+    }
+    
+    public void parse(Class<?> beanClass, String[] args) {
+        getSupport().parse(beanClass, args);
+    }
+    
+    public String register(CommandLineBeanDefinition beanDef) {
+        return getSupport().register(beanDef);
+    }
+    
+    @Override
+    protected void onClose() {
+        super.onClose();
+        synchronized (this) {
+            if (support != null) {
+                support.onClose();
+            }
+        }
+    }
+    
+    public <T> T parseAndGet(Class<T> beanClass, String[] args) {
+        return getSupport().parseAndGet(beanClass, args);
+    }
+    
+    public <T extends Runnable> void run(Class<T> beanClass, String[] args) {
+        getSupport().run(beanClass, args);
+    }
+    
+    public <T extends Runnable> int invoke(Class<T> beanClass, CommandLineInvocation invocation) {
+        return getSupport().invoke(beanClass, null, invocation);
+    }
+    
+    <T extends Runnable> int invoke(Class<T> beanClass, CommandLineBeanDefinition beanDef, CommandLineInvocation invocation) {
+        return getSupport().invoke(beanClass, beanDef, invocation);
+    }
+    
+    public <T extends Runnable> int runBatch(Class<T> beanClass, Reader lines, int parallelism) {
+        return getSupport().runBatch(beanClass, lines, parallelism);
+    }
+    
+    /**
+     * Two-phase alternative to {@link #run(Class, String[])}: arguments are parsed and validated against the bean
+     * class's metadata first, and the context is only loaded from the given resources once they are known to be good,
+     * so usage errors and help never pay for context startup.  {@link CommandLineCompletion Completion requests} are
+     * answered from the metadata alone.
+     */
+    public static <T extends Runnable> void launch(Class<T> beanClass, String[] args, final Object... resources) {
+        CommandLineContextSupport.launch(beanClass, args, new CommandLineContextSupport.ContextFactory() {
+            public CommandLineContextSupport createContext() {
+                return new CommandLineAppContext(resources).getSupport();
+            }
+        });
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a command once per line of arguments against a shared, refreshed {@link CommandLineContext}.  Lines are
+ * split with {@link CommandLineTokenizer}; blank lines and comments are skipped.  Lines run in parallel on the given
+ * executor, each with its own command bean, and each line's captured output is written in input order.  At most
+ * {@code maxInFlight} lines are running or awaiting output at any time, which bounds memory however long the input.
+ */
+public class CommandLineBatch {
+    private static final byte[] NO_INPUT = new byte[0];
+
+    private final CommandLineContext appContext;
+    private final Class<? extends Runnable> beanClass;
+    private final ExecutorService executor;
+    private final int maxInFlight;
+    private final File workingDirectory = new File(System.getProperty("user.dir"));
+    private final Map<String, String> environment = System.getenv();
+
+    public CommandLineBatch(CommandLineContext appContext, Class<? extends Runnable> beanClass, ExecutorService executor,
+            int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight cannot be < 1");
+        }
+        this.appContext = appContext;
+        this.beanClass = beanClass;
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+    }
+
+    public List<Result> run(Reader input, PrintStream out, PrintStream err) throws IOException {
+        CommandLineInvocation.installSystemStreams();
+        BufferedReader reader = input instanceof BufferedReader ? (BufferedReader) input : new BufferedReader(input);
+        List<Result> results = new ArrayList<Result>();
+        Deque<Future<Result>> pending = new ArrayDeque<Future<Result>>(maxInFlight);
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            ++lineNumber;
+            String trimmed = line.trim();
+            if (trimmed.length() == 0 || trimmed.charAt(0) == '#') {
+                continue;
+            }
+            while (pending.size() >= maxInFlight) {
+                results.add(emit(pending.poll(), out, err));
+            }
+            final int currentLine = lineNumber;
+            final String currentArgs = line;
+            pending.add(executor.submit(new Callable<Result>() {
+                public Result call() {
+                    return execute(currentLine, currentArgs);
+                }
+            }));
+            while (!pending.isEmpty() && pending.peek().isDone()) {
+                results.add(emit(pending.poll(), out, err));
+            }
+        }
+        while (!pending.isEmpty()) {
+            results.add(emit(pending.poll(), out, err));
+        }
+        out.flush();
+        err.flush();
+        return results;
+    }
+
+    public static int highestExitStatus(List<Result> results) {
+        int result = CommandLineInvocation.EXIT_SUCCESS;
+        for (Result lineResult : results) {
+            result = Math.max(result, lineResult.getExitStatus());
+        }
+        return result;
+    }
+
+    private Result execute(int lineNumber, String line) {
+        ByteArrayOutputStream outBuffer = new ByteArrayOutputStream();
+        ByteArrayOutputStream errBuffer = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(outBuffer);
+        PrintStream err = new PrintStream(errBuffer);
+        int exitStatus;
+        try {
+            String[] args = CommandLineTokenizer.tokenize(line);
+            CommandLineInvocation invocation = new CommandLineInvocation(args, workingDirectory, environment,
+                new ByteArrayInputStream(NO_INPUT), out, err);
+            exitStatus = appContext.invoke(beanClass, invocation);
+        } catch (IllegalArgumentException e) {
+            err.println("Error: " + e.getMessage());
+            exitStatus = CommandLineInvocation.EXIT_USAGE;
+        }
+        out.flush();
+        err.flush();
+        return new Result(lineNumber, exitStatus, outBuffer.toByteArray(), errBuffer.toByteArray());
+    }
+
+    private static Result emit(Future<Result> future, PrintStream out, PrintStream err) throws IOException {
+        Result result;
+        try {
+            result = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for batch results");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Batch line failed unexpectedly", e.getCause());
+        }
+        out.write(result.out);
+        err.write(result.err);
+        result.out = null;
+        result.err = null;
+        return result;
+    }
+
+    public static class Result {
+        private final int lineNumber;
+        private final int exitStatus;
+        private byte[] out;
+        private byte[] err;
+
+        Result(int lineNumber, int exitStatus, byte[] out, byte[] err) {
+            this.lineNumber = lineNumber;
+            this.exitStatus = exitStatus;
+            this.out = out;
+            this.err = err;
+        }
+
+        /**
+         * One-based line number within the input, counting skipped lines.
+         */
+        public int getLineNumber() {
+            return lineNumber;
+        }
+
+        public int getExitStatus() {
+            return exitStatus;
+        }
+    }
+}
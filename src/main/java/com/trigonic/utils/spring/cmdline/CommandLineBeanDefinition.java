@@ -1,44 +1,121 @@
-/*
- * Copyright 2011 the original author or authors.
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- * http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-
-package com.trigonic.utils.spring.cmdline;
-
-import joptsimple.OptionSet;
-
-import org.springframework.beans.MutablePropertyValues;
-import org.springframework.beans.factory.support.GenericBeanDefinition;
-
-public class CommandLineBeanDefinition extends GenericBeanDefinition {
-    private static final long serialVersionUID = 1L;
-
-    public CommandLineBeanDefinition(Class<?> beanClass, CommandLineMetaData metaData, OptionSet optionSet) {
-        setBeanClass(beanClass);
-        populate(metaData, optionSet);
-    }
-
-    private void populate(CommandLineMetaData metaData, OptionSet optionSet) {
-        MutablePropertyValues propertyValues = new MutablePropertyValues();
-        for (OptionHandler handler : metaData.getOptionHandlers()) {
-            handler.addPropertyValue(propertyValues, optionSet);
-        }
-        for (OperandHandler handler : metaData.getOperandHandlers()) {
-            if (!handler.addPropertyValue(propertyValues, optionSet) && handler.isRequired()) {
-                throw new OperandException(String.format("Operand [%s] is required", handler.getName()));
-            }
-        }
-        setPropertyValues(propertyValues);
-    }
-}
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import joptsimple.OptionSet;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.MutablePropertyValues;
+import org.springframework.beans.PropertyValue;
+import org.springframework.beans.TypeConverter;
+import org.springframework.beans.factory.support.GenericBeanDefinition;
+
+public class CommandLineBeanDefinition extends GenericBeanDefinition {
+    private static final long serialVersionUID = 1L;
+
+    private static final Log log = LogFactory.getLog(CommandLineBeanDefinition.class);
+
+    private transient CommandLineBindingPlan bindingPlan;
+    private transient Object[] values;
+    private final transient List<Closeable> resources = new ArrayList<Closeable>();
+
+    public CommandLineBeanDefinition(Class<?> beanClass, CommandLineMetaData metaData, OptionSet optionSet) {
+        this(beanClass, metaData, optionSet, optionSet.nonOptionArguments());
+    }
+
+    /**
+     * @param operands the non-option arguments of the option set, possibly with argument files expanded
+     */
+    public CommandLineBeanDefinition(Class<?> beanClass, CommandLineMetaData metaData, OptionSet optionSet, List<String> operands) {
+        this(beanClass, metaData, new OptionSetArguments(optionSet), operands);
+    }
+
+    /**
+     * @param operands the operands of the parsed arguments, possibly with argument files expanded
+     */
+    public CommandLineBeanDefinition(Class<?> beanClass, CommandLineMetaData metaData, ParsedArguments arguments, List<String> operands) {
+        setBeanClass(beanClass);
+        populate(metaData, arguments, operands);
+    }
+
+    /**
+     * Creates a definition without property values, whose options and operands are instead bound to the bean by
+     * {@link CommandLineBindingPostProcessor} using the given plan.
+     */
+    public CommandLineBeanDefinition(Class<?> beanClass, CommandLineBindingPlan bindingPlan, OptionSet optionSet) {
+        this(beanClass, bindingPlan, optionSet, optionSet.nonOptionArguments());
+    }
+
+    public CommandLineBeanDefinition(Class<?> beanClass, CommandLineBindingPlan bindingPlan, OptionSet optionSet, List<String> operands) {
+        this(beanClass, bindingPlan, new OptionSetArguments(optionSet), operands);
+    }
+
+    public CommandLineBeanDefinition(Class<?> beanClass, CommandLineBindingPlan bindingPlan, ParsedArguments arguments, List<String> operands) {
+        setBeanClass(beanClass);
+        this.values = bindingPlan.resolve(arguments, operands);
+        this.bindingPlan = bindingPlan;
+        for (Object value : values) {
+            FileValues.collectResources(value, resources);
+        }
+    }
+
+    public boolean isCompiled() {
+        return bindingPlan != null;
+    }
+
+    public void bind(Object bean, TypeConverter typeConverter) {
+        if (bindingPlan != null) {
+            bindingPlan.bind(bean, values, typeConverter);
+        }
+    }
+
+    private void populate(CommandLineMetaData metaData, ParsedArguments arguments, List<String> operands) {
+        MutablePropertyValues propertyValues = new MutablePropertyValues();
+        for (OptionHandler handler : metaData.getOptionHandlers()) {
+            handler.addPropertyValue(propertyValues, arguments);
+        }
+        for (OperandHandler handler : metaData.getOperandHandlers()) {
+            if (!handler.addPropertyValue(propertyValues, operands) && handler.isRequired()) {
+                throw new OperandException(String.format("Operand [%s] is required", handler.getName()));
+            }
+        }
+        setPropertyValues(propertyValues);
+        for (PropertyValue propertyValue : propertyValues.getPropertyValues()) {
+            FileValues.collectResources(propertyValue.getValue(), resources);
+        }
+    }
+
+    /**
+     * Closes the files opened for channel and mapped file values, once the bean is no longer in use.
+     */
+    public void closeResources() {
+        for (Closeable resource : resources) {
+            try {
+                resource.close();
+            } catch (IOException e) {
+                log.warn("Failed to close " + resource, e);
+            }
+        }
+        resources.clear();
+    }
+}
@@ -1,65 +1,137 @@
-/*
- * Copyright 2011 the original author or authors.
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- * http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-
-package com.trigonic.utils.spring.cmdline;
-
-import java.util.Arrays;
-
-import joptsimple.OptionException;
-import joptsimple.OptionParser;
-import joptsimple.OptionSet;
-
-import org.springframework.beans.factory.config.BeanDefinitionHolder;
-import org.springframework.beans.factory.support.BeanDefinitionReaderUtils;
-import org.springframework.beans.factory.support.BeanDefinitionRegistry;
-import org.springframework.beans.factory.support.BeanNameGenerator;
-import org.springframework.beans.factory.support.DefaultBeanNameGenerator;
-
-public class CommandLineBeanDefinitionReader {
-    private final BeanDefinitionRegistry registry;
-
-    private final BeanNameGenerator beanNameGenerator = new DefaultBeanNameGenerator();
-
-    public CommandLineBeanDefinitionReader(BeanDefinitionRegistry registry) {
-        this.registry = registry;
-    }
-
-    public <T> void parse(Class<T> beanClass, String[] args) {
-        OptionParser parser = new OptionParser();
-        parser.acceptsAll(Arrays.asList("h", "help"), "Usage information");
-        
-        CommandLineMetaData metaData = new CommandLineMetaData(beanClass);
-        metaData.register(parser);
-
-        OptionSet optionSet;
-        try {
-            optionSet = parser.parse(args);
-            if (optionSet.has("help")) {
-                throw new UsageException(parser, metaData, null);  // triggers usage
-            }
-
-            CommandLineBeanDefinition beanDef = new CommandLineBeanDefinition(beanClass, metaData, optionSet);
-            String beanName = beanNameGenerator.generateBeanName(beanDef, this.registry);
-
-            BeanDefinitionHolder definitionHolder = new BeanDefinitionHolder(beanDef, beanName);
-            BeanDefinitionReaderUtils.registerBeanDefinition(definitionHolder, this.registry);
-        } catch (OptionException e) {
-            throw new UsageException(parser, metaData, e);
-        } catch (OperandException e) {
-            throw new UsageException(parser, metaData, e);
-        }
-    }
-}
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.util.List;
+
+import joptsimple.OptionException;
+
+import org.springframework.beans.factory.config.BeanDefinitionHolder;
+import org.springframework.beans.factory.support.BeanDefinitionReaderUtils;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.BeanNameGenerator;
+import org.springframework.beans.factory.support.DefaultBeanNameGenerator;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+public class CommandLineBeanDefinitionReader {
+    private final BeanDefinitionRegistry registry;
+
+    private final BeanNameGenerator beanNameGenerator = new DefaultBeanNameGenerator();
+
+    private boolean compiledBinding;
+
+    public CommandLineBeanDefinitionReader(BeanDefinitionRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Whether parsed definitions bind options and operands through a compiled {@link CommandLineBindingPlan} instead of
+     * property values; the registry must then be a bean factory, to which a {@link CommandLineBindingPostProcessor} is
+     * added along with the first such definition.
+     */
+    public void setCompiledBinding(boolean compiledBinding) {
+        this.compiledBinding = compiledBinding;
+    }
+
+    public <T> void parse(Class<T> beanClass, String[] args) {
+        register(createBeanDefinition(beanClass, args, compiledBinding));
+    }
+
+    /**
+     * Registers the bean definition under a newly generated name, which is returned.  Name generation and registration
+     * happen atomically, so concurrent invocations sharing a registry never override one another's definitions.
+     */
+    public String register(CommandLineBeanDefinition beanDef) {
+        Object event = CommandLineEvents.begin(CommandLineEvents.REGISTER, beanDef.getBeanClass(), -1);
+        String outcome = CommandLineEvents.FAILURE;
+        try {
+            synchronized (registry) {
+                String beanName = beanNameGenerator.generateBeanName(beanDef, this.registry);
+
+                BeanDefinitionHolder definitionHolder = new BeanDefinitionHolder(beanDef, beanName);
+                BeanDefinitionReaderUtils.registerBeanDefinition(definitionHolder, this.registry);
+                if (beanDef.isCompiled()) {
+                    if (!(registry instanceof DefaultListableBeanFactory)) {
+                        throw new IllegalStateException("Compiled binding needs a bean factory as the registry");
+                    }
+                    CommandLineBindingPostProcessor.addTo((DefaultListableBeanFactory) registry);
+                }
+                outcome = CommandLineEvents.SUCCESS;
+                return beanName;
+            }
+        } finally {
+            CommandLineEvents.end(event, outcome);
+        }
+    }
+
+    /**
+     * Parses and validates the arguments using only the bean class's metadata, so that usage errors and help can be
+     * reported before any application context exists.
+     */
+    public static CommandLineBeanDefinition createBeanDefinition(Class<?> beanClass, String[] args) {
+        return createBeanDefinition(beanClass, args, false);
+    }
+
+    public static CommandLineBeanDefinition createBeanDefinition(Class<?> beanClass, String[] args, boolean compiledBinding) {
+        long start = CommandLineProfile.start();
+        long metricsStart = CommandLineMetrics.start();
+        Object event = CommandLineEvents.begin(CommandLineEvents.PARSE, beanClass, args.length);
+        String outcome = CommandLineEvents.FAILURE;
+        boolean usageError = false;
+        try {
+            CommandLineBeanDefinition result = parseBeanDefinition(beanClass, args, compiledBinding);
+            outcome = CommandLineEvents.SUCCESS;
+            return result;
+        } catch (UsageException e) {
+            outcome = CommandLineEvents.USAGE;
+            usageError = true;
+            throw e;
+        } finally {
+            CommandLineMetrics.parsed(beanClass, metricsStart, usageError);
+            CommandLineEvents.end(event, outcome);
+            CommandLineProfile.end("parse arguments", start);
+        }
+    }
+
+    private static CommandLineBeanDefinition parseBeanDefinition(Class<?> beanClass, String[] args, boolean compiledBinding) {
+        CommandLineParserTemplate template = CommandLineParserTemplate.forClass(beanClass);
+        CommandLineMetaData metaData = template.getMetaData();
+
+        // jopt-simple's parser prints usage, so is only built for it when parsing with another
+        try {
+            ParsedArguments arguments = template.parseArguments(args);
+            if (arguments.has("help")) {
+                throw new UsageException(template.getParser(), metaData, null);  // triggers usage
+            }
+
+            List<String> operands = arguments.getOperands();
+            if (metaData.getArgumentFilesIndex() >= 0) {
+                operands = ArgumentFiles.expand(operands, metaData.getArgumentFilesIndex());
+            }
+            if (compiledBinding) {
+                return new CommandLineBeanDefinition(beanClass, template.getBindingPlan(), arguments, operands);
+            }
+            return new CommandLineBeanDefinition(beanClass, metaData, arguments, operands);
+        } catch (OptionException e) {
+            throw new UsageException(template.getParser(), metaData, e);
+        } catch (OperandException e) {
+            throw new UsageException(template.getParser(), metaData, e);
+        } catch (ArgumentValueException e) {
+            throw new UsageException(template.getParser(), metaData, e);
+        }
+    }
+}
@@ -0,0 +1,519 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.PropertyValue;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryUtils;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.beans.factory.SmartFactoryBean;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinitionHolder;
+import org.springframework.beans.factory.config.ConstructorArgumentValues.ValueHolder;
+import org.springframework.beans.factory.config.RuntimeBeanNameReference;
+import org.springframework.beans.factory.config.RuntimeBeanReference;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.core.GenericCollectionTypeResolver;
+import org.springframework.core.MethodParameter;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * Bean factory that, when pruning, defers the instantiation of non-lazy singletons from the context refresh until a
+ * command is about to run, and then instantiates only those the command can reach.  A bean reaches the beans its
+ * definition refers to, through property values, constructor arguments, {@code depends-on} and its factory bean, those
+ * it is autowired with by name or type, and the candidates for its {@code @Autowired}, {@code @Inject} and
+ * {@code @Resource} fields and methods.  Other singletons remain lazy, and are still created should anything ask for
+ * them, so an incomplete guess only costs the startup order, never correctness.
+ * <p>
+ * With a {@link #setSingletonParallelism(int) singleton parallelism} above one, the singletons are instead instantiated
+ * concurrently, following the same dependencies.  Bean post-processors are unaffected, as the context has created
+ * them all before any other singleton.
+ */
+class CommandLineBeanFactory extends DefaultListableBeanFactory {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * System property which, when {@code true}, makes contexts instantiate only the singletons their commands reach.
+     */
+    static final String PRUNE_PROPERTY = "com.trigonic.utils.spring.cmdline.pruneSingletons";
+
+    /**
+     * System property giving the number of threads contexts instantiate independent singletons on, by default one.
+     */
+    static final String PARALLELISM_PROPERTY = "com.trigonic.utils.spring.cmdline.singletonParallelism";
+
+    private static final Log log = LogFactory.getLog(CommandLineBeanFactory.class);
+
+    private static final Set<String> INJECTION_ANNOTATIONS = new HashSet<String>(Arrays.asList(
+        "org.springframework.beans.factory.annotation.Autowired", "javax.inject.Inject", "javax.annotation.Resource"));
+
+    private final Set<String> deferred = new LinkedHashSet<String>();
+    private boolean pruning;
+    private int singletonParallelism = 1;
+
+    // while singletons are instantiated concurrently, the thread creating each one and the one awaited by each thread
+    private final Object creationLock = new Object();
+    private final Map<String, Thread> creators = new HashMap<String, Thread>();
+    private final Map<Thread, String> awaited = new HashMap<Thread, String>();
+    private volatile boolean concurrentCreation;
+
+    public CommandLineBeanFactory(BeanFactory parentBeanFactory) {
+        super(parentBeanFactory);
+    }
+
+    /**
+     * Whether pruning is enabled by default, through the {@value #PRUNE_PROPERTY} system property.
+     */
+    static boolean isPruningEnabled() {
+        return Boolean.getBoolean(PRUNE_PROPERTY);
+    }
+
+    /**
+     * The singleton parallelism set by default, through the {@value #PARALLELISM_PROPERTY} system property.
+     */
+    static int getDefaultSingletonParallelism() {
+        return Integer.getInteger(PARALLELISM_PROPERTY, 1);
+    }
+
+    public boolean isPruning() {
+        return pruning;
+    }
+
+    public void setPruning(boolean pruning) {
+        this.pruning = pruning;
+    }
+
+    public int getSingletonParallelism() {
+        return singletonParallelism;
+    }
+
+    /**
+     * Sets the number of threads singletons are instantiated on.  With more than one, singletons that do not depend on
+     * one another are created concurrently, while each waits for the singletons it depends on, unless a singleton
+     * factory bean has yet to create its object, which may look up any singleton.
+     * 
+     * @see ConcurrentSingletonInstantiator
+     */
+    public void setSingletonParallelism(int singletonParallelism) {
+        if (singletonParallelism < 1) {
+            throw new IllegalArgumentException("singletonParallelism cannot be < 1");
+        }
+        this.singletonParallelism = singletonParallelism;
+    }
+
+    @Override
+    public void preInstantiateSingletons() {
+        long start = CommandLineProfile.start();
+        try {
+            preInstantiate();
+        } finally {
+            CommandLineProfile.end("singletons", start);
+        }
+    }
+
+    private void preInstantiate() {
+        if (!pruning && singletonParallelism == 1) {
+            super.preInstantiateSingletons();
+            return;
+        }
+        List<String> beanNames = new ArrayList<String>();
+        for (String beanName : getBeanDefinitionNames()) {
+            BeanDefinition beanDef = getMergedBeanDefinition(beanName);
+            if (!beanDef.isAbstract() && beanDef.isSingleton() && !beanDef.isLazyInit() && !containsSingleton(beanName)) {
+                beanNames.add(beanName);
+            }
+        }
+        if (pruning) {
+            synchronized (deferred) {
+                deferred.addAll(beanNames);
+            }
+        } else {
+            instantiateSingletons(beanNames);
+        }
+    }
+
+    /**
+     * Returns the names of the singletons whose instantiation is still deferred.
+     */
+    public Set<String> getDeferredSingletons() {
+        synchronized (deferred) {
+            return Collections.unmodifiableSet(new LinkedHashSet<String>(deferred));
+        }
+    }
+
+    /**
+     * Instantiates the deferred singletons reachable from a bean of the given class, in registration order.
+     * 
+     * @return the names of the singletons skipped
+     */
+    public Set<String> instantiateReachable(Class<?> beanClass) {
+        synchronized (deferred) {
+            if (deferred.isEmpty()) {
+                return Collections.emptySet();
+            }
+            Set<String> reachable = findReachable(beanClass);
+            List<String> beanNames = new ArrayList<String>();
+            Set<String> skipped = new LinkedHashSet<String>();
+            for (String beanName : deferred) {
+                if (reachable.contains(beanName)) {
+                    beanNames.add(beanName);
+                } else {
+                    skipped.add(beanName);
+                }
+            }
+            deferred.removeAll(beanNames);
+            long start = CommandLineProfile.start();
+            instantiateSingletons(beanNames);
+            CommandLineProfile.end("reachable singletons", start);
+            if (log.isInfoEnabled() && !skipped.isEmpty()) {
+                log.info("Skipped " + skipped.size() + " singletons not reachable from " + beanClass.getName() + ": "
+                    + skipped);
+            }
+            return skipped;
+        }
+    }
+
+    private void instantiateSingletons(List<String> beanNames) {
+        if (singletonParallelism == 1 || beanNames.size() < 2 || hasUncreatedFactoryObject()) {
+            for (String beanName : beanNames) {
+                instantiateSingleton(beanName);
+            }
+            return;
+        }
+        concurrentCreation = true;
+        try {
+            new ConcurrentSingletonInstantiator(this, singletonParallelism).instantiate(beanNames);
+        } finally {
+            concurrentCreation = false;
+        }
+    }
+
+    /**
+     * Whether a singleton factory bean may yet have its object created.  That happens while holding the singleton lock,
+     * so a factory bean looking up a singleton another thread is creating could neither wait for it nor create it.
+     */
+    private boolean hasUncreatedFactoryObject() {
+        for (String beanName : getBeanDefinitionNames()) {
+            BeanDefinition beanDef = getMergedBeanDefinition(beanName);
+            if (!beanDef.isAbstract() && beanDef.isSingleton() && isFactoryBean(beanName)
+                    && getCachedObjectForFactoryBean(beanName) == null) {
+                log.debug("Instantiating singletons one at a time, as factory bean " + beanName
+                    + " has yet to create its object");
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Instantiates a singleton as {@link #preInstantiateSingletons()} does, creating a factory bean's object only if
+     * it asks to be eagerly initialized.
+     */
+    void instantiateSingleton(String beanName) {
+        if (isFactoryBean(beanName)) {
+            Object factory = getBean(FACTORY_BEAN_PREFIX + beanName);
+            if (factory instanceof SmartFactoryBean && ((SmartFactoryBean<?>) factory).isEagerInit()) {
+                getBean(beanName);
+            }
+        } else {
+            getBean(beanName);
+        }
+    }
+
+    private Set<String> findReachable(Class<?> beanClass) {
+        Set<String> reachable = new HashSet<String>();
+        Deque<String> pending = new ArrayDeque<String>();
+        addInjectionCandidates(beanClass, pending);
+        while (!pending.isEmpty()) {
+            String beanName = canonicalName(BeanFactoryUtils.transformedBeanName(pending.poll()));
+            if (containsBeanDefinition(beanName) && reachable.add(beanName)) {
+                addReferences(beanName, getMergedBeanDefinition(beanName), pending);
+            }
+        }
+        return reachable;
+    }
+
+    /**
+     * Returns the beans the given one directly depends on, as far as its definition and class tell.
+     */
+    Set<String> findDependencies(String beanName) {
+        Deque<String> pending = new ArrayDeque<String>();
+        addReferences(beanName, getMergedBeanDefinition(beanName), pending);
+        Set<String> dependencies = new LinkedHashSet<String>();
+        for (String dependency : pending) {
+            dependency = canonicalName(BeanFactoryUtils.transformedBeanName(dependency));
+            if (containsBeanDefinition(dependency)) {
+                dependencies.add(dependency);
+            }
+        }
+        return dependencies;
+    }
+
+    private void addReferences(String beanName, BeanDefinition beanDef, Deque<String> pending) {
+        for (PropertyValue propertyValue : beanDef.getPropertyValues().getPropertyValues()) {
+            addValueReferences(propertyValue.getValue(), pending);
+        }
+        for (ValueHolder valueHolder : beanDef.getConstructorArgumentValues().getIndexedArgumentValues().values()) {
+            addValueReferences(valueHolder.getValue(), pending);
+        }
+        for (ValueHolder valueHolder : beanDef.getConstructorArgumentValues().getGenericArgumentValues()) {
+            addValueReferences(valueHolder.getValue(), pending);
+        }
+        if (beanDef.getFactoryBeanName() != null) {
+            pending.add(beanDef.getFactoryBeanName());
+        }
+        if (beanDef instanceof AbstractBeanDefinition) {
+            AbstractBeanDefinition abstractBeanDef = (AbstractBeanDefinition) beanDef;
+            if (abstractBeanDef.getDependsOn() != null) {
+                Collections.addAll(pending, abstractBeanDef.getDependsOn());
+            }
+            Class<?> beanClass = beanName == null ? null : getType(beanName);
+            if (beanClass != null) {
+                addAutowiredCandidates(abstractBeanDef.getResolvedAutowireMode(), beanClass, pending);
+                addInjectionCandidates(beanClass, pending);
+            }
+        }
+    }
+
+    private void addValueReferences(Object value, Deque<String> pending) {
+        if (value instanceof RuntimeBeanReference) {
+            pending.add(((RuntimeBeanReference) value).getBeanName());
+        } else if (value instanceof RuntimeBeanNameReference) {
+            pending.add(((RuntimeBeanNameReference) value).getBeanName());
+        } else if (value instanceof BeanDefinitionHolder) {
+            addInnerReferences(((BeanDefinitionHolder) value).getBeanDefinition(), pending);
+        } else if (value instanceof BeanDefinition) {
+            addInnerReferences((BeanDefinition) value, pending);
+        } else if (value instanceof Collection) {
+            for (Object element : (Collection<?>) value) {
+                addValueReferences(element, pending);
+            }
+        } else if (value instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                addValueReferences(entry.getKey(), pending);
+                addValueReferences(entry.getValue(), pending);
+            }
+        }
+    }
+
+    private void addInnerReferences(BeanDefinition inner, Deque<String> pending) {
+        addReferences(null, inner, pending);
+        if (inner.getBeanClassName() != null) {
+            try {
+                addInjectionCandidates(Class.forName(inner.getBeanClassName(), false, getBeanClassLoader()), pending);
+            } catch (ClassNotFoundException e) {
+                // left to fail when the bean is created
+            }
+        }
+    }
+
+    private void addAutowiredCandidates(int autowireMode, Class<?> beanClass, Deque<String> pending) {
+        if (autowireMode == AUTOWIRE_BY_NAME || autowireMode == AUTOWIRE_BY_TYPE) {
+            for (PropertyDescriptor property : BeanUtils.getPropertyDescriptors(beanClass)) {
+                if (property.getWriteMethod() != null) {
+                    if (autowireMode == AUTOWIRE_BY_NAME) {
+                        pending.add(property.getName());
+                    } else {
+                        addTypeCandidates(property.getPropertyType(), pending);
+                    }
+                }
+            }
+        } else if (autowireMode == AUTOWIRE_CONSTRUCTOR) {
+            for (Constructor<?> constructor : beanClass.getDeclaredConstructors()) {
+                for (Class<?> parameterType : constructor.getParameterTypes()) {
+                    addTypeCandidates(parameterType, pending);
+                }
+            }
+        }
+    }
+
+    private void addInjectionCandidates(Class<?> beanClass, final Deque<String> pending) {
+        ReflectionUtils.doWithFields(beanClass, new ReflectionUtils.FieldCallback() {
+            public void doWith(Field field) {
+                if (isInjectionPoint(field.getAnnotations())) {
+                    pending.add(field.getName());
+                    Class<?> type = field.getType();
+                    if (type.isArray()) {
+                        type = type.getComponentType();
+                    } else if (Collection.class.isAssignableFrom(type)) {
+                        type = GenericCollectionTypeResolver.getCollectionFieldType(field);
+                    } else if (Map.class.isAssignableFrom(type)) {
+                        type = GenericCollectionTypeResolver.getMapValueFieldType(field);
+                    }
+                    addTypeCandidates(type, pending);
+                }
+            }
+        });
+        ReflectionUtils.doWithMethods(beanClass, new ReflectionUtils.MethodCallback() {
+            public void doWith(Method method) {
+                if (isInjectionPoint(method.getAnnotations())) {
+                    for (int i = 0; i < method.getParameterTypes().length; ++i) {
+                        addParameterCandidates(new MethodParameter(method, i), pending);
+                    }
+                }
+            }
+        });
+        for (Constructor<?> constructor : beanClass.getDeclaredConstructors()) {
+            if (isInjectionPoint(constructor.getAnnotations())) {
+                for (int i = 0; i < constructor.getParameterTypes().length; ++i) {
+                    addParameterCandidates(new MethodParameter(constructor, i), pending);
+                }
+            }
+        }
+    }
+
+    private void addParameterCandidates(MethodParameter parameter, Deque<String> pending) {
+        Class<?> type = parameter.getParameterType();
+        if (type.isArray()) {
+            type = type.getComponentType();
+        } else if (Collection.class.isAssignableFrom(type)) {
+            type = GenericCollectionTypeResolver.getCollectionParameterType(parameter);
+        } else if (Map.class.isAssignableFrom(type)) {
+            type = GenericCollectionTypeResolver.getMapValueParameterType(parameter);
+        }
+        addTypeCandidates(type, pending);
+        Method method = parameter.getMethod();
+        if (method != null && method.getName().startsWith("set") && method.getName().length() > 3) {
+            pending.add(Introspector.decapitalize(method.getName().substring(3)));
+        }
+    }
+
+    private void addTypeCandidates(Class<?> type, Deque<String> pending) {
+        // an unresolved element type may be satisfied by any bean
+        Collections.addAll(pending, getBeanNamesForType(type == null ? Object.class : type, true, false));
+    }
+
+    /**
+     * Waits while another thread creates the given singleton, as any thread holding the singleton lock would have
+     * while the singletons were created one at a time.
+     */
+    @Override
+    protected Object getSingleton(String beanName, boolean allowEarlyReference) {
+        if (concurrentCreation) {
+            awaitCreation(beanName, false);
+        }
+        return super.getSingleton(beanName, allowEarlyReference);
+    }
+
+    /**
+     * Creates singletons without holding the singleton lock while instantiating concurrently, so that other threads
+     * may create other singletons meanwhile.  Each singleton is claimed by the thread creating it, which other threads
+     * asking for it wait for.
+     */
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Object getSingleton(String beanName, ObjectFactory singletonFactory) {
+        if (!concurrentCreation || !awaitCreation(beanName, true)) {
+            // not concurrent, already created, or a circular reference, which the superclass reports
+            return super.getSingleton(beanName, singletonFactory);
+        }
+        try {
+            beforeSingletonCreation(beanName);
+            Object singletonObject;
+            try {
+                singletonObject = singletonFactory.getObject();
+            } finally {
+                afterSingletonCreation(beanName);
+            }
+            addSingleton(beanName, singletonObject);
+            return singletonObject;
+        } finally {
+            synchronized (creationLock) {
+                creators.remove(beanName);
+                creationLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Waits for another thread creating the given singleton to finish, unless this thread holds the singleton lock,
+     * which that thread may need, or the other thread is itself waiting for this one.  Circular references across
+     * threads are thereby reported, or resolved with early references, just as they are on a single thread.
+     * 
+     * @return whether this thread has claimed the creation of the singleton, if asked to
+     */
+    private boolean awaitCreation(String beanName, boolean claim) {
+        Thread current = Thread.currentThread();
+        synchronized (creationLock) {
+            for (Thread creator = creators.get(beanName); creator != null; creator = creators.get(beanName)) {
+                if (creator == current || Thread.holdsLock(getSingletonMutex()) || isAwaiting(creator, current)) {
+                    return false;
+                }
+                awaited.put(current, beanName);
+                try {
+                    creationLock.wait();
+                } catch (InterruptedException e) {
+                    current.interrupt();
+                    return false;
+                } finally {
+                    awaited.remove(current);
+                }
+            }
+            if (claim && !containsSingleton(beanName)) {
+                creators.put(beanName, current);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private boolean isAwaiting(Thread thread, Thread target) {
+        for (int i = 0; thread != null && i < awaited.size(); ++i) {
+            String beanName = awaited.get(thread);
+            if (beanName == null) {
+                return false;
+            }
+            thread = creators.get(beanName);
+            if (thread == target) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isInjectionPoint(Annotation[] annotations) {
+        for (Annotation annotation : annotations) {
+            if (INJECTION_ANNOTATIONS.contains(annotation.annotationType().getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
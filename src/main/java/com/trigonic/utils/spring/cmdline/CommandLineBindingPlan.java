@@ -0,0 +1,308 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.beans.PropertyDescriptor;
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import joptsimple.OptionSet;
+
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.TypeConverter;
+import org.springframework.beans.TypeMismatchException;
+import org.springframework.beans.factory.BeanDefinitionStoreException;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.NumberUtils;
+
+/**
+ * Binding of option and operand values compiled once per bean class: each property gets a method handle on its setter
+ * and a converter chosen up front for its type, so that binding an invocation is a handful of direct calls instead of
+ * a trip through {@code MutablePropertyValues} and a {@code BeanWrapper}.  Strings, files, numbers, characters, enums,
+ * and arrays and collections of them are converted directly; any other type is converted by the bean factory's
+ * {@link TypeConverter}, which also applies to options of array or collection type so that comma-separated values
+ * are split as before.
+ */
+public class CommandLineBindingPlan {
+    private static final Set<Class<?>> PARSEABLE_NUMBER_TYPES = new HashSet<Class<?>>(Arrays.<Class<?>> asList(Byte.class,
+        Short.class, Integer.class, Long.class, BigInteger.class, Float.class, Double.class, BigDecimal.class));
+
+    private final List<PropertyBinding> bindings = new ArrayList<PropertyBinding>();
+    private final List<OperandHandler> requiredOperands = new ArrayList<OperandHandler>();
+
+    public CommandLineBindingPlan(Class<?> beanClass, CommandLineMetaData metaData) {
+        for (final OptionHandler handler : metaData.getOptionHandlers()) {
+            bindings.add(new PropertyBinding(beanClass, handler.getName(), handler.getValueType(), false) {
+                @Override
+                protected Object getValue(ParsedArguments arguments, List<String> operands) {
+                    return handler.getValue(arguments);
+                }
+            });
+        }
+        for (final OperandHandler handler : metaData.getOperandHandlers()) {
+            bindings.add(new PropertyBinding(beanClass, handler.getName(), handler.getValueType(), handler.hasMultipleValues()) {
+                @Override
+                protected Object getValue(ParsedArguments arguments, List<String> operands) {
+                    return handler.getValue(operands);
+                }
+            });
+            if (handler.isRequired()) {
+                requiredOperands.add(handler);
+            }
+        }
+    }
+
+    /**
+     * Validates the parsed arguments the way {@link CommandLineBeanDefinition} does when populating property values, and
+     * extracts the value of each property for a later {@link #bind(Object, Object[], TypeConverter) bind}.
+     */
+    public Object[] resolve(OptionSet optionSet, List<String> operands) {
+        return resolve(new OptionSetArguments(optionSet), operands);
+    }
+
+    public Object[] resolve(ParsedArguments arguments, List<String> operands) {
+        int operandCount = operands.size();
+        for (OperandHandler handler : requiredOperands) {
+            if (handler.getIndex() >= operandCount) {
+                throw new OperandException(String.format("Operand [%s] is required", handler.getName()));
+            }
+        }
+        Object[] values = new Object[bindings.size()];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = bindings.get(i).getValue(arguments, operands);
+        }
+        return values;
+    }
+
+    public void bind(Object bean, Object[] values, TypeConverter typeConverter) {
+        for (int i = 0; i < values.length; ++i) {
+            bindings.get(i).bind(bean, values[i], typeConverter);
+        }
+    }
+
+    private abstract static class PropertyBinding {
+        private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+        private final Class<?> beanClass;
+        private final String name;
+        private final Class<?> type;
+        private final MethodHandle setter;
+        private final Converter converter;
+        private final boolean preParsed;
+
+        public PropertyBinding(Class<?> beanClass, String name, Class<?> type, boolean operandValues) {
+            this.beanClass = beanClass;
+            this.name = name;
+            this.type = type;
+            PropertyDescriptor property = BeanUtils.getPropertyDescriptor(beanClass, name);
+            Method writeMethod = property == null ? null : property.getWriteMethod();
+            if (writeMethod == null) {
+                throw new BeanDefinitionStoreException(String.format("No setter for property [%s] of %s", name, beanClass.getName()));
+            }
+            try {
+                writeMethod.setAccessible(true);
+                setter = MethodHandles.lookup().unreflect(writeMethod).asType(SETTER_TYPE);
+            } catch (IllegalAccessException e) {
+                throw new BeanDefinitionStoreException(String.format("Setter for property [%s] of %s is not accessible", name, beanClass.getName()), e);
+            }
+            Type genericType = writeMethod.getGenericParameterTypes()[0];
+            converter = operandValues ? multiValueConverter(type, genericType) : singleValueConverter(type);
+            // handlers already parse numeric primitives and arrays of them, and wrap lazily converted operands
+            preParsed = NumericValues.isSupported(type) || NumericValues.isSupportedArray(type)
+                || FileValues.isSupported(type) || FileValues.isSupportedArray(type)
+                || operandValues && (type == Iterable.class || type == Iterator.class);
+        }
+
+        protected abstract Object getValue(ParsedArguments arguments, List<String> operands);
+
+        public void bind(Object bean, Object value, TypeConverter typeConverter) {
+            if (value != null) {
+                Object converted = value;
+                if (!preParsed) {
+                    long start = CommandLineMetrics.start();
+                    Object event = CommandLineEvents.beginConversion(name, type);
+                    String outcome = CommandLineEvents.FAILURE;
+                    try {
+                        converted = converter.convert(value, typeConverter);
+                        outcome = CommandLineEvents.SUCCESS;
+                    } catch (IllegalArgumentException e) {
+                        throw new TypeMismatchException(value, type, e);
+                    } finally {
+                        CommandLineEvents.end(event, outcome);
+                        CommandLineMetrics.converted(beanClass, name, start, outcome != CommandLineEvents.SUCCESS);
+                    }
+                }
+                try {
+                    setter.invokeExact(bean, converted);
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Error e) {
+                    throw e;
+                } catch (Throwable e) {
+                    throw new IllegalStateException(String.format("Failed to set property [%s]", name), e);
+                }
+            }
+        }
+    }
+
+    private interface Converter {
+        Object convert(Object value, TypeConverter typeConverter);
+    }
+
+    private static Converter singleValueConverter(final Class<?> type) {
+        if (type.isArray() || Collection.class.isAssignableFrom(type)) {
+            return new FallbackConverter(type);
+        }
+        final Converter element = elementConverter(type);
+        return new Converter() {
+            public Object convert(Object value, TypeConverter typeConverter) {
+                // flags are already booleans
+                return value instanceof String ? element.convert(value, typeConverter) : typeConverter.convertIfNecessary(value, type);
+            }
+        };
+    }
+
+    private static Converter multiValueConverter(final Class<?> type, Type genericType) {
+        if (type.isArray()) {
+            final Class<?> componentType = type.getComponentType();
+            final Converter element = elementConverter(componentType);
+            return new Converter() {
+                public Object convert(Object value, TypeConverter typeConverter) {
+                    List<?> values = (List<?>) value;
+                    Object result = Array.newInstance(componentType, values.size());
+                    for (int i = 0; i < values.size(); ++i) {
+                        Array.set(result, i, element.convert(values.get(i), typeConverter));
+                    }
+                    return result;
+                }
+            };
+        }
+        if (type != List.class && type != Collection.class && type != Set.class && type != SortedSet.class) {
+            return new FallbackConverter(type);
+        }
+        final Converter element = elementConverter(elementType(genericType));
+        final boolean sorted = type == SortedSet.class;
+        final boolean set = type == Set.class;
+        return new Converter() {
+            public Object convert(Object value, TypeConverter typeConverter) {
+                List<?> values = (List<?>) value;
+                Collection<Object> result;
+                if (sorted) {
+                    result = new TreeSet<Object>();
+                } else if (set) {
+                    result = new LinkedHashSet<Object>();
+                } else {
+                    result = new ArrayList<Object>(values.size());
+                }
+                for (Object each : values) {
+                    result.add(element.convert(each, typeConverter));
+                }
+                return result;
+            }
+        };
+    }
+
+    private static Class<?> elementType(Type genericType) {
+        if (genericType instanceof ParameterizedType) {
+            Type[] arguments = ((ParameterizedType) genericType).getActualTypeArguments();
+            if (arguments.length == 1 && arguments[0] instanceof Class) {
+                return (Class<?>) arguments[0];
+            }
+        }
+        return String.class;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Converter elementConverter(final Class<?> type) {
+        if (type == String.class || type == Object.class) {
+            return new Converter() {
+                public Object convert(Object value, TypeConverter typeConverter) {
+                    return value;
+                }
+            };
+        } else if (type == File.class) {
+            return new Converter() {
+                public Object convert(Object value, TypeConverter typeConverter) {
+                    return new File((String) value);
+                }
+            };
+        } else if (type == Path.class) {
+            return new Converter() {
+                public Object convert(Object value, TypeConverter typeConverter) {
+                    return Paths.get((String) value);
+                }
+            };
+        } else if (PARSEABLE_NUMBER_TYPES.contains(ClassUtils.resolvePrimitiveIfNecessary(type))) {
+            final Class<? extends Number> numberType = (Class<? extends Number>) ClassUtils.resolvePrimitiveIfNecessary(type);
+            return new Converter() {
+                public Object convert(Object value, TypeConverter typeConverter) {
+                    return NumberUtils.parseNumber((String) value, numberType);
+                }
+            };
+        } else if (type == char.class || type == Character.class) {
+            return new Converter() {
+                public Object convert(Object value, TypeConverter typeConverter) {
+                    String text = (String) value;
+                    if (text.length() != 1) {
+                        throw new IllegalArgumentException(String.format("Cannot convert [%s] to a single character", text));
+                    }
+                    return text.charAt(0);
+                }
+            };
+        } else if (type.isEnum()) {
+            return new Converter() {
+                public Object convert(Object value, TypeConverter typeConverter) {
+                    return Enum.valueOf((Class) type, ((String) value).trim());
+                }
+            };
+        }
+        return new FallbackConverter(type);
+    }
+
+    private static class FallbackConverter implements Converter {
+        private final Class<?> type;
+
+        public FallbackConverter(Class<?> type) {
+            this.type = type;
+        }
+
+        public Object convert(Object value, TypeConverter typeConverter) {
+            return typeConverter.convertIfNecessary(value, type);
+        }
+    }
+}
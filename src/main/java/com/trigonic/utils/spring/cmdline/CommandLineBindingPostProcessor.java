@@ -0,0 +1,81 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.util.Iterator;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.config.InstantiationAwareBeanPostProcessorAdapter;
+import org.springframework.beans.factory.support.AbstractBeanFactory;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+/**
+ * Binds options and operands to beans of compiled {@link CommandLineBeanDefinition}s right after instantiation, before
+ * autowiring and init methods, which is where their property values would otherwise have been applied.
+ * <p>
+ * One is added to a factory by {@link #addTo} when the first compiled definition is registered with it.  A child
+ * factory drops those copied from its parent with {@link #removeInherited}, as they would look up bean names in the
+ * wrong registry.
+ */
+public class CommandLineBindingPostProcessor extends InstantiationAwareBeanPostProcessorAdapter {
+    private final ConfigurableListableBeanFactory beanFactory;
+
+    public CommandLineBindingPostProcessor(ConfigurableListableBeanFactory beanFactory) {
+        this.beanFactory = beanFactory;
+    }
+
+    @Override
+    public boolean postProcessAfterInstantiation(Object bean, String beanName) throws BeansException {
+        if (beanFactory.containsBeanDefinition(beanName)) {
+            BeanDefinition beanDef = beanFactory.getBeanDefinition(beanName);
+            if (beanDef instanceof CommandLineBeanDefinition) {
+                ((CommandLineBeanDefinition) beanDef).bind(bean, beanFactory.getTypeConverter());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds a post-processor for the factory's own definitions, unless it already has one.
+     */
+    public static void addTo(DefaultListableBeanFactory beanFactory) {
+        removeInherited(beanFactory);
+        for (BeanPostProcessor postProcessor : beanFactory.getBeanPostProcessors()) {
+            if (postProcessor instanceof CommandLineBindingPostProcessor) {
+                return;
+            }
+        }
+        beanFactory.addBeanPostProcessor(new CommandLineBindingPostProcessor(beanFactory));
+    }
+
+    /**
+     * Removes the post-processors that bind the definitions of another factory, as copied from a parent.
+     */
+    public static void removeInherited(AbstractBeanFactory beanFactory) {
+        Iterator<BeanPostProcessor> postProcessors = beanFactory.getBeanPostProcessors().iterator();
+        while (postProcessors.hasNext()) {
+            BeanPostProcessor postProcessor = postProcessors.next();
+            if (postProcessor instanceof CommandLineBindingPostProcessor
+                    && ((CommandLineBindingPostProcessor) postProcessor).beanFactory != beanFactory) {
+                postProcessors.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.trigonic.utils.spring.cmdline;
+
+import static com.trigonic.utils.spring.cmdline.CommandLineProtocol.EXIT;
+import static com.trigonic.utils.spring.cmdline.CommandLineProtocol.PORT_PROPERTY;
+import static com.trigonic.utils.spring.cmdline.CommandLineProtocol.STDERR;
+import static com.trigonic.utils.spring.cmdline.CommandLineProtocol.STDIN;
+import static com.trigonic.utils.spring.cmdline.CommandLineProtocol.STDIN_EOF;
+import static com.trigonic.utils.spring.cmdline.CommandLineProtocol.STDOUT;
+import static com.trigonic.utils.spring.cmdline.CommandLineProtocol.TOKEN_PROPERTY;
+import static com.trigonic.utils.spring.cmdline.CommandLineProtocol.readState;
+import static com.trigonic.utils.spring.cmdline.CommandLineProtocol.writeFrame;
+import static com.trigonic.utils.spring.cmdline.CommandLineProtocol.writeString;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+
+/**
+ * Thin launcher forwarding its arguments, working directory, environment and standard streams to a running
+ * {@link CommandLineServer} and exiting with the command's exit status.  It deliberately depends on nothing but the
+ * JDK, so it starts in the time it takes the JVM to start.
+ */
+public class CommandLineClient {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final File stateFile;
+
+    public CommandLineClient(File stateFile) {
+        this.stateFile = stateFile;
+    }
+
+    public int invoke(String[] args, File workingDirectory, Map<String, String> environment, final InputStream stdin,
+            OutputStream stdout, OutputStream stderr) throws IOException {
+        Properties state = readState(stateFile);
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(state.getProperty(PORT_PROPERTY)));
+        try {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+
+            writeString(out, state.getProperty(TOKEN_PROPERTY));
+            out.writeInt(args.length);
+            for (String arg : args) {
+                writeString(out, arg);
+            }
+            writeString(out, workingDirectory.getAbsolutePath());
+            out.writeInt(environment.size());
+            for (Entry<String, String> entry : environment.entrySet()) {
+                writeString(out, entry.getKey());
+                writeString(out, entry.getValue());
+            }
+            out.flush();
+
+            Thread stdinPump = new Thread("cmdline-stdin") {
+                @Override
+                public void run() {
+                    byte[] buffer = new byte[BUFFER_SIZE];
+                    try {
+                        int count;
+                        while ((count = stdin.read(buffer)) >= 0) {
+                            writeFrame(out, STDIN, buffer, 0, count);
+                        }
+                        synchronized (out) {
+                            out.writeByte(STDIN_EOF);
+                            out.flush();
+                        }
+                    } catch (IOException e) {
+                        // the command finished without consuming all of its input
+                    }
+                }
+            };
+            stdinPump.setDaemon(true);
+            stdinPump.start();
+
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (true) {
+                byte type = in.readByte();
+                if (type == EXIT) {
+                    stdout.flush();
+                    stderr.flush();
+                    return in.readInt();
+                }
+                OutputStream target;
+                if (type == STDOUT) {
+                    target = stdout;
+                } else if (type == STDERR) {
+                    target = stderr;
+                } else {
+                    throw new IOException("Unexpected frame type " + (char) type);
+                }
+                int remaining = in.readInt();
+                while (remaining > 0) {
+                    int count = in.read(buffer, 0, Math.min(buffer.length, remaining));
+                    if (count < 0) {
+                        throw new IOException("Connection closed in the middle of a frame");
+                    }
+                    target.write(buffer, 0, count);
+                    remaining -= count;
+                }
+                if (type == STDERR) {
+                    target.flush();
+                }
+            }
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Usage: {@code CommandLineClient <state file> <command argument>...}
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: CommandLineClient <state file> <command argument>...");
+            System.exit(CommandLineInvocation.EXIT_USAGE);
+        }
+        String[] commandArgs = new String[args.length - 1];
+        System.arraycopy(args, 1, commandArgs, 0, commandArgs.length);
+        int exitStatus;
+        try {
+            exitStatus = new CommandLineClient(new File(args[0])).invoke(commandArgs, new File(System.getProperty("user.dir")), System.getenv(),
+                System.in, System.out, System.err);
+        } catch (IOException e) {
+            System.err.println("Error: unable to reach server: " + e.getMessage());
+            exitStatus = CommandLineInvocation.EXIT_FAILURE;
+        }
+        System.exit(exitStatus);
+    }
+}
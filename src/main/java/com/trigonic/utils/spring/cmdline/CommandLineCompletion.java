@@ -0,0 +1,296 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Shell completion driven by {@link CommandLineMetaData} alone, so that completing a command line never creates or
+ * refreshes an application context.  Metadata comes from the {@link CommandLineParserTemplate} cache, and so from the
+ * generated metadata classes where they exist.
+ * <p>
+ * The scripts generated by {@link #bashScript(String)} and {@link #zshScript(String)} run the program as
+ * <code>program {@value #COMPLETE_ARGUMENT} &lt;index&gt; &lt;words...&gt;</code>, where the words are the whole command
+ * line including the program name and the index is that of the word being completed.  Commands started through
+ * {@link CommandLineAppContext#launch} or a {@link CommandLineDispatcher} answer with one candidate per line: option
+ * names, subcommands and enum constants.  No candidates leaves the shell to complete file names.
+ * <p>
+ * The scripts also set the {@value #COMPLETE_VARIABLE} environment variable, without which a first argument of
+ * {@value #COMPLETE_ARGUMENT} is an ordinary argument.
+ */
+public final class CommandLineCompletion {
+    public static final String COMPLETE_ARGUMENT = "__complete";
+
+    /**
+     * Environment variable set by the completion scripts, marking {@value #COMPLETE_ARGUMENT} as a completion request.
+     */
+    public static final String COMPLETE_VARIABLE = "SPRING_CMDLINE_COMPLETE";
+
+    private CommandLineCompletion() {
+    }
+
+    /**
+     * Prints the completions for the bean class if the arguments ask for them, for calling first thing in
+     * {@code main}.
+     * 
+     * @return whether the arguments were a completion request
+     */
+    public static boolean handle(Class<?> beanClass, String[] args) {
+        if (!isCompletion(args)) {
+            return false;
+        }
+        print(complete(beanClass, getWords(args)), System.out);
+        return true;
+    }
+
+    public static boolean isCompletion(String[] args) {
+        return isCompletion(args, System.getenv());
+    }
+
+    public static boolean isCompletion(String[] args, Map<String, String> environment) {
+        return args.length >= 2 && COMPLETE_ARGUMENT.equals(args[0]) && environment.containsKey(COMPLETE_VARIABLE);
+    }
+
+    /**
+     * Returns the words of a completion request after the program name, up to and including the one being completed.
+     */
+    static List<String> getWords(String[] args) {
+        int index;
+        try {
+            index = Integer.parseInt(args[1]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid completion word index [" + args[1] + "]");
+        }
+        if (index < 1) {
+            throw new IllegalArgumentException("Invalid completion word index [" + index + "]");
+        }
+        List<String> words = new ArrayList<String>(Arrays.asList(args).subList(Math.min(3, args.length), args.length));
+        while (words.size() < index) {
+            words.add("");
+        }
+        return words.subList(0, index);
+    }
+
+    /**
+     * Returns the candidates for the last of the words, which follow the program name.
+     */
+    public static List<String> complete(Class<?> beanClass, List<String> words) {
+        return complete(CommandLineParserTemplate.forClass(beanClass).getMetaData(), words);
+    }
+
+    static List<String> complete(CommandLineMetaData metaData, List<String> words) {
+        int last = words.size() - 1;
+        String current = words.get(last);
+        Scan scan = scan(metaData, words, last, false);
+        if (scan.pendingOption != null) {
+            return complete(scan.pendingOption.getValueType(), current);
+        }
+        if (!scan.optionsEnded && current.startsWith("-")) {
+            return completeOptions(metaData, current);
+        }
+        OperandHandler operand = getOperand(metaData, scan.operandCount);
+        return operand == null ? new ArrayList<String>() : complete(operand.getValueType(), current);
+    }
+
+    /**
+     * Returns the index of the first operand before the last of the words, or -1 if there is none.
+     */
+    static int findFirstOperand(CommandLineMetaData metaData, List<String> words) {
+        Scan scan = scan(metaData, words, words.size() - 1, true);
+        return scan.operandCount > 0 ? scan.end : -1;
+    }
+
+    static List<String> completeOptions(CommandLineMetaData metaData, String prefix) {
+        Set<String> candidates = new TreeSet<String>();
+        for (OptionHandler handler : getOptionHandlers(metaData)) {
+            Option option = handler.getOption();
+            if (option.shortName().length() > 0) {
+                addIfMatches(candidates, "-" + option.shortName(), prefix);
+            }
+            if (option.longName().length() > 0) {
+                addIfMatches(candidates, "--" + option.longName(), prefix);
+            }
+        }
+        return new ArrayList<String>(candidates);
+    }
+
+    static List<String> complete(Collection<String> names, String prefix) {
+        Set<String> candidates = new TreeSet<String>();
+        for (String name : names) {
+            addIfMatches(candidates, name, prefix);
+        }
+        return new ArrayList<String>(candidates);
+    }
+
+    private static List<String> complete(Class<?> valueType, String prefix) {
+        Class<?> type = valueType.isArray() ? valueType.getComponentType() : valueType;
+        List<String> names = new ArrayList<String>();
+        if (type.isEnum()) {
+            for (Object constant : type.getEnumConstants()) {
+                names.add(((Enum<?>) constant).name());
+            }
+        }
+        return complete(names, prefix);
+    }
+
+    private static void addIfMatches(Set<String> candidates, String candidate, String prefix) {
+        if (candidate.startsWith(prefix)) {
+            candidates.add(candidate);
+        }
+    }
+
+    private static OperandHandler getOperand(CommandLineMetaData metaData, int index) {
+        for (OperandHandler handler : metaData.getOperandHandlers()) {
+            if (handler.getIndex() == index || handler.getIndex() < index && handler.hasMultipleValues()) {
+                return handler;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Follows the words before {@code end} as jopt-simple would parse them, optionally stopping at the first operand.
+     */
+    private static Scan scan(CommandLineMetaData metaData, List<String> words, int end, boolean stopAtOperand) {
+        Scan scan = new Scan();
+        for (scan.end = 0; scan.end < end; ++scan.end) {
+            String word = words.get(scan.end);
+            if (scan.pendingOption != null) {
+                scan.pendingOption = null;
+            } else if (!scan.optionsEnded && word.equals("--")) {
+                scan.optionsEnded = true;
+            } else if (!scan.optionsEnded && word.startsWith("-") && word.length() > 1) {
+                scan.pendingOption = getOptionTakingNextWord(metaData, word);
+            } else {
+                ++scan.operandCount;
+                if (stopAtOperand) {
+                    break;
+                }
+            }
+        }
+        return scan;
+    }
+
+    /**
+     * Returns the handler of the option whose value is the word after the given one, if any.
+     */
+    private static OptionHandler getOptionTakingNextWord(CommandLineMetaData metaData, String word) {
+        if (word.startsWith("--")) {
+            return word.indexOf('=') < 0 ? takesNextWord(findOption(metaData, word.substring(2), false)) : null;
+        }
+        // a cluster of flags, possibly ending in an option whose value is either the rest of the word or the next one
+        for (int i = 1; i < word.length(); ++i) {
+            OptionHandler handler = findOption(metaData, word.substring(i, i + 1), true);
+            if (handler == null) {
+                return null;
+            } else if (handler.hasValue()) {
+                return i == word.length() - 1 ? takesNextWord(handler) : null;
+            }
+        }
+        return null;
+    }
+
+    private static OptionHandler takesNextWord(OptionHandler handler) {
+        return handler != null && handler.hasValue() && handler.getOption().requiresValue() ? handler : null;
+    }
+
+    private static OptionHandler findOption(CommandLineMetaData metaData, String name, boolean shortName) {
+        for (OptionHandler handler : getOptionHandlers(metaData)) {
+            Option option = handler.getOption();
+            if (name.equals(shortName ? option.shortName() : option.longName())) {
+                return handler;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the command's own options along with the ones every command accepts, such as {@code --help}.
+     */
+    private static List<OptionHandler> getOptionHandlers(CommandLineMetaData metaData) {
+        return new CommandLineParserTemplate(metaData).getOptionHandlers();
+    }
+
+    static void print(List<String> candidates, PrintStream out) {
+        for (String candidate : candidates) {
+            out.println(candidate);
+        }
+        out.flush();
+    }
+
+    public static String bashScript(String programName) {
+        String function = functionName(programName);
+        StringBuilder script = new StringBuilder();
+        script.append("# bash completion for ").append(programName).append('\n');
+        script.append(function).append("() {\n");
+        script.append("    local IFS=$'\\n'\n");
+        script.append("    COMPREPLY=($(").append(COMPLETE_VARIABLE).append("=1 \"${COMP_WORDS[0]}\" ")
+            .append(COMPLETE_ARGUMENT)
+            .append(" \"$COMP_CWORD\" \"${COMP_WORDS[@]}\" 2>/dev/null))\n");
+        script.append("}\n");
+        script.append("complete -o default -o bashdefault -F ").append(function).append(' ').append(programName).append('\n');
+        return script.toString();
+    }
+
+    public static String zshScript(String programName) {
+        String function = functionName(programName);
+        StringBuilder script = new StringBuilder();
+        script.append("#compdef ").append(programName).append('\n');
+        script.append(function).append("() {\n");
+        script.append("    local -a candidates\n");
+        script.append("    candidates=(\"${(@f)$(").append(COMPLETE_VARIABLE).append("=1 \"${words[1]}\" ")
+            .append(COMPLETE_ARGUMENT)
+            .append(" $((CURRENT - 1)) \"${words[@]}\" 2>/dev/null)}\")\n");
+        script.append("    if [[ -n \"${candidates[1]}\" ]]; then\n");
+        script.append("        compadd -a candidates\n");
+        script.append("    else\n");
+        script.append("        _files\n");
+        script.append("    fi\n");
+        script.append("}\n");
+        script.append("compdef ").append(function).append(' ').append(programName).append('\n');
+        return script.toString();
+    }
+
+    private static String functionName(String programName) {
+        return "_" + programName.replaceAll("\\W", "_") + "_complete";
+    }
+
+    /**
+     * Prints the completion script for a shell: {@code CommandLineCompletion bash|zsh <program>}.
+     */
+    public static void main(String[] args) {
+        if (args.length != 2 || !args[0].equals("bash") && !args[0].equals("zsh")) {
+            System.err.println("Usage: " + CommandLineCompletion.class.getName() + " bash|zsh <program>");
+            System.exit(CommandLineInvocation.EXIT_USAGE);
+        }
+        System.out.print(args[0].equals("bash") ? bashScript(args[1]) : zshScript(args[1]));
+    }
+
+    private static class Scan {
+        private int end;
+        private int operandCount;
+        private boolean optionsEnded;
+        private OptionHandler pendingOption;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.io.Reader;
+import java.util.Set;
+
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Application context that creates command beans from their arguments, implemented by {@link CommandLineAppContext}
+ * for XML configuration and by {@link GenericCommandLineAppContext} for annotated classes and programmatic
+ * registration.
+ * <p>
+ * Both implementations consult two protected methods during the refresh, before any subclass field is initialized:
+ * {@code isPruningSingletons()}, whether to instantiate only the singletons reachable from the commands run, leaving
+ * the others lazy, and {@code getSingletonParallelism()}, the number of threads to instantiate independent singletons
+ * on.  By default they return what the {@code com.trigonic.utils.spring.cmdline.pruneSingletons} and
+ * {@code com.trigonic.utils.spring.cmdline.singletonParallelism} system properties set.
+ */
+public interface CommandLineContext extends ConfigurableApplicationContext {
+    /**
+     * Binds options and operands with a {@link CommandLineBindingPlan} compiled once per bean class, instead of
+     * populating property values that are resolved reflectively for every bean created.
+     */
+    void setCompiledBinding(boolean compiledBinding);
+
+    void parse(Class<?> beanClass, String[] args);
+
+    /**
+     * Registers the definition with this context, which closes its resources when the context is closed.
+     */
+    String register(CommandLineBeanDefinition beanDef);
+
+    /**
+     * Parses the arguments into a definition of the given class and returns its bean.  Outside of a running invocation,
+     * the bean's {@link InvocationScope invocation-scoped} dependencies are created for an invocation of its own and
+     * destroyed when this context is closed, rather than when the call returns.
+     */
+    <T> T parseAndGet(Class<T> beanClass, String[] args);
+
+    <T extends Runnable> void run(Class<T> beanClass, String[] args);
+
+    /**
+     * Runs a command in a throwaway child bean factory that shares this context's beans and post-processors, so the
+     * context's own registry is left untouched and may serve any number of concurrent invocations.  The command bean and
+     * any {@link InvocationScope invocation-scoped} beans are destroyed once it has run.  Usage errors and failures are
+     * reported on the invocation's error stream.
+     * 
+     * @return the exit status of the invocation
+     */
+    <T extends Runnable> int invoke(Class<T> beanClass, CommandLineInvocation invocation);
+
+    /**
+     * Batch counterpart of {@link #run(Class, String[])}: runs the command once per line of arguments read from the
+     * given reader, on the given number of threads, writing each line's output in input order and closing the context
+     * afterwards.
+     * 
+     * @return the highest exit status of any line
+     * @see CommandLineBatch
+     */
+    <T extends Runnable> int runBatch(Class<T> beanClass, Reader lines, int parallelism);
+
+    /**
+     * Returns the buffered streams of the current invocation or, outside of one, of this process, which are flushed
+     * when the context is closed.
+     */
+    StandardStreams getStandardStreams();
+
+    /**
+     * Returns the names of the singletons not yet instantiated because no command run so far could reach them, when
+     * this context prunes singletons.
+     */
+    Set<String> getDeferredSingletons();
+}
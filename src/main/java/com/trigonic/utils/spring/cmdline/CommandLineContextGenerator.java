@@ -0,0 +1,427 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import static com.trigonic.utils.spring.cmdline.CommandLineMetaDataProcessor.quote;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.springframework.beans.PropertyValue;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinitionHolder;
+import org.springframework.beans.factory.config.ConstructorArgumentValues;
+import org.springframework.beans.factory.config.ConstructorArgumentValues.ValueHolder;
+import org.springframework.beans.factory.config.RuntimeBeanNameReference;
+import org.springframework.beans.factory.config.RuntimeBeanReference;
+import org.springframework.beans.factory.config.TypedStringValue;
+import org.springframework.beans.factory.parsing.EmptyReaderEventListener;
+import org.springframework.beans.factory.parsing.ImportDefinition;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.GenericBeanDefinition;
+import org.springframework.beans.factory.support.ManagedList;
+import org.springframework.beans.factory.support.ManagedMap;
+import org.springframework.beans.factory.support.ManagedProperties;
+import org.springframework.beans.factory.support.ManagedSet;
+import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Build-time generator of a {@link CommandLineContextInitializer} registering the same bean definitions as a set of
+ * XML context resources, with bean classes as class literals.  {@link CommandLineAppContext} uses the initializer in
+ * place of the resources whenever the {@link ContextInitializerIndex index} it adds to lists the same resources in the
+ * same order with the same contents, including those of the resources they import, so XML parsing, schema resolution
+ * and bean class lookup by name all drop out of startup.
+ * <p>
+ * Definitions are generated from what the XML reader produces, so anything the generated code cannot reproduce
+ * exactly, such as method overrides or qualifiers, fails generation rather than changing behavior.  Command beans are
+ * not part of the context resources; their metadata is generated at compile time by
+ * {@link CommandLineMetaDataProcessor}.
+ */
+public class CommandLineContextGenerator {
+    private final ResourceLoader resourceLoader;
+    private final ClassLoader classLoader;
+
+    public CommandLineContextGenerator() {
+        this(new DefaultResourceLoader());
+    }
+
+    public CommandLineContextGenerator(ResourceLoader resourceLoader) {
+        this.resourceLoader = resourceLoader;
+        this.classLoader = resourceLoader.getClassLoader();
+    }
+
+    /**
+     * Generates the initializer source under the source directory and adds it to the index under the resource
+     * directory: {@code CommandLineContextGenerator <source dir> <resource dir> <class name> <resource>...}.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 4) {
+            System.err.println("Usage: " + CommandLineContextGenerator.class.getName()
+                + " <source dir> <resource dir> <class name> <resource>...");
+            System.exit(CommandLineInvocation.EXIT_USAGE);
+        }
+        CommandLineContextGenerator generator = new CommandLineContextGenerator();
+        generator.generate(new File(args[0]), new File(args[1]), args[2], Arrays.copyOfRange(args, 3, args.length));
+    }
+
+    public void generate(File sourceDir, File resourceDir, String className, String... locations) throws IOException {
+        Resource[] resources = new Resource[locations.length];
+        for (int i = 0; i < locations.length; ++i) {
+            resources[i] = resourceLoader.getResource(locations[i]);
+        }
+
+        File sourceFile = new File(sourceDir, className.replace('.', File.separatorChar) + ".java");
+        sourceFile.getParentFile().mkdirs();
+        OutputStream source = new FileOutputStream(sourceFile);
+        List<Resource> imports = new ArrayList<Resource>();
+        try {
+            generate(className, resources, source, imports);
+        } finally {
+            source.close();
+        }
+
+        File indexFile = new File(resourceDir, ContextInitializerIndex.LOCATION);
+        indexFile.getParentFile().mkdirs();
+        Properties index = indexFile.exists() ? ContextInitializerIndex.load(indexFile.toURI().toURL()) : new Properties();
+        String entry = ContextInitializerIndex.getEntry(className, resources, imports);
+        index.setProperty(ContextInitializerIndex.getKey(resources), entry);
+        OutputStream indexOut = new FileOutputStream(indexFile);
+        try {
+            index.store(indexOut, "Generated by " + getClass().getName() + "; do not edit.");
+        } finally {
+            indexOut.close();
+        }
+    }
+
+    /**
+     * Writes the source of an initializer class with the given fully qualified name.
+     */
+    public void generate(String className, Resource[] resources, OutputStream source) throws IOException {
+        generate(className, resources, source, new ArrayList<Resource>());
+    }
+
+    /**
+     * Writes the source of an initializer class, adding the resources the given ones import, directly or not, to the
+     * list.
+     */
+    private void generate(String className, Resource[] resources, OutputStream source, final List<Resource> imports)
+            throws IOException {
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        XmlBeanDefinitionReader reader = new XmlBeanDefinitionReader(beanFactory);
+        reader.setResourceLoader(resourceLoader);
+        reader.setEventListener(new EmptyReaderEventListener() {
+            @Override
+            public void importProcessed(ImportDefinition importDefinition) {
+                imports.addAll(Arrays.asList(importDefinition.getActualResources()));
+            }
+        });
+        reader.loadBeanDefinitions(resources);
+
+        int lastDot = className.lastIndexOf('.');
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(source, "UTF-8"));
+        if (lastDot > 0) {
+            out.printf("package %s;%n%n", className.substring(0, lastDot));
+        }
+        out.printf("/**%n * Generated by %s from %s; do not edit.%n */%n", getClass().getName(),
+            ContextInitializerIndex.getKey(resources));
+        out.printf("public class %s implements %s {%n", className.substring(lastDot + 1),
+            CommandLineContextInitializer.class.getName());
+        out.printf("    public void initialize(%s registry) {%n", BeanDefinitionRegistry.class.getName());
+        DefinitionWriter writer = new DefinitionWriter(out);
+        for (String beanName : beanFactory.getBeanDefinitionNames()) {
+            String variable = writer.writeBeanDefinition(beanName, beanFactory.getBeanDefinition(beanName));
+            out.printf("        registry.registerBeanDefinition(%s, %s);%n", quote(beanName), variable);
+            for (String alias : beanFactory.getAliases(beanName)) {
+                out.printf("        registry.registerAlias(%s, %s);%n", quote(beanName), quote(alias));
+            }
+        }
+        out.printf("    }%n");
+        out.printf("}%n");
+        out.flush();
+    }
+
+    private class DefinitionWriter {
+        private final PrintWriter out;
+        private int variables;
+
+        public DefinitionWriter(PrintWriter out) {
+            this.out = out;
+        }
+
+        public String writeBeanDefinition(String beanName, BeanDefinition definition) {
+            if (!(definition instanceof AbstractBeanDefinition)) {
+                throw unsupported(beanName, definition.getClass().getName());
+            }
+            AbstractBeanDefinition beanDef = (AbstractBeanDefinition) definition;
+            AbstractBeanDefinition defaults = new GenericBeanDefinition();
+            if (!beanDef.getMethodOverrides().isEmpty()) {
+                throw unsupported(beanName, "method overrides");
+            } else if (!beanDef.getQualifiers().isEmpty()) {
+                throw unsupported(beanName, "qualifiers");
+            } else if (beanDef.attributeNames().length > 0) {
+                throw unsupported(beanName, "metadata attributes");
+            }
+
+            String variable = "bean" + variables++;
+            out.printf("        %1$s %2$s = new %1$s();%n", GenericBeanDefinition.class.getName(), variable);
+            if (beanDef.getParentName() != null) {
+                set(variable, "ParentName", quote(beanDef.getParentName()));
+            }
+            if (beanDef.getBeanClassName() != null) {
+                String classLiteral = getClassLiteral(beanDef.getBeanClassName());
+                if (classLiteral != null) {
+                    set(variable, "BeanClass", classLiteral);
+                } else {
+                    set(variable, "BeanClassName", quote(beanDef.getBeanClassName()));
+                }
+            }
+            if (!beanDef.getScope().equals(defaults.getScope())) {
+                set(variable, "Scope", quote(beanDef.getScope()));
+            }
+            setIfChanged(variable, "Abstract", beanDef.isAbstract(), defaults.isAbstract());
+            setIfChanged(variable, "LazyInit", beanDef.isLazyInit(), defaults.isLazyInit());
+            if (beanDef.getAutowireMode() != defaults.getAutowireMode()) {
+                set(variable, "AutowireMode", Integer.toString(beanDef.getAutowireMode()));
+            }
+            if (beanDef.getDependencyCheck() != defaults.getDependencyCheck()) {
+                set(variable, "DependencyCheck", Integer.toString(beanDef.getDependencyCheck()));
+            }
+            if (beanDef.getDependsOn() != null) {
+                set(variable, "DependsOn", "new String[] {" + quoteAll(Arrays.asList(beanDef.getDependsOn())) + "}");
+            }
+            setIfChanged(variable, "AutowireCandidate", beanDef.isAutowireCandidate(), defaults.isAutowireCandidate());
+            setIfChanged(variable, "Primary", beanDef.isPrimary(), defaults.isPrimary());
+            setIfChanged(variable, "NonPublicAccessAllowed", beanDef.isNonPublicAccessAllowed(),
+                defaults.isNonPublicAccessAllowed());
+            setIfChanged(variable, "LenientConstructorResolution", beanDef.isLenientConstructorResolution(),
+                defaults.isLenientConstructorResolution());
+            if (beanDef.getFactoryBeanName() != null) {
+                set(variable, "FactoryBeanName", quote(beanDef.getFactoryBeanName()));
+            }
+            if (beanDef.getFactoryMethodName() != null) {
+                set(variable, "FactoryMethodName", quote(beanDef.getFactoryMethodName()));
+            }
+            if (beanDef.getInitMethodName() != null) {
+                set(variable, "InitMethodName", quote(beanDef.getInitMethodName()));
+            }
+            setIfChanged(variable, "EnforceInitMethod", beanDef.isEnforceInitMethod(), defaults.isEnforceInitMethod());
+            if (beanDef.getDestroyMethodName() != null) {
+                set(variable, "DestroyMethodName", quote(beanDef.getDestroyMethodName()));
+            }
+            setIfChanged(variable, "EnforceDestroyMethod", beanDef.isEnforceDestroyMethod(),
+                defaults.isEnforceDestroyMethod());
+            setIfChanged(variable, "Synthetic", beanDef.isSynthetic(), defaults.isSynthetic());
+            if (beanDef.getRole() != defaults.getRole()) {
+                set(variable, "Role", Integer.toString(beanDef.getRole()));
+            }
+            if (beanDef.getDescription() != null) {
+                set(variable, "Description", quote(beanDef.getDescription()));
+            }
+            if (beanDef.getResourceDescription() != null) {
+                set(variable, "ResourceDescription", quote(beanDef.getResourceDescription()));
+            }
+
+            ConstructorArgumentValues arguments = beanDef.getConstructorArgumentValues();
+            for (Map.Entry<Integer, ValueHolder> argument : arguments.getIndexedArgumentValues().entrySet()) {
+                String holder = writeValueHolder(beanName, argument.getValue());
+                out.printf("        %s.getConstructorArgumentValues().addIndexedArgumentValue(%d, %s);%n", variable,
+                    argument.getKey(), holder);
+            }
+            for (ValueHolder argument : arguments.getGenericArgumentValues()) {
+                String holder = writeValueHolder(beanName, argument);
+                out.printf("        %s.getConstructorArgumentValues().addGenericArgumentValue(%s);%n", variable, holder);
+            }
+            for (PropertyValue propertyValue : beanDef.getPropertyValues().getPropertyValueList()) {
+                String value = writeValue(beanName, propertyValue.getValue());
+                out.printf("        %s.getPropertyValues().add(%s, %s);%n", variable, quote(propertyValue.getName()), value);
+            }
+            return variable;
+        }
+
+        private String writeValueHolder(String beanName, ValueHolder holder) {
+            String value = writeValue(beanName, holder.getValue());
+            String variable = "argument" + variables++;
+            out.printf("        %1$s %2$s = new %1$s(%3$s, %4$s, %5$s);%n", ValueHolder.class.getCanonicalName(), variable,
+                value, quoteOrNull(holder.getType()), quoteOrNull(holder.getName()));
+            return variable;
+        }
+
+        /**
+         * Writes any statements needed to build the value and returns an expression for it.
+         */
+        private String writeValue(String beanName, Object value) {
+            if (value == null) {
+                return "null";
+            } else if (value instanceof TypedStringValue) {
+                TypedStringValue typedValue = (TypedStringValue) value;
+                if (typedValue.isDynamic()) {
+                    throw unsupported(beanName, "dynamic values");
+                }
+                String type = typedValue.hasTargetType() ? typedValue.getTargetType().getName() : typedValue.getTargetTypeName();
+                String expression = String.format("new %s(%s%s)", TypedStringValue.class.getName(),
+                    quoteOrNull(typedValue.getValue()), type == null ? "" : ", " + quote(type));
+                if (typedValue.getSpecifiedTypeName() == null) {
+                    return expression;
+                }
+                String variable = "value" + variables++;
+                out.printf("        %s %s = %s;%n", TypedStringValue.class.getName(), variable, expression);
+                out.printf("        %s.setSpecifiedTypeName(%s);%n", variable, quote(typedValue.getSpecifiedTypeName()));
+                return variable;
+            } else if (value instanceof String) {
+                return quote((String) value);
+            } else if (value instanceof RuntimeBeanReference) {
+                RuntimeBeanReference reference = (RuntimeBeanReference) value;
+                return String.format("new %s(%s, %s)", RuntimeBeanReference.class.getName(), quote(reference.getBeanName()),
+                    reference.isToParent());
+            } else if (value instanceof RuntimeBeanNameReference) {
+                return String.format("new %s(%s)", RuntimeBeanNameReference.class.getName(),
+                    quote(((RuntimeBeanNameReference) value).getBeanName()));
+            } else if (value instanceof BeanDefinitionHolder) {
+                BeanDefinitionHolder holder = (BeanDefinitionHolder) value;
+                String inner = writeBeanDefinition(holder.getBeanName(), holder.getBeanDefinition());
+                String aliases = holder.getAliases() == null ? "null"
+                    : "new String[] {" + quoteAll(Arrays.asList(holder.getAliases())) + "}";
+                return String.format("new %s(%s, %s, %s)", BeanDefinitionHolder.class.getName(), inner,
+                    quote(holder.getBeanName()), aliases);
+            } else if (value instanceof ManagedList || value instanceof ManagedSet) {
+                return writeCollection(beanName, value);
+            } else if (value instanceof ManagedMap) {
+                ManagedMap<?, ?> map = (ManagedMap<?, ?>) value;
+                String variable = "map" + variables++;
+                out.printf("        %1$s<Object, Object> %2$s = new %1$s<Object, Object>();%n", ManagedMap.class.getName(),
+                    variable);
+                writeMergeable(variable, map.isMergeEnabled());
+                if (map.getKeyTypeName() != null) {
+                    out.printf("        %s.setKeyTypeName(%s);%n", variable, quote(map.getKeyTypeName()));
+                }
+                if (map.getValueTypeName() != null) {
+                    out.printf("        %s.setValueTypeName(%s);%n", variable, quote(map.getValueTypeName()));
+                }
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    String entryKey = writeValue(beanName, entry.getKey());
+                    String entryValue = writeValue(beanName, entry.getValue());
+                    out.printf("        %s.put(%s, %s);%n", variable, entryKey, entryValue);
+                }
+                return variable;
+            } else if (value instanceof ManagedProperties) {
+                ManagedProperties properties = (ManagedProperties) value;
+                String variable = "properties" + variables++;
+                out.printf("        %1$s %2$s = new %1$s();%n", ManagedProperties.class.getName(), variable);
+                writeMergeable(variable, properties.isMergeEnabled());
+                for (Map.Entry<?, ?> entry : properties.entrySet()) {
+                    String entryKey = writeValue(beanName, entry.getKey());
+                    String entryValue = writeValue(beanName, entry.getValue());
+                    out.printf("        %s.put(%s, %s);%n", variable, entryKey, entryValue);
+                }
+                return variable;
+            }
+            throw unsupported(beanName, "values of " + value.getClass().getName());
+        }
+
+        private String writeCollection(String beanName, Object value) {
+            boolean list = value instanceof ManagedList;
+            String type = (list ? ManagedList.class : ManagedSet.class).getName();
+            String elementTypeName = list ? ((ManagedList<?>) value).getElementTypeName()
+                : ((ManagedSet<?>) value).getElementTypeName();
+            boolean mergeEnabled = list ? ((ManagedList<?>) value).isMergeEnabled() : ((ManagedSet<?>) value).isMergeEnabled();
+
+            String variable = (list ? "list" : "set") + variables++;
+            out.printf("        %1$s<Object> %2$s = new %1$s<Object>();%n", type, variable);
+            writeMergeable(variable, mergeEnabled);
+            if (elementTypeName != null) {
+                out.printf("        %s.setElementTypeName(%s);%n", variable, quote(elementTypeName));
+            }
+            for (Object element : (Iterable<?>) value) {
+                String elementValue = writeValue(beanName, element);
+                out.printf("        %s.add(%s);%n", variable, elementValue);
+            }
+            return variable;
+        }
+
+        private void writeMergeable(String variable, boolean mergeEnabled) {
+            if (mergeEnabled) {
+                out.printf("        %s.setMergeEnabled(true);%n", variable);
+            }
+        }
+
+        private void set(String variable, String property, String expression) {
+            out.printf("        %s.set%s(%s);%n", variable, property, expression);
+        }
+
+        private void setIfChanged(String variable, String property, boolean value, boolean defaultValue) {
+            if (value != defaultValue) {
+                set(variable, property, Boolean.toString(value));
+            }
+        }
+
+        private IllegalStateException unsupported(String beanName, String feature) {
+            return new IllegalStateException("Bean [" + beanName + "] uses " + feature
+                + ", which cannot be generated; keep loading its context from XML");
+        }
+    }
+
+    /**
+     * Returns a class literal for the named class if generated code can refer to it, or {@code null}.
+     */
+    private String getClassLiteral(String className) {
+        Class<?> beanClass;
+        try {
+            beanClass = ClassUtils.forName(className, classLoader);
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (LinkageError e) {
+            return null;
+        }
+        for (Class<?> type = beanClass; type != null; type = type.getDeclaringClass()) {
+            if (!Modifier.isPublic(type.getModifiers())) {
+                return null;
+            }
+        }
+        return beanClass.getCanonicalName() + ".class";
+    }
+
+    private static String quoteOrNull(String value) {
+        return value == null ? "null" : quote(value);
+    }
+
+    private static String quoteAll(List<String> values) {
+        StringBuilder result = new StringBuilder();
+        for (String value : values) {
+            if (result.length() > 0) {
+                result.append(", ");
+            }
+            result.append(quote(value));
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+
+/**
+ * Registers the bean definitions of a set of context resources directly, as generated ahead of time by
+ * {@link CommandLineContextGenerator}, so that {@link CommandLineAppContext} can skip parsing and validating them.
+ */
+public interface CommandLineContextInitializer {
+    void initialize(BeanDefinitionRegistry registry);
+}
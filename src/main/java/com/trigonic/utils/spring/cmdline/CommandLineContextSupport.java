@@ -0,0 +1,456 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.springframework.beans.PropertyAccessException;
+import org.springframework.beans.PropertyBatchUpdateException;
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+/**
+ * The command line behavior shared by the {@link CommandLineContext} implementations, which differ only in how their
+ * own bean definitions are loaded.
+ */
+final class CommandLineContextSupport {
+    private final CommandLineContext context;
+    private final CommandLineBeanDefinitionReader reader;
+    private final List<CommandLineBeanDefinition> registered = new ArrayList<CommandLineBeanDefinition>();
+    private final List<CommandLineInvocation> detachedInvocations = new ArrayList<CommandLineInvocation>();
+    private boolean compiledBinding;
+    private StandardStreams processStreams;
+
+    public CommandLineContextSupport(CommandLineContext context) {
+        this.context = context;
+        reader = new CommandLineBeanDefinitionReader((DefaultListableBeanFactory) context.getBeanFactory());
+    }
+
+    /**
+     * Runs a context's own refresh as a profiled {@link CommandLineEvents#REFRESH} phase.
+     */
+    public static void refresh(Runnable refresh) {
+        long start = CommandLineProfile.start();
+        Object event = CommandLineEvents.begin(CommandLineEvents.REFRESH, null, -1);
+        String outcome = CommandLineEvents.FAILURE;
+        try {
+            refresh.run();
+            outcome = CommandLineEvents.SUCCESS;
+        } finally {
+            CommandLineEvents.end(event, outcome);
+            CommandLineProfile.end("refresh", start);
+        }
+    }
+
+    /**
+     * Runs a context's own close as a {@link CommandLineEvents#CLOSE} phase.
+     */
+    public static void close(Runnable close) {
+        Object event = CommandLineEvents.begin(CommandLineEvents.CLOSE, null, -1);
+        String outcome = CommandLineEvents.FAILURE;
+        try {
+            close.run();
+            outcome = CommandLineEvents.SUCCESS;
+        } finally {
+            CommandLineEvents.end(event, outcome);
+        }
+    }
+
+    /**
+     * Applies the context's singleton settings to its {@link CommandLineBeanFactory} and registers the invocation
+     * scope and the standard stream beans, resolving the streams through the given context.
+     */
+    public static void postProcessBeanFactory(CommandLineContext context, ConfigurableListableBeanFactory beanFactory,
+            boolean pruningSingletons, int singletonParallelism) {
+        CommandLineBeanFactory commandLineBeanFactory = (CommandLineBeanFactory) beanFactory;
+        commandLineBeanFactory.setPruning(pruningSingletons);
+        commandLineBeanFactory.setSingletonParallelism(singletonParallelism);
+        CommandLineProfile profile = CommandLineProfile.current();
+        if (profile != null) {
+            beanFactory.addBeanPostProcessor(profile.getBeanPostProcessor());
+        }
+        beanFactory.registerScope(InvocationScope.NAME, new InvocationScope());
+        registerStandardStream(context, beanFactory, StandardStreams.IN_BEAN_NAME, InputStream.class);
+        registerStandardStream(context, beanFactory, StandardStreams.OUT_BEAN_NAME, PrintStream.class);
+        registerStandardStream(context, beanFactory, StandardStreams.ERR_BEAN_NAME, PrintStream.class);
+    }
+
+    private static void registerStandardStream(CommandLineContext context, ConfigurableListableBeanFactory beanFactory,
+            String name, Class<?> type) {
+        beanFactory.registerSingleton(name, new StandardStreamFactoryBean(context, name, type));
+    }
+
+    /**
+     * Binds a profile to the current thread if the invocation's arguments request one and none is bound already.
+     * 
+     * @return the profile bound, to be passed to {@link #endProfile}, or null
+     */
+    public static CommandLineProfile beginProfile(CommandLineInvocation invocation) {
+        if (CommandLineProfile.current() != null) {
+            return null;
+        }
+        CommandLineProfile profile = CommandLineProfile.forArgs(invocation.getArgs());
+        if (profile != null) {
+            CommandLineProfile.bind(profile);
+        }
+        return profile;
+    }
+
+    /**
+     * Unbinds a profile bound by {@link #beginProfile} and reports it on the invocation's error stream.
+     */
+    public static void endProfile(CommandLineProfile profile, CommandLineInvocation invocation) {
+        if (profile != null) {
+            CommandLineProfile.bind(null);
+            profile.report(invocation.getStandardStreams().getErr());
+            invocation.flush();
+        }
+    }
+
+    /**
+     * Parses and validates the arguments of a command about to be launched, before any context is loaded.
+     * {@link CommandLineCompletion Completion requests} are answered and usage errors reported here.
+     * 
+     * @return the command's bean definition, or null if there is nothing left to run
+     */
+    public static CommandLineBeanDefinition prepareLaunch(Class<? extends Runnable> beanClass, String[] args) {
+        if (CommandLineCompletion.handle(beanClass, args)) {
+            return null;
+        }
+        
+        try {
+            return CommandLineBeanDefinitionReader.createBeanDefinition(beanClass, args);
+        } catch (UsageException e) {
+            StandardStreams streams = new CommandLineInvocation(args).getStandardStreams();
+            e.printUsage(streams.getErr());
+            streams.flush();
+            return null;
+        }
+    }
+
+    /**
+     * Parses the arguments and, if they are good, creates the context with the given factory, runs the command in it
+     * and closes it again, as {@link CommandLineAppContext#launch} does.
+     */
+    public static <T extends Runnable> void launch(Class<T> beanClass, String[] args, ContextFactory contextFactory) {
+        CommandLineInvocation invocation = new CommandLineInvocation(args);
+        CommandLineProfile profile = beginProfile(invocation);
+        Object event = CommandLineEvents.begin(CommandLineEvents.LAUNCH, beanClass, args.length);
+        String outcome = CommandLineEvents.FAILURE;
+        try {
+            CommandLineBeanDefinition beanDef = prepareLaunch(beanClass, args);
+            if (beanDef == null) {
+                // usage, help or completion, answered without a context
+                outcome = CommandLineEvents.USAGE;
+                return;
+            }
+            
+            long start = CommandLineProfile.start();
+            CommandLineContextSupport support = contextFactory.createContext();
+            CommandLineProfile.end("context", start);
+            int exitStatus;
+            try {
+                exitStatus = support.invoke(beanClass, beanDef, invocation);
+            } finally {
+                support.context.close();
+            }
+            outcome = outcome(exitStatus);
+        } finally {
+            CommandLineEvents.end(event, outcome);
+            endProfile(profile, invocation);
+        }
+    }
+
+    public StandardStreams getStandardStreams() {
+        CommandLineInvocation invocation = CommandLineInvocation.current();
+        if (invocation != null && !isDetached(invocation)) {
+            return invocation.getStandardStreams();
+        }
+        synchronized (this) {
+            if (processStreams == null) {
+                processStreams = new StandardStreams(new CommandLineInvocation(new String[0]), true);
+            }
+            return processStreams;
+        }
+    }
+
+    /**
+     * Whether the invocation is one bound only while {@link #parseAndGet} creates a bean, whose standard streams are
+     * still the shared ones of the process.
+     */
+    private boolean isDetached(CommandLineInvocation invocation) {
+        synchronized (detachedInvocations) {
+            return detachedInvocations.contains(invocation);
+        }
+    }
+
+    public void setCompiledBinding(boolean compiledBinding) {
+        this.compiledBinding = compiledBinding;
+        reader.setCompiledBinding(compiledBinding);
+    }
+
+    public void parse(Class<?> beanClass, String[] args) {
+        register(CommandLineBeanDefinitionReader.createBeanDefinition(beanClass, args, compiledBinding));
+    }
+
+    public String register(CommandLineBeanDefinition beanDef) {
+        synchronized (registered) {
+            registered.add(beanDef);
+        }
+        return reader.register(beanDef);
+    }
+
+    /**
+     * Closes the resources of the registered definitions, destroys the invocation-scoped beans created for
+     * {@link #parseAndGet} and flushes the process streams, when the context is closed.
+     */
+    public void onClose() {
+        synchronized (detachedInvocations) {
+            for (CommandLineInvocation invocation : detachedInvocations) {
+                invocation.destroyScopedBeans();
+            }
+            detachedInvocations.clear();
+        }
+        synchronized (registered) {
+            for (CommandLineBeanDefinition beanDef : registered) {
+                beanDef.closeResources();
+            }
+            registered.clear();
+        }
+        synchronized (this) {
+            if (processStreams != null) {
+                processStreams.flush();
+            }
+        }
+    }
+
+    /**
+     * Instantiates the singletons the given command class reaches, if the context defers them.
+     */
+    public void instantiateReachable(Class<?> beanClass) {
+        ConfigurableListableBeanFactory beanFactory = context.getBeanFactory();
+        if (beanFactory instanceof CommandLineBeanFactory) {
+            ((CommandLineBeanFactory) beanFactory).instantiateReachable(beanClass);
+        }
+    }
+
+    public Set<String> getDeferredSingletons() {
+        ConfigurableListableBeanFactory beanFactory = context.getBeanFactory();
+        if (beanFactory instanceof CommandLineBeanFactory) {
+            return ((CommandLineBeanFactory) beanFactory).getDeferredSingletons();
+        }
+        return Collections.emptySet();
+    }
+
+    public <T> T parseAndGet(Class<T> beanClass, String[] args) {
+        instantiateReachable(beanClass);
+        if (CommandLineInvocation.current() != null) {
+            parse(beanClass, args);
+            return context.getBean(beanClass);
+        }
+
+        // the bean outlives this call, so the invocation owning its scoped dependencies lasts until the context closes
+        CommandLineInvocation invocation = new CommandLineInvocation(args);
+        synchronized (detachedInvocations) {
+            detachedInvocations.add(invocation);
+        }
+        CommandLineInvocation.bind(invocation);
+        try {
+            parse(beanClass, args);
+            return context.getBean(beanClass);
+        } finally {
+            CommandLineInvocation.bind(null);
+        }
+    }
+
+    public <T extends Runnable> void run(Class<T> beanClass, String[] args) {
+        try {
+            invoke(beanClass, null, new CommandLineInvocation(args));
+        } finally {
+            context.close();
+        }
+    }
+
+    public <T extends Runnable> int invoke(Class<T> beanClass, CommandLineBeanDefinition beanDef,
+            CommandLineInvocation invocation) {
+        CommandLineInvocation previous = CommandLineInvocation.current();
+        CommandLineInvocation.bind(invocation);
+        CommandLineProfile ownProfile = beginProfile(invocation);
+        long metricsStart = CommandLineMetrics.start();
+        Object event = CommandLineEvents.begin(CommandLineEvents.INVOCATION, beanClass, invocation.getArgs().length);
+        int exitStatus = CommandLineInvocation.EXIT_FAILURE;
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory(context.getBeanFactory());
+        CommandLineProfile profile = CommandLineProfile.current();
+        if (profile != null && !((DefaultListableBeanFactory) context.getBeanFactory()).getBeanPostProcessors().contains(
+                profile.getBeanPostProcessor())) {
+            beanFactory.addBeanPostProcessor(profile.getBeanPostProcessor());
+        }
+        beanFactory.copyConfigurationFrom(context.getBeanFactory());
+        CommandLineBindingPostProcessor.removeInherited(beanFactory);
+        try {
+            instantiateReachable(beanClass);
+            if (beanDef == null) {
+                beanDef = CommandLineBeanDefinitionReader.createBeanDefinition(beanClass, invocation.getArgs(), compiledBinding);
+            }
+            String beanName = new CommandLineBeanDefinitionReader(beanFactory).register(beanDef);
+            long start = CommandLineProfile.start();
+            T bean = beanFactory.getBean(beanName, beanClass);
+            CommandLineProfile.end("create command", start);
+            start = CommandLineProfile.start();
+            Object runEvent = CommandLineEvents.begin(CommandLineEvents.RUN, null, -1);
+            String runOutcome = CommandLineEvents.FAILURE;
+            try {
+                bean.run();
+                runOutcome = outcome(invocation.getExitStatus());
+            } finally {
+                CommandLineEvents.end(runEvent, runOutcome);
+            }
+            CommandLineProfile.end("run", start);
+            exitStatus = invocation.getExitStatus();
+            return exitStatus;
+        } catch (UsageException e) {
+            e.printUsage(invocation.getStandardStreams().getErr());
+            exitStatus = CommandLineInvocation.EXIT_USAGE;
+            return exitStatus;
+        } catch (Exception e) {
+            ArgumentValueException rejected = findArgumentValueException(e);
+            if (rejected != null) {
+                // a setter rejecting a value the parser accepted is as much a usage error
+                CommandLineParserTemplate template = CommandLineParserTemplate.forClass(beanClass);
+                new UsageException(template.getParser(), template.getMetaData(), rejected).printUsage(
+                    invocation.getStandardStreams().getErr());
+                exitStatus = CommandLineInvocation.EXIT_USAGE;
+                return exitStatus;
+            }
+            e.printStackTrace(invocation.getErr());
+            return CommandLineInvocation.EXIT_FAILURE;
+        } finally {
+            beanFactory.destroySingletons();
+            if (beanDef != null) {
+                beanDef.closeResources();
+            }
+            invocation.destroyScopedBeans();
+            invocation.flush();
+            CommandLineEvents.end(event, outcome(exitStatus));
+            CommandLineMetrics.ran(beanClass, metricsStart, exitStatus);
+            endProfile(ownProfile, invocation);
+            CommandLineInvocation.bind(previous);
+        }
+    }
+
+    /**
+     * Finds an {@link ArgumentValueException} among the causes of a failure to create a command, as thrown by a
+     * property setter validating its value.
+     */
+    private static ArgumentValueException findArgumentValueException(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ArgumentValueException) {
+                return (ArgumentValueException) cause;
+            }
+            if (cause instanceof PropertyBatchUpdateException) {
+                // Spring applies all the property values before reporting the failures together
+                for (PropertyAccessException accessException :
+                        ((PropertyBatchUpdateException) cause).getPropertyAccessExceptions()) {
+                    ArgumentValueException found = findArgumentValueException(accessException);
+                    if (found != null) {
+                        return found;
+                    }
+                }
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The {@link CommandLineEvents} outcome for an exit status.
+     */
+    public static String outcome(int exitStatus) {
+        switch (exitStatus) {
+        case CommandLineInvocation.EXIT_SUCCESS:
+            return CommandLineEvents.SUCCESS;
+        case CommandLineInvocation.EXIT_USAGE:
+            return CommandLineEvents.USAGE;
+        default:
+            return CommandLineEvents.FAILURE;
+        }
+    }
+
+    public <T extends Runnable> int runBatch(Class<T> beanClass, Reader lines, int parallelism) {
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            CommandLineBatch batch = new CommandLineBatch(context, beanClass, executor, parallelism * 4);
+            return CommandLineBatch.highestExitStatus(batch.run(lines, System.out, System.err));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return CommandLineInvocation.EXIT_FAILURE;
+        } finally {
+            executor.shutdown();
+            context.close();
+        }
+    }
+    
+    /**
+     * Creates the context a {@link #launch launched} command runs in, returning its support.
+     */
+    interface ContextFactory {
+        CommandLineContextSupport createContext();
+    }
+
+    /**
+     * Resolves one of the {@link StandardStreams} on each lookup, so that every invocation is injected with its own.
+     */
+    private static class StandardStreamFactoryBean implements FactoryBean<Object> {
+        private final CommandLineContext context;
+        private final String name;
+        private final Class<?> type;
+        
+        public StandardStreamFactoryBean(CommandLineContext context, String name, Class<?> type) {
+            this.context = context;
+            this.name = name;
+            this.type = type;
+        }
+        
+        public Object getObject() {
+            StandardStreams streams = context.getStandardStreams();
+            if (StandardStreams.IN_BEAN_NAME.equals(name)) {
+                return streams.getIn();
+            }
+            return StandardStreams.OUT_BEAN_NAME.equals(name) ? streams.getOut() : streams.getErr();
+        }
+        
+        public Class<?> getObjectType() {
+            return type;
+        }
+        
+        public boolean isSingleton() {
+            return false;
+        }
+    }
+}
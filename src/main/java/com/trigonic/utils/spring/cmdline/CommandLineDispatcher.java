@@ -0,0 +1,253 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import joptsimple.OptionException;
+import joptsimple.OptionSet;
+import joptsimple.internal.ColumnarData;
+
+import org.springframework.util.ClassUtils;
+
+/**
+ * Git-style front end running one of many {@link Subcommand}s: {@code program [global options] <subcommand> [args]}.
+ * <p>
+ * Subcommands are found through the {@link SubcommandIndex} generated at build time, so startup does not grow with
+ * their number.  Only the selected subcommand's class is loaded and its {@link CommandLineMetaData} built, and only
+ * its own {@link Subcommand#resources() resources} are loaded into the context alongside the dispatcher's.  Global
+ * options are bound to a bean of the {@link #setGlobalOptions(Class) global options class}, registered in the context
+ * where subcommands may autowire it.  Help, from {@code -h}, {@code help} or no subcommand at all, lists the
+ * subcommands from the index alone; {@code help <subcommand>} shows a subcommand's own usage.  Shell completion
+ * requests are answered by {@link #complete(List)}.
+ */
+public class CommandLineDispatcher {
+    public static final String HELP_SUBCOMMAND = "help";
+
+    private final String programName;
+    private final Object[] resources;
+    private final SubcommandIndex index;
+    private final ClassLoader classLoader;
+    private Class<?> globalOptionsClass;
+    private CommandLineParserTemplate globalTemplate;
+    private boolean compiledBinding;
+
+    public CommandLineDispatcher(String programName, Object... resources) {
+        this(programName, ClassUtils.getDefaultClassLoader(), resources);
+    }
+
+    public CommandLineDispatcher(String programName, ClassLoader classLoader, Object... resources) {
+        this.programName = programName;
+        this.resources = resources;
+        this.classLoader = classLoader;
+        this.index = SubcommandIndex.load(classLoader);
+        setGlobalOptions(null);
+    }
+
+    /**
+     * Class of the bean bound to the options preceding the subcommand, which may not declare operands.
+     */
+    public void setGlobalOptions(Class<?> globalOptionsClass) {
+        this.globalOptionsClass = globalOptionsClass;
+        CommandLineMetaData metaData = globalOptionsClass == null ? new CommandLineMetaData()
+            : CommandLineMetaData.forClass(globalOptionsClass);
+        if (!metaData.getOperandHandlers().isEmpty()) {
+            throw new IllegalArgumentException("Global options class " + globalOptionsClass.getName()
+                + " cannot declare operands");
+        }
+        // a private template, since stopping at the subcommand changes how its parser parses
+        globalTemplate = new CommandLineParserTemplate(globalOptionsClass, metaData);
+        globalTemplate.getParser().posixlyCorrect(true);
+    }
+
+    public void setCompiledBinding(boolean compiledBinding) {
+        this.compiledBinding = compiledBinding;
+    }
+
+    /**
+     * Dispatches the arguments of this process on its own standard streams.
+     * 
+     * @return the exit status, for passing to {@link System#exit(int)}
+     */
+    public int run(String[] args) {
+        return dispatch(new CommandLineInvocation(args));
+    }
+
+    /**
+     * @return the exit status of the subcommand, or of the usage error preventing it from running
+     */
+    public int dispatch(CommandLineInvocation invocation) {
+        PrintStream err = invocation.getStandardStreams().getErr();
+        // bound while parsing too, so that file values resolve against the invocation's working directory
+        CommandLineInvocation previous = CommandLineInvocation.current();
+        CommandLineInvocation.bind(invocation);
+        try {
+            if (CommandLineCompletion.isCompletion(invocation.getArgs(), invocation.getEnvironment())) {
+                List<String> words = CommandLineCompletion.getWords(invocation.getArgs());
+                CommandLineCompletion.print(complete(words), invocation.getStandardStreams().getOut());
+                return CommandLineInvocation.EXIT_SUCCESS;
+            }
+
+            OptionSet globalOptions;
+            try {
+                globalOptions = globalTemplate.parse(invocation.getArgs());
+            } catch (OptionException e) {
+                return usage(err, e.getMessage());
+            }
+            List<String> operands = globalOptions.nonOptionArguments();
+            if (globalOptions.has("help") || operands.isEmpty()) {
+                return usage(err, null);
+            }
+
+            String name = operands.get(0);
+            String[] args = operands.subList(1, operands.size()).toArray(new String[operands.size() - 1]);
+            if (HELP_SUBCOMMAND.equals(name)) {
+                if (args.length == 0) {
+                    return usage(err, null);
+                }
+                name = args[0];
+                args = new String[] {"--help"};
+            }
+            SubcommandIndex.Entry entry = index.get(name);
+            if (entry == null) {
+                return usage(err, "Unknown subcommand [" + name + "]");
+            }
+            return run(loadClass(entry), globalOptions, args, invocation);
+        } finally {
+            invocation.flush();
+            CommandLineInvocation.bind(previous);
+        }
+    }
+
+    /**
+     * Returns the shell completions for the last of the words, which follow the program name: global options and
+     * subcommands, or the options and operand values of the chosen subcommand, whose class is loaded but whose
+     * context is not.
+     * 
+     * @see CommandLineCompletion
+     */
+    public List<String> complete(List<String> words) {
+        CommandLineMetaData globalMetaData = globalTemplate.getMetaData();
+        int subcommandIndex = CommandLineCompletion.findFirstOperand(globalMetaData, words);
+        if (subcommandIndex < 0) {
+            String current = words.get(words.size() - 1);
+            if (current.startsWith("-")) {
+                return CommandLineCompletion.completeOptions(globalMetaData, current);
+            }
+            return CommandLineCompletion.complete(getSubcommandNames(true), current);
+        }
+
+        String name = words.get(subcommandIndex);
+        List<String> subcommandWords = words.subList(subcommandIndex + 1, words.size());
+        if (HELP_SUBCOMMAND.equals(name)) {
+            return subcommandWords.size() == 1
+                ? CommandLineCompletion.complete(getSubcommandNames(false), subcommandWords.get(0))
+                : Collections.<String>emptyList();
+        }
+        SubcommandIndex.Entry entry = index.get(name);
+        if (entry == null) {
+            return Collections.emptyList();
+        }
+        return CommandLineCompletion.complete(loadClass(entry), subcommandWords);
+    }
+
+    private List<String> getSubcommandNames(boolean includeHelp) {
+        List<String> names = new ArrayList<String>();
+        if (includeHelp) {
+            names.add(HELP_SUBCOMMAND);
+        }
+        for (SubcommandIndex.Entry entry : index.getEntries()) {
+            names.add(entry.getName());
+        }
+        return names;
+    }
+
+    private <T extends Runnable> int run(Class<T> subcommandClass, OptionSet globalOptions, String[] args,
+            CommandLineInvocation invocation) {
+        CommandLineBeanDefinition beanDef;
+        try {
+            beanDef = CommandLineBeanDefinitionReader.createBeanDefinition(subcommandClass, args, compiledBinding);
+        } catch (UsageException e) {
+            PrintStream err = invocation.getStandardStreams().getErr();
+            err.println("Usage: " + programName + " " + subcommandClass.getAnnotation(Subcommand.class).name()
+                + " [options] [operands]");
+            e.printUsage(err);
+            return CommandLineInvocation.EXIT_USAGE;
+        }
+
+        CommandLineAppContext appContext = new CommandLineAppContext(getResources(subcommandClass));
+        try {
+            appContext.setCompiledBinding(compiledBinding);
+            if (globalOptionsClass != null) {
+                appContext.register(new CommandLineBeanDefinition(globalOptionsClass, globalTemplate.getMetaData(),
+                    globalOptions, Collections.<String>emptyList()));
+            }
+            return appContext.invoke(subcommandClass, beanDef, invocation);
+        } finally {
+            appContext.close();
+        }
+    }
+
+    private Object[] getResources(Class<?> subcommandClass) {
+        List<Object> all = new ArrayList<Object>(Arrays.asList(resources));
+        all.addAll(Arrays.asList(subcommandClass.getAnnotation(Subcommand.class).resources()));
+        return all.toArray();
+    }
+
+    private Class<? extends Runnable> loadClass(SubcommandIndex.Entry entry) {
+        Class<?> subcommandClass;
+        try {
+            subcommandClass = ClassUtils.forName(entry.getClassName(), classLoader);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Subcommand class " + entry.getClassName() + " is indexed but missing", e);
+        }
+        if (!subcommandClass.isAnnotationPresent(Subcommand.class) || !Runnable.class.isAssignableFrom(subcommandClass)) {
+            throw new IllegalStateException("Indexed class " + entry.getClassName() + " is not a Runnable @Subcommand");
+        }
+        return subcommandClass.asSubclass(Runnable.class);
+    }
+
+    private int usage(PrintStream err, String message) {
+        if (message != null) {
+            err.print("Error: ");
+            err.println(message);
+            err.println();
+        }
+        err.println("Usage: " + programName + " [options] <subcommand> [args]");
+        err.println();
+        try {
+            globalTemplate.getParser().printHelpOn(err);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        ColumnarData columnarData = new ColumnarData("Subcommands", "Description");
+        for (SubcommandIndex.Entry entry : index.getEntries()) {
+            columnarData.addRow(entry.getName(), entry.getDescription());
+        }
+        err.println();
+        err.println(columnarData.format());
+        err.println();
+        err.println("See '" + programName + " " + HELP_SUBCOMMAND + " <subcommand>' for the options of a subcommand.");
+        return CommandLineInvocation.EXIT_USAGE;
+    }
+}
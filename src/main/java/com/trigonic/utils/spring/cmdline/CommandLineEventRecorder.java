@@ -0,0 +1,35 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+/**
+ * Records the phases bracketed by {@link CommandLineEvents}.  The Flight Recorder implementation is built separately
+ * for Java 11 and looked up by name, so nothing compiled for Java 7 refers to {@code jdk.jfr}.
+ */
+interface CommandLineEventRecorder {
+    /**
+     * @return the event to pass to {@link #end}, or null if none is being recorded
+     */
+    Object beginPhase(String phase, Class<?> commandClass, int argumentCount);
+
+    /**
+     * @return the event to pass to {@link #end}, or null if none is being recorded
+     */
+    Object beginConversion(String property, Class<?> type);
+
+    void end(Object event, String outcome);
+}
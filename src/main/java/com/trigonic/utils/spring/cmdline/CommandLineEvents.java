@@ -0,0 +1,99 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+/**
+ * Emits Java Flight Recorder events for the phases of a command's lifecycle, so that a recording shows the library's
+ * overhead next to the application's own work.  JFR is only used where present (Java 11 and later) and only does any
+ * work while a recording has the events enabled; otherwise {@link #begin} returns null and {@link #end} ignores it.
+ * <p>
+ * Phases are bracketed by {@code begin} and {@code end} on one thread.  A phase begun without a command class or
+ * argument count takes them from the phase it runs within, so that for example the metadata resolved while parsing
+ * is attributed to the command being parsed.
+ */
+public final class CommandLineEvents {
+    /**
+     * System property which, when set to {@code false}, keeps events from being emitted even when a recording enables
+     * them.
+     */
+    public static final String ENABLED_PROPERTY = "com.trigonic.utils.spring.cmdline.flightRecorderEvents";
+
+    public static final String LAUNCH = "launch";
+    public static final String INVOCATION = "invocation";
+    public static final String METADATA = "metadata";
+    public static final String PARSE = "parse";
+    public static final String REGISTER = "register";
+    public static final String REFRESH = "refresh";
+    public static final String RUN = "run";
+    public static final String CLOSE = "close";
+
+    public static final String SUCCESS = "success";
+    public static final String USAGE = "usage";
+    public static final String FAILURE = "failure";
+
+    private static final String RECORDER_CLASS = "com.trigonic.utils.spring.cmdline.FlightRecorderEvents";
+
+    private static final CommandLineEventRecorder recorder = loadRecorder();
+
+    private CommandLineEvents() {
+    }
+
+    /**
+     * Begins a phase.
+     * 
+     * @param commandClass the command class, or null for that of the enclosing phase
+     * @param argumentCount the number of arguments, or -1 for that of the enclosing phase
+     * @return the event to pass to {@link #end}, or null if none is being recorded
+     */
+    public static Object begin(String phase, Class<?> commandClass, int argumentCount) {
+        return recorder != null ? recorder.beginPhase(phase, commandClass, argumentCount) : null;
+    }
+
+    /**
+     * Begins the conversion of an option or operand value to the type of its property.
+     * 
+     * @return the event to pass to {@link #end}, or null if none is being recorded
+     */
+    public static Object beginConversion(String property, Class<?> type) {
+        return recorder != null ? recorder.beginConversion(property, type) : null;
+    }
+
+    /**
+     * Ends a phase begun on the current thread, committing its event with the given outcome.
+     */
+    public static void end(Object event, String outcome) {
+        if (event != null) {
+            recorder.end(event, outcome);
+        }
+    }
+
+    private static CommandLineEventRecorder loadRecorder() {
+        if (!Boolean.parseBoolean(System.getProperty(ENABLED_PROPERTY, "true"))) {
+            return null;
+        }
+        ClassLoader classLoader = CommandLineEvents.class.getClassLoader();
+        try {
+            Class.forName("jdk.jfr.Event", false, classLoader);
+            Class<?> recorderClass = Class.forName(RECORDER_CLASS, true, classLoader);
+            return (CommandLineEventRecorder) recorderClass.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            return null;
+        } catch (LinkageError e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.trigonic.utils.spring.cmdline;
+
+import static java.util.Collections.unmodifiableMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Arguments, environment and standard streams of one command invocation, along with the beans of the
+ * {@link InvocationScope}.  While a command runs, its invocation is bound to the running thread, but not to threads
+ * it starts, which must be handed the invocation explicitly, as {@link ParallelCommand} does for its items.  When
+ * commands run on behalf of a remote client or a batch, {@link System#out}, {@link System#err} and {@link System#in}
+ * are routed to the invocation's streams.
+ */
+public class CommandLineInvocation {
+    public static final int EXIT_SUCCESS = 0;
+    public static final int EXIT_FAILURE = 1;
+    public static final int EXIT_USAGE = 2;
+
+    private static final Log log = LogFactory.getLog(CommandLineInvocation.class);
+
+    // not inherited, as pool threads started during an invocation would keep it for good; code handing work to other
+    // threads passes the invocation along itself
+    private static final ThreadLocal<CommandLineInvocation> current = new ThreadLocal<CommandLineInvocation>();
+    private static boolean systemStreamsInstalled;
+    private static volatile InputStream systemIn = System.in;
+    private static volatile PrintStream systemOut = System.out;
+    private static volatile PrintStream systemErr = System.err;
+    private static volatile InputStream forwardingIn;
+    private static volatile PrintStream forwardingOut;
+    private static volatile PrintStream forwardingErr;
+
+    private final String[] args;
+    private final File workingDirectory;
+    private final boolean processWorkingDirectory;
+    private final Map<String, String> environment;
+    private final InputStream in;
+    private final PrintStream out;
+    private final PrintStream err;
+    private volatile int exitStatus = EXIT_SUCCESS;
+    private StandardStreams standardStreams;
+    private final Map<String, Object> scopedBeans = new HashMap<String, Object>();
+    private final Map<String, Runnable> destructionCallbacks = new LinkedHashMap<String, Runnable>();
+
+    /**
+     * Invocation of this process, on its current standard streams, or the ones they replaced if they are the
+     * forwarding streams installed by {@link #installSystemStreams()}.
+     */
+    public CommandLineInvocation(String[] args) {
+        this(args, new File(System.getProperty("user.dir")), System.getenv(), System.in, System.out, System.err);
+    }
+
+    public CommandLineInvocation(String[] args, File workingDirectory, Map<String, String> environment, InputStream in,
+            PrintStream out, PrintStream err) {
+        this.args = args;
+        this.workingDirectory = workingDirectory;
+        this.processWorkingDirectory = isProcessWorkingDirectory(workingDirectory);
+        this.environment = unmodifiableMap(environment);
+        // an invocation given the forwarding streams must not forward to itself
+        this.in = in == forwardingIn ? systemIn : in;
+        this.out = out == forwardingOut ? systemOut : out;
+        this.err = err == forwardingErr ? systemErr : err;
+    }
+
+    /**
+     * Returns the invocation bound to the calling thread, or {@code null} when running outside of one.
+     */
+    public static CommandLineInvocation current() {
+        return current.get();
+    }
+
+    static void bind(CommandLineInvocation invocation) {
+        if (invocation == null) {
+            current.remove();
+        } else {
+            current.set(invocation);
+        }
+    }
+
+    public String[] getArgs() {
+        return args.clone();
+    }
+
+    /**
+     * The client's working directory; relative paths in arguments are relative to it rather than to the server's.
+     */
+    public File getWorkingDirectory() {
+        return workingDirectory;
+    }
+
+    /**
+     * Resolves a path against the working directory, leaving it relative if that is also this process's own.
+     */
+    public File resolve(String path) {
+        File file = new File(path);
+        return file.isAbsolute() || processWorkingDirectory ? file : new File(workingDirectory, path);
+    }
+
+    private static boolean isProcessWorkingDirectory(File workingDirectory) {
+        if (workingDirectory == null) {
+            return true;
+        }
+        File processDirectory = new File(System.getProperty("user.dir"));
+        return workingDirectory.getAbsoluteFile().toPath().normalize().equals(
+            processDirectory.getAbsoluteFile().toPath().normalize());
+    }
+
+    /**
+     * Whether the invocation reads this process's own standard input, which is then also a file descriptor.
+     */
+    boolean hasProcessInput() {
+        return in == systemIn;
+    }
+
+    boolean hasProcessOutput() {
+        return out == systemOut;
+    }
+
+    public Map<String, String> getEnvironment() {
+        return environment;
+    }
+
+    public InputStream getIn() {
+        return in;
+    }
+
+    public PrintStream getOut() {
+        return out;
+    }
+
+    public PrintStream getErr() {
+        return err;
+    }
+
+    /**
+     * Returns buffered counterparts of this invocation's streams, created on first use.
+     */
+    public synchronized StandardStreams getStandardStreams() {
+        if (standardStreams == null) {
+            standardStreams = new StandardStreams(this);
+        }
+        return standardStreams;
+    }
+
+    /**
+     * Flushes the buffered streams, if they were used, and the invocation's own output streams.
+     */
+    void flush() {
+        StandardStreams streams;
+        synchronized (this) {
+            streams = standardStreams;
+        }
+        if (streams != null) {
+            streams.flush();
+        } else {
+            out.flush();
+            err.flush();
+        }
+    }
+
+    synchronized Object getScopedBean(String name) {
+        return scopedBeans.get(name);
+    }
+
+    synchronized void putScopedBean(String name, Object bean) {
+        scopedBeans.put(name, bean);
+    }
+
+    synchronized Object removeScopedBean(String name) {
+        destructionCallbacks.remove(name);
+        return scopedBeans.remove(name);
+    }
+
+    synchronized void registerDestructionCallback(String name, Runnable callback) {
+        destructionCallbacks.put(name, callback);
+    }
+
+    /**
+     * Destroys the invocation-scoped beans in the reverse order of their registration.
+     */
+    void destroyScopedBeans() {
+        List<Runnable> callbacks;
+        synchronized (this) {
+            callbacks = new ArrayList<Runnable>(destructionCallbacks.values());
+            destructionCallbacks.clear();
+            scopedBeans.clear();
+        }
+        Collections.reverse(callbacks);
+        for (Runnable callback : callbacks) {
+            try {
+                callback.run();
+            } catch (RuntimeException e) {
+                log.warn("Failed to destroy invocation-scoped bean", e);
+            }
+        }
+    }
+
+    public int getExitStatus() {
+        return exitStatus;
+    }
+
+    /**
+     * Commands may report an exit status other than {@link #EXIT_SUCCESS} without throwing.
+     */
+    public void setExitStatus(int exitStatus) {
+        this.exitStatus = exitStatus;
+    }
+
+    /**
+     * Replaces the standard streams with ones forwarding to the current invocation's streams, or to the original ones
+     * outside of an invocation, so that commands written against {@link System#out} work unchanged when several
+     * invocations share a JVM.
+     */
+    static synchronized void installSystemStreams() {
+        if (!systemStreamsInstalled) {
+            systemIn = System.in;
+            systemOut = System.out;
+            systemErr = System.err;
+            forwardingOut = new PrintStream(new ForwardingOutputStream(systemOut, false), false);
+            forwardingErr = new PrintStream(new ForwardingOutputStream(systemErr, true), true);
+            forwardingIn = new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    return target().read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    return target().read(b, off, len);
+                }
+
+                @Override
+                public int available() throws IOException {
+                    return target().available();
+                }
+
+                private InputStream target() {
+                    CommandLineInvocation invocation = current();
+                    return invocation == null ? systemIn : invocation.getIn();
+                }
+            };
+            System.setOut(forwardingOut);
+            System.setErr(forwardingErr);
+            System.setIn(forwardingIn);
+            systemStreamsInstalled = true;
+        }
+    }
+
+    private static class ForwardingOutputStream extends OutputStream {
+        private final PrintStream original;
+        private final boolean err;
+
+        public ForwardingOutputStream(PrintStream original, boolean err) {
+            this.original = original;
+            this.err = err;
+        }
+
+        @Override
+        public void write(int b) {
+            target().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            target().write(b, off, len);
+        }
+
+        @Override
+        public void flush() {
+            target().flush();
+        }
+
+        private PrintStream target() {
+            CommandLineInvocation invocation = current();
+            if (invocation == null) {
+                return original;
+            }
+            return err ? invocation.getErr() : invocation.getOut();
+        }
+    }
+}
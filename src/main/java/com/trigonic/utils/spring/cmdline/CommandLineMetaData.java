@@ -1,164 +1,273 @@
-/*
- * Copyright 2011 the original author or authors.
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- * http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-
-package com.trigonic.utils.spring.cmdline;
-
-import java.beans.PropertyDescriptor;
-import java.io.PrintStream;
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Set;
-import java.util.TreeSet;
-
-import joptsimple.OptionParser;
-import joptsimple.internal.ColumnarData;
-
-import org.springframework.beans.BeanUtils;
-import org.springframework.beans.factory.BeanDefinitionStoreException;
-
-public class CommandLineMetaData {
-    private Map<Option, OptionHandler> options = new HashMap<Option, OptionHandler>();
-    private Map<Operand, OperandHandler> operands = new HashMap<Operand, OperandHandler>();
-    
-    public CommandLineMetaData(Class<?> beanClass) {
-        populateOptionMethods(beanClass);
-        populateOptionFields(beanClass);
-        populateOperandMethods(beanClass);
-        populateOperandFields(beanClass);
-        validateOperands();
-    }
-
-    private void validateOperands() {
-        int expectedIndex = 0;
-        boolean remainderConsumed = false;
-        for (Entry<Operand, OperandHandler> entry : operands.entrySet()) {
-            if (remainderConsumed) {
-                throw new IllegalArgumentException(String.format("Operand index [%d] illegally follows multi-value operand"));
-            }
-            Operand operand = entry.getKey();
-            if (operand.index() < expectedIndex) {
-                throw new IllegalArgumentException(String.format("Duplicate operand index [%d]", operand.index()));
-            } else if (operand.index() > expectedIndex) {
-                throw new IllegalArgumentException(String.format("Missing operand index [%d]", expectedIndex));
-            }
-            expectedIndex = operand.index() + 1;
-            OperandHandler operandHandler = entry.getValue();
-            remainderConsumed = operandHandler.hasMultipleValues();
-        }
-    }
-
-    public Collection<OptionHandler> getOptionHandlers() {
-        return options.values();
-    }
-    
-    public Collection<OperandHandler> getOperandHandlers() {
-        Set<OperandHandler> result = new TreeSet<OperandHandler>(new OperandHandlerOrderComparator());
-        result.addAll(operands.values());
-        return result;
-    }
-
-    public void register(OptionParser parser) {
-        for (OptionHandler optionHandler : getOptionHandlers()) {
-            optionHandler.register(parser);
-        }
-    }
-    
-    public void printOperandsOn(PrintStream err) {
-        Collection<OperandHandler> operands = getOperandHandlers();
-        if (operands.size() > 0) {
-            ColumnarData columnarData = new ColumnarData("Operands", "Description");
-            for (OperandHandler operand : operands) {
-                columnarData.addRow(operand.getName(), operand.getDescription());
-            }
-            err.println();
-            err.println(columnarData.format());
-        }
-    }
-
-    private <T extends Annotation> void checkWriteableProperty(T annotation, Class<?> beanClass, Field field) {
-        PropertyDescriptor property = BeanUtils.getPropertyDescriptor(beanClass, field.getName());
-        if (property == null || property.getWriteMethod() == null) {
-            throw new BeanDefinitionStoreException("@" + annotation.getClass().getSimpleName() + " annotation cannot be applied to fields without matching setters");
-        }
-    }
-
-    private PropertyDescriptor getPropertyForMethod(String annotationType, Annotation annotation, Method method) {
-        PropertyDescriptor property = BeanUtils.findPropertyForMethod(method);
-        if (property == null) {
-            throw new BeanDefinitionStoreException(annotationType + " annotation cannot be applied to non-property methods");
-        }
-        return property;
-    }
-
-    private void populateOperandFields(Class<?> beanClass) {
-        Class<?> superClass = beanClass.getSuperclass();
-        if (!superClass.equals(Object.class)) {
-            populateOperandFields(superClass);
-        }
-        for (Field field : beanClass.getDeclaredFields()) {
-            Operand operand = field.getAnnotation(Operand.class);
-            if (operand != null) {
-                checkWriteableProperty(operand, beanClass, field);
-                operands.put(operand, new OperandFieldHandler(operand, field));
-            }
-        }
-    }
-
-    private void populateOperandMethods(Class<?> beanClass) {
-        Class<?> superClass = beanClass.getSuperclass();
-        if (!superClass.equals(Object.class)) {
-            populateOperandMethods(superClass);
-        }
-        for (Method method : beanClass.getDeclaredMethods()) {
-            Operand operand = method.getAnnotation(Operand.class);
-            if (operand != null) {
-                operands.put(operand, new OperandPropertyHandler(operand, getPropertyForMethod("@Operand", operand, method), beanClass));
-            }
-        }
-    }
-
-    private void populateOptionFields(Class<?> beanClass) {
-        Class<?> superClass = beanClass.getSuperclass();
-        if (!superClass.equals(Object.class)) {
-            populateOptionFields(superClass);
-        }
-        for (Field field : beanClass.getDeclaredFields()) {
-            Option option = field.getAnnotation(Option.class);
-            if (option != null) {
-                checkWriteableProperty(option, beanClass, field);
-                options.put(option, new OptionFieldHandler(option, field));
-            }
-        }
-    }
-
-    private void populateOptionMethods(Class<?> beanClass) {
-        Class<?> superClass = beanClass.getSuperclass();
-        if (!superClass.equals(Object.class)) {
-            populateOptionMethods(superClass);
-        }
-        for (Method method : beanClass.getDeclaredMethods()) {
-            Option option = method.getAnnotation(Option.class);
-            if (option != null) {
-                options.put(option, new OptionPropertyHandler(option, getPropertyForMethod("@Option", option, method), beanClass));
-            }
-        }
-    }
-}
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.beans.PropertyDescriptor;
+import java.io.PrintStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import joptsimple.OptionParser;
+import joptsimple.internal.ColumnarData;
+
+import org.springframework.beans.BeanInstantiationException;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.BeanDefinitionStoreException;
+
+public class CommandLineMetaData {
+    /**
+     * Suffix appended to a bean class name to form the name of the metadata class generated for it by
+     * {@link CommandLineMetaDataProcessor}.
+     */
+    public static final String GENERATED_SUFFIX = "$$CommandLineMetaData";
+
+    private final Map<Option, OptionHandler> options = new HashMap<Option, OptionHandler>();
+    private final Map<Operand, OperandHandler> operands = new HashMap<Operand, OperandHandler>();
+    private int argumentFilesIndex = -1;
+    
+    public CommandLineMetaData(Class<?> beanClass) {
+        populateOptionMethods(beanClass);
+        populateOptionFields(beanClass);
+        populateOperandMethods(beanClass);
+        populateOperandFields(beanClass);
+        validateOptions();
+        validateOperands();
+    }
+
+    /**
+     * Used by generated subclasses, which add their handlers explicitly rather than by introspection.
+     */
+    protected CommandLineMetaData() {
+    }
+
+    /**
+     * Returns the metadata for the given bean class, using the class generated at compile time when it is present
+     * and falling back to runtime introspection otherwise.
+     */
+    public static CommandLineMetaData forClass(Class<?> beanClass) {
+        Object event = CommandLineEvents.begin(CommandLineEvents.METADATA, beanClass, -1);
+        String outcome = CommandLineEvents.FAILURE;
+        try {
+            CommandLineMetaData result = resolve(beanClass);
+            outcome = CommandLineEvents.SUCCESS;
+            return result;
+        } finally {
+            CommandLineEvents.end(event, outcome);
+        }
+    }
+
+    private static CommandLineMetaData resolve(Class<?> beanClass) {
+        // plain reflection rather than Spring's utilities, whose initialization would dominate metadata-only uses such
+        // as shell completion
+        Class<? extends CommandLineMetaData> generatedClass;
+        try {
+            generatedClass = Class.forName(beanClass.getName() + GENERATED_SUFFIX, true, beanClass.getClassLoader())
+                .asSubclass(CommandLineMetaData.class);
+        } catch (ClassNotFoundException e) {
+            return new CommandLineMetaData(beanClass);
+        } catch (LinkageError e) {
+            return new CommandLineMetaData(beanClass);
+        }
+        try {
+            return generatedClass.getDeclaredConstructor().newInstance();
+        } catch (NoSuchMethodException e) {
+            throw new BeanInstantiationException(generatedClass, "Generated metadata has no default constructor", e);
+        } catch (InvocationTargetException e) {
+            throw new BeanInstantiationException(generatedClass, "Generated metadata constructor threw exception",
+                e.getTargetException());
+        } catch (InstantiationException e) {
+            throw new BeanInstantiationException(generatedClass, "Cannot instantiate generated metadata", e);
+        } catch (IllegalAccessException e) {
+            throw new BeanInstantiationException(generatedClass, "Generated metadata constructor is not accessible", e);
+        }
+    }
+
+    protected void addOptionHandler(Option option, OptionHandler handler) {
+        options.put(option, handler);
+    }
+
+    protected void addOperandHandler(Operand operand, OperandHandler handler) {
+        operands.put(operand, handler);
+    }
+
+    /**
+     * Rejects options named like the ones {@link CommandLineParserTemplate} adds to every command for
+     * {@link CommandLineProfile profiling}, which would otherwise both set the command's property and turn profiling on.
+     */
+    protected void validateOptions() {
+        for (Option option : options.keySet()) {
+            if (isReserved(option.longName())) {
+                throw new IllegalArgumentException(String.format("Option name [--%s] is reserved", option.longName()));
+            }
+        }
+    }
+
+    static boolean isReserved(String longName) {
+        return CommandLineProfile.OPTION.equals(longName) || CommandLineProfile.JSON_OPTION.equals(longName);
+    }
+
+    protected void validateOperands() {
+        List<OperandHandler> sorted = new ArrayList<OperandHandler>(operands.values());
+        Collections.sort(sorted, new OperandHandlerOrderComparator());
+        int expectedIndex = 0;
+        boolean remainderConsumed = false;
+        for (OperandHandler operandHandler : sorted) {
+            if (remainderConsumed) {
+                throw new IllegalArgumentException(String.format("Operand index [%d] illegally follows multi-value operand", operandHandler.getIndex()));
+            }
+            if (operandHandler.getIndex() < expectedIndex) {
+                throw new IllegalArgumentException(String.format("Duplicate operand index [%d]", operandHandler.getIndex()));
+            } else if (operandHandler.getIndex() > expectedIndex) {
+                throw new IllegalArgumentException(String.format("Missing operand index [%d]", expectedIndex));
+            }
+            expectedIndex = operandHandler.getIndex() + 1;
+            remainderConsumed = operandHandler.hasMultipleValues();
+        }
+        for (Map.Entry<Operand, OperandHandler> entry : operands.entrySet()) {
+            if (entry.getKey().argumentFiles()) {
+                if (!entry.getValue().hasMultipleValues()) {
+                    throw new IllegalArgumentException(String.format("Operand index [%d] cannot take argument files unless multi-value",
+                        entry.getKey().index()));
+                }
+                argumentFilesIndex = entry.getKey().index();
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the operand from which {@link ArgumentFiles argument files} are expanded, or {@code -1} if
+     * no operand takes them.
+     */
+    public int getArgumentFilesIndex() {
+        return argumentFilesIndex;
+    }
+
+    public Collection<OptionHandler> getOptionHandlers() {
+        return options.values();
+    }
+    
+    public Collection<OperandHandler> getOperandHandlers() {
+        Set<OperandHandler> result = new TreeSet<OperandHandler>(new OperandHandlerOrderComparator());
+        result.addAll(operands.values());
+        return result;
+    }
+
+    public void register(OptionParser parser) {
+        for (OptionHandler optionHandler : getOptionHandlers()) {
+            optionHandler.register(parser);
+        }
+    }
+    
+    public void printOperandsOn(PrintStream err) {
+        Collection<OperandHandler> operands = getOperandHandlers();
+        if (operands.size() > 0) {
+            ColumnarData columnarData = new ColumnarData("Operands", "Description");
+            for (OperandHandler operand : operands) {
+                columnarData.addRow(operand.getName(), operand.getDescription());
+            }
+            err.println();
+            err.println(columnarData.format());
+        }
+    }
+
+    private <T extends Annotation> void checkWriteableProperty(T annotation, Class<?> beanClass, Field field) {
+        PropertyDescriptor property = BeanUtils.getPropertyDescriptor(beanClass, field.getName());
+        if (property == null || property.getWriteMethod() == null) {
+            throw new BeanDefinitionStoreException("@" + annotation.getClass().getSimpleName() + " annotation cannot be applied to fields without matching setters");
+        }
+    }
+
+    private PropertyDescriptor getPropertyForMethod(String annotationType, Annotation annotation, Method method) {
+        PropertyDescriptor property = BeanUtils.findPropertyForMethod(method);
+        if (property == null) {
+            throw new BeanDefinitionStoreException(annotationType + " annotation cannot be applied to non-property methods");
+        }
+        return property;
+    }
+
+    private void populateOperandFields(Class<?> beanClass) {
+        Class<?> superClass = beanClass.getSuperclass();
+        if (!superClass.equals(Object.class)) {
+            populateOperandFields(superClass);
+        }
+        for (Field field : beanClass.getDeclaredFields()) {
+            Operand operand = field.getAnnotation(Operand.class);
+            if (operand != null) {
+                checkWriteableProperty(operand, beanClass, field);
+                OperandFieldHandler handler = new OperandFieldHandler(operand, field);
+                handler.setGlob(field.getAnnotation(Glob.class));
+                operands.put(operand, handler);
+            }
+        }
+    }
+
+    private void populateOperandMethods(Class<?> beanClass) {
+        Class<?> superClass = beanClass.getSuperclass();
+        if (!superClass.equals(Object.class)) {
+            populateOperandMethods(superClass);
+        }
+        for (Method method : beanClass.getDeclaredMethods()) {
+            Operand operand = method.getAnnotation(Operand.class);
+            if (operand != null) {
+                OperandPropertyHandler handler = new OperandPropertyHandler(operand, getPropertyForMethod("@Operand", operand, method), beanClass);
+                handler.setGlob(method.getAnnotation(Glob.class));
+                operands.put(operand, handler);
+            }
+        }
+    }
+
+    private void populateOptionFields(Class<?> beanClass) {
+        Class<?> superClass = beanClass.getSuperclass();
+        if (!superClass.equals(Object.class)) {
+            populateOptionFields(superClass);
+        }
+        for (Field field : beanClass.getDeclaredFields()) {
+            Option option = field.getAnnotation(Option.class);
+            if (option != null) {
+                checkWriteableProperty(option, beanClass, field);
+                OptionFieldHandler handler = new OptionFieldHandler(option, field);
+                handler.setGlob(field.getAnnotation(Glob.class));
+                options.put(option, handler);
+            }
+        }
+    }
+
+    private void populateOptionMethods(Class<?> beanClass) {
+        Class<?> superClass = beanClass.getSuperclass();
+        if (!superClass.equals(Object.class)) {
+            populateOptionMethods(superClass);
+        }
+        for (Method method : beanClass.getDeclaredMethods()) {
+            Option option = method.getAnnotation(Option.class);
+            if (option != null) {
+                OptionPropertyHandler handler = new OptionPropertyHandler(option, getPropertyForMethod("@Option", option, method), beanClass);
+                handler.setGlob(method.getAnnotation(Glob.class));
+                options.put(option, handler);
+            }
+        }
+    }
+}
@@ -0,0 +1,450 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.JavaFileObject;
+
+/**
+ * Annotation processor that generates a {@link CommandLineMetaData} subclass for each class declaring {@link Option}
+ * or {@link Operand} members, so that {@link CommandLineMetaData#forClass(Class)} can skip runtime introspection.
+ * Operand layouts that would be rejected at runtime are reported as compile errors instead.
+ */
+@SupportedAnnotationTypes({"com.trigonic.utils.spring.cmdline.Option", "com.trigonic.utils.spring.cmdline.Operand"})
+public class CommandLineMetaDataProcessor extends AbstractProcessor {
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Set<TypeElement> beanTypes = new LinkedHashSet<TypeElement>();
+        addEnclosingTypes(beanTypes, roundEnv.getElementsAnnotatedWith(Option.class));
+        addEnclosingTypes(beanTypes, roundEnv.getElementsAnnotatedWith(Operand.class));
+        for (TypeElement beanType : beanTypes) {
+            process(beanType);
+        }
+        return false;
+    }
+
+    private static void addEnclosingTypes(Set<TypeElement> beanTypes, Set<? extends Element> elements) {
+        for (Element element : elements) {
+            Element enclosing = element.getEnclosingElement();
+            if (enclosing.getKind() == ElementKind.CLASS) {
+                beanTypes.add((TypeElement) enclosing);
+            }
+        }
+    }
+
+    private void process(TypeElement beanType) {
+        List<Member> options = new ArrayList<Member>();
+        List<Member> operands = new ArrayList<Member>();
+        boolean valid = collect(beanType, beanType, options, operands);
+        valid &= validateOptions(beanType, options);
+        valid &= validateOperands(beanType, operands);
+        if (valid && isGeneratable(beanType, options, operands)) {
+            generate(beanType, options, operands);
+        }
+    }
+
+    /**
+     * Collects annotated members of the type and its superclasses, superclasses first as at runtime.
+     */
+    private boolean collect(TypeElement beanType, TypeElement type, List<Member> options, List<Member> operands) {
+        boolean valid = true;
+        TypeMirror superType = type.getSuperclass();
+        if (superType.getKind() == TypeKind.DECLARED) {
+            TypeElement superElement = (TypeElement) ((DeclaredType) superType).asElement();
+            if (!superElement.getQualifiedName().contentEquals(Object.class.getName())) {
+                valid &= collect(beanType, superElement, options, operands);
+            }
+        }
+        for (Element element : type.getEnclosedElements()) {
+            Option option = element.getAnnotation(Option.class);
+            if (option != null) {
+                Member member = toMember(beanType, element, "@Option");
+                if (member == null) {
+                    valid = false;
+                } else {
+                    member.option = option;
+                    member.glob = element.getAnnotation(Glob.class);
+                    options.add(member);
+                }
+            }
+            Operand operand = element.getAnnotation(Operand.class);
+            if (operand != null) {
+                Member member = toMember(beanType, element, "@Operand");
+                if (member == null) {
+                    valid = false;
+                } else {
+                    member.operand = operand;
+                    member.glob = element.getAnnotation(Glob.class);
+                    operands.add(member);
+                }
+            }
+        }
+        return valid;
+    }
+
+    private Member toMember(TypeElement beanType, Element element, String annotationType) {
+        Member member = null;
+        if (element.getKind() == ElementKind.FIELD) {
+            String name = element.getSimpleName().toString();
+            if (findSetter(beanType, name) == null) {
+                error(element, "%s annotation cannot be applied to fields without matching setters", annotationType);
+            } else {
+                member = new Member(element, name, element.asType());
+            }
+        } else if (element.getKind() == ElementKind.METHOD) {
+            ExecutableElement method = (ExecutableElement) element;
+            String name = propertyName(method);
+            if (name == null) {
+                error(element, "%s annotation cannot be applied to non-property methods", annotationType);
+            } else {
+                TypeMirror type = isSetter(method) ? method.getParameters().get(0).asType() : method.getReturnType();
+                member = new Member(element, name, type);
+            }
+        }
+        return member;
+    }
+
+    private boolean validateOptions(TypeElement beanType, List<Member> options) {
+        boolean valid = true;
+        for (Member member : options) {
+            if (CommandLineMetaData.isReserved(member.option.longName())) {
+                Element element = member.element.getEnclosingElement().equals(beanType) ? member.element : beanType;
+                error(element, "Option name [--%s] is reserved", member.option.longName());
+                valid = false;
+            }
+        }
+        return valid;
+    }
+
+    private boolean validateOperands(TypeElement beanType, List<Member> operands) {
+        List<Member> sorted = new ArrayList<Member>(operands);
+        Collections.sort(sorted, new Comparator<Member>() {
+            public int compare(Member m1, Member m2) {
+                return m1.operand.index() - m2.operand.index();
+            }
+        });
+        boolean valid = true;
+        int expectedIndex = 0;
+        boolean remainderConsumed = false;
+        for (Member member : sorted) {
+            int index = member.operand.index();
+            Element element = member.element.getEnclosingElement().equals(beanType) ? member.element : beanType;
+            if (index < 0) {
+                error(element, "operand index cannot be < 0");
+                return false;
+            } else if (remainderConsumed) {
+                error(element, "Operand index [%d] illegally follows multi-value operand", index);
+                valid = false;
+            } else if (index < expectedIndex) {
+                error(element, "Duplicate operand index [%d]", index);
+                valid = false;
+            } else if (index > expectedIndex) {
+                error(element, "Missing operand index [%d]", expectedIndex);
+                valid = false;
+            }
+            if (member.operand.argumentFiles() && !hasMultipleValues(member.type)) {
+                error(element, "Operand index [%d] cannot take argument files unless multi-value", index);
+                valid = false;
+            }
+            expectedIndex = index + 1;
+            remainderConsumed = hasMultipleValues(member.type);
+        }
+        return valid;
+    }
+
+    /**
+     * Generated code can only name types visible from the bean's package; anything else falls back to reflection.
+     */
+    private boolean isGeneratable(TypeElement beanType, List<Member> options, List<Member> operands) {
+        if (beanType.getModifiers().contains(Modifier.ABSTRACT) || !isVisible(beanType)
+                || beanType.getNestingKind() == NestingKind.MEMBER && !beanType.getModifiers().contains(Modifier.STATIC)) {
+            return false;
+        }
+        for (Member member : options) {
+            if (!isVisible(member.type)) {
+                return false;
+            }
+        }
+        for (Member member : operands) {
+            if (!isVisible(member.type) || !isVisible(getElementType(member.type))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isVisible(TypeMirror type) {
+        TypeMirror erased = erasure(type);
+        if (erased.getKind() == TypeKind.ARRAY) {
+            return isVisible(((ArrayType) erased).getComponentType());
+        } else if (erased.getKind() == TypeKind.DECLARED) {
+            return isVisible((TypeElement) ((DeclaredType) erased).asElement());
+        }
+        return erased.getKind().isPrimitive();
+    }
+
+    private boolean isVisible(TypeElement type) {
+        for (Element element = type; element.getKind() != ElementKind.PACKAGE; element = element.getEnclosingElement()) {
+            if (element.getModifiers().contains(Modifier.PRIVATE)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void generate(TypeElement beanType, List<Member> options, List<Member> operands) {
+        String packageName = processingEnv.getElementUtils().getPackageOf(beanType).getQualifiedName().toString();
+        String binaryName = processingEnv.getElementUtils().getBinaryName(beanType).toString();
+        String simpleName = (packageName.length() == 0 ? binaryName : binaryName.substring(packageName.length() + 1))
+            + CommandLineMetaData.GENERATED_SUFFIX;
+        String qualifiedName = packageName.length() == 0 ? simpleName : packageName + "." + simpleName;
+        try {
+            JavaFileObject source = processingEnv.getFiler().createSourceFile(qualifiedName, beanType);
+            PrintWriter out = new PrintWriter(source.openWriter());
+            try {
+                if (packageName.length() > 0) {
+                    out.printf("package %s;%n%n", packageName);
+                }
+                out.printf("/**%n * Generated by %s from %s; do not edit.%n */%n", getClass().getName(), beanType.getQualifiedName());
+                out.printf("public class %s extends %s {%n", simpleName, CommandLineMetaData.class.getName());
+                out.printf("    public %s() {%n", simpleName);
+                for (int i = 0; i < options.size(); ++i) {
+                    Member member = options.get(i);
+                    Option option = member.option;
+                    out.printf("        %s option%d = new %s(%s, %s, %s, %s, %s);%n", Option.class.getName(), i,
+                        OptionLiteral.class.getName(), quote(option.shortName()), quote(option.longName()),
+                        quote(option.description()), option.required(), option.requiresValue());
+                    String handler = String.format("new %s(option%d, %s, %s.class)", OptionPropertyHandler.class.getName(), i,
+                        quote(member.name), erasure(member.type));
+                    out.printf("        addOptionHandler(option%d, %s);%n", i, withGlob(out, "option", i, handler, member.glob));
+                }
+                for (int i = 0; i < operands.size(); ++i) {
+                    Member member = operands.get(i);
+                    Operand operand = member.operand;
+                    out.printf("        %s operand%d = new %s(%d, %s, %s, %s);%n", Operand.class.getName(), i,
+                        OperandLiteral.class.getName(), operand.index(), quote(operand.description()), operand.required(),
+                        operand.argumentFiles());
+                    String handler;
+                    if (isLazy(member.type, Iterable.class) || isLazy(member.type, Iterator.class)) {
+                        handler = String.format("new %s(operand%d, %s, %s.class, %s.class)", OperandPropertyHandler.class.getName(),
+                            i, quote(member.name), erasure(member.type), getElementType(member.type));
+                    } else {
+                        handler = String.format("new %s(operand%d, %s, %s.class)", OperandPropertyHandler.class.getName(), i,
+                            quote(member.name), erasure(member.type));
+                    }
+                    out.printf("        addOperandHandler(operand%d, %s);%n", i, withGlob(out, "operand", i, handler, member.glob));
+                }
+                out.printf("        validateOptions();%n");
+                out.printf("        validateOperands();%n");
+                out.printf("    }%n");
+                out.printf("}%n");
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            error(beanType, "Unable to generate %s: %s", qualifiedName, e.getMessage());
+        }
+    }
+
+    /**
+     * Writes a local variable holding the handler with its glob set, if there is one, and returns the expression to use
+     * for the handler.
+     */
+    private static String withGlob(PrintWriter out, String kind, int i, String handler, Glob glob) {
+        if (glob == null) {
+            return handler;
+        }
+        String variable = String.format("%sHandler%d", kind, i);
+        String type = handler.substring("new ".length(), handler.indexOf('('));
+        out.printf("        %s %s = %s;%n", type, variable, handler);
+        out.printf("        %s.setGlob(new %s(%s, %s, %d, %s));%n", variable, GlobLiteral.class.getName(), glob.sorted(),
+            glob.followLinks(), glob.maxDepth(), glob.recursive());
+        return variable;
+    }
+
+    private TypeMirror erasure(TypeMirror type) {
+        return processingEnv.getTypeUtils().erasure(type);
+    }
+
+    private ExecutableElement findSetter(TypeElement beanType, String propertyName) {
+        for (TypeElement type = beanType; type != null; type = superclassOf(type)) {
+            for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+                if (isSetter(method) && propertyName.equals(propertyName(method))) {
+                    return method;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static TypeElement superclassOf(TypeElement type) {
+        TypeMirror superType = type.getSuperclass();
+        return superType.getKind() == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) superType).asElement() : null;
+    }
+
+    /**
+     * Mirrors the JavaBeans naming rules applied by {@code BeanUtils.findPropertyForMethod}.
+     */
+    private static String propertyName(ExecutableElement method) {
+        Set<Modifier> modifiers = method.getModifiers();
+        if (!modifiers.contains(Modifier.PUBLIC) || modifiers.contains(Modifier.STATIC)) {
+            return null;
+        }
+        String name = method.getSimpleName().toString();
+        if (isSetter(method)) {
+            return decapitalize(name.substring(3));
+        } else if (method.getParameters().isEmpty() && method.getReturnType().getKind() != TypeKind.VOID) {
+            if (name.startsWith("get") && name.length() > 3) {
+                return decapitalize(name.substring(3));
+            } else if (name.startsWith("is") && name.length() > 2 && method.getReturnType().getKind() == TypeKind.BOOLEAN) {
+                return decapitalize(name.substring(2));
+            }
+        }
+        return null;
+    }
+
+    private static boolean isSetter(ExecutableElement method) {
+        String name = method.getSimpleName().toString();
+        return name.startsWith("set") && name.length() > 3 && method.getParameters().size() == 1
+            && method.getModifiers().contains(Modifier.PUBLIC) && !method.getModifiers().contains(Modifier.STATIC);
+    }
+
+    /**
+     * Same as {@code java.beans.Introspector.decapitalize}, which is avoided here to keep java.desktop out of the build.
+     */
+    private static String decapitalize(String name) {
+        if (name.length() > 1 && Character.isUpperCase(name.charAt(1)) && Character.isUpperCase(name.charAt(0))) {
+            return name;
+        }
+        return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private boolean hasMultipleValues(TypeMirror type) {
+        TypeMirror erased = erasure(type);
+        if (erased.getKind() == TypeKind.ARRAY) {
+            return true;
+        }
+        TypeElement iterable = processingEnv.getElementUtils().getTypeElement(Iterable.class.getName());
+        return processingEnv.getTypeUtils().isAssignable(erased, erasure(iterable.asType())) || isLazy(type, Iterator.class);
+    }
+
+    /**
+     * Whether the type is exactly the given {@code Iterable} or {@code Iterator} type, whose operands are converted
+     * lazily to its type argument.
+     */
+    private boolean isLazy(TypeMirror type, Class<?> lazyType) {
+        return erasure(type).toString().equals(lazyType.getName());
+    }
+
+    private TypeMirror getElementType(TypeMirror type) {
+        if (type.getKind() == TypeKind.DECLARED) {
+            List<? extends TypeMirror> arguments = ((DeclaredType) type).getTypeArguments();
+            if (arguments.size() == 1) {
+                TypeMirror argument = arguments.get(0);
+                if (argument.getKind() == TypeKind.WILDCARD) {
+                    argument = ((WildcardType) argument).getExtendsBound();
+                }
+                if (argument != null && argument.getKind() == TypeKind.DECLARED && ((DeclaredType) argument).getTypeArguments().isEmpty()) {
+                    return argument;
+                }
+            }
+        }
+        return processingEnv.getElementUtils().getTypeElement(String.class.getName()).asType();
+    }
+
+    static String quote(String value) {
+        StringBuilder result = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+            case '"':
+                result.append("\\\"");
+                break;
+            case '\\':
+                result.append("\\\\");
+                break;
+            case '\n':
+                result.append("\\n");
+                break;
+            case '\r':
+                result.append("\\r");
+                break;
+            case '\t':
+                result.append("\\t");
+                break;
+            default:
+                if (c < 0x20 || c > 0x7e) {
+                    result.append(String.format("\\u%04x", (int) c));
+                } else {
+                    result.append(c);
+                }
+            }
+        }
+        return result.append('"').toString();
+    }
+
+    private void error(Element element, String format, Object... args) {
+        processingEnv.getMessager().printMessage(Kind.ERROR, String.format(format, args), element);
+    }
+
+    private static class Member {
+        private final Element element;
+        private final String name;
+        private final TypeMirror type;
+        private Option option;
+        private Operand operand;
+        private Glob glob;
+
+        public Member(Element element, String name, TypeMirror type) {
+            this.element = element;
+            this.name = name;
+            this.type = type;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.util.Arrays;
+
+/**
+ * The {@link CommandLineMetricsListener listeners} called as commands are parsed, bound and run.  With none added, each
+ * measurement costs a volatile read.
+ */
+public final class CommandLineMetrics {
+    private static final CommandLineMetricsListener[] NONE = new CommandLineMetricsListener[0];
+
+    private static volatile CommandLineMetricsListener[] listeners = NONE;
+
+    private CommandLineMetrics() {
+    }
+
+    public static synchronized void addListener(CommandLineMetricsListener listener) {
+        CommandLineMetricsListener[] result = Arrays.copyOf(listeners, listeners.length + 1);
+        result[listeners.length] = listener;
+        listeners = result;
+    }
+
+    public static synchronized void removeListener(CommandLineMetricsListener listener) {
+        for (int i = 0; i < listeners.length; ++i) {
+            if (listeners[i] == listener) {
+                CommandLineMetricsListener[] result = new CommandLineMetricsListener[listeners.length - 1];
+                System.arraycopy(listeners, 0, result, 0, i);
+                System.arraycopy(listeners, i + 1, result, i, result.length - i);
+                listeners = result;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Starts a measurement, if any listener was added.
+     * 
+     * @return the start time to pass on to the listeners, or 0
+     */
+    public static long start() {
+        return listeners.length == 0 ? 0 : System.nanoTime();
+    }
+
+    static void parsed(Class<?> commandClass, long start, boolean usageError) {
+        if (start != 0) {
+            long nanos = System.nanoTime() - start;
+            for (CommandLineMetricsListener listener : listeners) {
+                listener.parsed(commandClass, nanos, usageError);
+            }
+        }
+    }
+
+    static void converted(Class<?> commandClass, String property, long start, boolean failed) {
+        if (start != 0) {
+            long nanos = System.nanoTime() - start;
+            for (CommandLineMetricsListener listener : listeners) {
+                listener.converted(commandClass, property, nanos, failed);
+            }
+        }
+    }
+
+    static void ran(Class<?> commandClass, long start, int exitStatus) {
+        if (start != 0) {
+            long nanos = System.nanoTime() - start;
+            for (CommandLineMetricsListener listener : listeners) {
+                listener.ran(commandClass, nanos, exitStatus);
+            }
+        }
+    }
+}
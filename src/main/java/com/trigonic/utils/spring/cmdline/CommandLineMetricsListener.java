@@ -0,0 +1,44 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+/**
+ * Receives the timings of commands as they are parsed, bound and run, for aggregation by hosts that run commands
+ * repeatedly, such as {@link CommandLineServer} or {@link CommandLineBatch}.  Listeners are added to
+ * {@link CommandLineMetrics} and called on the thread doing the work, so they must be thread-safe and quick.
+ * 
+ * @see OpenMetricsRecorder
+ */
+public interface CommandLineMetricsListener {
+    /**
+     * Called once a command's arguments have been parsed and validated, or rejected with a usage error.
+     */
+    void parsed(Class<?> commandClass, long nanos, boolean usageError);
+
+    /**
+     * Called once an option or operand value has been converted to the type of its property, or failed to convert.
+     * Only values bound through a compiled {@link CommandLineBindingPlan} are reported; property values are converted
+     * by Spring.
+     */
+    void converted(Class<?> commandClass, String property, long nanos, boolean failed);
+
+    /**
+     * Called once an invocation of a command has finished, from parsing its arguments, unless they were parsed before,
+     * to destroying its bean.
+     */
+    void ran(Class<?> commandClass, long nanos, int exitStatus);
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import joptsimple.OptionException;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+
+/**
+ * Metadata and option parser for a bean class, built once and shared by every parse of that class.  Templates are
+ * cached per class in a {@link ClassValue}, which keeps each entry with its class so that caching never prevents a
+ * class loader from being collected.
+ */
+public class CommandLineParserTemplate {
+    /**
+     * System property choosing the {@link ArgumentParser} used for parsing: {@code jopt-simple}, the default,
+     * {@code builtin} for {@link ArgumentTokenizer}, or the name of an {@link ArgumentParserFactory} class.
+     */
+    public static final String PARSER_PROPERTY = "com.trigonic.utils.spring.cmdline.argumentParser";
+
+    /**
+     * Parses with jopt-simple, through the same parser used for printing usage.
+     */
+    public static final ArgumentParserFactory JOPT_SIMPLE = new ArgumentParserFactory() {
+        public ArgumentParser createParser(final CommandLineParserTemplate template) {
+            return new ArgumentParser() {
+                public ParsedArguments parse(String[] args) {
+                    return new OptionSetArguments(template.parse(args));
+                }
+            };
+        }
+    };
+
+    /**
+     * Parses with {@link ArgumentTokenizer}, leaving jopt-simple's parser to be built only if usage is printed.
+     */
+    public static final ArgumentParserFactory BUILTIN = new ArgumentParserFactory() {
+        public ArgumentParser createParser(CommandLineParserTemplate template) {
+            return new ArgumentTokenizer(template.getOptionHandlers());
+        }
+    };
+
+    // options every command accepts, ahead of its own
+    private static final List<OptionHandler> STANDARD_OPTIONS = Collections.<OptionHandler>unmodifiableList(Arrays.asList(
+        new OptionPropertyHandler(new OptionLiteral("h", "help", "Usage information", false, false), "help", boolean.class),
+        new OptionPropertyHandler(new OptionLiteral("", CommandLineProfile.OPTION, "Report startup timings on exit", false, false),
+            CommandLineProfile.OPTION, boolean.class),
+        new OptionPropertyHandler(new OptionLiteral("", CommandLineProfile.JSON_OPTION,
+            "Write startup timings to a JSON file on exit", false, true), CommandLineProfile.JSON_OPTION, String.class)));
+
+    private static volatile ArgumentParserFactory defaultParserFactory = parserFactory(System.getProperty(PARSER_PROPERTY));
+
+    private static final ClassValue<CommandLineParserTemplate> cache = new ClassValue<CommandLineParserTemplate>() {
+        @Override
+        protected CommandLineParserTemplate computeValue(Class<?> beanClass) {
+            misses.incrementAndGet();
+            long start = CommandLineProfile.start();
+            CommandLineMetaData metaData = CommandLineMetaData.forClass(beanClass);
+            CommandLineProfile.end("metadata", start);
+            return new CommandLineParserTemplate(beanClass, metaData);
+        }
+    };
+
+    private static final AtomicLong requests = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+
+    private final Class<?> beanClass;
+    private final CommandLineMetaData metaData;
+    private volatile OptionParser parser;
+    private volatile ArgumentParser argumentParser;
+    private volatile ArgumentParserFactory argumentParserFactory;
+    private volatile CommandLineBindingPlan bindingPlan;
+
+    public CommandLineParserTemplate(CommandLineMetaData metaData) {
+        this(null, metaData);
+    }
+
+    public CommandLineParserTemplate(Class<?> beanClass, CommandLineMetaData metaData) {
+        this.beanClass = beanClass;
+        this.metaData = metaData;
+    }
+
+    public static CommandLineParserTemplate forClass(Class<?> beanClass) {
+        requests.incrementAndGet();
+        return cache.get(beanClass);
+    }
+
+    /**
+     * Drops the cached template for the given class, e.g. after its annotations were changed by a reloading agent.
+     */
+    public static void evict(Class<?> beanClass) {
+        cache.remove(beanClass);
+    }
+
+    /**
+     * Sets the factory of the parsers used by templates from now on, or restores the one chosen by
+     * {@link #PARSER_PROPERTY} if {@code null}.
+     */
+    public static void setDefaultParserFactory(ArgumentParserFactory factory) {
+        defaultParserFactory = factory != null ? factory : parserFactory(System.getProperty(PARSER_PROPERTY));
+    }
+
+    public static ArgumentParserFactory getDefaultParserFactory() {
+        return defaultParserFactory;
+    }
+
+    static ArgumentParserFactory parserFactory(String name) {
+        if (name == null || name.equals("jopt-simple")) {
+            return JOPT_SIMPLE;
+        } else if (name.equals("builtin")) {
+            return BUILTIN;
+        }
+        try {
+            return Class.forName(name, true, CommandLineParserTemplate.class.getClassLoader())
+                .asSubclass(ArgumentParserFactory.class).getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException(String.format("Unknown argument parser [%s]", name), e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalArgumentException(String.format("Cannot instantiate argument parser [%s]", name),
+                e.getTargetException());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException(String.format("Cannot instantiate argument parser [%s]", name), e);
+        }
+    }
+
+    public static Statistics getStatistics() {
+        long requestCount = requests.get();
+        return new Statistics(requestCount, Math.min(misses.get(), requestCount));
+    }
+
+    public CommandLineMetaData getMetaData() {
+        return metaData;
+    }
+
+    /**
+     * The handlers of the options every command accepts, such as {@code --help}, followed by those of the bean class.
+     */
+    public List<OptionHandler> getOptionHandlers() {
+        List<OptionHandler> result = new ArrayList<OptionHandler>(STANDARD_OPTIONS);
+        result.addAll(metaData.getOptionHandlers());
+        return result;
+    }
+
+    /**
+     * Binding plan for compiled binding, built on first use since most bean classes are bound through property values.
+     */
+    public CommandLineBindingPlan getBindingPlan() {
+        CommandLineBindingPlan plan = bindingPlan;
+        if (plan == null) {
+            if (beanClass == null) {
+                throw new IllegalStateException("Template was created without a bean class");
+            }
+            synchronized (this) {
+                plan = bindingPlan;
+                if (plan == null) {
+                    plan = bindingPlan = new CommandLineBindingPlan(beanClass, metaData);
+                }
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Parser used for printing usage; parse through {@link #parse(String[])} rather than directly, since jopt-simple
+     * keeps per-parse state in the parser.  Built on first use, so that metadata-only uses such as shell completion
+     * never pay for it.
+     */
+    public OptionParser getParser() {
+        OptionParser result = parser;
+        if (result == null) {
+            synchronized (this) {
+                result = parser;
+                if (result == null) {
+                    long start = CommandLineProfile.start();
+                    result = new OptionParser();
+                    for (OptionHandler handler : STANDARD_OPTIONS) {
+                        handler.register(result);
+                    }
+                    metaData.register(result);
+                    parser = result;
+                    CommandLineProfile.end("parser", start);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Parses with jopt-simple whichever parser is the default, for callers needing its {@link OptionSet}.
+     */
+    public OptionSet parse(String[] args) throws OptionException {
+        OptionParser parser = getParser();
+        synchronized (parser) {
+            return parser.parse(args);
+        }
+    }
+
+    /**
+     * Parses with the parser of the {@linkplain #getDefaultParserFactory() default factory}, created on first use and
+     * again should the default change.
+     */
+    public ParsedArguments parseArguments(String[] args) throws OptionException {
+        ArgumentParserFactory factory = defaultParserFactory;
+        ArgumentParser result = argumentParser;
+        if (result == null || argumentParserFactory != factory) {
+            synchronized (this) {
+                result = argumentParser;
+                if (result == null || argumentParserFactory != factory) {
+                    result = factory.createParser(this);
+                    argumentParserFactory = factory;
+                    argumentParser = result;
+                }
+            }
+        }
+        return result.parse(args);
+    }
+
+    public static class Statistics {
+        private final long requestCount;
+        private final long missCount;
+
+        public Statistics(long requestCount, long missCount) {
+            this.requestCount = requestCount;
+            this.missCount = missCount;
+        }
+
+        public long getRequestCount() {
+            return requestCount;
+        }
+
+        public long getHitCount() {
+            return requestCount - missCount;
+        }
+
+        public long getMissCount() {
+            return missCount;
+        }
+
+        public double getHitRate() {
+            return requestCount == 0 ? 1.0 : (double) getHitCount() / requestCount;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("requests=%d, hits=%d, misses=%d", requestCount, getHitCount(), missCount);
+        }
+    }
+}
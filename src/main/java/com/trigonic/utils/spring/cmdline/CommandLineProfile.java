@@ -0,0 +1,383 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import static com.trigonic.utils.spring.cmdline.CommandLineMetaDataProcessor.quote;
+
+import java.beans.PropertyDescriptor;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.PropertyValues;
+import org.springframework.beans.factory.config.InstantiationAwareBeanPostProcessor;
+
+/**
+ * Startup timings of one command run, requested with the reserved {@code --profile} option, which prints a report on
+ * standard error when the command exits, or {@code --profile-json=FILE}, which writes the timings as JSON.  Phases are
+ * timed on the thread running the command, and nest by the time they span.  Every bean created meanwhile is timed by
+ * a post-processor, from the start of its instantiation until its init callbacks have run.
+ * <p>
+ * Phases are timed only while a profile is bound to the current thread, and until the first profile is, checking
+ * for one costs a single volatile read.
+ */
+public final class CommandLineProfile {
+    public static final String OPTION = "profile";
+    public static final String JSON_OPTION = "profile-json";
+
+    private static final ThreadLocal<CommandLineProfile> current = new ThreadLocal<CommandLineProfile>();
+    private static volatile boolean used;
+
+    private final File jsonFile;
+    private final long origin = System.nanoTime();
+    private final List<Phase> phases = new ArrayList<Phase>();
+    private final List<BeanTiming> beans = new ArrayList<BeanTiming>();
+    private final ProfilingPostProcessor postProcessor = new ProfilingPostProcessor();
+
+    public CommandLineProfile(File jsonFile) {
+        this.jsonFile = jsonFile;
+    }
+
+    /**
+     * Returns a new profile if the arguments request one.  The options are looked for before parsing, so that parsing
+     * is profiled too; they must be spelled out in full, before any {@code --}.
+     */
+    public static CommandLineProfile forArgs(String[] args) {
+        for (int i = 0; i < args.length && !"--".equals(args[i]); ++i) {
+            if (args[i].equals("--" + OPTION)) {
+                return new CommandLineProfile(null);
+            } else if (args[i].startsWith("--" + JSON_OPTION + "=")) {
+                return new CommandLineProfile(new File(args[i].substring(JSON_OPTION.length() + 3)));
+            } else if (args[i].equals("--" + JSON_OPTION) && i + 1 < args.length) {
+                return new CommandLineProfile(new File(args[i + 1]));
+            }
+        }
+        return null;
+    }
+
+    public static CommandLineProfile current() {
+        return used ? current.get() : null;
+    }
+
+    /**
+     * Binds the given profile, or none, to the current thread.
+     * 
+     * @return the profile bound before
+     */
+    static CommandLineProfile bind(CommandLineProfile profile) {
+        if (profile != null) {
+            used = true;
+        }
+        CommandLineProfile previous = current();
+        if (profile == null) {
+            current.remove();
+        } else {
+            current.set(profile);
+        }
+        return previous;
+    }
+
+    /**
+     * Starts timing a phase, if the current thread is being profiled.
+     * 
+     * @return the start time to pass to {@link #end(String, long)}
+     */
+    public static long start() {
+        return current() == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Ends timing a phase started with {@link #start()}.
+     */
+    public static void end(String name, long start) {
+        CommandLineProfile profile = current();
+        if (profile != null && start != 0) {
+            profile.record(name, start, System.nanoTime());
+        }
+    }
+
+    public void record(String name, long start, long end) {
+        synchronized (phases) {
+            phases.add(new Phase(name, start - origin, end - origin));
+        }
+    }
+
+    /**
+     * The post-processor timing the beans created in a factory, which must be added before any other for the
+     * timings to include the other post-processors' work.
+     */
+    public InstantiationAwareBeanPostProcessor getBeanPostProcessor() {
+        return postProcessor;
+    }
+
+    public File getJsonFile() {
+        return jsonFile;
+    }
+
+    /**
+     * Prints the report on the given stream, or writes the JSON file if one was requested.
+     */
+    public void report(PrintStream err) {
+        if (jsonFile == null) {
+            printReport(err);
+            return;
+        }
+        try {
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(jsonFile), "UTF-8"));
+            try {
+                writeJson(out);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            err.println("Error: Cannot write profile to " + jsonFile + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Prints the phases in the order they started, each indented below the phase it ran within, followed by the beans,
+     * slowest first.  Times are in milliseconds; a bean's total includes the beans created while it was, its self time
+     * does not.
+     */
+    public void printReport(PrintStream out) {
+        out.println("Phase                                         ms");
+        for (Phase phase : getPhases()) {
+            String name = indent(phase.depth) + phase.name;
+            out.println(String.format("%-40s %9.3f", name, millis(phase.end - phase.start)));
+        }
+        out.println();
+        out.println(" total ms   self ms  instance  populate      init  bean");
+        for (BeanTiming bean : getBeansSlowestFirst()) {
+            out.println(String.format("%9.3f %9.3f %9.3f %9.3f %9.3f  %s", millis(bean.getTotal()), millis(bean.getSelf()),
+                millis(bean.getInstantiation()), millis(bean.getPopulation()), millis(bean.getInitialization()), bean.name));
+        }
+    }
+
+    public void writeJson(PrintWriter out) {
+        out.println("{");
+        out.println("  \"phases\": [");
+        List<Phase> sorted = getPhases();
+        for (int i = 0; i < sorted.size(); ++i) {
+            Phase phase = sorted.get(i);
+            out.printf("    {\"name\": %s, \"depth\": %d, \"startNanos\": %d, \"nanos\": %d}%s%n", quote(phase.name),
+                phase.depth, phase.start, phase.end - phase.start, i + 1 < sorted.size() ? "," : "");
+        }
+        out.println("  ],");
+        out.println("  \"beans\": [");
+        List<BeanTiming> slowest = getBeansSlowestFirst();
+        for (int i = 0; i < slowest.size(); ++i) {
+            BeanTiming bean = slowest.get(i);
+            out.printf("    {\"name\": %s, \"thread\": %s, \"nanos\": %d, \"selfNanos\": %d, \"instantiationNanos\": %d, "
+                + "\"populationNanos\": %d, \"initializationNanos\": %d}%s%n", quote(bean.name), quote(bean.thread),
+                bean.getTotal(), bean.getSelf(), bean.getInstantiation(), bean.getPopulation(), bean.getInitialization(),
+                i + 1 < slowest.size() ? "," : "");
+        }
+        out.println("  ]");
+        out.println("}");
+    }
+
+    /**
+     * Returns the phases in the order they started, with their depths set.
+     */
+    List<Phase> getPhases() {
+        List<Phase> sorted;
+        synchronized (phases) {
+            sorted = new ArrayList<Phase>(phases);
+        }
+        Collections.sort(sorted, new Comparator<Phase>() {
+            public int compare(Phase left, Phase right) {
+                // outer phases first when starting together
+                return left.start != right.start ? Long.signum(left.start - right.start) : Long.signum(right.end - left.end);
+            }
+        });
+        Deque<Phase> enclosing = new ArrayDeque<Phase>();
+        for (Phase phase : sorted) {
+            while (!enclosing.isEmpty() && enclosing.peek().end < phase.end) {
+                enclosing.pop();
+            }
+            phase.depth = enclosing.size();
+            enclosing.push(phase);
+        }
+        return sorted;
+    }
+
+    List<BeanTiming> getBeansSlowestFirst() {
+        List<BeanTiming> sorted;
+        synchronized (beans) {
+            sorted = new ArrayList<BeanTiming>(beans);
+        }
+        Collections.sort(sorted, new Comparator<BeanTiming>() {
+            public int compare(BeanTiming left, BeanTiming right) {
+                return Long.signum(right.getTotal() - left.getTotal());
+            }
+        });
+        return sorted;
+    }
+
+    private static String indent(int depth) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < depth; ++i) {
+            result.append("  ");
+        }
+        return result.toString();
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    static class Phase {
+        private final String name;
+        private final long start;
+        private final long end;
+        private int depth;
+
+        public Phase(String name, long start, long end) {
+            this.name = name;
+            this.start = start;
+            this.end = end;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public long getNanos() {
+            return end - start;
+        }
+    }
+
+    static class BeanTiming {
+        private final String name;
+        private final String thread = Thread.currentThread().getName();
+        private final long start = System.nanoTime();
+        private long instantiated;
+        private long populated;
+        private long initialized;
+        private long nested;
+
+        public BeanTiming(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getTotal() {
+            return initialized - start;
+        }
+
+        public long getSelf() {
+            return getTotal() - nested;
+        }
+
+        public long getInstantiation() {
+            return instantiated == 0 ? 0 : instantiated - start;
+        }
+
+        public long getPopulation() {
+            return instantiated == 0 || populated == 0 ? 0 : populated - instantiated;
+        }
+
+        public long getInitialization() {
+            return populated == 0 ? 0 : initialized - populated;
+        }
+    }
+
+    /**
+     * Times each bean on the thread creating it, keeping the beans in creation on each thread to tell the time a bean
+     * took itself from the time taken by the beans it caused to be created.
+     */
+    private class ProfilingPostProcessor implements InstantiationAwareBeanPostProcessor {
+        private final ThreadLocal<Deque<BeanTiming>> creating = new ThreadLocal<Deque<BeanTiming>>() {
+            @Override
+            protected Deque<BeanTiming> initialValue() {
+                return new ArrayDeque<BeanTiming>();
+            }
+        };
+
+        public Object postProcessBeforeInstantiation(Class<?> beanClass, String beanName) {
+            creating.get().push(new BeanTiming(beanName));
+            return null;
+        }
+
+        public boolean postProcessAfterInstantiation(Object bean, String beanName) {
+            BeanTiming timing = find(beanName);
+            if (timing != null) {
+                timing.instantiated = System.nanoTime();
+            }
+            return true;
+        }
+
+        public PropertyValues postProcessPropertyValues(PropertyValues pvs, PropertyDescriptor[] pds, Object bean,
+                String beanName) {
+            return pvs;
+        }
+
+        public Object postProcessBeforeInitialization(Object bean, String beanName) {
+            BeanTiming timing = find(beanName);
+            if (timing != null) {
+                timing.populated = System.nanoTime();
+            }
+            return bean;
+        }
+
+        public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+            Deque<BeanTiming> stack = creating.get();
+            if (find(beanName) == null) {
+                return bean;
+            }
+            // drop any beans whose creation failed
+            BeanTiming timing = stack.pop();
+            while (!timing.name.equals(beanName)) {
+                timing = stack.pop();
+            }
+            timing.initialized = System.nanoTime();
+            if (!stack.isEmpty()) {
+                stack.peek().nested += timing.getTotal();
+            }
+            synchronized (beans) {
+                beans.add(timing);
+            }
+            return bean;
+        }
+
+        private BeanTiming find(String beanName) {
+            for (BeanTiming timing : creating.get()) {
+                if (timing.name.equals(beanName)) {
+                    return timing;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Properties;
+
+/**
+ * Wire format shared by {@link CommandLineServer} and {@link CommandLineClient}.  The client sends the token,
+ * arguments, working directory and environment, followed by standard input as {@link #STDIN} frames ending with
+ * {@link #STDIN_EOF}.  The server answers with {@link #STDOUT} and {@link #STDERR} frames and a final {@link #EXIT}
+ * frame carrying the exit status.  Only JDK classes are used here so that the client loads no Spring classes.
+ */
+final class CommandLineProtocol {
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    static final byte STDIN = 'I';
+    static final byte STDIN_EOF = 'Z';
+    static final byte STDOUT = 'O';
+    static final byte STDERR = 'E';
+    static final byte EXIT = 'X';
+
+    static final String PORT_PROPERTY = "port";
+    static final String TOKEN_PROPERTY = "token";
+
+    private static final int MAX_STRING_LENGTH = 16 * 1024 * 1024;
+
+    private CommandLineProtocol() {
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        return readString(in, MAX_STRING_LENGTH);
+    }
+
+    /**
+     * Reads a string of at most the given length in bytes, rejecting longer ones before reading them.
+     */
+    static String readString(DataInputStream in, int maxLength) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > maxLength) {
+            throw new IOException("Invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    static void writeFrame(DataOutputStream out, byte type, byte[] buffer, int offset, int length) throws IOException {
+        synchronized (out) {
+            out.writeByte(type);
+            out.writeInt(length);
+            out.write(buffer, offset, length);
+            out.flush();
+        }
+    }
+
+    static Properties readState(File stateFile) throws IOException {
+        Properties state = new Properties();
+        InputStream in = new FileInputStream(stateFile);
+        try {
+            state.load(in);
+        } finally {
+            in.close();
+        }
+        return state;
+    }
+
+    /**
+     * Output stream sending everything written to it as frames of the given type.
+     */
+    static class FrameOutputStream extends OutputStream {
+        private final DataOutputStream out;
+        private final byte type;
+
+        FrameOutputStream(DataOutputStream out, byte type) {
+            this.out = out;
+            this.type = type;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > 0) {
+                writeFrame(out, type, b, off, len);
+            }
+        }
+    }
+
+    /**
+     * Input stream reading the payload of {@link #STDIN} frames until {@link #STDIN_EOF}.
+     */
+    static class FrameInputStream extends InputStream {
+        private final DataInputStream in;
+        private int remaining;
+        private boolean eof;
+
+        FrameInputStream(DataInputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public synchronized int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (remaining == 0) {
+                if (eof || !nextFrame()) {
+                    return -1;
+                }
+            }
+            int count = in.read(b, off, Math.min(len, remaining));
+            if (count < 0) {
+                throw new EOFException("Connection closed in the middle of a frame");
+            }
+            remaining -= count;
+            return count;
+        }
+
+        @Override
+        public synchronized int available() {
+            return remaining;
+        }
+
+        private boolean nextFrame() throws IOException {
+            byte type = in.readByte();
+            if (type == STDIN_EOF) {
+                eof = true;
+                return false;
+            } else if (type != STDIN) {
+                throw new IOException("Unexpected frame type " + (char) type);
+            }
+            remaining = in.readInt();
+            if (remaining < 0) {
+                throw new IOException("Invalid frame length " + remaining);
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.trigonic.utils.spring.cmdline;
+
+import static com.trigonic.utils.spring.cmdline.CommandLineProtocol.EXIT;
+import static com.trigonic.utils.spring.cmdline.CommandLineProtocol.PORT_PROPERTY;
+import static com.trigonic.utils.spring.cmdline.CommandLineProtocol.STDERR;
+import static com.trigonic.utils.spring.cmdline.CommandLineProtocol.STDOUT;
+import static com.trigonic.utils.spring.cmdline.CommandLineProtocol.TOKEN_PROPERTY;
+import static com.trigonic.utils.spring.cmdline.CommandLineProtocol.UTF8;
+import static com.trigonic.utils.spring.cmdline.CommandLineProtocol.readString;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.util.ClassUtils;
+
+import com.trigonic.utils.spring.cmdline.CommandLineProtocol.FrameInputStream;
+import com.trigonic.utils.spring.cmdline.CommandLineProtocol.FrameOutputStream;
+
+/**
+ * Keeps a refreshed {@link CommandLineContext} and the command's cached metadata warm, running invocations sent
+ * by {@link CommandLineClient} so that they skip JVM startup, class loading and context refresh.  Each invocation
+ * binds a fresh command bean, which is destroyed once it has run.
+ * <p>
+ * The server listens on a loopback port recorded, together with a random token clients must present, in a state file
+ * readable only by its owner.  A connection must send the token and the rest of its invocation within the
+ * {@link #setHandshakeTimeoutMillis(int) handshake timeout}, so that a client sending nothing cannot hold a thread or
+ * keep the server alive.  It shuts down once it has been idle for the configured timeout.
+ */
+public class CommandLineServer implements Closeable {
+    private static final Log log = LogFactory.getLog(CommandLineServer.class);
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final int ACCEPT_TIMEOUT_MILLIS = 1000;
+    private static final int DEFAULT_HANDSHAKE_TIMEOUT_MILLIS = 10000;
+
+    private final CommandLineContext appContext;
+    private final Class<? extends Runnable> beanClass;
+    private final File stateFile;
+    private final long idleTimeoutMillis;
+    private final byte[] token;
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor;
+    private final AtomicInteger activeInvocations = new AtomicInteger();
+    private volatile int handshakeTimeoutMillis = DEFAULT_HANDSHAKE_TIMEOUT_MILLIS;
+    private volatile long lastActivity = System.currentTimeMillis();
+    private volatile boolean closed;
+
+    public CommandLineServer(CommandLineContext appContext, Class<? extends Runnable> beanClass, File stateFile,
+            long idleTimeoutMillis) throws IOException {
+        this.appContext = appContext;
+        this.beanClass = beanClass;
+        this.stateFile = stateFile;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+
+        byte[] tokenBytes = new byte[16];
+        new SecureRandom().nextBytes(tokenBytes);
+        token = toHex(tokenBytes).getBytes(UTF8);
+
+        // warm the metadata cache before the first client arrives
+        CommandLineParserTemplate.forClass(beanClass);
+
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        serverSocket.setSoTimeout(ACCEPT_TIMEOUT_MILLIS);
+        executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "cmdline-invocation-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        writeState();
+    }
+
+    /**
+     * Accepts invocations until the server is closed or has been idle for the timeout, then closes it.
+     */
+    public void serve() throws IOException {
+        CommandLineInvocation.installSystemStreams();
+        try {
+            while (!closed) {
+                Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                } catch (SocketTimeoutException e) {
+                    if (activeInvocations.get() == 0 && System.currentTimeMillis() - lastActivity > idleTimeoutMillis) {
+                        log.info("Idle timeout reached, shutting down");
+                        break;
+                    }
+                    continue;
+                } catch (IOException e) {
+                    if (closed) {
+                        break;
+                    }
+                    throw e;
+                }
+                activeInvocations.incrementAndGet();
+                executor.execute(new Connection(socket));
+            }
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Sets how long a connection may take to send its invocation, up to its standard input, before it is dropped.
+     */
+    public void setHandshakeTimeoutMillis(int handshakeTimeoutMillis) {
+        this.handshakeTimeoutMillis = handshakeTimeoutMillis;
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        stateFile.delete();
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            log.warn("Failed to close server socket", e);
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(idleTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        appContext.close();
+    }
+
+    /**
+     * Runs one invocation against the warm context, returning its exit status.
+     */
+    protected int invoke(CommandLineInvocation invocation) {
+        return appContext.invoke(beanClass, invocation);
+    }
+
+    private void writeState() throws IOException {
+        Path path = stateFile.toPath();
+        Files.deleteIfExists(path);
+        try {
+            Set<PosixFilePermission> ownerOnly = PosixFilePermissions.fromString("rw-------");
+            Files.createFile(path, PosixFilePermissions.asFileAttribute(ownerOnly));
+        } catch (UnsupportedOperationException e) {
+            Files.createFile(path);
+            stateFile.setReadable(false, false);
+            stateFile.setReadable(true, true);
+        } catch (FileAlreadyExistsException e) {
+            throw new IOException("Another server created " + stateFile + " concurrently", e);
+        }
+        Properties state = new Properties();
+        state.setProperty(PORT_PROPERTY, String.valueOf(getPort()));
+        state.setProperty(TOKEN_PROPERTY, new String(token, UTF8));
+        OutputStream out = new FileOutputStream(stateFile);
+        try {
+            state.store(out, "spring-cmdline server for " + beanClass.getName());
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder result = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            result.append(String.format("%02x", b));
+        }
+        return result.toString();
+    }
+
+    /**
+     * Usage: {@code CommandLineServer <state file> <idle timeout seconds> <command class> <context resource>...}
+     */
+    @SuppressWarnings("unchecked")
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: CommandLineServer <state file> <idle timeout seconds> <command class> <context resource>...");
+            System.exit(CommandLineInvocation.EXIT_USAGE);
+        }
+        File stateFile = new File(args[0]);
+        long idleTimeoutMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(args[1]));
+        Class<? extends Runnable> beanClass = (Class<? extends Runnable>) ClassUtils.forName(args[2], CommandLineServer.class.getClassLoader());
+        Object[] resources = new Object[args.length - 3];
+        System.arraycopy(args, 3, resources, 0, resources.length);
+        new CommandLineServer(new CommandLineAppContext(resources), beanClass, stateFile, idleTimeoutMillis).serve();
+    }
+
+    private class Connection implements Runnable {
+        private final Socket socket;
+
+        public Connection(Socket socket) {
+            this.socket = socket;
+        }
+
+        public void run() {
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+                socket.setSoTimeout(handshakeTimeoutMillis);
+                // nothing longer than the token is read before the token is checked
+                if (!MessageDigest.isEqual(token, readString(in, token.length).getBytes(UTF8))) {
+                    log.warn("Rejected connection presenting an invalid token");
+                    return;
+                }
+                int argCount = in.readInt();
+                String[] args = new String[argCount];
+                for (int i = 0; i < argCount; ++i) {
+                    args[i] = readString(in);
+                }
+                File workingDirectory = new File(readString(in));
+                int envCount = in.readInt();
+                Map<String, String> environment = new LinkedHashMap<String, String>();
+                for (int i = 0; i < envCount; ++i) {
+                    environment.put(readString(in), readString(in));
+                }
+                // standard input may legitimately stay quiet for as long as the command runs
+                socket.setSoTimeout(0);
+
+                PrintStream stdout = new PrintStream(new BufferedOutputStream(new FrameOutputStream(out, STDOUT), BUFFER_SIZE), false, UTF8.name());
+                PrintStream stderr = new PrintStream(new FrameOutputStream(out, STDERR), true, UTF8.name());
+                CommandLineInvocation invocation = new CommandLineInvocation(args, workingDirectory, environment,
+                    new FrameInputStream(in), stdout, stderr);
+                int exitStatus = invoke(invocation);
+
+                synchronized (out) {
+                    out.writeByte(EXIT);
+                    out.writeInt(exitStatus);
+                    out.flush();
+                }
+            } catch (SocketTimeoutException e) {
+                log.warn("Dropped connection that did not send its invocation within " + handshakeTimeoutMillis
+                    + " ms");
+            } catch (IOException e) {
+                log.warn("Invocation failed", e);
+            } finally {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    log.debug("Failed to close connection", e);
+                }
+                lastActivity = System.currentTimeMillis();
+                activeInvocations.decrementAndGet();
+            }
+        }
+    }
+}
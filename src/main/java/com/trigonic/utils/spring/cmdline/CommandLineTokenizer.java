@@ -0,0 +1,101 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a line into arguments following POSIX shell quoting: whitespace separates arguments, single quotes preserve
+ * everything literally, double quotes preserve everything but backslash escapes of {@code " \ $ `}, a backslash
+ * outside quotes escapes the next character, and an unquoted {@code #} starting an argument begins a comment.  No
+ * expansion of any kind is performed.
+ */
+public class CommandLineTokenizer {
+    private CommandLineTokenizer() {
+    }
+
+    /**
+     * @throws IllegalArgumentException if a quote is left unterminated or the line ends with a backslash
+     */
+    public static String[] tokenize(CharSequence line) {
+        List<String> result = new ArrayList<String>();
+        StringBuilder token = new StringBuilder();
+        boolean inToken = false;
+        int length = line.length();
+        for (int i = 0; i < length; ++i) {
+            char c = line.charAt(i);
+            if (c == '\'') {
+                int end = indexOf(line, '\'', i + 1);
+                if (end < 0) {
+                    throw new IllegalArgumentException(String.format("Unterminated single quote at column %d", i + 1));
+                }
+                token.append(line, i + 1, end);
+                inToken = true;
+                i = end;
+            } else if (c == '"') {
+                i = appendDoubleQuoted(line, i, token);
+                inToken = true;
+            } else if (c == '\\') {
+                if (i + 1 == length) {
+                    throw new IllegalArgumentException("Trailing backslash");
+                }
+                token.append(line.charAt(++i));
+                inToken = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inToken) {
+                    result.add(token.toString());
+                    token.setLength(0);
+                    inToken = false;
+                }
+            } else if (c == '#' && !inToken) {
+                break;
+            } else {
+                token.append(c);
+                inToken = true;
+            }
+        }
+        if (inToken) {
+            result.add(token.toString());
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+    private static int appendDoubleQuoted(CharSequence line, int start, StringBuilder token) {
+        for (int i = start + 1; i < line.length(); ++i) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                return i;
+            } else if (c == '\\' && i + 1 < line.length() && "\"\\$`".indexOf(line.charAt(i + 1)) >= 0) {
+                token.append(line.charAt(++i));
+            } else {
+                token.append(c);
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unterminated double quote at column %d", start + 1));
+    }
+
+    private static int indexOf(CharSequence line, char c, int from) {
+        for (int i = from; i < line.length(); ++i) {
+            if (line.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
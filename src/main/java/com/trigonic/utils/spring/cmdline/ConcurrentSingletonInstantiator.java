@@ -0,0 +1,224 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.beans.factory.BeanCreationException;
+
+/**
+ * Instantiates singletons on a bounded pool, each once those it depends on have been, so that the time taken tracks
+ * the longest chain of dependencies rather than the number of singletons.  Singletons that depend on one another in a
+ * cycle are created together on one thread, in registration order, which lets the factory resolve the cycle as usual.
+ * Dependencies through beans not being instantiated here, such as prototypes, are followed to the singletons beyond.
+ */
+final class ConcurrentSingletonInstantiator {
+    private final CommandLineBeanFactory beanFactory;
+    private final int parallelism;
+    private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    private ExecutorService executor;
+    private CountDownLatch done;
+
+    public ConcurrentSingletonInstantiator(CommandLineBeanFactory beanFactory, int parallelism) {
+        this.beanFactory = beanFactory;
+        this.parallelism = parallelism;
+    }
+
+    public void instantiate(List<String> beanNames) {
+        List<Group> groups = groupCycles(findDependencies(beanNames));
+        executor = Executors.newFixedThreadPool(Math.min(parallelism, groups.size()));
+        done = new CountDownLatch(groups.size());
+        try {
+            for (Group group : groups) {
+                if (group.remaining.get() == 0) {
+                    submit(group);
+                }
+            }
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, new BeanCreationException("Interrupted while instantiating singletons"));
+        } finally {
+            executor.shutdown();
+        }
+
+        Throwable cause = failure.get();
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        } else if (cause != null) {
+            throw new BeanCreationException("Failed to instantiate singletons", cause);
+        }
+    }
+
+    /**
+     * Returns the singletons each of the given ones depends on, directly or through other beans.
+     */
+    private Map<String, Set<String>> findDependencies(List<String> beanNames) {
+        Set<String> instantiated = new HashSet<String>(beanNames);
+        Map<String, Set<String>> direct = new HashMap<String, Set<String>>();
+        Map<String, Set<String>> dependencies = new LinkedHashMap<String, Set<String>>();
+        for (String beanName : beanNames) {
+            Set<String> found = new LinkedHashSet<String>();
+            Set<String> visited = new HashSet<String>();
+            Deque<String> pending = new ArrayDeque<String>(getDirect(beanName, direct));
+            while (!pending.isEmpty()) {
+                String dependency = pending.poll();
+                if (!visited.add(dependency)) {
+                    continue;
+                }
+                if (instantiated.contains(dependency)) {
+                    found.add(dependency);
+                } else {
+                    pending.addAll(getDirect(dependency, direct));
+                }
+            }
+            found.remove(beanName);
+            dependencies.put(beanName, found);
+        }
+        return dependencies;
+    }
+
+    private Set<String> getDirect(String beanName, Map<String, Set<String>> direct) {
+        Set<String> dependencies = direct.get(beanName);
+        if (dependencies == null) {
+            dependencies = beanFactory.findDependencies(beanName);
+            direct.put(beanName, dependencies);
+        }
+        return dependencies;
+    }
+
+    /**
+     * Groups the singletons into the strongly connected components of their dependency graph, found with Tarjan's
+     * algorithm, and links each group to the groups depending on it.
+     */
+    private static List<Group> groupCycles(Map<String, Set<String>> dependencies) {
+        Tarjan tarjan = new Tarjan(dependencies);
+        final Map<String, Integer> order = new HashMap<String, Integer>();
+        for (String beanName : dependencies.keySet()) {
+            order.put(beanName, order.size());
+            if (!tarjan.index.containsKey(beanName)) {
+                tarjan.connect(beanName);
+            }
+        }
+        for (Group group : tarjan.groups) {
+            Collections.sort(group.beanNames, new Comparator<String>() {
+                public int compare(String left, String right) {
+                    return order.get(left) - order.get(right);
+                }
+            });
+            Set<Group> dependedOn = new HashSet<Group>();
+            for (String beanName : group.beanNames) {
+                for (String dependency : dependencies.get(beanName)) {
+                    Group other = tarjan.groupOf.get(dependency);
+                    if (other != group && dependedOn.add(other)) {
+                        other.dependents.add(group);
+                        group.remaining.incrementAndGet();
+                    }
+                }
+            }
+        }
+        return tarjan.groups;
+    }
+
+    private void submit(final Group group) {
+        executor.execute(new Runnable() {
+            public void run() {
+                try {
+                    if (failure.get() == null) {
+                        for (String beanName : group.beanNames) {
+                            beanFactory.instantiateSingleton(beanName);
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    // dependents still run once failed, to count down, but create nothing
+                    for (Group dependent : group.dependents) {
+                        if (dependent.remaining.decrementAndGet() == 0) {
+                            submit(dependent);
+                        }
+                    }
+                    done.countDown();
+                }
+            }
+        });
+    }
+
+    private static class Group {
+        private final List<String> beanNames = new ArrayList<String>();
+        private final List<Group> dependents = new ArrayList<Group>();
+        private final AtomicInteger remaining = new AtomicInteger();
+    }
+
+    private static class Tarjan {
+        private final Map<String, Set<String>> dependencies;
+        private final Map<String, Integer> index = new HashMap<String, Integer>();
+        private final Map<String, Integer> lowLink = new HashMap<String, Integer>();
+        private final Deque<String> stack = new ArrayDeque<String>();
+        private final Set<String> onStack = new HashSet<String>();
+        private final Map<String, Group> groupOf = new HashMap<String, Group>();
+        private final List<Group> groups = new ArrayList<Group>();
+
+        public Tarjan(Map<String, Set<String>> dependencies) {
+            this.dependencies = dependencies;
+        }
+
+        public void connect(String beanName) {
+            index.put(beanName, index.size());
+            lowLink.put(beanName, index.get(beanName));
+            stack.push(beanName);
+            onStack.add(beanName);
+            for (String dependency : dependencies.get(beanName)) {
+                if (!index.containsKey(dependency)) {
+                    connect(dependency);
+                    lowLink.put(beanName, Math.min(lowLink.get(beanName), lowLink.get(dependency)));
+                } else if (onStack.contains(dependency)) {
+                    lowLink.put(beanName, Math.min(lowLink.get(beanName), index.get(dependency)));
+                }
+            }
+            if (lowLink.get(beanName).equals(index.get(beanName))) {
+                Group group = new Group();
+                String member;
+                do {
+                    member = stack.pop();
+                    onStack.remove(member);
+                    group.beanNames.add(member);
+                    groupOf.put(member, group);
+                } while (!member.equals(beanName));
+                groups.add(group);
+            }
+        }
+    }
+}
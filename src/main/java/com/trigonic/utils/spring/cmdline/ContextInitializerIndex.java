@@ -0,0 +1,181 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Properties;
+
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.BeanDefinitionStoreException;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Index of the {@link CommandLineContextInitializer}s on the class path, kept in {@value #LOCATION} properties files
+ * that map the descriptions of a context's resources, as given by {@link #getKey(Resource[])}, to the initializer
+ * generated from them, the {@link #getDigest(Resource[]) digest} of their contents at the time and the locations of the
+ * resources they {@code <import>}, whose contents the digest covers as well.  An initializer is only used while the
+ * resources still have that digest, so editing the XML without regenerating the initializer makes the context parse
+ * the XML again rather than silently run stale definitions.
+ */
+final class ContextInitializerIndex {
+    static final String LOCATION = "META-INF/com.trigonic.utils.spring.cmdline.initializers";
+
+    /**
+     * System property which, when {@code false}, makes contexts load their resources even if an initializer exists.
+     */
+    static final String ENABLED_PROPERTY = "com.trigonic.utils.spring.cmdline.initializers";
+
+    private static final String IMPORT_SEPARATOR = ", ";
+
+    private ContextInitializerIndex() {
+    }
+
+    static String getKey(Resource[] resources) {
+        StringBuilder key = new StringBuilder();
+        for (Resource resource : resources) {
+            if (key.length() > 0) {
+                key.append(", ");
+            }
+            key.append(resource.getDescription());
+        }
+        return key.toString();
+    }
+
+    /**
+     * Returns the hex SHA-256 digest of the contents of the given resources, in order.
+     */
+    static String getDigest(Resource[] resources) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[8192];
+        for (Resource resource : resources) {
+            InputStream in = resource.getInputStream();
+            try {
+                for (int count = in.read(buffer); count >= 0; count = in.read(buffer)) {
+                    digest.update(buffer, 0, count);
+                }
+            } finally {
+                in.close();
+            }
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    static String getEntry(String className, Resource[] resources, List<Resource> imports) throws IOException {
+        StringBuilder entry = new StringBuilder(className).append(' ').append(getDigest(concat(resources, imports)));
+        for (int i = 0; i < imports.size(); ++i) {
+            entry.append(i == 0 ? " " : IMPORT_SEPARATOR).append(getLocation(imports.get(i)));
+        }
+        return entry.toString();
+    }
+
+    /**
+     * Returns a location that resolves to the given imported resource wherever the class path is laid out the same.
+     */
+    static String getLocation(Resource resource) throws IOException {
+        if (resource instanceof ClassPathResource) {
+            return ResourceLoader.CLASSPATH_URL_PREFIX + ((ClassPathResource) resource).getPath();
+        }
+        return resource.getURL().toString();
+    }
+
+    /**
+     * Returns the initializer generated from the given resources, or {@code null} if there is none, the resources
+     * have changed since it was generated or initializers are disabled.
+     */
+    public static CommandLineContextInitializer find(Resource[] resources, ClassLoader classLoader) {
+        if ("false".equals(System.getProperty(ENABLED_PROPERTY)) || resources == null || resources.length == 0) {
+            return null;
+        }
+        String key = getKey(resources);
+        String entry = null;
+        try {
+            for (Enumeration<URL> urls = classLoader.getResources(LOCATION); entry == null && urls.hasMoreElements();) {
+                entry = load(urls.nextElement()).getProperty(key);
+            }
+        } catch (IOException e) {
+            throw new BeanDefinitionStoreException("Cannot read context initializer index", e);
+        }
+        if (entry == null) {
+            return null;
+        }
+        int space = entry.indexOf(' ');
+        int importsStart = entry.indexOf(' ', space + 1);
+        String digest = entry.substring(space + 1, importsStart < 0 ? entry.length() : importsStart);
+        List<Resource> imports = new ArrayList<Resource>();
+        if (importsStart >= 0) {
+            ResourceLoader resourceLoader = new DefaultResourceLoader(classLoader);
+            for (String location : entry.substring(importsStart + 1).split(IMPORT_SEPARATOR)) {
+                imports.add(resourceLoader.getResource(location));
+            }
+        }
+        try {
+            if (space < 0 || !digest.equals(getDigest(concat(resources, imports)))) {
+                return null;  // generated by an older version or from other contents; the XML is authoritative
+            }
+        } catch (IOException e) {
+            return null;  // let loading the XML report it
+        }
+        String className = entry.substring(0, space);
+        try {
+            Class<?> initializerClass = ClassUtils.forName(className, classLoader);
+            return BeanUtils.instantiateClass(initializerClass, CommandLineContextInitializer.class);
+        } catch (ClassNotFoundException e) {
+            throw new BeanDefinitionStoreException("Context initializer " + className + " for [" + key
+                + "] is indexed but missing", e);
+        }
+    }
+
+    private static Resource[] concat(Resource[] resources, List<Resource> imports) {
+        Resource[] all = Arrays.copyOf(resources, resources.length + imports.size());
+        for (int i = 0; i < imports.size(); ++i) {
+            all[resources.length + i] = imports.get(i);
+        }
+        return all;
+    }
+
+    static Properties load(URL url) throws IOException {
+        Properties index = new Properties();
+        InputStream in = url.openStream();
+        try {
+            index.load(in);
+        } finally {
+            in.close();
+        }
+        return index;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Array;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Binding of option and operand values to {@link File}s, {@link Path}s and to read-only {@link FileChannel}s,
+ * {@link ReadableByteChannel}s, {@link MappedByteBuffer}s and {@link MappedFile}s of the named files, and arrays of
+ * them.  A file to be read must exist and be readable when the value is bound, or it is a usage error, but channels
+ * only open their files on first use, and {@code -} stands for standard input; a {@code MappedByteBuffer} is mapped,
+ * which costs no reading, as soon as the value is bound and is limited to 2 GB.
+ * Files are resolved against the working directory of the current {@link CommandLineInvocation}, if any, and
+ * whatever is opened is closed along with the {@link CommandLineBeanDefinition} it was bound for.
+ */
+final class FileValues {
+    private static final Set<Class<?>> types = new HashSet<Class<?>>(Arrays.<Class<?>> asList(File.class, Path.class,
+        ReadableByteChannel.class, FileChannel.class, MappedByteBuffer.class, MappedFile.class));
+
+    private FileValues() {
+    }
+
+    public static boolean isSupported(Class<?> type) {
+        return types.contains(type);
+    }
+
+    public static boolean isSupportedArray(Class<?> type) {
+        return type.isArray() && isSupported(type.getComponentType());
+    }
+
+    /**
+     * @throws ArgumentValueException if the value is not a valid path, names a file to be read that does not exist or
+     *         is not readable, or cannot be mapped
+     */
+    public static Object open(String value, Class<?> type, String name) {
+        boolean standardInput = "-".equals(value);
+        try {
+            if (type == File.class) {
+                return resolve(value);
+            } else if (type == Path.class) {
+                return resolve(value).toPath();
+            } else if (type == MappedByteBuffer.class || type == MappedFile.class) {
+                if (standardInput) {
+                    throw new ArgumentValueException(String.format("Standard input of [%s] cannot be mapped", name));
+                }
+                File file = readable(resolve(value), name);
+                return type == MappedFile.class ? new MappedFile(file) : map(file, name);
+            } else if (standardInput && type == ReadableByteChannel.class) {
+                CommandLineInvocation invocation = CommandLineInvocation.current();
+                InputStream in = invocation == null ? System.in : invocation.getIn();
+                return Channels.newChannel(in);
+            } else {
+                if (standardInput) {
+                    CommandLineInvocation invocation = CommandLineInvocation.current();
+                    if (invocation != null && !invocation.hasProcessInput()) {
+                        throw new ArgumentValueException(String.format(
+                            "Standard input of [%s] is not a file; bind it as a ReadableByteChannel", name));
+                    }
+                }
+                return new LazyFileChannel(value, standardInput ? null : readable(resolve(value), name).toPath());
+            }
+        } catch (InvalidPathException e) {
+            throw new ArgumentValueException(String.format("Value [%s] of [%s] is not a valid path", value, name), e);
+        }
+    }
+
+    public static Object openArray(List<String> values, Class<?> arrayType, String name) {
+        Class<?> type = arrayType.getComponentType();
+        Object result = Array.newInstance(type, values.size());
+        for (int i = 0; i < values.size(); ++i) {
+            Array.set(result, i, open(values.get(i), type, name));
+        }
+        return result;
+    }
+
+    /**
+     * Adds the given value, or the elements of an array value, to the resources if they need closing, which standard
+     * input never does.
+     */
+    public static void collectResources(Object value, List<Closeable> resources) {
+        if (value instanceof LazyFileChannel) {
+            if (!((LazyFileChannel) value).isStandardInput()) {
+                resources.add((Closeable) value);
+            }
+        } else if (value instanceof MappedFile) {
+            resources.add((Closeable) value);
+        } else if (value instanceof Object[] && isSupported(value.getClass().getComponentType())) {
+            for (Object element : (Object[]) value) {
+                collectResources(element, resources);
+            }
+        }
+    }
+
+    private static MappedByteBuffer map(File file, String name) {
+        try {
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            try {
+                if (channel.size() > Integer.MAX_VALUE) {
+                    throw new ArgumentValueException(String.format("File [%s] of [%s] is larger than 2 GB; bind it as a %s instead",
+                        file, name, MappedFile.class.getSimpleName()));
+                }
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } finally {
+                channel.close();
+            }
+        } catch (IOException e) {
+            throw new ArgumentValueException(String.format("Cannot map file [%s] of [%s]: %s", file, name, e.getMessage()), e);
+        }
+    }
+
+    private static File readable(File file, String name) {
+        if (!file.exists()) {
+            throw new ArgumentValueException(String.format("File [%s] of [%s] does not exist", file, name));
+        }
+        if (file.isDirectory() || !file.canRead()) {
+            throw new ArgumentValueException(String.format("File [%s] of [%s] is not readable", file, name));
+        }
+        return file;
+    }
+
+    private static File resolve(String path) {
+        CommandLineInvocation invocation = CommandLineInvocation.current();
+        return invocation == null ? new File(path) : invocation.resolve(path);
+    }
+}
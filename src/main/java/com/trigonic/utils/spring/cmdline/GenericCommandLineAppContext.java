@@ -0,0 +1,177 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.io.Reader;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.AutowiredAnnotationBeanPostProcessor;
+import org.springframework.beans.factory.annotation.RequiredAnnotationBeanPostProcessor;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.annotation.AnnotatedBeanDefinitionReader;
+import org.springframework.context.annotation.AnnotationConfigUtils;
+import org.springframework.context.annotation.CommonAnnotationBeanPostProcessor;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.util.ClassUtils;
+
+/**
+ * {@link CommandLineContext} configured without XML, from annotated classes and
+ * {@link CommandLineContextInitializer}s.  {@code @Autowired}, {@code @Required} and, where JSR-250 is available,
+ * {@code @Resource} and friends are always processed, so a context of a few beans needs nothing but an initializer
+ * registering them.  Only when annotated classes are given is the {@code @Configuration} class processing loaded.
+ */
+public class GenericCommandLineAppContext extends GenericApplicationContext implements CommandLineContext {
+    private static final boolean JSR250_PRESENT = ClassUtils.isPresent("javax.annotation.Resource",
+        GenericCommandLineAppContext.class.getClassLoader());
+
+    private final CommandLineContextSupport support = new CommandLineContextSupport(this);
+
+    /**
+     * Creates and refreshes a context from the given components, each either an annotated class, registered as by
+     * {@link org.springframework.context.annotation.AnnotationConfigApplicationContext AnnotationConfigApplicationContext},
+     * or a {@link CommandLineContextInitializer}, which registers bean definitions itself.
+     */
+    public GenericCommandLineAppContext(Object... components) {
+        super(new CommandLineBeanFactory(null));
+        registerAnnotationProcessor(AnnotationConfigUtils.AUTOWIRED_ANNOTATION_PROCESSOR_BEAN_NAME,
+            AutowiredAnnotationBeanPostProcessor.class);
+        registerAnnotationProcessor(AnnotationConfigUtils.REQUIRED_ANNOTATION_PROCESSOR_BEAN_NAME,
+            RequiredAnnotationBeanPostProcessor.class);
+        if (JSR250_PRESENT) {
+            registerAnnotationProcessor(AnnotationConfigUtils.COMMON_ANNOTATION_PROCESSOR_BEAN_NAME,
+                CommonAnnotationBeanPostProcessor.class);
+        }
+        
+        long start = CommandLineProfile.start();
+        AnnotatedBeanDefinitionReader annotatedReader = null;
+        for (Object component : components) {
+            if (component instanceof Class) {
+                if (annotatedReader == null) {
+                    annotatedReader = new AnnotatedBeanDefinitionReader(this);
+                }
+                annotatedReader.register((Class<?>) component);
+            } else if (component instanceof CommandLineContextInitializer) {
+                ((CommandLineContextInitializer) component).initialize(this);
+            } else {
+                throw new IllegalArgumentException("Not an annotated class or CommandLineContextInitializer: " + component);
+            }
+        }
+        CommandLineProfile.end("load definitions", start);
+        refresh();
+    }
+    
+    @Override
+    public void refresh() {
+        CommandLineContextSupport.refresh(new Runnable() {
+            public void run() {
+                GenericCommandLineAppContext.super.refresh();
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        CommandLineContextSupport.close(new Runnable() {
+            public void run() {
+                GenericCommandLineAppContext.super.close();
+            }
+        });
+    }
+    
+    private void registerAnnotationProcessor(String beanName, Class<?> processorClass) {
+        RootBeanDefinition beanDef = new RootBeanDefinition(processorClass);
+        beanDef.setRole(BeanDefinition.ROLE_INFRASTRUCTURE);
+        registerBeanDefinition(beanName, beanDef);
+    }
+    
+    /**
+     * @see CommandLineContext
+     */
+    protected boolean isPruningSingletons() {
+        return CommandLineBeanFactory.isPruningEnabled();
+    }
+    
+    /**
+     * @see CommandLineContext
+     */
+    protected int getSingletonParallelism() {
+        return CommandLineBeanFactory.getDefaultSingletonParallelism();
+    }
+    
+    @Override
+    protected void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) {
+        super.postProcessBeanFactory(beanFactory);
+        CommandLineContextSupport.postProcessBeanFactory(this, beanFactory, isPruningSingletons(),
+            getSingletonParallelism());
+    }
+    
+    public StandardStreams getStandardStreams() {
+        return support.getStandardStreams();
+    }
+    
+    public Set<String> getDeferredSingletons() {
+        return support.getDeferredSingletons();
+    }
+    
+    public void setCompiledBinding(boolean compiledBinding) {
+        support.setCompiledBinding(compiledBinding);
+    }
+    
+    public void parse(Class<?> beanClass, String[] args) {
+        support.parse(beanClass, args);
+    }
+    
+    public String register(CommandLineBeanDefinition beanDef) {
+        return support.register(beanDef);
+    }
+    
+    @Override
+    protected void onClose() {
+        super.onClose();
+        support.onClose();
+    }
+    
+    public <T> T parseAndGet(Class<T> beanClass, String[] args) {
+        return support.parseAndGet(beanClass, args);
+    }
+    
+    public <T extends Runnable> void run(Class<T> beanClass, String[] args) {
+        support.run(beanClass, args);
+    }
+    
+    public <T extends Runnable> int invoke(Class<T> beanClass, CommandLineInvocation invocation) {
+        return support.invoke(beanClass, null, invocation);
+    }
+    
+    public <T extends Runnable> int runBatch(Class<T> beanClass, Reader lines, int parallelism) {
+        return support.runBatch(beanClass, lines, parallelism);
+    }
+    
+    /**
+     * Counterpart of {@link CommandLineAppContext#launch}: arguments are parsed and validated before the context is
+     * created from the given components.
+     */
+    public static <T extends Runnable> void launch(Class<T> beanClass, String[] args, final Object... components) {
+        CommandLineContextSupport.launch(beanClass, args, new CommandLineContextSupport.ContextFactory() {
+            public CommandLineContextSupport createContext() {
+                return new GenericCommandLineAppContext(components).support;
+            }
+        });
+    }
+}
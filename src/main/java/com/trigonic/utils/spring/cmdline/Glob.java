@@ -0,0 +1,44 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Expands the values of an {@link Operand} or {@link Option} that contain glob patterns ({@code *}, {@code ?},
+ * {@code [...]} or <code>{...}</code>) into the matching files, using {@link java.nio.file.PathMatcher} glob syntax
+ * relative to the pattern's leading directory, e.g. {@code logs/**}{@code /*.gz}.  Directories are walked in
+ * parallel and only entries other than directories are matched.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.FIELD})
+public @interface Glob {
+    /** Whether matches are sorted, or delivered in the order they were found. */
+    boolean sorted() default true;
+
+    /** Whether symbolic links to directories are followed; each directory is still walked only once. */
+    boolean followLinks() default false;
+
+    /** Deepest level below the pattern's leading directory that is searched. */
+    int maxDepth() default Integer.MAX_VALUE;
+
+    /** Whether a value naming a directory, rather than a pattern, expands to every file beneath it. */
+    boolean recursive() default false;
+}
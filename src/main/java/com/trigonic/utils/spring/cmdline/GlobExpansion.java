@@ -0,0 +1,248 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Expansion of values according to their {@link Glob} annotation.  Each directory is listed by its own fork-join task,
+ * so that large trees are walked on all processors; values that are neither patterns nor, when recursive, directories
+ * are left as they are, as are values naming an existing file, such as {@code notes[1].txt}.  As with the shell's
+ * {@code globstar}, {@code **}{@code /} also matches no directory at all, so {@code logs/**}{@code /*.gz} includes
+ * {@code logs/a.gz}.  Matches are returned as strings starting with the value's leading directory as written,
+ * relative paths being resolved against the working directory of the current {@link CommandLineInvocation}, if any.
+ */
+final class GlobExpansion {
+    private static final String PATTERN_CHARS = "*?[{";
+
+    private GlobExpansion() {
+    }
+
+    /**
+     * @return the values with each pattern replaced by its matches, or the values themselves if there were no patterns
+     * @throws ArgumentValueException if a pattern matches nothing
+     */
+    public static List<String> expand(List<String> values, Glob glob) {
+        List<String> result = null;
+        for (int i = 0; i < values.size(); ++i) {
+            String value = values.get(i);
+            List<String> matches = expand(value, glob);
+            if (matches != null && result == null) {
+                result = new ArrayList<String>(values.subList(0, i));
+            }
+            if (matches != null) {
+                result.addAll(matches);
+            } else if (result != null) {
+                result.add(value);
+            }
+        }
+        return result == null ? values : result;
+    }
+
+    /**
+     * @throws ArgumentValueException if a pattern does not match exactly one file
+     */
+    public static String expandSingle(String value, Glob glob, String name) {
+        List<String> matches = expand(value, glob);
+        if (matches == null) {
+            return value;
+        } else if (matches.size() > 1) {
+            throw new ArgumentValueException(String.format("Value [%s] of [%s] matches %d files", value, name, matches.size()));
+        }
+        return matches.get(0);
+    }
+
+    private static List<String> expand(String value, Glob glob) {
+        int patternStart = indexOfPatternChar(value);
+        String prefix;
+        String pattern;
+        if (patternStart >= 0 && resolve(value).exists()) {
+            return null;
+        } else if (patternStart >= 0) {
+            int separator = Math.max(value.lastIndexOf('/', patternStart), value.lastIndexOf(File.separatorChar, patternStart));
+            prefix = value.substring(0, separator + 1);
+            pattern = value.substring(separator + 1);
+        } else if (glob.recursive() && resolve(value).isDirectory()) {
+            prefix = value.endsWith("/") || value.endsWith(File.separator) ? value : value + File.separator;
+            pattern = "**";
+        } else {
+            return null;
+        }
+
+        Path base = resolve(prefix.length() == 0 ? "." : prefix).toPath();
+        PathMatcher matcher = new GlobstarMatcher(pattern);
+        int maxDepth = pattern.contains("**") ? glob.maxDepth() : Math.min(depthOf(pattern), glob.maxDepth());
+        Set<Object> visited = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+        List<Path> found = Walk.pool.invoke(new Walk(base, base, matcher, 0, maxDepth, glob.followLinks(), visited));
+
+        List<String> result = new ArrayList<String>(found.size());
+        for (Path path : found) {
+            result.add(prefix + base.relativize(path));
+        }
+        if (result.isEmpty()) {
+            throw new ArgumentValueException(String.format("No files match [%s]", value));
+        }
+        if (glob.sorted()) {
+            Collections.sort(result);
+        }
+        return result;
+    }
+
+    private static int indexOfPatternChar(String value) {
+        for (int i = 0; i < value.length(); ++i) {
+            if (PATTERN_CHARS.indexOf(value.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int depthOf(String pattern) {
+        int result = 1;
+        for (int i = 0; i < pattern.length(); ++i) {
+            char c = pattern.charAt(i);
+            if (c == '/' || c == File.separatorChar) {
+                ++result;
+            }
+        }
+        return result;
+    }
+
+    private static File resolve(String path) {
+        CommandLineInvocation invocation = CommandLineInvocation.current();
+        return invocation == null ? new File(path) : invocation.resolve(path);
+    }
+
+    /**
+     * Matches a glob pattern, or any of its variants with {@code **}{@code /} segments left out.
+     */
+    private static class GlobstarMatcher implements PathMatcher {
+        private static final String GLOBSTAR = "**/";
+
+        private final List<PathMatcher> matchers = new ArrayList<PathMatcher>();
+
+        public GlobstarMatcher(String pattern) {
+            addVariants(pattern, 0);
+        }
+
+        private void addVariants(String pattern, int from) {
+            int globstar = pattern.indexOf(GLOBSTAR, from);
+            if (globstar < 0) {
+                matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + pattern));
+            } else if (globstar == 0 || pattern.charAt(globstar - 1) == '/') {
+                addVariants(pattern, globstar + GLOBSTAR.length());
+                addVariants(pattern.substring(0, globstar) + pattern.substring(globstar + GLOBSTAR.length()), globstar);
+            } else {
+                addVariants(pattern, globstar + GLOBSTAR.length());
+            }
+        }
+
+        public boolean matches(Path path) {
+            for (PathMatcher matcher : matchers) {
+                if (matcher.matches(path)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static class Walk extends RecursiveTask<List<Path>> {
+        private static final long serialVersionUID = 1L;
+
+        private static final ForkJoinPool pool = new ForkJoinPool();
+
+        private final Path base;
+        private final Path directory;
+        private final PathMatcher matcher;
+        private final int depth;
+        private final int maxDepth;
+        private final boolean followLinks;
+        private final Set<Object> visited;
+
+        public Walk(Path base, Path directory, PathMatcher matcher, int depth, int maxDepth, boolean followLinks, Set<Object> visited) {
+            this.base = base;
+            this.directory = directory;
+            this.matcher = matcher;
+            this.depth = depth;
+            this.maxDepth = maxDepth;
+            this.followLinks = followLinks;
+            this.visited = visited;
+        }
+
+        @Override
+        protected List<Path> compute() {
+            List<Path> result = new ArrayList<Path>();
+            List<Walk> subtasks = new ArrayList<Walk>();
+            try {
+                DirectoryStream<Path> entries = Files.newDirectoryStream(directory);
+                try {
+                    for (Path entry : entries) {
+                        if (isDirectory(entry)) {
+                            if (depth + 1 < maxDepth && (!followLinks || markVisited(entry))) {
+                                Walk subtask = new Walk(base, entry, matcher, depth + 1, maxDepth, followLinks, visited);
+                                subtask.fork();
+                                subtasks.add(subtask);
+                            }
+                        } else if (matcher.matches(base.relativize(entry))) {
+                            result.add(entry);
+                        }
+                    }
+                } finally {
+                    entries.close();
+                }
+            } catch (IOException e) {
+                // unreadable directories are skipped, like find does
+            }
+            for (Walk subtask : subtasks) {
+                result.addAll(subtask.join());
+            }
+            return result;
+        }
+
+        private boolean isDirectory(Path path) {
+            return followLinks ? Files.isDirectory(path) : Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS);
+        }
+
+        /**
+         * Guards against cycles through symbolic links, returning whether the directory had not been seen before.
+         */
+        private boolean markVisited(Path directory) {
+            try {
+                Object key = Files.readAttributes(directory, BasicFileAttributes.class).fileKey();
+                return visited.add(key != null ? key : directory.toRealPath());
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.lang.annotation.Annotation;
+
+/**
+ * Instance of {@link Glob} built from literal values, used by metadata generated at compile time in place of the
+ * annotation read reflectively from the bean class.
+ */
+public class GlobLiteral implements Glob {
+    private final boolean sorted;
+    private final boolean followLinks;
+    private final int maxDepth;
+    private final boolean recursive;
+
+    public GlobLiteral(boolean sorted, boolean followLinks, int maxDepth, boolean recursive) {
+        this.sorted = sorted;
+        this.followLinks = followLinks;
+        this.maxDepth = maxDepth;
+        this.recursive = recursive;
+    }
+
+    public boolean sorted() {
+        return sorted;
+    }
+
+    public boolean followLinks() {
+        return followLinks;
+    }
+
+    public int maxDepth() {
+        return maxDepth;
+    }
+
+    public boolean recursive() {
+        return recursive;
+    }
+
+    public Class<? extends Annotation> annotationType() {
+        return Glob.class;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof Glob)) {
+            return false;
+        }
+        Glob other = (Glob) obj;
+        return sorted == other.sorted() && followLinks == other.followLinks() && maxDepth == other.maxDepth()
+            && recursive == other.recursive();
+    }
+
+    /**
+     * Computed as specified by {@link Annotation#hashCode()} so literals and real annotations mix in hashed collections.
+     */
+    @Override
+    public int hashCode() {
+        return (127 * "sorted".hashCode() ^ Boolean.valueOf(sorted).hashCode())
+            + (127 * "followLinks".hashCode() ^ Boolean.valueOf(followLinks).hashCode())
+            + (127 * "maxDepth".hashCode() ^ Integer.valueOf(maxDepth).hashCode())
+            + (127 * "recursive".hashCode() ^ Boolean.valueOf(recursive).hashCode());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("@%s(sorted=%s, followLinks=%s, maxDepth=%d, recursive=%s)", Glob.class.getName(), sorted,
+            followLinks, maxDepth, recursive);
+    }
+}
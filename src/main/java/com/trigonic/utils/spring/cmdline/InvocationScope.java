@@ -0,0 +1,65 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.trigonic.utils.spring.cmdline;
+
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.beans.factory.config.Scope;
+
+/**
+ * Scope holding one instance of a bean per {@link CommandLineInvocation}, registered by {@link CommandLineAppContext}
+ * under the name {@value #NAME}.  Expensive shared infrastructure stays singleton while per-run state that depends on
+ * the command's options is recreated for each invocation and destroyed, with the usual destroy callbacks, once the
+ * command has run.  Concurrent invocations on different threads each see their own instances.
+ */
+public class InvocationScope implements Scope {
+    public static final String NAME = "invocation";
+
+    public Object get(String name, ObjectFactory<?> objectFactory) {
+        CommandLineInvocation invocation = currentInvocation();
+        Object bean = invocation.getScopedBean(name);
+        if (bean == null) {
+            bean = objectFactory.getObject();
+            invocation.putScopedBean(name, bean);
+        }
+        return bean;
+    }
+
+    public Object remove(String name) {
+        return currentInvocation().removeScopedBean(name);
+    }
+
+    public void registerDestructionCallback(String name, Runnable callback) {
+        currentInvocation().registerDestructionCallback(name, callback);
+    }
+
+    public Object resolveContextualObject(String key) {
+        return null;
+    }
+
+    public String getConversationId() {
+        return null;
+    }
+
+    private static CommandLineInvocation currentInvocation() {
+        CommandLineInvocation invocation = CommandLineInvocation.current();
+        if (invocation == null) {
+            throw new IllegalStateException("No command invocation is active; run the command through CommandLineAppContext.run or invoke");
+        }
+        return invocation;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only file channel that opens its file on first use, so that a command bound to many files only holds open the
+ * ones it is actually reading.  A null path stands for standard input, which {@link FileValues} only allows when it
+ * is this process's own, as the channel may be opened on another thread; closing the channel then leaves standard
+ * input open.  Once closed, it is not reopened.
+ */
+class LazyFileChannel extends FileChannel {
+    private final String name;
+    private final Path path;
+    private FileChannel channel;
+
+    public LazyFileChannel(String name, Path path) {
+        this.name = name;
+        this.path = path;
+    }
+
+    private synchronized FileChannel channel() throws IOException {
+        if (!isOpen()) {
+            throw new ClosedChannelException();
+        }
+        if (channel == null) {
+            if (path == null) {
+                channel = new FileInputStream(FileDescriptor.in).getChannel();
+            } else {
+                channel = FileChannel.open(path, StandardOpenOption.READ);
+            }
+        }
+        return channel;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        return channel().read(dst);
+    }
+
+    @Override
+    public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+        return channel().read(dsts, offset, length);
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        return channel().write(src);
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        return channel().write(srcs, offset, length);
+    }
+
+    @Override
+    public long position() throws IOException {
+        return channel().position();
+    }
+
+    @Override
+    public FileChannel position(long newPosition) throws IOException {
+        channel().position(newPosition);
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        return channel().size();
+    }
+
+    @Override
+    public FileChannel truncate(long size) throws IOException {
+        channel().truncate(size);
+        return this;
+    }
+
+    @Override
+    public void force(boolean metaData) throws IOException {
+        channel().force(metaData);
+    }
+
+    @Override
+    public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+        return channel().transferTo(position, count, target);
+    }
+
+    @Override
+    public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+        return channel().transferFrom(src, position, count);
+    }
+
+    @Override
+    public int read(ByteBuffer dst, long position) throws IOException {
+        return channel().read(dst, position);
+    }
+
+    @Override
+    public int write(ByteBuffer src, long position) throws IOException {
+        return channel().write(src, position);
+    }
+
+    @Override
+    public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+        return channel().map(mode, position, size);
+    }
+
+    @Override
+    public FileLock lock(long position, long size, boolean shared) throws IOException {
+        return channel().lock(position, size, shared);
+    }
+
+    @Override
+    public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+        return channel().tryLock(position, size, shared);
+    }
+
+    /**
+     * Whether this channel reads this process's standard input, which closing it leaves open.
+     */
+    public boolean isStandardInput() {
+        return path == null;
+    }
+
+    @Override
+    protected synchronized void implCloseChannel() throws IOException {
+        // closing the channel of standard input would close file descriptor 0 for the rest of the process
+        if (channel != null && path != null) {
+            channel.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only memory mapping of a file of any size, as a sequence of segments of at most {@link #SEGMENT_SIZE} bytes
+ * since a single {@link MappedByteBuffer} cannot exceed 2 GB.  The file is opened and each segment mapped only when
+ * first requested; closing releases the file, while segments stay valid until they are garbage collected.
+ */
+public class MappedFile implements Closeable {
+    public static final int SEGMENT_SIZE = 1 << 30;
+
+    private final Path path;
+    private FileChannel channel;
+    private MappedByteBuffer[] segments;
+
+    public MappedFile(File file) {
+        this.path = file.toPath();
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public synchronized long size() throws IOException {
+        return channel().size();
+    }
+
+    public synchronized int getSegmentCount() throws IOException {
+        return segments().length;
+    }
+
+    /**
+     * Returns the given segment, which covers the file from {@code index * SEGMENT_SIZE}.
+     */
+    public synchronized MappedByteBuffer getSegment(int index) throws IOException {
+        MappedByteBuffer[] segments = segments();
+        if (segments[index] == null) {
+            long position = (long) index * SEGMENT_SIZE;
+            segments[index] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(SEGMENT_SIZE, channel.size() - position));
+        }
+        return segments[index];
+    }
+
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private FileChannel channel() throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+        }
+        return channel;
+    }
+
+    private MappedByteBuffer[] segments() throws IOException {
+        if (segments == null) {
+            long size = channel().size();
+            segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+        }
+        return segments;
+    }
+
+    @Override
+    public String toString() {
+        return path.toString();
+    }
+}
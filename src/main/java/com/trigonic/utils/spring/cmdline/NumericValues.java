@@ -0,0 +1,147 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Parsing of {@code int}, {@code long} and {@code double} option and operand values, and arrays of them, straight from
+ * the argument strings: arrays are filled without boxing each element, and malformed or out-of-range values are
+ * reported as {@link ArgumentValueException}s, and so as usage errors, before any bean is created.  Integers are read
+ * the way Spring's own conversion reads them, decimal or hexadecimal with a {@code 0x} or {@code #} prefix.
+ */
+final class NumericValues {
+    private NumericValues() {
+    }
+
+    public static boolean isSupported(Class<?> type) {
+        return type == int.class || type == long.class || type == double.class;
+    }
+
+    public static boolean isSupportedArray(Class<?> type) {
+        return type.isArray() && isSupported(type.getComponentType());
+    }
+
+    /**
+     * Parses a single value of the given primitive type, which is necessarily returned boxed.
+     */
+    public static Object parse(String text, Class<?> type, String name) {
+        if (type == int.class) {
+            return (int) parseLong(text, Integer.MIN_VALUE, Integer.MAX_VALUE, "int", name);
+        } else if (type == long.class) {
+            return parseLong(text, Long.MIN_VALUE, Long.MAX_VALUE, "long", name);
+        } else {
+            return parseDouble(text, name);
+        }
+    }
+
+    public static Object parseArray(List<String> texts, Class<?> arrayType, String name) {
+        Class<?> type = arrayType.getComponentType();
+        int size = texts.size();
+        if (type == int.class) {
+            int[] result = new int[size];
+            for (int i = 0; i < size; ++i) {
+                result[i] = (int) parseLong(texts.get(i), Integer.MIN_VALUE, Integer.MAX_VALUE, "int", name);
+            }
+            return result;
+        } else if (type == long.class) {
+            long[] result = new long[size];
+            for (int i = 0; i < size; ++i) {
+                result[i] = parseLong(texts.get(i), Long.MIN_VALUE, Long.MAX_VALUE, "long", name);
+            }
+            return result;
+        } else {
+            double[] result = new double[size];
+            for (int i = 0; i < size; ++i) {
+                result[i] = parseDouble(texts.get(i), name);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Parses a comma-separated array value, as Spring would split it for an option of array type.
+     */
+    public static Object parseArray(String text, Class<?> arrayType, String name) {
+        List<String> texts = text.length() == 0 ? Collections.<String>emptyList() : Arrays.asList(text.split(","));
+        return parseArray(texts, arrayType, name);
+    }
+
+    private static long parseLong(String text, long min, long max, String typeName, String name) {
+        String trimmed = text.trim();
+        boolean negative = trimmed.startsWith("-");
+        int start = negative || trimmed.startsWith("+") ? 1 : 0;
+        int radix = 10;
+        if (trimmed.startsWith("0x", start) || trimmed.startsWith("0X", start)) {
+            radix = 16;
+            start += 2;
+        } else if (trimmed.startsWith("#", start)) {
+            radix = 16;
+            start += 1;
+        }
+        String digits = trimmed.substring(start);
+        if (!isDigits(digits, radix)) {
+            throw invalid(text, typeName, name);
+        }
+
+        long value;
+        try {
+            value = Long.parseLong(negative ? "-" + digits : digits, radix);
+        } catch (NumberFormatException e) {
+            throw outOfRange(text, typeName, name);
+        }
+        if (value < min || value > max) {
+            throw outOfRange(text, typeName, name);
+        }
+        return value;
+    }
+
+    private static double parseDouble(String text, String name) {
+        double value;
+        try {
+            value = Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            throw invalid(text, "double", name);
+        }
+        if (Double.isInfinite(value) && !text.contains("Infinity")) {
+            throw outOfRange(text, "double", name);
+        }
+        return value;
+    }
+
+    private static boolean isDigits(String digits, int radix) {
+        if (digits.length() == 0) {
+            return false;
+        }
+        for (int i = 0; i < digits.length(); ++i) {
+            if (Character.digit(digits.charAt(i), radix) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ArgumentValueException invalid(String text, String typeName, String name) {
+        return new ArgumentValueException(String.format("Value [%s] of [%s] is not a valid %s", text, name, typeName));
+    }
+
+    private static ArgumentValueException outOfRange(String text, String typeName, String name) {
+        return new ArgumentValueException(String.format("Value [%s] of [%s] is out of range for %s", text, name, typeName));
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Aggregates {@link CommandLineMetricsListener} callbacks per command class into counters and latency histograms, and
+ * exposes them in the OpenMetrics text format, by writing them to a file or through JMX:
+ * 
+ * <pre>
+ * OpenMetricsRecorder recorder = new OpenMetricsRecorder();
+ * CommandLineMetrics.addListener(recorder);
+ * recorder.registerMBean();
+ * Closeable export = recorder.startWriting(new File("cmdline.prom"), 15, TimeUnit.SECONDS);
+ * </pre>
+ * 
+ * Latencies are exported as summaries, in seconds, with the {@linkplain #QUANTILES quantiles} most useful for tracking
+ * tail latency.
+ */
+public class OpenMetricsRecorder implements CommandLineMetricsListener, OpenMetricsRecorderMBean {
+    private static final Log log = LogFactory.getLog(OpenMetricsRecorder.class);
+
+    public static final String DEFAULT_OBJECT_NAME = "com.trigonic.cmdline:type=Metrics";
+
+    public static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private static final String PREFIX = "cmdline_";
+
+    // keyed by name, so that a recorder outliving a context does not keep its command classes and class loader alive
+    private final ConcurrentMap<String, CommandMetrics> commands = new ConcurrentHashMap<String, CommandMetrics>();
+
+    public void parsed(Class<?> commandClass, long nanos, boolean usageError) {
+        CommandMetrics metrics = getMetrics(commandClass);
+        metrics.parses.record(nanos);
+        if (usageError) {
+            metrics.usageErrors.increment();
+        }
+    }
+
+    public void converted(Class<?> commandClass, String property, long nanos, boolean failed) {
+        CommandMetrics metrics = getMetrics(commandClass);
+        metrics.conversions.record(nanos);
+        if (failed) {
+            metrics.conversionErrors.increment();
+        }
+    }
+
+    public void ran(Class<?> commandClass, long nanos, int exitStatus) {
+        CommandMetrics metrics = getMetrics(commandClass);
+        metrics.runs.record(nanos);
+        if (exitStatus != CommandLineInvocation.EXIT_SUCCESS) {
+            metrics.failures.increment();
+        }
+    }
+
+    public long getParseCount() {
+        long result = 0;
+        for (CommandMetrics metrics : commands.values()) {
+            result += metrics.parses.getCount();
+        }
+        return result;
+    }
+
+    public long getUsageErrorCount() {
+        long result = 0;
+        for (CommandMetrics metrics : commands.values()) {
+            result += metrics.usageErrors.get();
+        }
+        return result;
+    }
+
+    public long getConversionCount() {
+        long result = 0;
+        for (CommandMetrics metrics : commands.values()) {
+            result += metrics.conversions.getCount();
+        }
+        return result;
+    }
+
+    public long getRunCount() {
+        long result = 0;
+        for (CommandMetrics metrics : commands.values()) {
+            result += metrics.runs.getCount();
+        }
+        return result;
+    }
+
+    public long getFailureCount() {
+        long result = 0;
+        for (CommandMetrics metrics : commands.values()) {
+            result += metrics.failures.get();
+        }
+        return result;
+    }
+
+    public String getOpenMetrics() {
+        StringWriter result = new StringWriter();
+        PrintWriter out = new PrintWriter(result);
+        write(out);
+        out.flush();
+        return result.toString();
+    }
+
+    /**
+     * Writes the metrics of every command seen so far in the OpenMetrics text format, terminated by {@code # EOF}.
+     */
+    public void write(Writer writer) {
+        PrintWriter out = writer instanceof PrintWriter ? (PrintWriter) writer : new PrintWriter(writer);
+        Set<Map.Entry<String, CommandMetrics>> sorted = new TreeMap<String, CommandMetrics>(commands).entrySet();
+
+        writeHeader(out, "usage_errors", "counter", "Parses rejected with a usage error");
+        for (Map.Entry<String, CommandMetrics> entry : sorted) {
+            writeSample(out, "usage_errors_total", entry.getKey(), null, entry.getValue().usageErrors.get());
+        }
+        writeHeader(out, "conversion_errors", "counter", "Option and operand values that failed to convert");
+        for (Map.Entry<String, CommandMetrics> entry : sorted) {
+            writeSample(out, "conversion_errors_total", entry.getKey(), null, entry.getValue().conversionErrors.get());
+        }
+        writeHeader(out, "failures", "counter", "Runs ending with a non-zero exit status");
+        for (Map.Entry<String, CommandMetrics> entry : sorted) {
+            writeSample(out, "failures_total", entry.getKey(), null, entry.getValue().failures.get());
+        }
+        writeSummary(out, "parse_seconds", "Time to parse and validate arguments", sorted, 0);
+        writeSummary(out, "conversion_seconds", "Time to convert an option or operand value", sorted, 1);
+        writeSummary(out, "run_seconds", "Time to run an invocation, from binding to destroying the command", sorted, 2);
+        out.println("# EOF");
+        out.flush();
+    }
+
+    /**
+     * Replaces the given file with the current metrics, atomically where the file system allows, so that a collector
+     * never reads a partial exposition.
+     */
+    public void writeTo(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(temp), "UTF-8"));
+        try {
+            write(out);
+        } finally {
+            out.close();
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Rewrites the given file periodically from a daemon thread, until the returned handle is closed, which writes it
+     * once more.
+     */
+    public Closeable startWriting(final File file, long period, TimeUnit unit) {
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "cmdline-metrics");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        final Runnable writer = new Runnable() {
+            public void run() {
+                try {
+                    writeTo(file);
+                } catch (IOException e) {
+                    log.warn("Failed to write metrics to " + file, e);
+                }
+            }
+        };
+        executor.scheduleAtFixedRate(writer, period, period, unit);
+        return new Closeable() {
+            public void close() {
+                executor.shutdownNow();
+                writer.run();
+            }
+        };
+    }
+
+    /**
+     * Registers this recorder with the platform MBean server under {@link #DEFAULT_OBJECT_NAME}.
+     */
+    public ObjectName registerMBean() throws JMException {
+        return registerMBean(new ObjectName(DEFAULT_OBJECT_NAME));
+    }
+
+    public ObjectName registerMBean(ObjectName name) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        return server.registerMBean(this, name).getObjectName();
+    }
+
+    private CommandMetrics getMetrics(Class<?> commandClass) {
+        String command = commandClass.getName();
+        CommandMetrics result = commands.get(command);
+        if (result == null) {
+            CommandMetrics created = new CommandMetrics();
+            result = commands.putIfAbsent(command, created);
+            if (result == null) {
+                result = created;
+            }
+        }
+        return result;
+    }
+
+    private static void writeHeader(PrintWriter out, String name, String type, String help) {
+        out.println("# TYPE " + PREFIX + name + " " + type);
+        if (name.endsWith("_seconds")) {
+            out.println("# UNIT " + PREFIX + name + " seconds");
+        }
+        out.println("# HELP " + PREFIX + name + " " + help);
+    }
+
+    private static void writeSummary(PrintWriter out, String name, String help,
+            Set<Map.Entry<String, CommandMetrics>> sorted, int histogram) {
+        writeHeader(out, name, "summary", help);
+        for (Map.Entry<String, CommandMetrics> entry : sorted) {
+            LatencyHistogram latencies = entry.getValue().histograms[histogram];
+            long count = latencies.getCount();
+            if (count == 0) {
+                continue;
+            }
+            for (double quantile : QUANTILES) {
+                writeSample(out, name, entry.getKey(), "quantile=\"" + quantile + "\"",
+                    seconds(latencies.getValueAtQuantile(quantile)));
+            }
+            writeSample(out, name + "_count", entry.getKey(), null, count);
+            writeSample(out, name + "_sum", entry.getKey(), null, seconds(latencies.getSum()));
+        }
+    }
+
+    private static void writeSample(PrintWriter out, String name, String command, String label, Object value) {
+        out.print(PREFIX + name + "{command=\"" + escape(command) + "\"");
+        if (label != null) {
+            out.print("," + label);
+        }
+        out.println("} " + value);
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static class CommandMetrics {
+        final LatencyHistogram parses = new LatencyHistogram();
+        final LatencyHistogram conversions = new LatencyHistogram();
+        final LatencyHistogram runs = new LatencyHistogram();
+        final LatencyHistogram[] histograms = {parses, conversions, runs};
+        final StripedCounter usageErrors = new StripedCounter();
+        final StripedCounter conversionErrors = new StripedCounter();
+        final StripedCounter failures = new StripedCounter();
+    }
+}
@@ -1,35 +1,47 @@
-/*
- * Copyright 2011 the original author or authors.
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- * http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-
-package com.trigonic.utils.spring.cmdline;
-
-import joptsimple.OptionSet;
-
-import org.springframework.beans.MutablePropertyValues;
-
-public interface OperandHandler {
-    boolean addPropertyValue(MutablePropertyValues propertyValues, OptionSet optionSet);
-
-    int getIndex();
-
-    String getName();
-
-    boolean isRequired();
-
-    Object getDescription();
-    
-    boolean hasMultipleValues();
-}
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.util.List;
+
+import org.springframework.beans.MutablePropertyValues;
+
+public interface OperandHandler {
+    /**
+     * @param operands the non-option arguments, with any {@link ArgumentFiles argument files} expanded
+     */
+    boolean addPropertyValue(MutablePropertyValues propertyValues, List<String> operands);
+
+    int getIndex();
+
+    String getName();
+
+    boolean isRequired();
+
+    Object getDescription();
+    
+    boolean hasMultipleValues();
+
+    Class<?> getValueType();
+
+    /**
+     * Returns the value of the operand, a {@link String} or for multi-value operands a {@code List} of them, except
+     * that {@code int}, {@code long} and {@code double} types and arrays of them are already parsed; {@code null} when
+     * the operand is absent.
+     */
+    Object getValue(List<String> operands);
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.List;
+
+import org.springframework.beans.SimpleTypeConverter;
+import org.springframework.beans.TypeConverter;
+
+/**
+ * Multi-value operand bound to an {@code Iterable} or {@code Iterator} property, converting each operand only as it
+ * is consumed so that a command can start on the first operand without all of them having been converted up front.
+ * Elements are converted with Spring's default editors; a conversion failure surfaces as a
+ * {@link org.springframework.beans.TypeMismatchException} from {@link Iterator#next()}.  {@link File} elements are
+ * resolved against the working directory of the invocation the iterable was created in, whichever thread consumes it.
+ */
+public class OperandIterable<T> implements Iterable<T> {
+    private final List<String> operands;
+    private final Class<T> elementType;
+    private final CommandLineInvocation invocation;
+
+    public OperandIterable(List<String> operands, Class<T> elementType) {
+        this.operands = operands;
+        this.elementType = elementType;
+        this.invocation = CommandLineInvocation.current();
+    }
+
+    public Iterator<T> iterator() {
+        final Iterator<String> iterator = operands.iterator();
+        // type converters are not thread-safe, so each iteration gets its own
+        final TypeConverter typeConverter = elementType == String.class || elementType == Object.class ? null : new SimpleTypeConverter();
+        return new Iterator<T>() {
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            public T next() {
+                String value = iterator.next();
+                if (elementType == File.class && invocation != null) {
+                    return elementType.cast(invocation.resolve(value));
+                }
+                return typeConverter == null ? elementType.cast(value) : typeConverter.convertIfNecessary(value, elementType);
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    public int size() {
+        return operands.size();
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.lang.annotation.Annotation;
+
+/**
+ * Instance of {@link Operand} built from literal values, used by metadata generated at compile time in place of the
+ * annotation read reflectively from the bean class.
+ */
+public class OperandLiteral implements Operand {
+    private final int index;
+    private final String description;
+    private final boolean required;
+    private final boolean argumentFiles;
+
+    public OperandLiteral(int index, String description, boolean required) {
+        this(index, description, required, false);
+    }
+
+    public OperandLiteral(int index, String description, boolean required, boolean argumentFiles) {
+        this.index = index;
+        this.description = description;
+        this.required = required;
+        this.argumentFiles = argumentFiles;
+    }
+
+    public int index() {
+        return index;
+    }
+
+    public String description() {
+        return description;
+    }
+
+    public boolean required() {
+        return required;
+    }
+
+    public boolean argumentFiles() {
+        return argumentFiles;
+    }
+
+    public Class<? extends Annotation> annotationType() {
+        return Operand.class;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof Operand)) {
+            return false;
+        }
+        Operand other = (Operand) obj;
+        return index == other.index() && description.equals(other.description()) && required == other.required()
+            && argumentFiles == other.argumentFiles();
+    }
+
+    /**
+     * Computed as specified by {@link Annotation#hashCode()} so literals and real annotations mix in hashed collections.
+     */
+    @Override
+    public int hashCode() {
+        return (127 * "index".hashCode() ^ Integer.valueOf(index).hashCode())
+            + (127 * "description".hashCode() ^ description.hashCode())
+            + (127 * "required".hashCode() ^ Boolean.valueOf(required).hashCode())
+            + (127 * "argumentFiles".hashCode() ^ Boolean.valueOf(argumentFiles).hashCode());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("@%s(index=%d, description=%s, required=%s, argumentFiles=%s)", Operand.class.getName(), index,
+            description, required, argumentFiles);
+    }
+}
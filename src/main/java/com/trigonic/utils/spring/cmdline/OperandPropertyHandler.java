@@ -1,27 +1,46 @@
-/*
- * Copyright 2011 the original author or authors.
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- * http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-
-package com.trigonic.utils.spring.cmdline;
-
-import java.beans.PropertyDescriptor;
-
-import org.springframework.beans.BeanUtils;
-
-public class OperandPropertyHandler extends AbstractOperandHandler {
-    public OperandPropertyHandler(Operand operand, PropertyDescriptor property, Class<?> beanClass) {
-        super(operand, property.getName(), BeanUtils.findPropertyType(property.getName(), new Class[] { beanClass }));
-    }
-}
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
+
+import org.springframework.beans.BeanUtils;
+
+public class OperandPropertyHandler extends AbstractOperandHandler {
+    public OperandPropertyHandler(Operand operand, PropertyDescriptor property, Class<?> beanClass) {
+        super(operand, property.getName(), BeanUtils.findPropertyType(property.getName(), new Class[] { beanClass }),
+            getElementType(property));
+    }
+
+    public OperandPropertyHandler(Operand operand, String propertyName, Class<?> propertyType) {
+        super(operand, propertyName, propertyType);
+    }
+
+    public OperandPropertyHandler(Operand operand, String propertyName, Class<?> propertyType, Class<?> elementType) {
+        super(operand, propertyName, propertyType, elementType);
+    }
+
+    private static Class<?> getElementType(PropertyDescriptor property) {
+        Method writeMethod = property.getWriteMethod();
+        if (writeMethod != null) {
+            return getElementType(writeMethod.getGenericParameterTypes()[0]);
+        }
+        Method readMethod = property.getReadMethod();
+        return readMethod == null ? String.class : getElementType(readMethod.getGenericReturnType());
+    }
+}
@@ -1,31 +1,46 @@
-/*
- * Copyright 2011 the original author or authors.
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- * http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-
-package com.trigonic.utils.spring.cmdline;
-
-import org.springframework.beans.MutablePropertyValues;
-
-import joptsimple.OptionParser;
-import joptsimple.OptionSet;
-import joptsimple.OptionSpecBuilder;
-
-public interface OptionHandler {
-    OptionSpecBuilder register(OptionParser parser);
-    
-    boolean hasValue();
-
-    boolean addPropertyValue(MutablePropertyValues propertyValues, OptionSet optionSet);
-}
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import org.springframework.beans.MutablePropertyValues;
+
+import joptsimple.OptionParser;
+import joptsimple.OptionSpecBuilder;
+
+public interface OptionHandler {
+    /**
+     * Declares the option to jopt-simple, which prints usage whichever {@link ArgumentParser} parses.
+     */
+    OptionSpecBuilder register(OptionParser parser);
+    
+    boolean hasValue();
+
+    boolean addPropertyValue(MutablePropertyValues propertyValues, ParsedArguments arguments);
+
+    String getName();
+
+    Option getOption();
+
+    Class<?> getValueType();
+
+    /**
+     * Returns the value of the option, {@link Boolean} for flags, already parsed for {@code int}, {@code long} and
+     * {@code double} types and arrays of them, and otherwise the unconverted {@link String}; {@code null} when a valued
+     * option is absent.
+     */
+    Object getValue(ParsedArguments arguments);
+}
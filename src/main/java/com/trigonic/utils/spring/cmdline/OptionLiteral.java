@@ -0,0 +1,96 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.lang.annotation.Annotation;
+
+/**
+ * Instance of {@link Option} built from literal values, used by metadata generated at compile time in place of the
+ * annotation read reflectively from the bean class.
+ */
+public class OptionLiteral implements Option {
+    private final String shortName;
+    private final String longName;
+    private final String description;
+    private final boolean required;
+    private final boolean requiresValue;
+
+    public OptionLiteral(String shortName, String longName, String description, boolean required, boolean requiresValue) {
+        this.shortName = shortName;
+        this.longName = longName;
+        this.description = description;
+        this.required = required;
+        this.requiresValue = requiresValue;
+    }
+
+    public String shortName() {
+        return shortName;
+    }
+
+    public String longName() {
+        return longName;
+    }
+
+    public String description() {
+        return description;
+    }
+
+    public boolean required() {
+        return required;
+    }
+
+    public boolean requiresValue() {
+        return requiresValue;
+    }
+
+    public Class<? extends Annotation> annotationType() {
+        return Option.class;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof Option)) {
+            return false;
+        }
+        Option other = (Option) obj;
+        return shortName.equals(other.shortName()) && longName.equals(other.longName())
+            && description.equals(other.description()) && required == other.required()
+            && requiresValue == other.requiresValue();
+    }
+
+    /**
+     * Computed as specified by {@link Annotation#hashCode()} so literals and real annotations mix in hashed collections.
+     */
+    @Override
+    public int hashCode() {
+        return (127 * "shortName".hashCode() ^ shortName.hashCode())
+            + (127 * "longName".hashCode() ^ longName.hashCode())
+            + (127 * "description".hashCode() ^ description.hashCode())
+            + (127 * "required".hashCode() ^ Boolean.valueOf(required).hashCode())
+            + (127 * "requiresValue".hashCode() ^ Boolean.valueOf(requiresValue).hashCode());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("@%s(shortName=%s, longName=%s, description=%s, required=%s, requiresValue=%s)",
+            Option.class.getName(), shortName, longName, description, required, requiresValue);
+    }
+}
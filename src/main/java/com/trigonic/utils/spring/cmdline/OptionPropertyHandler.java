@@ -1,27 +1,31 @@
-/*
- * Copyright 2011 the original author or authors.
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- * http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-
-package com.trigonic.utils.spring.cmdline;
-
-import java.beans.PropertyDescriptor;
-
-import org.springframework.beans.BeanUtils;
-
-public class OptionPropertyHandler extends AbstractOptionHandler {
-    public OptionPropertyHandler(Option option, PropertyDescriptor property, Class<?> beanClass) {
-        super(option, property.getName(), BeanUtils.findPropertyType(property.getName(), new Class[] { beanClass }));
-    }
-}
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.beans.PropertyDescriptor;
+
+import org.springframework.beans.BeanUtils;
+
+public class OptionPropertyHandler extends AbstractOptionHandler {
+    public OptionPropertyHandler(Option option, PropertyDescriptor property, Class<?> beanClass) {
+        super(option, property.getName(), BeanUtils.findPropertyType(property.getName(), new Class[] { beanClass }));
+    }
+
+    public OptionPropertyHandler(Option option, String propertyName, Class<?> propertyType) {
+        super(option, propertyName, propertyType);
+    }
+}
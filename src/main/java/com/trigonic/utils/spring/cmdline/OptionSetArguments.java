@@ -0,0 +1,45 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.util.List;
+
+import joptsimple.OptionSet;
+
+/**
+ * {@link ParsedArguments} backed by a jopt-simple {@link OptionSet}.
+ */
+class OptionSetArguments implements ParsedArguments {
+    private final OptionSet optionSet;
+
+    public OptionSetArguments(OptionSet optionSet) {
+        this.optionSet = optionSet;
+    }
+
+    public boolean has(String optionName) {
+        return optionSet.has(optionName);
+    }
+
+    public String valueOf(String optionName) {
+        // options are registered without a type, so their arguments are strings
+        return (String) optionSet.valueOf(optionName);
+    }
+
+    public List<String> getOperands() {
+        return optionSet.nonOptionArguments();
+    }
+}
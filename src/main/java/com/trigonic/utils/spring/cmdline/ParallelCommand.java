@@ -0,0 +1,162 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Command that applies the same processing to each of its items, typically the values of its multi-value
+ * {@link Operand}, on a work-stealing pool of {@code -j}/{@code --jobs} threads (by default one per processor).
+ * <p>
+ * Items are taken from {@link #getItems()} on the invoking thread, so a lazily converted {@code Iterable} operand is
+ * converted as processing proceeds, and at most four items per thread are in flight at any time, which bounds memory
+ * however many items there are.  Each item writes to its own buffered streams, which are copied to the invocation's
+ * {@link StandardStreams} in item order.  An item that throws has its stack trace written to its error stream and an
+ * exit status of {@link CommandLineInvocation#EXIT_FAILURE}; processing continues with the remaining items, and the
+ * invocation's exit status becomes the highest of all items.
+ */
+public abstract class ParallelCommand<T> implements Runnable {
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    @Option(shortName="j", longName="jobs", description="Number of items to process in parallel")
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new ArgumentValueException(String.format("Value [%d] of [jobs] must be at least 1", parallelism));
+        }
+        this.parallelism = parallelism;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Returns the items to process, in the order their output is to be written.
+     */
+    protected abstract Iterable<? extends T> getItems();
+
+    /**
+     * Processes one item, possibly concurrently with others.
+     * 
+     * @return the exit status for this item
+     */
+    protected abstract int process(T item, PrintStream out, PrintStream err) throws Exception;
+
+    public void run() {
+        final CommandLineInvocation invocation = CommandLineInvocation.current();
+        PrintStream out = invocation == null ? System.out : invocation.getStandardStreams().getOut();
+        PrintStream err = invocation == null ? System.err : invocation.getStandardStreams().getErr();
+        int exitStatus = CommandLineInvocation.EXIT_SUCCESS;
+
+        int maxInFlight = parallelism * 4;
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            Deque<Future<ItemResult>> pending = new ArrayDeque<Future<ItemResult>>(maxInFlight);
+            for (Iterator<? extends T> items = getItems().iterator(); items.hasNext();) {
+                while (pending.size() >= maxInFlight) {
+                    exitStatus = Math.max(exitStatus, emit(pending.poll(), out, err));
+                }
+                final T item = items.next();
+                pending.add(pool.submit(new Callable<ItemResult>() {
+                    public ItemResult call() {
+                        return execute(item, invocation);
+                    }
+                }));
+                while (!pending.isEmpty() && pending.peek().isDone()) {
+                    exitStatus = Math.max(exitStatus, emit(pending.poll(), out, err));
+                }
+            }
+            while (!pending.isEmpty()) {
+                exitStatus = Math.max(exitStatus, emit(pending.poll(), out, err));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        out.flush();
+        err.flush();
+        if (invocation != null) {
+            invocation.setExitStatus(Math.max(invocation.getExitStatus(), exitStatus));
+        }
+    }
+
+    /**
+     * Processes an item on a pool thread, bound to the invoking thread's invocation for the duration.
+     */
+    private ItemResult execute(T item, CommandLineInvocation invocation) {
+        CommandLineInvocation previous = CommandLineInvocation.current();
+        CommandLineInvocation.bind(invocation);
+        try {
+            return execute(item);
+        } finally {
+            CommandLineInvocation.bind(previous);
+        }
+    }
+
+    private ItemResult execute(T item) {
+        ByteArrayOutputStream outBuffer = new ByteArrayOutputStream();
+        ByteArrayOutputStream errBuffer = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(outBuffer);
+        PrintStream err = new PrintStream(errBuffer);
+        int exitStatus;
+        try {
+            exitStatus = process(item, out, err);
+        } catch (Exception e) {
+            err.print(item + ": ");
+            e.printStackTrace(err);
+            exitStatus = CommandLineInvocation.EXIT_FAILURE;
+        }
+        out.flush();
+        err.flush();
+        return new ItemResult(exitStatus, outBuffer.toByteArray(), errBuffer.toByteArray());
+    }
+
+    private static int emit(Future<ItemResult> future, PrintStream out, PrintStream err) {
+        ItemResult result;
+        try {
+            result = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for item results", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Item failed unexpectedly", e.getCause());
+        }
+        out.write(result.out, 0, result.out.length);
+        err.write(result.err, 0, result.err.length);
+        return result.exitStatus;
+    }
+
+    private static class ItemResult {
+        private final int exitStatus;
+        private final byte[] out;
+        private final byte[] err;
+
+        public ItemResult(int exitStatus, byte[] out, byte[] err) {
+            this.exitStatus = exitStatus;
+            this.out = out;
+            this.err = err;
+        }
+    }
+}
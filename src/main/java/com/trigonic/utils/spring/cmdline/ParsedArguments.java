@@ -0,0 +1,39 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.util.List;
+
+/**
+ * The options and operands found by an {@link ArgumentParser}, independent of how they were parsed.  Options are
+ * looked up by any of their names, each of which finds the same option.
+ */
+public interface ParsedArguments {
+    boolean has(String optionName);
+
+    /**
+     * Returns the argument given to the option, or null if the option was not given or was given without one.
+     * 
+     * @throws joptsimple.OptionException if the option was given more than one argument
+     */
+    String valueOf(String optionName);
+
+    /**
+     * The operands, in order, including those following {@code --}.
+     */
+    List<String> getOperands();
+}
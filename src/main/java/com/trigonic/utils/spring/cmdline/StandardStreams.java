@@ -0,0 +1,119 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+
+/**
+ * Buffered standard streams of one {@link CommandLineInvocation}, injectable by {@link CommandLineAppContext} as the
+ * beans {@value #IN_BEAN_NAME}, {@value #OUT_BEAN_NAME} and {@value #ERR_BEAN_NAME}.
+ * <p>
+ * The streams go through 64 KB buffers and take no locks, so they belong to the thread running the invocation.  Output
+ * reaches the invocation's own streams in buffer-sized writes, and this process's standard input is read through a
+ * file channel.  Standard output is flushed after each line if it is this process's own and the process has a
+ * console, and otherwise only when its buffer fills, as suits a pipe; standard error is flushed after each line.
+ * Everything is flushed once the invocation completes, or when the context is closed for streams used outside of an
+ * invocation.
+ * <p>
+ * The streams a context uses outside of any invocation are shared by every thread of the process, so are instead
+ * ordinary buffered streams, which lock on each call.
+ */
+public final class StandardStreams {
+    public static final String IN_BEAN_NAME = "stdin";
+    public static final String OUT_BEAN_NAME = "stdout";
+    public static final String ERR_BEAN_NAME = "stderr";
+
+    private final CommandLineInvocation invocation;
+    private final boolean shared;
+    private InputStream in;
+    private PrintStream out;
+    private PrintStream err;
+
+    StandardStreams(CommandLineInvocation invocation) {
+        this(invocation, false);
+    }
+
+    /**
+     * @param shared whether the streams may be used by several threads at once
+     */
+    StandardStreams(CommandLineInvocation invocation, boolean shared) {
+        this.invocation = invocation;
+        this.shared = shared;
+    }
+
+    public synchronized InputStream getIn() {
+        if (in == null) {
+            if (shared) {
+                in = new BufferedInputStream(invocation.getIn(), ChannelPrintStream.BUFFER_SIZE);
+            } else if (invocation.hasProcessInput()) {
+                in = new ChannelInputStream(new FileInputStream(FileDescriptor.in).getChannel());
+            } else {
+                in = new ChannelInputStream(Channels.newChannel(invocation.getIn()));
+            }
+        }
+        return in;
+    }
+
+    public synchronized PrintStream getOut() {
+        if (out == null) {
+            boolean interactive = invocation.hasProcessOutput() && System.console() != null;
+            out = createPrintStream(invocation.getOut(), interactive);
+        }
+        return out;
+    }
+
+    public synchronized PrintStream getErr() {
+        if (err == null) {
+            err = createPrintStream(invocation.getErr(), true);
+        }
+        return err;
+    }
+
+    private PrintStream createPrintStream(OutputStream target, boolean lineFlush) {
+        if (shared) {
+            return new PrintStream(new BufferedOutputStream(target, ChannelPrintStream.BUFFER_SIZE), lineFlush) {
+                @Override
+                public void close() {
+                    // like ChannelPrintStream, leave the process's own stream open
+                    flush();
+                }
+            };
+        }
+        return new ChannelPrintStream(Channels.newChannel(target), lineFlush);
+    }
+
+    /**
+     * Flushes the output streams that have been used, and then the invocation's own output streams.
+     */
+    public synchronized void flush() {
+        if (out != null) {
+            out.flush();
+        }
+        if (err != null) {
+            err.flush();
+        }
+        invocation.getOut().flush();
+        invocation.getErr().flush();
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter spread over several cells, picked by thread, so that threads counting concurrently rarely contend for the
+ * same cache line.  Reading sums the cells, so is not atomic with respect to concurrent increments.
+ */
+final class StripedCounter {
+    // cells are a cache line apart
+    private static final int SPACING = 8;
+
+    private static final int STRIPES = stripes(Runtime.getRuntime().availableProcessors());
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * SPACING);
+
+    public void increment() {
+        add(1);
+    }
+
+    public void add(long delta) {
+        cells.getAndAdd(cell(), delta);
+    }
+
+    public long get() {
+        long result = 0;
+        for (int i = 0; i < STRIPES; ++i) {
+            result += cells.get(i * SPACING);
+        }
+        return result;
+    }
+
+    static int cell() {
+        // Fibonacci hashing spreads consecutive thread ids over the stripes
+        long hash = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        return ((int) (hash >>> 32) & (STRIPES - 1)) * SPACING;
+    }
+
+    private static int stripes(int processors) {
+        int result = 1;
+        while (result < processors * 2 && result < 64) {
+            result <<= 1;
+        }
+        return result;
+    }
+}
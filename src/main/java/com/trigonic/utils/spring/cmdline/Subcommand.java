@@ -0,0 +1,40 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares a command class as a subcommand of a {@link CommandLineDispatcher}, selected by the first argument after
+ * the global options.  The {@link SubcommandIndexProcessor} records each subcommand in an index on the class path, so
+ * dispatch and help never scan for or load the classes of subcommands that are not run.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Subcommand {
+    /** Verb selecting the subcommand. */
+    String name();
+
+    /** One-line description listed in the dispatcher's help. */
+    String description() default "";
+
+    /** Context resources loaded, in addition to the dispatcher's own, only when this subcommand runs. */
+    String[] resources() default {};
+}
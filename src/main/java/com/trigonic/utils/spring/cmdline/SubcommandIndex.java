@@ -0,0 +1,113 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.springframework.beans.factory.BeanDefinitionStoreException;
+
+/**
+ * Subcommands listed in the {@value #LOCATION} files on the class path, one {@code name<TAB>class<TAB>description}
+ * line per subcommand, as written by {@link SubcommandIndexProcessor}.
+ */
+final class SubcommandIndex {
+    static final String LOCATION = "META-INF/com.trigonic.utils.spring.cmdline.subcommands";
+
+    private final Map<String, Entry> entries;
+
+    private SubcommandIndex(Map<String, Entry> entries) {
+        this.entries = entries;
+    }
+
+    public static SubcommandIndex load(ClassLoader classLoader) {
+        Map<String, Entry> entries = new TreeMap<String, Entry>();
+        try {
+            for (Enumeration<URL> urls = classLoader.getResources(LOCATION); urls.hasMoreElements();) {
+                read(urls.nextElement(), entries);
+            }
+        } catch (IOException e) {
+            throw new BeanDefinitionStoreException("Cannot read subcommand index", e);
+        }
+        return new SubcommandIndex(Collections.unmodifiableMap(entries));
+    }
+
+    private static void read(URL url, Map<String, Entry> entries) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream(), "UTF-8"));
+        try {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                if (line.length() == 0 || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\t", 3);
+                if (fields.length < 2) {
+                    throw new BeanDefinitionStoreException("Malformed subcommand index entry [" + line + "] in " + url);
+                }
+                Entry entry = new Entry(fields[0], fields[1], fields.length > 2 ? fields[2] : "");
+                Entry existing = entries.put(entry.getName(), entry);
+                if (existing != null && !existing.getClassName().equals(entry.getClassName())) {
+                    throw new BeanDefinitionStoreException("Subcommand [" + entry.getName() + "] is declared by both "
+                        + existing.getClassName() + " and " + entry.getClassName());
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    public Entry get(String name) {
+        return entries.get(name);
+    }
+
+    /**
+     * Returns the entries ordered by name.
+     */
+    public Collection<Entry> getEntries() {
+        return entries.values();
+    }
+
+    static class Entry {
+        private final String name;
+        private final String className;
+        private final String description;
+
+        public Entry(String name, String className, String description) {
+            this.name = name;
+            this.className = className;
+            this.description = description;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.NoSuchFileException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Annotation processor that writes the {@link SubcommandIndex} of the {@link Subcommand} classes being compiled, so
+ * that a {@link CommandLineDispatcher} finds them without scanning the class path.  An index already in the class
+ * output, left by an earlier incremental compilation that saw other classes, is merged with rather than replaced, and
+ * its entries for classes that no longer exist or no longer declare the subcommand are dropped.
+ */
+@SupportedAnnotationTypes("com.trigonic.utils.spring.cmdline.Subcommand")
+public class SubcommandIndexProcessor extends AbstractProcessor {
+    private final Map<String, String> lines = new TreeMap<String, String>();
+    private final Set<String> classNames = new HashSet<String>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(Subcommand.class)) {
+            if (validate(element)) {
+                Subcommand subcommand = element.getAnnotation(Subcommand.class);
+                String className = processingEnv.getElementUtils().getBinaryName((TypeElement) element).toString();
+                String description = subcommand.description().replaceAll("\\s+", " ").trim();
+                classNames.add(className);
+                if (lines.put(subcommand.name(), subcommand.name() + "\t" + className + "\t" + description) != null) {
+                    error(element, "Duplicate subcommand name [%s]", subcommand.name());
+                }
+            }
+        }
+        if (roundEnv.processingOver()) {
+            boolean existing = merge();
+            if (existing || !lines.isEmpty()) {
+                write();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds the entries of the index already in the class output whose classes were not compiled in this run but still
+     * declare the same subcommand, returning whether there was such an index.
+     */
+    private boolean merge() {
+        String content;
+        try {
+            content = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", SubcommandIndex.LOCATION)
+                .getCharContent(false).toString();
+        } catch (FileNotFoundException e) {
+            return false;
+        } catch (NoSuchFileException e) {
+            return false;
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Kind.WARNING, "Cannot read existing subcommand index: " + e.getMessage());
+            return false;
+        }
+        for (String line : content.split("\\r?\\n")) {
+            String[] fields = line.split("\t", 3);
+            if (line.length() == 0 || line.startsWith("#") || fields.length < 2 || classNames.contains(fields[1])) {
+                continue;
+            }
+            TypeElement type = processingEnv.getElementUtils().getTypeElement(fields[1].replace('$', '.'));
+            Subcommand subcommand = type == null ? null : type.getAnnotation(Subcommand.class);
+            if (subcommand != null && subcommand.name().equals(fields[0])) {
+                if (lines.containsKey(fields[0])) {
+                    error(type, "Duplicate subcommand name [%s]", fields[0]);
+                } else {
+                    lines.put(fields[0], line);
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean validate(Element element) {
+        Subcommand subcommand = element.getAnnotation(Subcommand.class);
+        TypeMirror runnable = processingEnv.getElementUtils().getTypeElement(Runnable.class.getName()).asType();
+        if (element.getKind() != ElementKind.CLASS || element.getModifiers().contains(Modifier.ABSTRACT)
+                || !processingEnv.getTypeUtils().isAssignable(element.asType(), runnable)) {
+            error(element, "@Subcommand annotation can only be applied to concrete Runnable classes");
+            return false;
+        } else if (!subcommand.name().matches("[\\w.-]+") || subcommand.name().startsWith("-")) {
+            error(element, "Subcommand name [%s] must be a single word not starting with '-'", subcommand.name());
+            return false;
+        }
+        return true;
+    }
+
+    private void write() {
+        try {
+            FileObject index = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+                SubcommandIndex.LOCATION);
+            PrintWriter out = new PrintWriter(index.openWriter());
+            try {
+                out.println("# Generated by " + getClass().getName() + "; do not edit.");
+                for (String line : lines.values()) {
+                    out.println(line);
+                }
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Kind.ERROR, "Cannot write subcommand index: " + e.getMessage());
+        }
+    }
+
+    private void error(Element element, String format, Object... args) {
+        processingEnv.getMessager().printMessage(Kind.ERROR, String.format(format, args), element);
+    }
+}
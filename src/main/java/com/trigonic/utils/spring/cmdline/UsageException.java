@@ -1,59 +1,62 @@
-/*
- * Copyright 2011 the original author or authors.
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- * http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-
-package com.trigonic.utils.spring.cmdline;
-
-import static java.lang.System.err;
-
-import java.io.IOException;
-
-import joptsimple.OptionParser;
-
-public class UsageException extends RuntimeException {
-    private static final long serialVersionUID = 1L;
-    
-    private final OptionParser parser;
-    private final CommandLineMetaData metaData;
-
-    public UsageException(OptionParser parser, CommandLineMetaData metaData, Exception cause) {
-        super(cause);
-        this.parser = parser;
-        this.metaData = metaData;
-    }
-    
-    public String getMessage() {
-        Throwable cause = getCause();
-        return cause == null ? null : cause.getMessage();
-    }
-
-    public void printUsage() {
-        String message = getMessage();
-        if (message != null) {
-            err.print("Error: ");
-            err.println(getCause().getMessage());
-        }
-        
-        err.println();
-
-        try {
-            parser.printHelpOn(err);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        
-        metaData.printOperandsOn(err);
-    }
-}
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.io.IOException;
+import java.io.PrintStream;
+
+import joptsimple.OptionParser;
+
+public class UsageException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    
+    private final OptionParser parser;
+    private final CommandLineMetaData metaData;
+
+    public UsageException(OptionParser parser, CommandLineMetaData metaData, Exception cause) {
+        super(cause);
+        this.parser = parser;
+        this.metaData = metaData;
+    }
+    
+    public String getMessage() {
+        Throwable cause = getCause();
+        return cause == null ? null : cause.getMessage();
+    }
+
+    public void printUsage() {
+        printUsage(System.err);
+    }
+
+    public void printUsage(PrintStream err) {
+        String message = getMessage();
+        if (message != null) {
+            err.print("Error: ");
+            err.println(getCause().getMessage());
+        }
+        
+        err.println();
+
+        try {
+            parser.printHelpOn(err);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        
+        metaData.printOperandsOn(err);
+    }
+}
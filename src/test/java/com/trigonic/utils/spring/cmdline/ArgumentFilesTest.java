@@ -0,0 +1,163 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.ClassPathResource;
+
+public class ArgumentFilesTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void nothingToExpand() {
+        List<String> operands = Arrays.asList("a", "@", "b");
+        assertSame(operands, ArgumentFiles.expand(operands));
+    }
+
+    @Test
+    public void fromIndex() throws IOException {
+        File file = write("files.txt", "a\n");
+        assertEquals(Arrays.asList("@user", "a"), ArgumentFiles.expand(Arrays.asList("@user", "@" + file), 1));
+    }
+
+    @Test
+    public void newlineDelimited() throws IOException {
+        File file = write("files.txt", "one\r\n\ntwo words\n'quoted\\  '\n\"double \\\"quoted\\\"\"\nlast");
+        assertEquals(Arrays.asList("a", "one", "two words", "quoted\\  ", "double \"quoted\"", "last", "b"),
+            ArgumentFiles.expand(Arrays.asList("a", "@" + file, "b")));
+    }
+
+    @Test
+    public void nulDelimited() throws IOException {
+        File file = write("files.bin", "one\0two\nlines\0 three \0");
+        assertEquals(Arrays.asList("one", "two\nlines", " three "), ArgumentFiles.expand(Arrays.asList("@" + file)));
+    }
+
+    @Test
+    public void multipleFiles() throws IOException {
+        File empty = write("empty.txt", "");
+        File first = write("first.txt", "1\n2\n");
+        File second = write("second.txt", "3\n");
+        List<String> operands = ArgumentFiles.expand(Arrays.asList("@" + empty, "@" + first, "@@literal", "@" + second));
+        assertEquals(Arrays.asList("1", "2", "@literal", "3"), operands);
+        assertEquals(Arrays.asList("2", "@literal"), operands.subList(1, 3));
+    }
+
+    @Test
+    public void relativeToInvocation() throws IOException {
+        write("relative.txt", "x\n");
+        CommandLineInvocation invocation = TestInvocations.create(new String[0], folder.getRoot(), "y\0z", System.out, System.err);
+        CommandLineInvocation previous = CommandLineInvocation.current();
+        CommandLineInvocation.bind(invocation);
+        try {
+            assertEquals(Arrays.asList("x", "y", "z"), ArgumentFiles.expand(Arrays.asList("@relative.txt", "@-")));
+        } finally {
+            CommandLineInvocation.bind(previous);
+        }
+    }
+
+    @Test
+    public void errors() throws IOException {
+        assertError("Cannot read argument file [" + folder.getRoot() + "/missing.txt]: ", "@" + new File(folder.getRoot(), "missing.txt"));
+        File unterminated = write("unterminated.txt", "ok\n\"open\n");
+        assertError("Argument file [" + unterminated + "] line 2: Unterminated double quote at column 1", "@" + unterminated);
+        File twoArguments = write("two.txt", "'one' two\n");
+        assertError("Argument file [" + twoArguments + "] line 1: expected one quoted argument but found 2", "@" + twoArguments);
+        char[] longArgument = new char[ArgumentFiles.MAX_ARGUMENT_LENGTH + 1];
+        Arrays.fill(longArgument, 'x');
+        File tooLong = write("long.txt", "ok\n" + new String(longArgument));
+        assertError("Argument file [" + tooLong + "] entry 2 is longer than " + ArgumentFiles.MAX_ARGUMENT_LENGTH + " bytes", "@" + tooLong);
+    }
+
+    @Test
+    public void bind() throws IOException {
+        File file = write("files.txt", "a\nb\nc\n");
+        for (boolean compiledBinding : new boolean[] {false, true}) {
+            CommandLineAppContext appContext = new CommandLineAppContext(new ClassPathResource("Grep-context.xml", Grep.class));
+            appContext.setCompiledBinding(compiledBinding);
+            try {
+                Grep grep = appContext.parseAndGet(Grep.class, new String[] {"-i", "pattern", "@" + file, "d"});
+                assertEquals("pattern", grep.getPattern());
+                assertArrayEquals(new File[] {new File("a"), new File("b"), new File("c"), new File("d")}, grep._getFiles());
+            } finally {
+                appContext.close();
+            }
+        }
+    }
+
+    @Test
+    public void onlyWhereOptedIn() {
+        CommandLineBeanDefinition grep = CommandLineBeanDefinitionReader.createBeanDefinition(Grep.class, new String[] {"@user", "log"});
+        assertEquals("@user", grep.getPropertyValues().getPropertyValue("pattern").getValue());
+        CommandLineBeanDefinition words = CommandLineBeanDefinitionReader.createBeanDefinition(Words.class, new String[] {"@user", "@@"});
+        assertEquals(Arrays.asList("@user", "@@"), words.getPropertyValues().getPropertyValue("words").getValue());
+    }
+
+    @Test
+    public void usage() {
+        try {
+            CommandLineBeanDefinitionReader.createBeanDefinition(Grep.class, new String[] {"pattern", "@" + new File(folder.getRoot(), "missing")});
+            fail("expected UsageException");
+        } catch (UsageException e) {
+            assertTrue(e.getCause() instanceof ArgumentValueException);
+        }
+    }
+
+    private File write(String name, String content) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes());
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    public static class Words {
+        @Operand(index=0)
+        private String[] words;
+
+        public void setWords(String[] words) {
+            this.words = words;
+        }
+    }
+
+    private static void assertError(String expectedPrefix, String operand) {
+        try {
+            ArgumentFiles.expand(Arrays.asList(operand));
+            fail("expected ArgumentValueException");
+        } catch (ArgumentValueException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith(expectedPrefix));
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+
+import joptsimple.OptionException;
+
+import org.junit.Test;
+
+public class ArgumentTokenizerTest {
+    private static final String[] NAMES = {"h", "help", "profile", "profile-json", "v", "verbose", "f", "file", "l", "level",
+        "n", "name", "fi", "na"};
+
+    @Test
+    public void sameAsJoptSimple() {
+        CommandLineParserTemplate template = new CommandLineParserTemplate(Options.class, CommandLineMetaData.forClass(Options.class));
+        ArgumentTokenizer tokenizer = new ArgumentTokenizer(template.getOptionHandlers());
+        String[][] cases = {
+            {"-n", "x"},
+            {"-vn", "x"},
+            {"-nx"},
+            {"-vnx", "op"},
+            {"-n=x"},
+            {"--name=x", "op", "-v"},
+            {"--na", "x", "--verb"},
+            {"-name", "x"},
+            {"-n", "x", "--", "-v", "--"},
+            {"-n", "x", "-"},
+            {"-n", "-v"},
+            {"--name=", "x"},
+            {"-n", "x", "-l"},
+            {"-n", "x", "-l", "3"},
+            {"-n", "x", "-l", "-v"},
+            {"-n", "x", "-l", "--", "op"},
+            {"-n", "x", "-lv"},
+            {"-n", "x", "-vfout"},
+            {"-n", "x", "-f", "a", "--file", "b"},
+            {"-n", "x", "-f"},
+            {"-n", "x", "-vf"},
+            {"-n", "x", "--verbose=ignored"},
+            {"-n", "x", "--profile-json=p.json"},
+            {"-q"},
+            {"--nope"},
+            {"-vq"},
+            {"-vfq", "-n", "x"},
+            {"--=x"},
+            {"--prof", "-n", "x"},
+            {"-n", "x", "--profile"},
+            {"-n", "x", "-f=", "y"},
+            {"-n", "x", "-v=x"},
+            {"-n", "x", "-vv", "--verbose"},
+            {},
+            {"-h"},
+            {"--help", "op"},
+        };
+        for (String[] args : cases) {
+            compare(args, template, tokenizer);
+        }
+    }
+
+    @Test
+    public void grepThroughBuiltinParser() {
+        ArgumentParserFactory configured = CommandLineParserTemplate.getDefaultParserFactory();
+        CommandLineParserTemplate.setDefaultParserFactory(CommandLineParserTemplate.BUILTIN);
+        try {
+            CommandLineBeanDefinition beanDef = CommandLineBeanDefinitionReader.createBeanDefinition(Grep.class,
+                new String[] {"foo", "bar", "-i"});
+            assertEquals(Boolean.TRUE, beanDef.getPropertyValues().getPropertyValue("ignoreCase").getValue());
+            assertEquals("foo", beanDef.getPropertyValues().getPropertyValue("pattern").getValue());
+
+            try {
+                CommandLineBeanDefinitionReader.createBeanDefinition(Grep.class, new String[] {"foo", "bar", "-f"});
+                fail();
+            } catch (UsageException e) {
+                assertEquals("Option ['f', 'file'] requires an argument", e.getMessage());
+            }
+        } finally {
+            CommandLineParserTemplate.setDefaultParserFactory(null);
+        }
+        assertSame(configured, CommandLineParserTemplate.getDefaultParserFactory());
+    }
+
+    @Test
+    public void parserFactoryByName() {
+        assertSame(CommandLineParserTemplate.JOPT_SIMPLE, CommandLineParserTemplate.parserFactory(null));
+        assertSame(CommandLineParserTemplate.BUILTIN, CommandLineParserTemplate.parserFactory("builtin"));
+        assertTrue(CommandLineParserTemplate.parserFactory(Factory.class.getName()) instanceof Factory);
+        try {
+            CommandLineParserTemplate.parserFactory("no.such.Factory");
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("Unknown argument parser [no.such.Factory]", e.getMessage());
+        }
+    }
+
+    private static void compare(String[] args, CommandLineParserTemplate template, ArgumentTokenizer tokenizer) {
+        String description = Arrays.toString(args);
+        ParsedArguments expected;
+        String expectedError = null;
+        try {
+            expected = new OptionSetArguments(template.parse(args));
+        } catch (OptionException e) {
+            expected = null;
+            expectedError = e.getMessage();
+        }
+        ParsedArguments actual;
+        try {
+            actual = tokenizer.parse(args);
+        } catch (OptionException e) {
+            assertEquals(description, expectedError, e.getMessage());
+            return;
+        }
+        assertFalse(description + " should fail with " + expectedError, expected == null);
+
+        assertEquals(description, expected.getOperands(), actual.getOperands());
+        for (String name : NAMES) {
+            assertEquals(description + " " + name, expected.has(name), actual.has(name));
+            assertEquals(description + " " + name, valueOf(expected, name), valueOf(actual, name));
+        }
+    }
+
+    private static String valueOf(ParsedArguments arguments, String name) {
+        try {
+            return arguments.valueOf(name);
+        } catch (OptionException e) {
+            return e.getMessage();
+        }
+    }
+
+    public static class Factory implements ArgumentParserFactory {
+        public ArgumentParser createParser(CommandLineParserTemplate template) {
+            return new ArgumentTokenizer(template.getOptionHandlers());
+        }
+    }
+
+    public static class Options {
+        @Option(shortName="v", longName="verbose")
+        public void setVerbose(boolean verbose) {
+        }
+
+        @Option(shortName="f", longName="file")
+        public void setFile(String file) {
+        }
+
+        @Option(shortName="l", longName="level", requiresValue=false)
+        public void setLevel(String level) {
+        }
+
+        @Option(shortName="n", longName="name", required=true)
+        public void setName(String name) {
+        }
+
+        @Operand(index=0)
+        public void setOperands(String[] operands) {
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.trigonic.utils.spring.cmdline;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+public class CommandLineBatchTest {
+    @Test
+    public void tokenize() {
+        assertArrayEquals(new String[] {"-v", "hello world", "a\"b", "c d", "$x", ""},
+            CommandLineTokenizer.tokenize("  -v 'hello world' \"a\\\"b\" c\\ d \"\\$x\" '' # comment"));
+    }
+
+    @Test
+    public void tokenizeUnterminated() {
+        try {
+            CommandLineTokenizer.tokenize("foo 'bar");
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Unterminated single quote at column 5", e.getMessage());
+        }
+    }
+
+    @Test
+    public void run() throws Exception {
+        StringBuilder input = new StringBuilder();
+        input.append("-v 'hello world'\n");
+        input.append("\n");
+        input.append("# comment\n");
+        input.append("\n");
+        for (int i = 0; i < 50; ++i) {
+            input.append("line").append(i).append('\n');
+        }
+        input.append("-f\n");
+        input.append("'unterminated\n");
+
+        CommandLineAppContext appContext = new CommandLineAppContext("classpath:applicationContext.xml");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        List<CommandLineBatch.Result> results;
+        try {
+            CommandLineBatch batch = new CommandLineBatch(appContext, SampleApplication.class, executor, 3);
+            results = batch.run(new StringReader(input.toString()), new PrintStream(out), new PrintStream(err));
+
+            // the shared context gained no bean definitions
+            assertEquals(3, appContext.getBeanDefinitionCount());
+        } finally {
+            executor.shutdown();
+            appContext.close();
+        }
+
+        assertEquals(53, results.size());
+        assertEquals(1, results.get(0).getLineNumber());
+        assertEquals(5, results.get(1).getLineNumber());
+        assertEquals(CommandLineInvocation.EXIT_USAGE, results.get(51).getExitStatus());
+        assertEquals(CommandLineInvocation.EXIT_USAGE, results.get(52).getExitStatus());
+        assertEquals(CommandLineInvocation.EXIT_USAGE, CommandLineBatch.highestExitStatus(results));
+
+        StringBuilder expected = new StringBuilder(String.format("Verbose!%nhello world%n"));
+        for (int i = 0; i < 50; ++i) {
+            expected.append(String.format("line%d%n", i));
+        }
+        assertEquals(expected.toString(), out.toString());
+        assertTrue(err.toString().startsWith("Error: Option ['f', 'file'] requires an argument"));
+        assertTrue(err.toString().endsWith(String.format("Error: Unterminated single quote at column 1%n")));
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class CommandLineCompletionTest {
+    @Test
+    public void options() {
+        assertEquals(Arrays.asList("--file", "--help", "--ignore-case", "--profile", "--profile-json", "-f", "-h", "-i"),
+            complete(Grep.class, "-"));
+        assertEquals(Arrays.asList("--file"), complete(Grep.class, "-i", "--f"));
+        assertEquals(Collections.emptyList(), complete(Grep.class, "--", "-"));
+        // the value of a standard option is not taken for an operand
+        assertEquals(Arrays.asList("--file"), complete(Grep.class, "--profile-json", "out.json", "--f"));
+    }
+
+    @Test
+    public void values() {
+        assertEquals(Arrays.asList("FAST", "FULL"), complete(Sort.class, "-m", "F"));
+        assertEquals(Arrays.asList("FAST", "FULL", "NONE"), complete(Sort.class, "-rm", ""));
+        assertEquals(Arrays.asList("FAST", "FULL", "NONE"), complete(Sort.class, "--mode", ""));
+
+        // a value in the same word, or a flag, is not followed by one
+        assertEquals(Collections.emptyList(), complete(Sort.class, "-mFAST", "F"));
+        assertEquals(Collections.emptyList(), complete(Sort.class, "-r", "F"));
+
+        // operands, whose File values are left to the shell
+        assertEquals(Arrays.asList("ASC", "DESC"), complete(Sort.class, "-m", "FAST", ""));
+        assertEquals(Collections.emptyList(), complete(Sort.class, "-r", "ASC", "in"));
+        assertEquals(Collections.emptyList(), complete(Sort.class, "ASC", "in", "in"));
+    }
+
+    @Test
+    public void request() {
+        String[] args = {CommandLineCompletion.COMPLETE_ARGUMENT, "2", "sort", "-m"};
+        Map<String, String> environment = Collections.singletonMap(CommandLineCompletion.COMPLETE_VARIABLE, "1");
+        assertTrue(CommandLineCompletion.isCompletion(args, environment));
+        assertFalse(CommandLineCompletion.isCompletion(args, Collections.<String, String>emptyMap()));
+        assertEquals(Arrays.asList("-m", ""), CommandLineCompletion.getWords(args));
+        assertEquals(Arrays.asList("-m"), CommandLineCompletion.getWords(new String[] {CommandLineCompletion.COMPLETE_ARGUMENT, "1", "sort", "-m", "x"}));
+    }
+
+    @Test
+    public void dispatcher() {
+        CommandLineDispatcher dispatcher = new CommandLineDispatcher("tool");
+        dispatcher.setGlobalOptions(CommandLineDispatcherTest.Globals.class);
+        assertEquals(Arrays.asList("count", "greet", "help", "unused"), dispatcher.complete(Arrays.asList("-v", "")));
+        assertEquals(Arrays.asList("--help", "--profile", "--profile-json", "--verbose"), dispatcher.complete(Arrays.asList("--")));
+        assertEquals(Arrays.asList("greet"), dispatcher.complete(Arrays.asList("help", "g")));
+        assertEquals(Arrays.asList("--times"), dispatcher.complete(Arrays.asList("-v", "greet", "--t")));
+        assertEquals(Collections.emptyList(), dispatcher.complete(Arrays.asList("frobnicate", "-")));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CommandLineInvocation invocation = new CommandLineInvocation(new String[] {CommandLineCompletion.COMPLETE_ARGUMENT,
+            "1", "tool", "gr"}, new File("."), Collections.singletonMap(CommandLineCompletion.COMPLETE_VARIABLE, "1"), System.in,
+            new PrintStream(out), System.err);
+        assertEquals(CommandLineInvocation.EXIT_SUCCESS, dispatcher.dispatch(invocation));
+        assertEquals("greet\n", out.toString());
+    }
+
+    @Test
+    public void scripts() {
+        String bash = CommandLineCompletion.bashScript("my-tool");
+        assertTrue(bash, bash.contains("_my_tool_complete() {"));
+        assertTrue(bash, bash.contains(CommandLineCompletion.COMPLETE_VARIABLE + "=1 \"${COMP_WORDS[0]}\" "
+            + CommandLineCompletion.COMPLETE_ARGUMENT + " \"$COMP_CWORD\" \"${COMP_WORDS[@]}\""));
+        assertTrue(bash, bash.endsWith("complete -o default -o bashdefault -F _my_tool_complete my-tool\n"));
+
+        String zsh = CommandLineCompletion.zshScript("my-tool");
+        assertTrue(zsh, zsh.startsWith("#compdef my-tool\n"));
+        assertTrue(zsh, zsh.contains(CommandLineCompletion.COMPLETE_VARIABLE + "=1 \"${words[1]}\" "
+            + CommandLineCompletion.COMPLETE_ARGUMENT));
+        assertTrue(zsh, zsh.endsWith("compdef _my_tool_complete my-tool\n"));
+    }
+
+    private static List<String> complete(Class<?> beanClass, String... words) {
+        return CommandLineCompletion.complete(beanClass, Arrays.asList(words));
+    }
+
+    public enum Mode {
+        FAST, FULL, NONE
+    }
+
+    public enum Order {
+        ASC, DESC
+    }
+
+    public static class Sort implements Runnable {
+        @Option(shortName="m", longName="mode")
+        public void setMode(Mode mode) {
+        }
+
+        @Option(shortName="r", longName="reverse")
+        public void setReverse(boolean reverse) {
+        }
+
+        @Operand(index=0)
+        public void setOrder(Order order) {
+        }
+
+        @Operand(index=1)
+        public void setInputs(File[] inputs) {
+        }
+
+        public void run() {
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+
+public class CommandLineContextGeneratorTest {
+    private static final String PACKAGE = CommandLineContextGeneratorTest.class.getPackage().getName();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void sameDefinitionsAsXml() throws Exception {
+        Resource[] resources = {new ClassPathResource("ContextGenerator-context.xml", getClass()),
+            new ClassPathResource("InvocationScope-context.xml", getClass())};
+        ByteArrayOutputStream source = new ByteArrayOutputStream();
+        new CommandLineContextGenerator().generate(PACKAGE + ".GeneratedInitializer", resources, source);
+
+        File sourceDir = folder.newFolder("src");
+        File sourceFile = new File(sourceDir, PACKAGE.replace('.', '/') + "/GeneratedInitializer.java");
+        sourceFile.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream(sourceFile);
+        try {
+            source.writeTo(out);
+        } finally {
+            out.close();
+        }
+        File classDir = compile(sourceFile);
+
+        DefaultListableBeanFactory expected = new DefaultListableBeanFactory();
+        new XmlBeanDefinitionReader(expected).loadBeanDefinitions(resources);
+        DefaultListableBeanFactory actual = new DefaultListableBeanFactory();
+        URLClassLoader classLoader = new URLClassLoader(new URL[] {classDir.toURI().toURL()}, getClass().getClassLoader());
+        Class<?> initializerClass = classLoader.loadClass(PACKAGE + ".GeneratedInitializer");
+        ((CommandLineContextInitializer) initializerClass.getDeclaredConstructor().newInstance()).initialize(actual);
+
+        assertArrayEquals(expected.getBeanDefinitionNames(), actual.getBeanDefinitionNames());
+        for (String beanName : expected.getBeanDefinitionNames()) {
+            assertEquals(beanName, expected.getBeanDefinition(beanName), actual.getBeanDefinition(beanName));
+            assertEquals(Arrays.asList(expected.getAliases(beanName)), Arrays.asList(actual.getAliases(beanName)));
+        }
+
+        // classes are referenced directly, except where generated code cannot see them
+        assertTrue(((AbstractBeanDefinition) actual.getBeanDefinition("other")).hasBeanClass());
+        assertFalse(((AbstractBeanDefinition) actual.getBeanDefinition("hidden")).hasBeanClass());
+    }
+
+    @Test
+    public void contextUsesIndexedInitializer() throws Exception {
+        File sourceDir = folder.newFolder("src");
+        File resourceDir = folder.newFolder("resources");
+        String location = "classpath:com/trigonic/utils/spring/cmdline/Grep-context.xml";
+        new CommandLineContextGenerator().generate(sourceDir, resourceDir, PACKAGE + ".GrepInitializer", location);
+
+        File indexFile = new File(resourceDir, ContextInitializerIndex.LOCATION);
+        Properties index = ContextInitializerIndex.load(indexFile.toURI().toURL());
+        String key = "class path resource [com/trigonic/utils/spring/cmdline/Grep-context.xml]";
+        Resource[] resources = {new ClassPathResource("Grep-context.xml", getClass())};
+        assertEquals(PACKAGE + ".GrepInitializer " + ContextInitializerIndex.getDigest(resources), index.getProperty(key));
+
+        File classDir = compile(new File(sourceDir, PACKAGE.replace('.', '/') + "/GrepInitializer.java"));
+        ClassLoader previous = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(new URLClassLoader(new URL[] {classDir.toURI().toURL(),
+            resourceDir.toURI().toURL()}, getClass().getClassLoader()));
+        try {
+            assertTrue(loadsGeneratedDefinitions(location));
+            System.setProperty(ContextInitializerIndex.ENABLED_PROPERTY, "false");
+            try {
+                assertFalse(loadsGeneratedDefinitions(location));
+            } finally {
+                System.clearProperty(ContextInitializerIndex.ENABLED_PROPERTY);
+            }
+
+            // an initializer generated from other contents is ignored in favor of the XML
+            index.setProperty(key, PACKAGE + ".GrepInitializer " + ContextInitializerIndex.getDigest(new Resource[] {
+                new ClassPathResource("InvocationScope-context.xml", getClass())}));
+            FileOutputStream out = new FileOutputStream(indexFile);
+            try {
+                index.store(out, null);
+            } finally {
+                out.close();
+            }
+            assertFalse(loadsGeneratedDefinitions(location));
+        } finally {
+            Thread.currentThread().setContextClassLoader(previous);
+        }
+    }
+
+    @Test
+    public void importedResourcesCovered() throws Exception {
+        File xmlDir = folder.newFolder("xml");
+        File imported = write(new File(xmlDir, "imported.xml"), "<bean id=\"shared\" class=\"" + Widget.class.getName()
+            + "\" />");
+        File main = write(new File(xmlDir, "main.xml"), "<import resource=\"imported.xml\" />");
+        File sourceDir = folder.newFolder("src");
+        File resourceDir = folder.newFolder("resources");
+        String location = main.toURI().toURL().toString();
+        new CommandLineContextGenerator().generate(sourceDir, resourceDir, PACKAGE + ".ImportingInitializer", location);
+
+        Resource[] resources = {new DefaultResourceLoader().getResource(location)};
+        Properties index = ContextInitializerIndex.load(new File(resourceDir, ContextInitializerIndex.LOCATION).toURI()
+            .toURL());
+        assertTrue(index.getProperty(ContextInitializerIndex.getKey(resources)).endsWith(" "
+            + imported.toURI().toURL()));
+
+        File classDir = compile(new File(sourceDir, PACKAGE.replace('.', '/') + "/ImportingInitializer.java"));
+        ClassLoader classLoader = new URLClassLoader(new URL[] {classDir.toURI().toURL(), resourceDir.toURI().toURL()},
+            getClass().getClassLoader());
+        assertNotNull(ContextInitializerIndex.find(resources, classLoader));
+
+        // editing only the imported resource makes the initializer stale
+        write(imported, "<bean id=\"renamed\" class=\"" + Widget.class.getName() + "\" />");
+        assertNull(ContextInitializerIndex.find(resources, classLoader));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void methodOverridesUnsupported() throws IOException {
+        Resource resource = new ClassPathResource("ContextGeneratorUnsupported-context.xml", getClass());
+        new CommandLineContextGenerator().generate("Unsupported", new Resource[] {resource}, new ByteArrayOutputStream());
+    }
+
+    private static boolean loadsGeneratedDefinitions(String location) {
+        CommandLineAppContext appContext = new CommandLineAppContext(location);
+        try {
+            Grep grep = appContext.parseAndGet(Grep.class, new String[] {"pattern", "file"});
+            assertEquals("pattern", grep.getPattern());
+            String beanName = appContext.getBeanFactory().getBeanNamesForType(
+                org.springframework.beans.factory.annotation.AutowiredAnnotationBeanPostProcessor.class)[0];
+            return ((AbstractBeanDefinition) appContext.getBeanFactory().getBeanDefinition(beanName)).hasBeanClass();
+        } finally {
+            appContext.close();
+        }
+    }
+
+    private static File write(File file, String beans) throws IOException {
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            out.write("<beans xmlns=\"http://www.springframework.org/schema/beans\""
+                + " xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xsi:schemaLocation=\""
+                + "http://www.springframework.org/schema/beans"
+                + " http://www.springframework.org/schema/beans/spring-beans-2.0.xsd\">"
+                + beans + "</beans>");
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private File compile(File sourceFile) throws IOException {
+        File classDir = folder.newFolder();
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        int result = compiler.run(null, null, null, "-proc:none", "-nowarn", "-classpath", System.getProperty("java.class.path"),
+            "-d", classDir.getPath(), sourceFile.getPath());
+        assertEquals(0, result);
+        return classDir;
+    }
+
+    public static class Widget {
+        public static Widget create(String name, int count) {
+            Widget widget = new Widget();
+            widget.setName(name);
+            widget.setCount(count);
+            return widget;
+        }
+
+        public void setName(String name) {
+        }
+
+        public void setCount(int count) {
+        }
+
+        public void setChild(Widget child) {
+        }
+
+        public void setParts(List<Object> parts) {
+        }
+
+        public void setTags(Set<String> tags) {
+        }
+
+        public void setOptions(Map<String, Object> options) {
+        }
+
+        public void setSettings(Properties settings) {
+        }
+    }
+
+    static class Hidden {
+    }
+}
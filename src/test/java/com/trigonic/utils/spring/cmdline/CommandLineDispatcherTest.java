@@ -0,0 +1,198 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+
+public class CommandLineDispatcherTest {
+    private static boolean unusedInitialized;
+
+    private CommandLineDispatcher dispatcher;
+    private ByteArrayOutputStream out;
+    private ByteArrayOutputStream err;
+
+    @Before
+    public void setUp() {
+        dispatcher = new CommandLineDispatcher("tool", "classpath:com/trigonic/utils/spring/cmdline/Grep-context.xml");
+        dispatcher.setGlobalOptions(Globals.class);
+        out = new ByteArrayOutputStream();
+        err = new ByteArrayOutputStream();
+    }
+
+    @Test
+    public void runSubcommand() {
+        for (boolean compiledBinding : new boolean[] {false, true}) {
+            out.reset();
+            dispatcher.setCompiledBinding(compiledBinding);
+            assertEquals(CommandLineInvocation.EXIT_SUCCESS, dispatch("-v", "greet", "-n", "2", "world"));
+            assertEquals("verbose\nHello world\nHello world\n", out.toString());
+        }
+        assertFalse(unusedInitialized);
+    }
+
+    @Test
+    public void subcommandResourcesLoadedOnlyForSubcommand() {
+        assertEquals(CommandLineInvocation.EXIT_SUCCESS, dispatch("count", "a", "b", "c"));
+        assertEquals("3 operands, greeting bean present: false\n", out.toString());
+    }
+
+    @Test
+    public void help() {
+        assertEquals(CommandLineInvocation.EXIT_USAGE, dispatch());
+        String usage = err.toString();
+        assertTrue(usage, usage.startsWith("Usage: tool [options] <subcommand> [args]"));
+        assertTrue(usage, usage.contains("--verbose"));
+        assertTrue(usage, usage.matches("(?s).*count +Count operands.*greet +Greet someone.*unused.*"));
+
+        err.reset();
+        assertEquals(CommandLineInvocation.EXIT_USAGE, dispatch("-h", "greet"));
+        assertEquals(usage, err.toString());
+        assertFalse(unusedInitialized);
+    }
+
+    @Test
+    public void subcommandHelp() {
+        assertEquals(CommandLineInvocation.EXIT_USAGE, dispatch("help", "greet"));
+        String usage = err.toString();
+        assertTrue(usage, usage.startsWith("Usage: tool greet [options] [operands]"));
+        assertTrue(usage, usage.contains("--times"));
+        assertFalse(usage, usage.contains("Error:"));
+    }
+
+    @Test
+    public void usageErrors() {
+        assertEquals(CommandLineInvocation.EXIT_USAGE, dispatch("frobnicate"));
+        assertTrue(err.toString(), err.toString().startsWith("Error: Unknown subcommand [frobnicate]"));
+
+        err.reset();
+        assertEquals(CommandLineInvocation.EXIT_USAGE, dispatch("--bogus", "greet"));
+        assertTrue(err.toString(), err.toString().startsWith("Error: "));
+
+        err.reset();
+        assertEquals(CommandLineInvocation.EXIT_USAGE, dispatch("greet"));
+        assertTrue(err.toString(), err.toString().contains("Error: Operand [name] is required"));
+        assertEquals("", out.toString());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void globalOptionsWithoutOperands() {
+        dispatcher.setGlobalOptions(Greet.class);
+    }
+
+    private int dispatch(String... args) {
+        return dispatcher.dispatch(TestInvocations.create(args, out, err));
+    }
+
+    public static class Globals {
+        private boolean verbose;
+
+        @Option(shortName="v", longName="verbose", requiresValue=false)
+        public void setVerbose(boolean verbose) {
+            this.verbose = verbose;
+        }
+
+        public boolean isVerbose() {
+            return verbose;
+        }
+    }
+
+    public static class Greeting {
+        private String text;
+
+        public void setText(String text) {
+            this.text = text;
+        }
+
+        public String getText() {
+            return text;
+        }
+    }
+
+    @Subcommand(name="greet", description="Greet someone", resources="classpath:com/trigonic/utils/spring/cmdline/Subcommand-context.xml")
+    public static class Greet implements Runnable {
+        @Autowired
+        private Globals globals;
+
+        @Autowired
+        private Greeting greeting;
+
+        @Autowired
+        private PrintStream stdout;
+
+        private int times = 1;
+        private String name;
+
+        @Option(shortName="n", longName="times")
+        public void setTimes(int times) {
+            this.times = times;
+        }
+
+        @Operand(index=0)
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public void run() {
+            if (globals.isVerbose()) {
+                stdout.println("verbose");
+            }
+            for (int i = 0; i < times; ++i) {
+                stdout.println(greeting.getText() + " " + name);
+            }
+        }
+    }
+
+    @Subcommand(name="count", description="Count operands")
+    public static class Count implements Runnable {
+        @Autowired
+        private ApplicationContext applicationContext;
+
+        @Autowired
+        private PrintStream stdout;
+
+        private String[] operands;
+
+        @Operand(index=0, required=false)
+        public void setOperands(String[] operands) {
+            this.operands = operands;
+        }
+
+        public void run() {
+            stdout.println(operands.length + " operands, greeting bean present: " + applicationContext.containsBean("greeting"));
+        }
+    }
+
+    @Subcommand(name="unused")
+    public static class Unused implements Runnable {
+        static {
+            unusedInitialized = true;
+        }
+
+        public void run() {
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.ClassPathResource;
+
+public class CommandLineEventsTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void nothingBegunWithoutRecording() {
+        Object event = CommandLineEvents.begin(CommandLineEvents.RUN, Grep.class, 0);
+        assertNull(event);
+        CommandLineEvents.end(event, CommandLineEvents.SUCCESS);
+    }
+
+    @Test
+    public void lifecycleRecorded() throws Exception {
+        List<RecordedEvent> events = record(new String[] {"pattern", "file"}, true);
+
+        RecordedEvent invocation = find(events, CommandLineEvents.INVOCATION);
+        assertEquals(Grep.class.getName(), invocation.getClass("commandClass").getName());
+        assertEquals(2, invocation.getInt("argumentCount"));
+        assertEquals(CommandLineEvents.SUCCESS, invocation.getString("outcome"));
+
+        // nested phases take the command from the invocation
+        for (String phase : new String[] {CommandLineEvents.PARSE, CommandLineEvents.REGISTER, CommandLineEvents.RUN}) {
+            RecordedEvent event = find(events, phase);
+            assertEquals(phase, Grep.class.getName(), event.getClass("commandClass").getName());
+            assertEquals(phase, 2, event.getInt("argumentCount"));
+            assertEquals(phase, CommandLineEvents.SUCCESS, event.getString("outcome"));
+        }
+
+        // the context is shared by commands, so its phases have none
+        RecordedEvent refresh = find(events, CommandLineEvents.REFRESH);
+        assertNull(refresh.getClass("commandClass"));
+        assertEquals(CommandLineEvents.SUCCESS, find(events, CommandLineEvents.CLOSE).getString("outcome"));
+
+        List<String> properties = new ArrayList<String>();
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals("com.trigonic.cmdline.Conversion")) {
+                assertEquals(Grep.class.getName(), event.getClass("commandClass").getName());
+                properties.add(event.getString("property"));
+            }
+        }
+        assertTrue(properties.toString(), properties.contains("pattern"));
+    }
+
+    @Test
+    public void usageRecorded() throws Exception {
+        List<RecordedEvent> events = record(new String[] {"--no-such-option"}, false);
+        assertEquals(CommandLineEvents.USAGE, find(events, CommandLineEvents.PARSE).getString("outcome"));
+        assertEquals(CommandLineEvents.USAGE, find(events, CommandLineEvents.INVOCATION).getString("outcome"));
+    }
+
+    private List<RecordedEvent> record(String[] args, boolean compiledBinding) throws Exception {
+        File file = new File(folder.getRoot(), "events.jfr");
+        Recording recording = new Recording();
+        recording.enable("com.trigonic.cmdline.Phase");
+        recording.enable("com.trigonic.cmdline.Conversion");
+        recording.start();
+        try {
+            CommandLineAppContext appContext = new CommandLineAppContext(new ClassPathResource("Grep-context.xml", Grep.class));
+            try {
+                appContext.setCompiledBinding(compiledBinding);
+                appContext.invoke(Grep.class, TestInvocations.create(args));
+            } finally {
+                appContext.close();
+            }
+        } finally {
+            recording.stop();
+            recording.dump(file.toPath());
+            recording.close();
+        }
+        return RecordingFile.readAllEvents(file.toPath());
+    }
+
+    private static RecordedEvent find(List<RecordedEvent> events, String phase) {
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals("com.trigonic.cmdline.Phase") && phase.equals(event.getString("phase"))) {
+                return event;
+            }
+        }
+        throw new AssertionError("No " + phase + " event in " + events);
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.trigonic.utils.spring.cmdline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaCompiler.CompilationTask;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import org.junit.Test;
+
+public class CommandLineMetaDataTest {
+    @Test
+    public void generated() {
+        CommandLineMetaData metaData = CommandLineMetaData.forClass(Grep.class);
+        assertEquals(Grep.class.getName() + CommandLineMetaData.GENERATED_SUFFIX, metaData.getClass().getName());
+        assertEquals(describe(new CommandLineMetaData(Grep.class)), describe(metaData));
+    }
+
+    @Test
+    public void reflectionFallback() {
+        CommandLineMetaData metaData = CommandLineMetaData.forClass(InheritedGrep.class);
+        assertSame(CommandLineMetaData.class, metaData.getClass());
+        assertEquals(describe(new CommandLineMetaData(Grep.class)), describe(metaData));
+    }
+
+    @Test
+    public void duplicateOperandIndex() {
+        List<Diagnostic<? extends JavaFileObject>> errors = compile("Duplicate",
+            "public class Duplicate {",
+            "    @com.trigonic.utils.spring.cmdline.Operand(index=0) private String a;",
+            "    @com.trigonic.utils.spring.cmdline.Operand(index=0) private String b;",
+            "    public void setA(String a) { this.a = a; }",
+            "    public void setB(String b) { this.b = b; }",
+            "}");
+        assertEquals(1, errors.size());
+        assertEquals("Duplicate operand index [0]", errors.get(0).getMessage(null));
+    }
+
+    @Test
+    public void operandFollowsMultiValue() {
+        List<Diagnostic<? extends JavaFileObject>> errors = compile("FollowsMulti",
+            "public class FollowsMulti {",
+            "    @com.trigonic.utils.spring.cmdline.Operand(index=0) private String[] a;",
+            "    @com.trigonic.utils.spring.cmdline.Operand(index=1) private String b;",
+            "    public void setA(String[] a) { this.a = a; }",
+            "    public void setB(String b) { this.b = b; }",
+            "}");
+        assertEquals(1, errors.size());
+        assertEquals("Operand index [1] illegally follows multi-value operand", errors.get(0).getMessage(null));
+    }
+
+    @Test
+    public void argumentFilesNotMultiValue() {
+        List<Diagnostic<? extends JavaFileObject>> errors = compile("SingleFiles",
+            "public class SingleFiles {",
+            "    @com.trigonic.utils.spring.cmdline.Operand(index=0, argumentFiles=true) private String a;",
+            "    public void setA(String a) { this.a = a; }",
+            "}");
+        assertEquals(1, errors.size());
+        assertEquals("Operand index [0] cannot take argument files unless multi-value", errors.get(0).getMessage(null));
+    }
+
+    @Test
+    public void reservedOptionName() throws Exception {
+        String[] lines = {
+            "public class Reserved {",
+            "    @com.trigonic.utils.spring.cmdline.Option(longName=\"profile\") private String profile;",
+            "    public void setProfile(String profile) { this.profile = profile; }",
+            "}"};
+        List<Diagnostic<? extends JavaFileObject>> errors = compile("Reserved", lines);
+        assertEquals(1, errors.size());
+        assertEquals("Option name [--profile] is reserved", errors.get(0).getMessage(null));
+
+        // and when the metadata is introspected at runtime
+        File outputDir = new File(System.getProperty("java.io.tmpdir"), "cmdline-reserved-test");
+        outputDir.mkdirs();
+        CompilationTask task = ToolProvider.getSystemJavaCompiler().getTask(null, null, null, Arrays.asList("-proc:none",
+            "-d", outputDir.getPath(), "-classpath", System.getProperty("java.class.path")), null,
+            Arrays.asList(source("Reserved", lines)));
+        assertTrue(task.call());
+        URLClassLoader classLoader = new URLClassLoader(new URL[] {outputDir.toURI().toURL()}, getClass().getClassLoader());
+        try {
+            new CommandLineMetaData(classLoader.loadClass("Reserved"));
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Option name [--profile] is reserved", e.getMessage());
+        }
+    }
+
+    @Test
+    public void fieldWithoutSetter() {
+        List<Diagnostic<? extends JavaFileObject>> errors = compile("NoSetter",
+            "public class NoSetter {",
+            "    @com.trigonic.utils.spring.cmdline.Option(shortName=\"v\") private boolean verbose;",
+            "}");
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0).getMessage(null).startsWith("@Option annotation cannot be applied"));
+    }
+
+    private static String describe(CommandLineMetaData metaData) {
+        List<String> result = new ArrayList<String>();
+        for (OptionHandler handler : metaData.getOptionHandlers()) {
+            AbstractOptionHandler option = (AbstractOptionHandler) handler;
+            result.add(option.option.shortName() + " " + option.option.longName() + " " + option.option.description() + " "
+                + option.option.required() + " " + option.option.requiresValue() + " " + option.propertyName + " "
+                + option.valueType.getName());
+        }
+        Collections.sort(result);
+        for (OperandHandler handler : metaData.getOperandHandlers()) {
+            result.add(handler.getIndex() + " " + handler.getName() + " " + handler.getDescription() + " " + handler.hasMultipleValues());
+        }
+        result.add("argument files " + metaData.getArgumentFilesIndex());
+        return result.toString();
+    }
+
+    private static List<Diagnostic<? extends JavaFileObject>> compile(String className, String... lines) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        JavaFileObject file = source(className, lines);
+        File outputDir = new File(System.getProperty("java.io.tmpdir"), "cmdline-processor-test");
+        outputDir.mkdirs();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        List<String> options = Arrays.asList("-d", outputDir.getPath(), "-s", outputDir.getPath(),
+            "-classpath", System.getProperty("java.class.path"));
+        CompilationTask task = compiler.getTask(null, null, diagnostics, options, null, Arrays.asList(file));
+        task.setProcessors(Arrays.asList(new CommandLineMetaDataProcessor()));
+        assertFalse(task.call());
+        List<Diagnostic<? extends JavaFileObject>> errors = new ArrayList<Diagnostic<? extends JavaFileObject>>();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                errors.add(diagnostic);
+            }
+        }
+        return errors;
+    }
+
+    private static JavaFileObject source(String className, String... lines) {
+        StringBuilder source = new StringBuilder();
+        for (String line : lines) {
+            source.append(line).append('\n');
+        }
+        final String content = source.toString();
+        return new SimpleJavaFileObject(URI.create("string:///" + className + ".java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return content;
+            }
+        };
+    }
+
+    public static class InheritedGrep extends Grep {
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.trigonic.utils.spring.cmdline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import joptsimple.OptionSet;
+
+import org.junit.Test;
+
+public class CommandLineParserTemplateTest {
+    @Test
+    public void cached() {
+        CommandLineParserTemplate.Statistics before = CommandLineParserTemplate.getStatistics();
+        CommandLineParserTemplate template = CommandLineParserTemplate.forClass(Grep.class);
+        assertSame(template, CommandLineParserTemplate.forClass(Grep.class));
+        CommandLineParserTemplate.Statistics after = CommandLineParserTemplate.getStatistics();
+        assertEquals(before.getRequestCount() + 2, after.getRequestCount());
+        assertTrue(after.getHitCount() > before.getHitCount());
+    }
+
+    @Test
+    public void concurrentParses() throws Exception {
+        final CommandLineParserTemplate template = CommandLineParserTemplate.forClass(Grep.class);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<OptionSet>> results = new ArrayList<Future<OptionSet>>();
+            for (int i = 0; i < 200; ++i) {
+                final String pattern = "p" + i;
+                results.add(executor.submit(new Callable<OptionSet>() {
+                    public OptionSet call() {
+                        return template.parse(new String[] {"-f", pattern, pattern, "bar"});
+                    }
+                }));
+            }
+            for (int i = 0; i < results.size(); ++i) {
+                OptionSet optionSet = results.get(i).get();
+                assertEquals("p" + i, optionSet.valueOf("f"));
+                assertEquals("p" + i, optionSet.nonOptionArguments().get(0));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.util.FileCopyUtils;
+
+public class CommandLineProfileTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void optionsFoundBeforeParsing() {
+        assertNull(CommandLineProfile.forArgs(new String[] {"pattern", "file"}));
+        assertNull(CommandLineProfile.forArgs(new String[] {"--", "--profile"}));
+        assertNull(CommandLineProfile.forArgs(new String[] {"--profile-json"}));
+        assertNull(CommandLineProfile.forArgs(new String[] {"--profile"}).getJsonFile());
+        assertEquals(new File("out.json"), CommandLineProfile.forArgs(new String[] {"x", "--profile-json=out.json"})
+            .getJsonFile());
+        assertEquals(new File("out.json"), CommandLineProfile.forArgs(new String[] {"--profile-json", "out.json"})
+            .getJsonFile());
+    }
+
+    @Test
+    public void invocationReport() {
+        CommandLineAppContext appContext = createContext();
+        try {
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            CommandLineInvocation invocation = TestInvocations.create(new String[] {"--profile", "pattern", "file"}, new ByteArrayOutputStream(), err);
+            assertEquals(CommandLineInvocation.EXIT_SUCCESS, appContext.invoke(Grep.class, invocation));
+            String report = err.toString();
+            assertTrue(report, report.startsWith("Phase"));
+            assertTrue(report, report.contains("\nparse arguments "));
+            assertTrue(report, report.contains("\ncreate command "));
+            assertTrue(report, report.contains("\nrun "));
+            assertTrue(report, report.contains("  " + Grep.class.getName()));
+            assertNull(CommandLineProfile.current());
+
+            // the options are accepted, and left out of the report when absent
+            err.reset();
+            invocation = TestInvocations.create(new String[] {"pattern", "file"}, new ByteArrayOutputStream(), err);
+            assertEquals(CommandLineInvocation.EXIT_SUCCESS, appContext.invoke(Grep.class, invocation));
+            assertEquals("", err.toString());
+        } finally {
+            appContext.close();
+        }
+    }
+
+    @Test
+    public void contextPhasesNested() {
+        CommandLineProfile profile = new CommandLineProfile(null);
+        CommandLineProfile.bind(profile);
+        try {
+            long start = CommandLineProfile.start();
+            CommandLineAppContext appContext = createContext();
+            CommandLineProfile.end("context", start);
+            appContext.close();
+        } finally {
+            CommandLineProfile.bind(null);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        profile.printReport(new PrintStream(out));
+        String report = out.toString();
+        assertTrue(report, report.contains("\ncontext "));
+        assertTrue(report, report.contains("\n  refresh "));
+        assertTrue(report, report.contains("\n    load definitions "));
+        assertTrue(report, report.contains("\n    singletons "));
+        // post-processors created after the profiler are timed as well
+        assertTrue(report, report.contains("  org.springframework.beans.factory.annotation.AutowiredAnnotationBeanPostProcessor"));
+    }
+
+    @Test
+    public void jsonReport() throws Exception {
+        File json = new File(folder.getRoot(), "profile.json");
+        CommandLineAppContext appContext = createContext();
+        try {
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            CommandLineInvocation invocation = TestInvocations.create(new String[] {"--profile-json", json.getPath(), "pattern",
+                "file"}, new ByteArrayOutputStream(), err);
+            assertEquals(CommandLineInvocation.EXIT_SUCCESS, appContext.invoke(Grep.class, invocation));
+            assertEquals("", err.toString());
+        } finally {
+            appContext.close();
+        }
+
+        String text = FileCopyUtils.copyToString(new InputStreamReader(new FileInputStream(json), "UTF-8"));
+        assertTrue(text, text.startsWith("{"));
+        assertTrue(text, text.contains("{\"name\": \"parse arguments\", \"depth\": 0, "));
+        assertTrue(text, text.contains("{\"name\": \"" + Grep.class.getName()));
+        assertFalse(text, text.contains("\"name\": \"context\""));
+    }
+
+    @Test
+    public void notBoundWithoutOption() {
+        assertNull(CommandLineProfile.current());
+        assertEquals(0, CommandLineProfile.start());
+        CommandLineProfile profile = new CommandLineProfile(null);
+        assertNull(CommandLineProfile.bind(profile));
+        assertNotNull(CommandLineProfile.current());
+        CommandLineProfile.bind(null);
+        assertNull(CommandLineProfile.current());
+    }
+
+    private static CommandLineAppContext createContext() {
+        return new CommandLineAppContext(new ClassPathResource("Grep-context.xml", Grep.class));
+    }
+
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.trigonic.utils.spring.cmdline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.ClassPathResource;
+
+public class CommandLineServerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File stateFile;
+    private CommandLineServer server;
+    private Thread serverThread;
+
+    @Before
+    public void startServer() throws Exception {
+        stateFile = File.createTempFile("cmdline-server", ".properties");
+        server = new CommandLineServer(new CommandLineAppContext("classpath:applicationContext.xml"),
+            SampleApplication.class, stateFile, 60000);
+        serverThread = serve(server);
+    }
+
+    @After
+    public void stopServer() throws Exception {
+        server.close();
+        serverThread.join();
+        assertFalse(stateFile.exists());
+    }
+
+    @Test
+    public void run() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        assertEquals(CommandLineInvocation.EXIT_SUCCESS, invoke(out, err, "-v", "hello", "world"));
+        assertEquals(String.format("Verbose!%nhello%nworld%n"), out.toString("UTF-8"));
+        assertEquals("", err.toString("UTF-8"));
+
+        // a second invocation gets a fresh bean
+        out.reset();
+        assertEquals(CommandLineInvocation.EXIT_SUCCESS, invoke(out, err, "again"));
+        assertEquals(String.format("again%n"), out.toString("UTF-8"));
+    }
+
+    @Test
+    public void usage() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        assertEquals(CommandLineInvocation.EXIT_USAGE, invoke(out, err));
+        assertTrue(err.toString("UTF-8").startsWith("Error: Operand [message] is required"));
+        assertEquals("", out.toString("UTF-8"));
+    }
+
+    @Test
+    public void invalidTokenRejected() throws Exception {
+        assertEquals(-1, handshake("0123456789abcdef0123456789abcdef"));
+        // a frame longer than the token is refused without being read
+        assertEquals(-1, handshake(new String(new char[1024 * 1024]).replace('\0', 'x')));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(CommandLineInvocation.EXIT_SUCCESS,
+            invoke(out, new ByteArrayOutputStream(), "still", "serving"));
+    }
+
+    @Test
+    public void idleTimeoutDespiteSilentConnection() throws Exception {
+        File idleStateFile = folder.newFile("idle.properties");
+        CommandLineServer idleServer = new CommandLineServer(
+            new CommandLineAppContext("classpath:applicationContext.xml"), SampleApplication.class, idleStateFile, 100);
+        idleServer.setHandshakeTimeoutMillis(200);
+        Thread idleThread = serve(idleServer);
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), idleServer.getPort());
+        try {
+            // the connection sends nothing, so is dropped and the server then shuts down on its own
+            assertEquals(-1, socket.getInputStream().read());
+            idleThread.join(10000);
+            assertFalse(idleThread.isAlive());
+            assertFalse(idleStateFile.exists());
+        } finally {
+            socket.close();
+            idleServer.close();
+        }
+    }
+
+    @Test
+    public void standardInputForwarded() throws Exception {
+        File echoStateFile = folder.newFile("echo.properties");
+        CommandLineServer echoServer = new CommandLineServer(
+            new CommandLineAppContext(new ClassPathResource("Grep-context.xml", Grep.class)),
+            StandardStreamsTest.Echo.class, echoStateFile, 60000);
+        Thread echoThread = serve(echoServer);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            InputStream in = new ByteArrayInputStream("one\ntwo\n".getBytes("UTF-8"));
+            assertEquals(CommandLineInvocation.EXIT_SUCCESS, new CommandLineClient(echoStateFile).invoke(
+                new String[] {"in"}, new File("."), Collections.<String, String>emptyMap(), in, out, err));
+            assertEquals(String.format("in: one%nin: two%n"), out.toString("UTF-8"));
+            assertEquals(String.format("in: 2 lines%n"), err.toString("UTF-8"));
+        } finally {
+            echoServer.close();
+            echoThread.join();
+        }
+    }
+
+    @Test
+    public void workingDirectoryResolved() throws Exception {
+        File locateStateFile = folder.newFile("locate.properties");
+        CommandLineServer locateServer = new CommandLineServer(
+            new CommandLineAppContext(new ClassPathResource("Grep-context.xml", Grep.class)),
+            FileValuesTest.Locate.class, locateStateFile, 60000);
+        Thread locateThread = serve(locateServer);
+        try {
+            File workingDirectory = folder.newFolder("work");
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(CommandLineInvocation.EXIT_SUCCESS, new CommandLineClient(locateStateFile).invoke(
+                new String[] {"relative.txt"}, workingDirectory, Collections.<String, String>emptyMap(),
+                new ByteArrayInputStream(new byte[0]), out, new ByteArrayOutputStream()));
+            assertEquals(String.format("%s%n", new File(workingDirectory, "relative.txt").getPath()),
+                out.toString("UTF-8"));
+        } finally {
+            locateServer.close();
+            locateThread.join();
+        }
+    }
+
+    private int invoke(ByteArrayOutputStream out, ByteArrayOutputStream err, String... args) throws Exception {
+        return new CommandLineClient(stateFile).invoke(args, new File("."), Collections.<String, String>emptyMap(),
+            new ByteArrayInputStream(new byte[0]), out, err);
+    }
+
+    /**
+     * Presents the given token and returns the server's first reply byte, -1 once it closes the connection.
+     */
+    private int handshake(String token) throws Exception {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+        try {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            CommandLineProtocol.writeString(out, token);
+            out.writeInt(0);
+            out.flush();
+            return new DataInputStream(socket.getInputStream()).read();
+        } catch (java.net.SocketException e) {
+            return -1;  // reset while the rest was still being written
+        } finally {
+            socket.close();
+        }
+    }
+
+    private static Thread serve(final CommandLineServer server) {
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    server.serve();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        thread.start();
+        return thread;
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.springframework.beans.TypeMismatchException;
+import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.beans.factory.support.AbstractBeanFactory;
+import org.springframework.core.io.ClassPathResource;
+
+public class CompiledBindingTest {
+    @Test
+    public void grep() {
+        CommandLineAppContext appContext = createContext();
+        try {
+            Grep grep = appContext.parseAndGet(Grep.class, new String[] {"-i", "-f", "patterns", "abc", "a", "b"});
+            assertTrue(grep._isIgnoreCase());
+            assertEquals(new File("patterns"), grep.getPatternFile());
+            assertEquals("abc", grep.getPattern());
+            assertArrayEquals(new File[] {new File("a"), new File("b")}, grep._getFiles());
+            assertNotNull(grep.getAppContext());
+            assertTrue(appContext.getBeanFactory().getBeanDefinition(Grep.class.getName() + "#0").getPropertyValues().isEmpty());
+        } finally {
+            appContext.close();
+        }
+    }
+
+    @Test
+    public void absentOptions() {
+        CommandLineAppContext appContext = createContext();
+        try {
+            Grep grep = appContext.parseAndGet(Grep.class, new String[] {"abc", "a"});
+            assertFalse(grep._isIgnoreCase());
+            assertNull(grep.getPatternFile());
+            assertArrayEquals(new File[] {new File("a")}, grep._getFiles());
+        } finally {
+            appContext.close();
+        }
+    }
+
+    @Test
+    public void conversions() {
+        CommandLineAppContext appContext = createContext();
+        try {
+            Conversions bean = appContext.parseAndGet(Conversions.class, new String[] {"-c", "7", "-u", "SECONDS",
+                "--char", "x", "1", "2", "3"});
+            assertEquals(7, bean.count);
+            assertEquals(TimeUnit.SECONDS, bean.unit);
+            assertEquals('x', bean.character);
+            assertEquals(Arrays.asList(1, 2, 3), bean.numbers);
+        } finally {
+            appContext.close();
+        }
+    }
+
+    @Test
+    public void sortedSet() {
+        CommandLineAppContext appContext = createContext();
+        try {
+            Sorted bean = appContext.parseAndGet(Sorted.class, new String[] {"c", "a", "b", "a"});
+            assertEquals(Arrays.asList("a", "b", "c"), Arrays.asList(bean.values.toArray()));
+        } finally {
+            appContext.close();
+        }
+    }
+
+    @Test
+    public void typeMismatch() {
+        CommandLineAppContext appContext = createContext();
+        try {
+            appContext.parseAndGet(Conversions.class, new String[] {"-u", "FORTNIGHTS", "1"});
+            fail("expected TypeMismatchException");
+        } catch (BeanCreationException e) {
+            assertTrue(e.getCause() instanceof TypeMismatchException);
+        } finally {
+            appContext.close();
+        }
+    }
+
+    @Test
+    public void postProcessorAddedOnce() {
+        CommandLineAppContext appContext = createContext();
+        try {
+            assertEquals(0, countBindingPostProcessors(appContext));
+            appContext.parse(Grep.class, new String[] {"abc", "a"});
+            appContext.parse(Grep.class, new String[] {"def", "b"});
+            assertEquals(1, countBindingPostProcessors(appContext));
+        } finally {
+            appContext.close();
+        }
+
+        appContext = new CommandLineAppContext(new ClassPathResource("Grep-context.xml", Grep.class));
+        try {
+            appContext.parseAndGet(Grep.class, new String[] {"abc", "a"});
+            assertEquals(0, countBindingPostProcessors(appContext));
+        } finally {
+            appContext.close();
+        }
+    }
+
+    @Test
+    public void missingOperand() {
+        try {
+            CommandLineBeanDefinitionReader.createBeanDefinition(Grep.class, new String[0], true);
+            fail("expected UsageException");
+        } catch (UsageException e) {
+            assertTrue(e.getCause() instanceof OperandException);
+        }
+    }
+
+    private static int countBindingPostProcessors(CommandLineAppContext appContext) {
+        int count = 0;
+        for (BeanPostProcessor postProcessor : ((AbstractBeanFactory) appContext.getBeanFactory()).getBeanPostProcessors()) {
+            if (postProcessor instanceof CommandLineBindingPostProcessor) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    private static CommandLineAppContext createContext() {
+        CommandLineAppContext appContext = new CommandLineAppContext(new ClassPathResource("Grep-context.xml", Grep.class));
+        appContext.setCompiledBinding(true);
+        return appContext;
+    }
+
+    public static class Conversions {
+        private int count;
+        private TimeUnit unit;
+        private char character;
+        private List<Integer> numbers;
+
+        @Option(shortName="c", longName="count")
+        public void setCount(int count) {
+            this.count = count;
+        }
+
+        @Option(shortName="u", longName="unit")
+        public void setUnit(TimeUnit unit) {
+            this.unit = unit;
+        }
+
+        @Option(longName="char")
+        public void setCharacter(char character) {
+            this.character = character;
+        }
+
+        @Operand(index=0)
+        public void setNumbers(List<Integer> numbers) {
+            this.numbers = numbers;
+        }
+    }
+
+    public static class Sorted {
+        private SortedSet<String> values;
+
+        @Operand(index=0)
+        public void setValues(SortedSet<String> values) {
+            this.values = values;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+
+public class ConcurrentSingletonsTest {
+    private static final long DELAY = 250;
+
+    private static CountDownLatch meeting;
+
+    @Test
+    public void independentSingletonsConcurrently() {
+        meeting = new CountDownLatch(4);
+        GenericCommandLineAppContext appContext = createContext(new CommandLineContextInitializer() {
+            public void initialize(BeanDefinitionRegistry registry) {
+                for (int i = 1; i <= 4; ++i) {
+                    registry.registerBeanDefinition("slow" + i, slow(0).addPropertyValue("meet", true)
+                        .getBeanDefinition());
+                }
+                registry.registerBeanDefinition("last", slow(0).addPropertyReference("dependency", "slow1")
+                    .getBeanDefinition());
+                registry.registerBeanDefinition("first", slow(0).addDependsOn("slow3").getBeanDefinition());
+                registry.registerBeanDefinition("cycle1", slow(0).addPropertyReference("dependency", "cycle2")
+                    .getBeanDefinition());
+                registry.registerBeanDefinition("cycle2", slow(0).addPropertyReference("dependency", "cycle1")
+                    .getBeanDefinition());
+                registry.registerBeanDefinition("lookup", BeanDefinitionBuilder.genericBeanDefinition(Lookup.class)
+                    .getBeanDefinition());
+            }
+        });
+        try {
+            // each of the independent singletons was in creation while all the others were
+            for (int i = 1; i <= 4; ++i) {
+                assertTrue(appContext.getBean("slow" + i, Slow.class).met);
+            }
+            assertTrue(appContext.getBean("last", Slow.class).dependencyReady);
+            assertTrue(appContext.getBean("first", Slow.class).ready);
+            assertTrue(appContext.getBean("slow3", Slow.class).ready);
+            assertSame(appContext.getBean("cycle2"), appContext.getBean("cycle1", Slow.class).dependency);
+            assertSame(appContext.getBean("cycle1"), appContext.getBean("cycle2", Slow.class).dependency);
+            assertTrue(appContext.getBean(Lookup.class).lookedUpReady);
+        } finally {
+            appContext.close();
+        }
+    }
+
+    @Test
+    public void factoryBeanLookingUpSingletonInCreation() {
+        GenericCommandLineAppContext appContext = createContext(new CommandLineContextInitializer() {
+            public void initialize(BeanDefinitionRegistry registry) {
+                registry.registerBeanDefinition("slow", slow(DELAY).getBeanDefinition());
+                registry.registerBeanDefinition("product", BeanDefinitionBuilder.genericBeanDefinition(
+                    SlowLookupFactory.class).getBeanDefinition());
+                registry.registerBeanDefinition("user", slow(0).addPropertyReference("dependency", "product")
+                    .getBeanDefinition());
+            }
+        });
+        try {
+            assertSame(appContext.getBean("slow"), appContext.getBean("user", Slow.class).dependency);
+            assertTrue(appContext.getBean("user", Slow.class).dependencyReady);
+        } finally {
+            appContext.close();
+        }
+    }
+
+    @Test(expected = BeanCreationException.class)
+    public void failure() {
+        createContext(new CommandLineContextInitializer() {
+            public void initialize(BeanDefinitionRegistry registry) {
+                registry.registerBeanDefinition("slow", slow(DELAY).getBeanDefinition());
+                registry.registerBeanDefinition("broken", slow(-1).getBeanDefinition());
+            }
+        });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidParallelism() {
+        new CommandLineBeanFactory(null).setSingletonParallelism(0);
+    }
+
+    private static GenericCommandLineAppContext createContext(CommandLineContextInitializer initializer) {
+        return new GenericCommandLineAppContext(initializer) {
+            @Override
+            protected int getSingletonParallelism() {
+                return 4;
+            }
+        };
+    }
+
+    private static BeanDefinitionBuilder slow(long delay) {
+        return BeanDefinitionBuilder.genericBeanDefinition(Slow.class).addPropertyValue("delay", delay);
+    }
+
+    public static class Slow implements InitializingBean {
+        private volatile boolean ready;
+        private boolean dependencyReady;
+        private boolean met;
+        private Slow dependency;
+
+        public void setDelay(long delay) throws InterruptedException {
+            if (delay < 0) {
+                throw new IllegalArgumentException("broken");
+            }
+            Thread.sleep(delay);
+        }
+
+        public void setMeet(boolean meet) throws InterruptedException {
+            meeting.countDown();
+            met = meeting.await(10, TimeUnit.SECONDS);
+        }
+
+        public void setDependency(Slow dependency) {
+            this.dependency = dependency;
+            dependencyReady = dependency.ready;
+        }
+
+        public void afterPropertiesSet() {
+            ready = true;
+        }
+    }
+
+    // looks up a singleton its definition does not show, from under the singleton lock
+    public static class SlowLookupFactory implements FactoryBean<Slow>, BeanFactoryAware {
+        private BeanFactory beanFactory;
+
+        public void setBeanFactory(BeanFactory beanFactory) {
+            this.beanFactory = beanFactory;
+        }
+
+        public Slow getObject() {
+            return beanFactory.getBean("slow", Slow.class);
+        }
+
+        public Class<?> getObjectType() {
+            return Slow.class;
+        }
+
+        public boolean isSingleton() {
+            return true;
+        }
+    }
+
+    public static class Lookup implements BeanFactoryAware {
+        private boolean lookedUpReady;
+
+        // a dependency the definition does not show, which may be in creation on another thread
+        public void setBeanFactory(BeanFactory beanFactory) {
+            lookedUpReady = beanFactory.getBean("slow2", Slow.class).ready;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.Closeable;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.ClassPathResource;
+
+public class FileValuesTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void bind() throws IOException {
+        File first = write("first.txt", "first");
+        File second = write("second.txt", "second");
+        for (boolean compiledBinding : new boolean[] {false, true}) {
+            CommandLineAppContext appContext = createContext(compiledBinding);
+            Inputs inputs;
+            try {
+                inputs = appContext.parseAndGet(Inputs.class, new String[] {"-p", "some/path", "-m", first.getPath(),
+                    "-f", second.getPath(), first.getPath(), second.getPath()});
+                assertEquals(Paths.get("some/path"), inputs.path);
+                assertEquals("first", read(inputs.mapped));
+                assertEquals(6, inputs.mappedFile.size());
+                assertEquals(1, inputs.mappedFile.getSegmentCount());
+                assertEquals("second", read(inputs.mappedFile.getSegment(0)));
+                assertEquals(2, inputs.channels.length);
+                assertEquals("first", read(inputs.channels[0]));
+                assertEquals("second", read(inputs.channels[1]));
+            } finally {
+                appContext.close();
+            }
+            assertFalse(inputs.channels[0].isOpen());
+            assertFalse(inputs.channels[1].isOpen());
+        }
+    }
+
+    @Test
+    public void openedOnFirstUse() throws IOException {
+        File file = write("later.txt", "sooner");
+        CommandLineAppContext appContext = createContext(false);
+        try {
+            Inputs inputs = appContext.parseAndGet(Inputs.class, new String[] {file.getPath(), file.getPath()});
+            write("later.txt", "later");
+            assertEquals("later", read(inputs.channels[0]));
+            file.delete();
+            try {
+                inputs.channels[1].size();
+                fail("expected NoSuchFileException");
+            } catch (NoSuchFileException e) {
+                // opened on first use
+            }
+        } finally {
+            appContext.close();
+        }
+    }
+
+    @Test
+    public void standardInput() {
+        CommandLineAppContext appContext = createContext(true);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            CommandLineInvocation invocation = TestInvocations.create(new String[] {"-"}, folder.getRoot(), "piped", out,
+                System.err);
+            assertEquals(CommandLineInvocation.EXIT_SUCCESS, appContext.invoke(Cat.class, invocation));
+            assertEquals("piped", out.toString());
+        } finally {
+            appContext.close();
+        }
+    }
+
+    @Test
+    public void resolvedAgainstInvocation() {
+        for (boolean compiledBinding : new boolean[] {false, true}) {
+            CommandLineAppContext appContext = createContext(compiledBinding);
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                CommandLineInvocation invocation = TestInvocations.create(new String[] {"one.txt", "/two.txt"},
+                    folder.getRoot(), "", out, System.err);
+                assertEquals(CommandLineInvocation.EXIT_SUCCESS, appContext.invoke(Locate.class, invocation));
+                assertEquals(new File(folder.getRoot(), "one.txt").getPath() + "\n" + new File("/two.txt").getPath()
+                    + "\n", out.toString());
+            } finally {
+                appContext.close();
+            }
+        }
+    }
+
+    @Test
+    public void pathResolvedAgainstInvocation() {
+        CommandLineInvocation invocation = TestInvocations.create(new String[0], folder.getRoot(), "", System.out, System.err);
+        CommandLineInvocation previous = CommandLineInvocation.current();
+        CommandLineInvocation.bind(invocation);
+        try {
+            assertEquals(new File(folder.getRoot(), "some/path").toPath(), FileValues.open("some/path", Path.class, "path"));
+        } finally {
+            CommandLineInvocation.bind(previous);
+        }
+    }
+
+    @Test
+    public void standardInputLeftOpen() throws IOException {
+        FileChannel channel = (FileChannel) FileValues.open("-", FileChannel.class, "input");
+        List<Closeable> resources = new ArrayList<Closeable>();
+        FileValues.collectResources(channel, resources);
+        assertTrue(resources.isEmpty());
+
+        File file = write("file", "");
+        FileValues.collectResources(FileValues.open(file.getPath(), FileChannel.class, "input"), resources);
+        assertEquals(1, resources.size());
+    }
+
+    @Test
+    public void notReopenedOnceClosed() throws IOException {
+        FileChannel channel = (FileChannel) FileValues.open(write("closed.txt", "closed").getPath(), FileChannel.class,
+            "input");
+        channel.close();
+        try {
+            channel.size();
+            fail("expected ClosedChannelException");
+        } catch (ClosedChannelException e) {
+            // not reopened
+        }
+    }
+
+    @Test
+    public void errors() {
+        try {
+            CommandLineBeanDefinitionReader.createBeanDefinition(Inputs.class, new String[] {"-m", "-", "x"});
+            fail("expected UsageException");
+        } catch (UsageException e) {
+            assertEquals("Standard input of [mapped] cannot be mapped", e.getMessage());
+        }
+        try {
+            CommandLineBeanDefinitionReader.createBeanDefinition(Inputs.class, new String[] {"-m", "missing", "x"});
+            fail("expected UsageException");
+        } catch (UsageException e) {
+            assertEquals("File [missing] of [mapped] does not exist", e.getMessage());
+        }
+        try {
+            CommandLineBeanDefinitionReader.createBeanDefinition(Inputs.class, new String[] {"missing"});
+            fail("expected UsageException");
+        } catch (UsageException e) {
+            assertEquals("File [missing] of [channels] does not exist", e.getMessage());
+        }
+        try {
+            CommandLineBeanDefinitionReader.createBeanDefinition(Inputs.class,
+                new String[] {folder.getRoot().getPath()});
+            fail("expected UsageException");
+        } catch (UsageException e) {
+            assertEquals(String.format("File [%s] of [channels] is not readable", folder.getRoot()), e.getMessage());
+        }
+    }
+
+    private static CommandLineAppContext createContext(boolean compiledBinding) {
+        CommandLineAppContext appContext = new CommandLineAppContext(new ClassPathResource("Grep-context.xml", Grep.class));
+        appContext.setCompiledBinding(compiledBinding);
+        return appContext;
+    }
+
+    private File write(String name, String content) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes());
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static String read(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return new String(bytes);
+    }
+
+    private static String read(ReadableByteChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        while (channel.read(buffer) >= 0) {
+        }
+        buffer.flip();
+        return read(buffer);
+    }
+
+    public static class Inputs {
+        private Path path;
+        private MappedByteBuffer mapped;
+        private MappedFile mappedFile;
+        private FileChannel[] channels;
+
+        @Option(shortName="p")
+        public void setPath(Path path) {
+            this.path = path;
+        }
+
+        @Option(shortName="m")
+        public void setMapped(MappedByteBuffer mapped) {
+            this.mapped = mapped;
+        }
+
+        @Option(shortName="f")
+        public void setMappedFile(MappedFile mappedFile) {
+            this.mappedFile = mappedFile;
+        }
+
+        @Operand(index=0)
+        public void setChannels(FileChannel[] channels) {
+            this.channels = channels;
+        }
+    }
+
+    public static class Locate implements Runnable {
+        private File[] files;
+
+        @Operand(index=0)
+        public void setFiles(File[] files) {
+            this.files = files;
+        }
+
+        public void run() {
+            for (File file : files) {
+                CommandLineInvocation.current().getOut().println(file.getPath());
+            }
+        }
+    }
+
+    public static class Cat implements Runnable {
+        private ReadableByteChannel input;
+
+        @Operand(index=0)
+        public void setInput(ReadableByteChannel input) {
+            this.input = input;
+        }
+
+        public void run() {
+            try {
+                CommandLineInvocation.current().getOut().print(read(input));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
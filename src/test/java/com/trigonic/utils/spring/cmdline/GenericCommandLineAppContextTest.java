@@ -0,0 +1,139 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.stereotype.Component;
+
+public class GenericCommandLineAppContextTest {
+    private static final CommandLineContextInitializer GREETING = new CommandLineContextInitializer() {
+        public void initialize(BeanDefinitionRegistry registry) {
+            registry.registerBeanDefinition("greeting", BeanDefinitionBuilder.genericBeanDefinition(Greeting.class)
+                .addPropertyValue("text", "Hello").getBeanDefinition());
+        }
+    };
+
+    @Test
+    public void initializerOnly() {
+        GenericCommandLineAppContext appContext = new GenericCommandLineAppContext(GREETING);
+        try {
+            assertFalse(appContext.containsBean("org.springframework.context.annotation.internalConfigurationAnnotationProcessor"));
+            assertEquals("Hello, world", invoke(appContext, "world"));
+            assertEquals("Hello, again", invoke(appContext, "again"));
+        } finally {
+            appContext.close();
+        }
+    }
+
+    @Test
+    public void annotatedClasses() {
+        GenericCommandLineAppContext appContext = new GenericCommandLineAppContext(GREETING, Punctuation.class);
+        try {
+            assertEquals("Hello, world!", invoke(appContext, "world"));
+        } finally {
+            appContext.close();
+        }
+    }
+
+    @Test
+    public void parseAndGet() {
+        GenericCommandLineAppContext appContext = new GenericCommandLineAppContext();
+        try {
+            Grep grep = appContext.parseAndGet(Grep.class, new String[] {"-i", "pattern", "file"});
+            assertTrue(grep._isIgnoreCase());
+            assertEquals("pattern", grep.getPattern());
+        } finally {
+            appContext.close();
+        }
+    }
+
+    @Test
+    public void usageErrors() {
+        GenericCommandLineAppContext appContext = new GenericCommandLineAppContext(GREETING);
+        try {
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            CommandLineInvocation invocation = TestInvocations.create(new String[0], new ByteArrayOutputStream(), err);
+            assertEquals(CommandLineInvocation.EXIT_USAGE, appContext.invoke(Greet.class, invocation));
+            assertTrue(err.toString(), err.toString().startsWith("Error: "));
+        } finally {
+            appContext.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownComponent() {
+        new GenericCommandLineAppContext("classpath:Grep-context.xml");
+    }
+
+    private static String invoke(CommandLineContext appContext, String name) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CommandLineInvocation invocation = TestInvocations.create(new String[] {name}, out, new ByteArrayOutputStream());
+        assertEquals(CommandLineInvocation.EXIT_SUCCESS, appContext.invoke(Greet.class, invocation));
+        return out.toString().trim();
+    }
+
+    public static class Greeting {
+        private String text;
+
+        public String getText() {
+            return text;
+        }
+
+        public void setText(String text) {
+            this.text = text;
+        }
+    }
+
+    @Component
+    public static class Punctuation {
+        public String getMark() {
+            return "!";
+        }
+    }
+
+    public static class Greet implements Runnable {
+        @Autowired
+        private Greeting greeting;
+
+        @Autowired(required = false)
+        private Punctuation punctuation;
+
+        @Autowired
+        private PrintStream stdout;
+
+        private String name;
+
+        @Operand(index=0)
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public void run() {
+            stdout.println(greeting.getText() + ", " + name + (punctuation == null ? "" : punctuation.getMark()));
+        }
+    }
+}
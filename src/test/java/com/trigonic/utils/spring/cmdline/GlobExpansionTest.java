@@ -0,0 +1,158 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.ClassPathResource;
+
+public class GlobExpansionTest {
+    private static final Glob DEFAULT = new GlobLiteral(true, false, Integer.MAX_VALUE, false);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String root;
+
+    @Before
+    public void createTree() throws IOException {
+        root = folder.getRoot().getPath() + File.separator;
+        for (String path : Arrays.asList("a/x.gz", "a/b/y.gz", "a/b/c/z.gz", "c.txt", "z.gz")) {
+            File file = new File(folder.getRoot(), path);
+            file.getParentFile().mkdirs();
+            file.createNewFile();
+        }
+    }
+
+    @Test
+    public void plainValues() {
+        List<String> values = Arrays.asList("plain", root + "c.txt", root + "a");
+        assertSame(values, GlobExpansion.expand(values, DEFAULT));
+    }
+
+    @Test
+    public void pattern() {
+        assertEquals(Arrays.asList("first", root + "z.gz", "last"), GlobExpansion.expand(Arrays.asList("first", root + "*.gz", "last"), DEFAULT));
+        // as with the shell's globstar, **/ also matches no directory at all
+        assertEquals(Arrays.asList(root + "a/b/c/z.gz", root + "a/b/y.gz", root + "a/x.gz", root + "z.gz"),
+            GlobExpansion.expand(Arrays.asList(root + "**/*.gz"), DEFAULT));
+        assertEquals(Arrays.asList(root + "a/b/c/z.gz", root + "a/b/y.gz"), GlobExpansion.expand(Arrays.asList(root + "a/b/**/*.gz"), DEFAULT));
+        assertEquals(Arrays.asList(root + "a/b/c/z.gz", root + "z.gz"), GlobExpansion.expand(Arrays.asList(root + "**/z.gz"), DEFAULT));
+        assertEquals(Arrays.asList(root + "a/b/y.gz"), GlobExpansion.expand(Arrays.asList(root + "a/*/*.gz"), DEFAULT));
+    }
+
+    @Test
+    public void existingFileTakenLiterally() throws IOException {
+        new File(folder.getRoot(), "notes[1].txt").createNewFile();
+        List<String> values = Arrays.asList(root + "notes[1].txt");
+        assertSame(values, GlobExpansion.expand(values, DEFAULT));
+        assertEquals(Arrays.asList(root + "c.txt", root + "notes[1].txt"), GlobExpansion.expand(Arrays.asList(root + "*.txt"), DEFAULT));
+    }
+
+    @Test
+    public void maxDepth() {
+        Glob glob = new GlobLiteral(true, false, 2, false);
+        assertEquals(Arrays.asList(root + "a/x.gz", root + "z.gz"), GlobExpansion.expand(Arrays.asList(root + "**/*.gz"), glob));
+    }
+
+    @Test
+    public void recursive() {
+        Glob glob = new GlobLiteral(true, false, Integer.MAX_VALUE, true);
+        assertEquals(Arrays.asList(root + "a/b/c/z.gz", root + "a/b/y.gz"), GlobExpansion.expand(Arrays.asList(root + "a/b"), glob));
+    }
+
+    @Test
+    public void followLinks() throws IOException {
+        Files.createSymbolicLink(new File(folder.getRoot(), "a/b/loop").toPath(), new File(folder.getRoot(), "a").toPath());
+        assertEquals(4, GlobExpansion.expand(Arrays.asList(root + "**/*.gz"), DEFAULT).size());
+        Glob glob = new GlobLiteral(false, true, Integer.MAX_VALUE, false);
+        List<String> matches = GlobExpansion.expand(Arrays.asList(root + "**/*.gz"), glob);
+        assertEquals(4, matches.size());
+    }
+
+    @Test
+    public void errors() {
+        try {
+            GlobExpansion.expand(Arrays.asList(root + "*.zip"), DEFAULT);
+            fail("expected ArgumentValueException");
+        } catch (ArgumentValueException e) {
+            assertEquals("No files match [" + root + "*.zip]", e.getMessage());
+        }
+        try {
+            GlobExpansion.expandSingle(root + "**/*.gz", DEFAULT, "file");
+            fail("expected ArgumentValueException");
+        } catch (ArgumentValueException e) {
+            assertEquals("Value [" + root + "**/*.gz] of [file] matches 4 files", e.getMessage());
+        }
+    }
+
+    @Test
+    public void bind() {
+        for (boolean compiledBinding : new boolean[] {false, true}) {
+            CommandLineAppContext appContext = new CommandLineAppContext(new ClassPathResource("Grep-context.xml", Grep.class));
+            appContext.setCompiledBinding(compiledBinding);
+            try {
+                Globbed bean = appContext.parseAndGet(Globbed.class, new String[] {"-c", root + "*.txt", root + "a/*.gz", root + "z.gz"});
+                assertEquals(new File(root + "c.txt"), bean.config);
+                assertArrayEquals(new File[] {new File(root + "a/x.gz"), new File(root + "z.gz")}, bean.files);
+            } finally {
+                appContext.close();
+            }
+        }
+    }
+
+    @Test
+    public void metaData() {
+        CommandLineMetaData generated = CommandLineMetaData.forClass(Globbed.class);
+        CommandLineMetaData reflected = new CommandLineMetaData(Globbed.class);
+        assertTrue(generated.getClass() != CommandLineMetaData.class);
+        Glob expected = ((AbstractOperandHandler) reflected.getOperandHandlers().iterator().next()).getGlob();
+        assertEquals(new GlobLiteral(false, false, 3, false), expected);
+        assertEquals(expected, ((AbstractOperandHandler) generated.getOperandHandlers().iterator().next()).getGlob());
+    }
+
+    public static class Globbed {
+        private File config;
+        private File[] files;
+
+        @Glob
+        @Option(shortName="c")
+        public void setConfig(File config) {
+            this.config = config;
+        }
+
+        @Glob(sorted=false, maxDepth=3)
+        @Operand(index=0)
+        public void setFiles(File[] files) {
+            this.files = files;
+        }
+    }
+}
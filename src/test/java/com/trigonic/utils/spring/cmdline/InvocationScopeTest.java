@@ -0,0 +1,161 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.trigonic.utils.spring.cmdline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+
+public class InvocationScopeTest {
+    private static final Map<String, Command> commands = new ConcurrentHashMap<String, Command>();
+    private static final List<State> destroyed = new CopyOnWriteArrayList<State>();
+    private static final Map<String, Integer> exitStatuses = new ConcurrentHashMap<String, Integer>();
+    private static CountDownLatch bothRunning;
+
+    @Test
+    public void concurrentInvocations() throws Exception {
+        commands.clear();
+        destroyed.clear();
+        exitStatuses.clear();
+        bothRunning = new CountDownLatch(2);
+        final CommandLineAppContext appContext = createContext();
+        try {
+            Thread first = invokeInThread(appContext, "first");
+            Thread second = invokeInThread(appContext, "second");
+            first.join();
+            second.join();
+            assertEquals(Integer.valueOf(CommandLineInvocation.EXIT_SUCCESS), exitStatuses.get("first"));
+            assertEquals(Integer.valueOf(CommandLineInvocation.EXIT_SUCCESS), exitStatuses.get("second"));
+
+            Command firstCommand = commands.get("first");
+            Command secondCommand = commands.get("second");
+            assertSame(firstCommand.shared, secondCommand.shared);
+            assertNotSame(firstCommand.state, secondCommand.state);
+            assertEquals("first", firstCommand.state.owner);
+            assertEquals("second", secondCommand.state.owner);
+            assertEquals(2, destroyed.size());
+            assertTrue(destroyed.contains(firstCommand.state));
+            assertTrue(destroyed.contains(secondCommand.state));
+        } finally {
+            appContext.close();
+        }
+    }
+
+    @Test
+    public void noInvocation() {
+        CommandLineAppContext appContext = createContext();
+        try {
+            appContext.getBean("state");
+            fail("expected IllegalStateException");
+        } catch (BeanCreationException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        } finally {
+            appContext.close();
+        }
+    }
+
+    @Test
+    public void parseAndGet() {
+        destroyed.clear();
+        CommandLineAppContext appContext = createContext();
+        Command command;
+        try {
+            command = appContext.parseAndGet(Command.class, new String[] {"detached"});
+            assertEquals("detached", command.name);
+            assertNotNull(command.state);
+            assertTrue(destroyed.isEmpty());
+        } finally {
+            appContext.close();
+        }
+        assertEquals(Collections.singletonList(command.state), destroyed);
+    }
+
+    private static CommandLineAppContext createContext() {
+        return new CommandLineAppContext(new ClassPathResource("InvocationScope-context.xml", InvocationScopeTest.class));
+    }
+
+    private static Thread invokeInThread(final CommandLineAppContext appContext, final String name) {
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                CommandLineInvocation invocation = new CommandLineInvocation(new String[] {name}, null,
+                    Collections.<String, String>emptyMap(), System.in, System.out, System.err);
+                exitStatuses.put(name, appContext.invoke(Command.class, invocation));
+            }
+        };
+        thread.start();
+        return thread;
+    }
+
+    public static class Shared {
+    }
+
+    public static class State {
+        private String owner;
+
+        public void close() {
+            destroyed.add(this);
+        }
+    }
+
+    public static class Command implements Runnable {
+        @Autowired
+        private Shared shared;
+
+        @Autowired
+        private State state;
+
+        private String name;
+
+        @Operand(index = 0)
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public void run() {
+            state.owner = name;
+            commands.put(name, this);
+            bothRunning.countDown();
+            try {
+                // keep both invocations active at once
+                bothRunning.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (state.owner != name) {
+                throw new IllegalStateException("invocation-scoped state shared between invocations");
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+
+public class NumericValuesTest {
+    @Test
+    public void parse() {
+        assertEquals(42, NumericValues.parse("42", int.class, "value"));
+        assertEquals(-42, NumericValues.parse(" -42 ", int.class, "value"));
+        assertEquals(255, NumericValues.parse("0xff", int.class, "value"));
+        assertEquals(255, NumericValues.parse("#FF", int.class, "value"));
+        assertEquals(Long.MIN_VALUE, NumericValues.parse("-9223372036854775808", long.class, "value"));
+        assertEquals(1.5, NumericValues.parse("1.5", double.class, "value"));
+        assertEquals(Double.NEGATIVE_INFINITY, NumericValues.parse("-Infinity", double.class, "value"));
+    }
+
+    @Test
+    public void parseArray() {
+        assertArrayEquals(new int[] {1, 2, 3}, (int[]) NumericValues.parseArray(Arrays.asList("1", "2", "3"), int[].class, "values"));
+        assertArrayEquals(new long[] {1, 2}, (long[]) NumericValues.parseArray("1,2", long[].class, "values"));
+        assertArrayEquals(new double[] {0.5}, (double[]) NumericValues.parseArray(Arrays.asList("0.5"), double[].class, "values"), 0);
+    }
+
+    @Test
+    public void outOfRange() {
+        assertMessage("Value [2147483648] of [value] is out of range for int", "2147483648", int.class);
+        assertMessage("Value [-9223372036854775809] of [value] is out of range for long", "-9223372036854775809", long.class);
+        assertMessage("Value [1e400] of [value] is out of range for double", "1e400", double.class);
+    }
+
+    @Test
+    public void invalid() {
+        assertMessage("Value [12a] of [value] is not a valid int", "12a", int.class);
+        assertMessage("Value [--1] of [value] is not a valid long", "--1", long.class);
+        assertMessage("Value [] of [value] is not a valid int", "", int.class);
+        assertMessage("Value [x] of [value] is not a valid double", "x", double.class);
+    }
+
+    @Test
+    public void bind() {
+        for (boolean compiledBinding : new boolean[] {false, true}) {
+            CommandLineAppContext appContext = new CommandLineAppContext(new ClassPathResource("Grep-context.xml", Grep.class));
+            appContext.setCompiledBinding(compiledBinding);
+            try {
+                Offsets offsets = appContext.parseAndGet(Offsets.class, new String[] {"-l", "9", "10", "20", "30"});
+                assertEquals(9L, offsets.limit);
+                assertArrayEquals(new int[] {10, 20, 30}, offsets.offsets);
+            } finally {
+                appContext.close();
+            }
+        }
+    }
+
+    @Test
+    public void usage() {
+        for (boolean compiledBinding : new boolean[] {false, true}) {
+            try {
+                CommandLineBeanDefinitionReader.createBeanDefinition(Offsets.class, new String[] {"10", "99999999999"}, compiledBinding);
+                fail("expected UsageException");
+            } catch (UsageException e) {
+                assertTrue(e.getCause() instanceof ArgumentValueException);
+                assertEquals("Value [99999999999] of [offsets] is out of range for int", e.getMessage());
+            }
+            try {
+                CommandLineBeanDefinitionReader.createBeanDefinition(Offsets.class, new String[] {"-l", "many", "10"}, compiledBinding);
+                fail("expected UsageException");
+            } catch (UsageException e) {
+                assertEquals("Value [many] of [limit] is not a valid long", e.getMessage());
+            }
+        }
+    }
+
+    private static void assertMessage(String expected, String text, Class<?> type) {
+        try {
+            NumericValues.parse(text, type, "value");
+            fail("expected ArgumentValueException");
+        } catch (ArgumentValueException e) {
+            assertEquals(expected, e.getMessage());
+        }
+    }
+
+    public static class Offsets {
+        private long limit;
+        private int[] offsets;
+
+        @Option(shortName="l", longName="limit")
+        public void setLimit(long limit) {
+            this.limit = limit;
+        }
+
+        @Operand(index=0)
+        public void setOffsets(int[] offsets) {
+            this.offsets = offsets;
+        }
+    }
+}
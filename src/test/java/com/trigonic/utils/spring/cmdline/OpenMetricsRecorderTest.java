@@ -0,0 +1,149 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.util.FileCopyUtils;
+
+public class OpenMetricsRecorderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recordedPerCommand() throws Exception {
+        OpenMetricsRecorder recorder = new OpenMetricsRecorder();
+        CommandLineMetrics.addListener(recorder);
+        CommandLineAppContext appContext = new CommandLineAppContext(new ClassPathResource("Grep-context.xml", Grep.class));
+        try {
+            appContext.setCompiledBinding(true);
+            assertEquals(CommandLineInvocation.EXIT_SUCCESS, appContext.invoke(Grep.class, TestInvocations.create("pattern", "file")));
+            assertEquals(CommandLineInvocation.EXIT_SUCCESS, appContext.invoke(Grep.class, TestInvocations.create("-i", "pattern", "file")));
+            assertEquals(CommandLineInvocation.EXIT_USAGE, appContext.invoke(Grep.class, TestInvocations.create("--no-such-option")));
+        } finally {
+            appContext.close();
+            CommandLineMetrics.removeListener(recorder);
+        }
+
+        assertEquals(3, recorder.getParseCount());
+        assertEquals(1, recorder.getUsageErrorCount());
+        assertEquals(3, recorder.getRunCount());
+        assertEquals(1, recorder.getFailureCount());
+        // the pattern and ignore-case values of each run, but not the files, which are resolved while parsing, nor the
+        // unset pattern file
+        assertEquals(4, recorder.getConversionCount());
+
+        String text = recorder.getOpenMetrics();
+        String command = "{command=\"" + Grep.class.getName() + "\"";
+        assertTrue(text, text.contains("# TYPE cmdline_run_seconds summary\n"));
+        assertTrue(text, text.contains("cmdline_usage_errors_total" + command + "} 1\n"));
+        assertTrue(text, text.contains("cmdline_failures_total" + command + "} 1\n"));
+        assertTrue(text, text.contains("cmdline_parse_seconds_count" + command + "} 3\n"));
+        assertTrue(text, text.contains("cmdline_conversion_seconds_count" + command + "} 4\n"));
+        assertTrue(text, text.contains("cmdline_run_seconds" + command + ",quantile=\"0.99\"} 0."));
+        assertTrue(text, text.endsWith("# EOF\n"));
+
+        // nothing is recorded once removed
+        CommandLineMetrics.removeListener(recorder);
+        CommandLineBeanDefinitionReader.createBeanDefinition(Grep.class, new String[] {"pattern", "file"});
+        assertEquals(3, recorder.getParseCount());
+    }
+
+    @Test
+    public void exported() throws Exception {
+        OpenMetricsRecorder recorder = new OpenMetricsRecorder();
+        recorder.ran(Grep.class, 1500000, CommandLineInvocation.EXIT_SUCCESS);
+
+        File file = new File(folder.getRoot(), "cmdline.prom");
+        recorder.writeTo(file);
+        String text = FileCopyUtils.copyToString(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        assertEquals(recorder.getOpenMetrics(), text);
+        assertTrue(text, text.contains("cmdline_run_seconds_sum{command=\"" + Grep.class.getName() + "\"} 0.001500000\n"));
+
+        ObjectName name = recorder.registerMBean(new ObjectName("com.trigonic.cmdline:type=Metrics,name=test"));
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertEquals(1L, server.getAttribute(name, "RunCount"));
+            assertEquals(text, server.getAttribute(name, "OpenMetrics"));
+        } finally {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        }
+    }
+
+    @Test
+    public void histogramWithinRelativeError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getValueAtQuantile(0.5));
+        for (long value = 1; value <= 1000000; ++value) {
+            histogram.record(value * 1000);
+        }
+        assertEquals(1000000, histogram.getCount());
+        assertEquals(500000500000000L, histogram.getSum());
+        for (double quantile : OpenMetricsRecorder.QUANTILES) {
+            double expected = quantile * 1e9;
+            double actual = histogram.getValueAtQuantile(quantile);
+            assertTrue(quantile + ": " + actual, Math.abs(actual - expected) / expected < 1.0 / LatencyHistogram.SUB_BUCKETS);
+        }
+
+        // buckets are contiguous up to the last, which holds the largest value
+        int last = LatencyHistogram.index(Long.MAX_VALUE);
+        for (int index = 0; index < last; ++index) {
+            assertEquals(index, LatencyHistogram.index(LatencyHistogram.lowestValue(index)));
+            assertEquals(index, LatencyHistogram.index(LatencyHistogram.lowestValue(index + 1) - 1));
+        }
+        assertEquals(last, LatencyHistogram.index(LatencyHistogram.lowestValue(last)));
+    }
+
+    @Test
+    public void concurrentCounting() throws Exception {
+        final StripedCounter counter = new StripedCounter();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 8; ++i) {
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 100000; ++j) {
+                        counter.increment();
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(800000, counter.get());
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.beans.TypeMismatchException;
+import org.springframework.core.io.ClassPathResource;
+
+public class OperandIterableTest {
+    @Test
+    public void iterable() {
+        for (boolean compiledBinding : new boolean[] {false, true}) {
+            CommandLineAppContext appContext = createContext(compiledBinding);
+            try {
+                Files bean = appContext.parseAndGet(Files.class, new String[] {"a", "b"});
+                assertTrue(bean.files instanceof OperandIterable);
+                List<File> files = new ArrayList<File>();
+                for (File file : bean.files) {
+                    files.add(file);
+                }
+                assertEquals(Arrays.asList(new File("a"), new File("b")), files);
+            } finally {
+                appContext.close();
+            }
+        }
+    }
+
+    @Test
+    public void iteratorConvertsOnDemand() {
+        for (boolean compiledBinding : new boolean[] {false, true}) {
+            CommandLineAppContext appContext = createContext(compiledBinding);
+            try {
+                Numbers bean = appContext.parseAndGet(Numbers.class, new String[] {"1", "2", "three"});
+                assertEquals(Integer.valueOf(1), bean.numbers.next());
+                assertEquals(Integer.valueOf(2), bean.numbers.next());
+                try {
+                    bean.numbers.next();
+                    fail("expected TypeMismatchException");
+                } catch (TypeMismatchException e) {
+                    // converted only once consumed
+                }
+                assertFalse(bean.numbers.hasNext());
+            } finally {
+                appContext.close();
+            }
+        }
+    }
+
+    @Test
+    public void elementType() {
+        List<String> operands = Arrays.asList("1", "2");
+        for (CommandLineMetaData metaData : Arrays.asList(new CommandLineMetaData(Numbers.class), CommandLineMetaData.forClass(Numbers.class))) {
+            OperandHandler handler = metaData.getOperandHandlers().iterator().next();
+            assertTrue(handler.hasMultipleValues());
+            Iterator<?> iterator = (Iterator<?>) handler.getValue(operands);
+            assertEquals(Integer.valueOf(1), iterator.next());
+        }
+        assertNotSame(CommandLineMetaData.class, CommandLineMetaData.forClass(Numbers.class).getClass());
+    }
+
+    private static CommandLineAppContext createContext(boolean compiledBinding) {
+        CommandLineAppContext appContext = new CommandLineAppContext(new ClassPathResource("Grep-context.xml", Grep.class));
+        appContext.setCompiledBinding(compiledBinding);
+        return appContext;
+    }
+
+    public static class Files {
+        private Iterable<File> files;
+
+        @Operand(index=0)
+        public void setFiles(Iterable<File> files) {
+            this.files = files;
+        }
+    }
+
+    public static class Numbers {
+        private Iterator<Integer> numbers;
+
+        @Operand(index=0)
+        public void setNumbers(Iterator<Integer> numbers) {
+            this.numbers = numbers;
+        }
+    }
+}
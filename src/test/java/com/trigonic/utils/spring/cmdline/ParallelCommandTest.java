@@ -0,0 +1,155 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.util.StringUtils;
+
+public class ParallelCommandTest {
+    @Test
+    public void outputInItemOrder() {
+        List<String> args = new ArrayList<String>();
+        args.add("-j");
+        args.add("4");
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 100; ++i) {
+            args.add(Integer.toString(i));
+            expected.append(i * i).append('\n');
+        }
+        for (boolean compiledBinding : new boolean[] {false, true}) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            assertEquals(CommandLineInvocation.EXIT_SUCCESS, invoke(compiledBinding, args, out, err));
+            assertEquals(expected.toString(), out.toString());
+            assertEquals("", err.toString());
+        }
+    }
+
+    @Test
+    public void exitStatusIsHighestOfItems() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        List<String> args = new ArrayList<String>();
+        Collections.addAll(args, "--", "1", "-3", "2", "boom", "4");
+        assertEquals(CommandLineInvocation.EXIT_USAGE, invoke(true, args, out, err));
+
+        // failed items do not stop the others
+        assertEquals("1\n4\n16\n", out.toString());
+        String errors = err.toString();
+        assertTrue(errors, errors.startsWith("-3 is negative\nboom: java.lang.NumberFormatException"));
+    }
+
+    @Test
+    public void itemsSeeInvocation() {
+        for (boolean compiledBinding : new boolean[] {false, true}) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            List<String> args = new ArrayList<String>();
+            Collections.addAll(args, "-j", "2", "1", "2", "3");
+            assertEquals(CommandLineInvocation.EXIT_SUCCESS, invoke(compiledBinding, args, out, err, InvocationArgs.class));
+            assertEquals("1,2,3\n1,2,3\n1,2,3\n", out.toString());
+        }
+    }
+
+    @Test
+    public void parallelismDefaultsToProcessors() {
+        assertEquals(Runtime.getRuntime().availableProcessors(), new Squares().getParallelism());
+    }
+
+    @Test(expected=ArgumentValueException.class)
+    public void parallelismMustBePositive() {
+        new Squares().setParallelism(0);
+    }
+
+    @Test
+    public void zeroJobsIsUsageError() {
+        List<String> args = new ArrayList<String>();
+        Collections.addAll(args, "-j", "0", "1");
+        for (boolean compiledBinding : new boolean[] {false, true}) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            assertEquals(CommandLineInvocation.EXIT_USAGE, invoke(compiledBinding, args, out, err));
+            assertEquals("", out.toString());
+            String errors = err.toString();
+            assertTrue(errors, errors.startsWith("Error: Value [0] of [jobs] must be at least 1\n"));
+        }
+    }
+
+    private static int invoke(boolean compiledBinding, List<String> args, ByteArrayOutputStream out,
+            ByteArrayOutputStream err) {
+        return invoke(compiledBinding, args, out, err, Squares.class);
+    }
+
+    private static int invoke(boolean compiledBinding, List<String> args, ByteArrayOutputStream out,
+            ByteArrayOutputStream err, Class<? extends Runnable> commandClass) {
+        CommandLineAppContext appContext = new CommandLineAppContext(new ClassPathResource("Grep-context.xml", Grep.class));
+        appContext.setCompiledBinding(compiledBinding);
+        try {
+            CommandLineInvocation invocation = TestInvocations.create(args.toArray(new String[args.size()]), out, err);
+            return appContext.invoke(commandClass, invocation);
+        } finally {
+            appContext.close();
+        }
+    }
+
+    public static class Squares extends ParallelCommand<String> {
+        private Iterable<String> numbers;
+
+        @Operand(index=0, required=false)
+        public void setNumbers(Iterable<String> numbers) {
+            this.numbers = numbers;
+        }
+
+        @Override
+        protected Iterable<String> getItems() {
+            return numbers;
+        }
+
+        @Override
+        protected int process(String item, PrintStream out, PrintStream err) throws Exception {
+            int number = Integer.parseInt(item);
+            if (number < 0) {
+                err.println(number + " is negative");
+                return CommandLineInvocation.EXIT_USAGE;
+            }
+            // finish out of order
+            Thread.sleep(number % 3);
+            out.println(number * number);
+            return CommandLineInvocation.EXIT_SUCCESS;
+        }
+    }
+
+    public static class InvocationArgs extends Squares {
+        @Override
+        protected int process(String item, PrintStream out, PrintStream err) throws Exception {
+            String[] args = CommandLineInvocation.current().getArgs();
+            out.println(StringUtils.arrayToCommaDelimitedString(Arrays.copyOfRange(args, 2, args.length)));
+            return CommandLineInvocation.EXIT_SUCCESS;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.core.io.ClassPathResource;
+
+public class SingletonPruningTest {
+    private static final List<String> created = Collections.synchronizedList(new ArrayList<String>());
+
+    @Before
+    public void clearCreated() {
+        created.clear();
+    }
+
+    @Test
+    public void allSingletonsByDefault() {
+        CommandLineAppContext appContext = new CommandLineAppContext(new ClassPathResource("Pruning-context.xml", getClass()));
+        try {
+            assertEquals(7, created.size());
+            assertTrue(appContext.getDeferredSingletons().isEmpty());
+        } finally {
+            appContext.close();
+        }
+    }
+
+    @Test
+    public void reachableSingletonsOnly() {
+        CommandLineAppContext appContext = new CommandLineAppContext(new ClassPathResource("Pruning-context.xml", getClass())) {
+            @Override
+            protected boolean isPruningSingletons() {
+                return true;
+            }
+        };
+        try {
+            assertEquals(Collections.emptyList(), created);
+
+            assertEquals(CommandLineInvocation.EXIT_SUCCESS, appContext.invoke(UseService.class, new CommandLineInvocation(new String[0])));
+            assertEquals(Arrays.asList("initFirst", "dependency", "nested", "helper", "service"), created);
+            assertEquals(Arrays.asList("unused", "unusedDependency"), new ArrayList<String>(appContext.getDeferredSingletons()));
+
+            // skipped singletons are still available on demand
+            appContext.getBean("unused");
+            assertEquals(7, created.size());
+        } finally {
+            appContext.close();
+        }
+    }
+
+    @Test
+    public void pruningProperty() {
+        System.setProperty(CommandLineBeanFactory.PRUNE_PROPERTY, "true");
+        GenericCommandLineAppContext appContext;
+        try {
+            appContext = new GenericCommandLineAppContext(new CommandLineContextInitializer() {
+                public void initialize(BeanDefinitionRegistry registry) {
+                    registry.registerBeanDefinition("service", BeanDefinitionBuilder.genericBeanDefinition(Service.class)
+                        .addPropertyValue("name", "service").getBeanDefinition());
+                    registry.registerBeanDefinition("unused", BeanDefinitionBuilder.genericBeanDefinition(Tracked.class)
+                        .addPropertyValue("name", "unused").getBeanDefinition());
+                }
+            });
+        } finally {
+            System.clearProperty(CommandLineBeanFactory.PRUNE_PROPERTY);
+        }
+        try {
+            assertEquals(Collections.emptyList(), created);
+            appContext.parseAndGet(UseService.class, new String[0]);
+            assertEquals(Arrays.asList("service"), created);
+            assertEquals(Collections.singleton("unused"), appContext.getDeferredSingletons());
+        } finally {
+            appContext.close();
+        }
+    }
+
+    public static class Tracked {
+        public void setName(String name) {
+            created.add(name);
+        }
+
+        public void setDependency(Tracked dependency) {
+        }
+    }
+
+    public static class Service extends Tracked {
+        public void setHelper(Tracked helper) {
+        }
+    }
+
+    public static class UseService implements Runnable {
+        @Autowired
+        private Service service;
+
+        public void run() {
+            if (service == null) {
+                throw new IllegalStateException("service not injected");
+            }
+        }
+    }
+}
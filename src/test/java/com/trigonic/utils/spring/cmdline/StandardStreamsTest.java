@@ -0,0 +1,205 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+
+public class StandardStreamsTest {
+    @Test
+    public void injectedPerInvocation() {
+        CommandLineAppContext appContext = createContext();
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            CommandLineInvocation invocation = TestInvocations.create(new String[] {"first"}, "hello\nworld\n", out, err);
+            assertEquals(CommandLineInvocation.EXIT_SUCCESS, appContext.invoke(Echo.class, invocation));
+            assertEquals("first: hello\nfirst: world\n", out.toString());
+            assertEquals("first: 2 lines\n", err.toString());
+
+            out.reset();
+            err.reset();
+            invocation = TestInvocations.create(new String[] {"second"}, "again", out, err);
+            assertEquals(CommandLineInvocation.EXIT_SUCCESS, appContext.invoke(Echo.class, invocation));
+            assertEquals("second: again\n", out.toString());
+            assertEquals("second: 1 lines\n", err.toString());
+        } finally {
+            appContext.close();
+        }
+    }
+
+    @Test
+    public void usageOnBufferedErr() {
+        CommandLineAppContext appContext = createContext();
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            CommandLineInvocation invocation = TestInvocations.create(new String[0], out, err);
+            assertEquals(CommandLineInvocation.EXIT_USAGE, appContext.invoke(Echo.class, invocation));
+            assertTrue(err.toString(), err.toString().startsWith("Error: "));
+        } finally {
+            appContext.close();
+        }
+    }
+
+    @Test
+    public void outputBufferedUntilFlushed() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        StandardStreams streams = TestInvocations.create(new String[0], out, err).getStandardStreams();
+        assertSame(streams.getOut(), streams.getOut());
+
+        streams.getOut().println("buffered");
+        streams.getOut().println(42);
+        assertEquals(0, out.size());
+
+        // standard error is flushed a line at a time
+        streams.getErr().print("partial");
+        assertEquals(0, err.size());
+        streams.getErr().println();
+        assertEquals("partial\n", err.toString());
+
+        streams.flush();
+        assertEquals("buffered\n42\n", out.toString());
+    }
+
+    @Test
+    public void sharedStreamsLock() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        final StandardStreams streams = new StandardStreams(TestInvocations.create(new String[0], out, err), true);
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; ++i) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int line = 0; line < 1000; ++line) {
+                        streams.getOut().println("0123456789");
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        streams.getOut().close();
+
+        String[] lines = out.toString().split("\n");
+        assertEquals(threads.length * 1000, lines.length);
+        for (String line : lines) {
+            assertEquals("0123456789", line);
+        }
+    }
+
+    @Test
+    public void largeAndEncodedWrites() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PrintStream stream = new ChannelPrintStream(Channels.newChannel(out), false);
+        byte[] large = new byte[ChannelPrintStream.BUFFER_SIZE * 2 + 7];
+        Arrays.fill(large, (byte) 'x');
+        stream.print('a');
+        stream.write(large, 0, large.length);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < ChannelPrintStream.BUFFER_SIZE; ++i) {
+            text.append((char) ('a' + i % 26));
+        }
+        stream.print(text);
+        stream.printf("%d-%s", 7, "z");
+        stream.close();
+        assertFalse(stream.checkError());
+
+        String expected = "a" + new String(large) + text + "7-z";
+        assertEquals(expected, out.toString());
+
+        // writes after closing are dropped and reported
+        stream.print("dropped");
+        assertTrue(stream.checkError());
+        assertEquals(expected.length(), out.size());
+    }
+
+    @Test
+    public void bufferedInput() throws Exception {
+        byte[] data = new byte[ChannelPrintStream.BUFFER_SIZE * 3 + 11];
+        for (int i = 0; i < data.length; ++i) {
+            data[i] = (byte) i;
+        }
+        InputStream in = new ChannelInputStream(Channels.newChannel(new ByteArrayInputStream(data)));
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        read.write(in.read());
+        byte[] buffer = new byte[ChannelPrintStream.BUFFER_SIZE * 2];
+        for (int count = in.read(buffer, 0, 100); count >= 0; count = in.read(buffer)) {
+            read.write(buffer, 0, count);
+        }
+        assertEquals(-1, in.read());
+        assertTrue(Arrays.equals(data, read.toByteArray()));
+    }
+
+    private static CommandLineAppContext createContext() {
+        return new CommandLineAppContext(new ClassPathResource("Grep-context.xml", Grep.class));
+    }
+
+    public static class Echo implements Runnable {
+        @Autowired
+        private InputStream stdin;
+
+        @Autowired
+        private PrintStream stdout;
+
+        @Autowired
+        private PrintStream stderr;
+
+        private String prefix;
+
+        @Operand(index=0)
+        public void setPrefix(String prefix) {
+            this.prefix = prefix;
+        }
+
+        public void run() {
+            StringBuilder line = new StringBuilder();
+            int lines = 0;
+            try {
+                for (int c = stdin.read(); c >= 0 || line.length() > 0; c = stdin.read()) {
+                    if (c >= 0 && c != '\n') {
+                        line.append((char) c);
+                    } else {
+                        stdout.println(prefix + ": " + line);
+                        line.setLength(0);
+                        ++lines;
+                    }
+                }
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            stderr.println(prefix + ": " + lines + " lines");
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaCompiler.CompilationTask;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.util.FileCopyUtils;
+
+public class SubcommandIndexProcessorTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void incrementalCompilationMerges() throws IOException {
+        compile(source("A", "a"), source("B", "b"));
+        assertEquals(Arrays.asList("a\tA\t", "b\tB\t"), readIndex());
+        compile(source("C", "c"));
+        assertEquals(Arrays.asList("a\tA\t", "b\tB\t", "c\tC\t"), readIndex());
+    }
+
+    @Test
+    public void staleEntriesPruned() throws IOException {
+        compile(source("A", "a"), source("B", "b"), source("C", "c"));
+        assertTrue(new File(folder.getRoot(), "A.class").delete());
+        compile(source("B", "bee"));
+        assertEquals(Arrays.asList("bee\tB\t", "c\tC\t"), readIndex());
+    }
+
+    private void compile(JavaFileObject... sources) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        String outputDir = folder.getRoot().getPath();
+        List<String> options = Arrays.asList("-d", outputDir,
+            "-classpath", outputDir + File.pathSeparator + System.getProperty("java.class.path"));
+        CompilationTask task = compiler.getTask(null, null, null, options, null, Arrays.asList(sources));
+        task.setProcessors(Arrays.asList(new SubcommandIndexProcessor()));
+        assertTrue(task.call());
+    }
+
+    private List<String> readIndex() throws IOException {
+        String content = FileCopyUtils.copyToString(new FileReader(new File(folder.getRoot(), SubcommandIndex.LOCATION)));
+        List<String> result = new ArrayList<String>();
+        for (String line : content.split("\\r?\\n")) {
+            if (!line.startsWith("#")) {
+                result.add(line);
+            }
+        }
+        return result;
+    }
+
+    private static JavaFileObject source(String className, String name) {
+        final String content = "@com.trigonic.utils.spring.cmdline.Subcommand(name=\"" + name + "\")\n"
+            + "public class " + className + " implements Runnable {\n"
+            + "    public void run() {\n"
+            + "    }\n"
+            + "}\n";
+        return new SimpleJavaFileObject(URI.create("string:///" + className + ".java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return content;
+            }
+        };
+    }
+}
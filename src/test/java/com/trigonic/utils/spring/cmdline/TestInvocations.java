@@ -0,0 +1,53 @@
+/*
+ * Copyright 2011 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trigonic.utils.spring.cmdline;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Collections;
+
+/**
+ * Creates {@link CommandLineInvocation}s over in-memory streams, with an empty environment.
+ */
+final class TestInvocations {
+    private TestInvocations() {
+    }
+
+    /**
+     * Returns an invocation in the current directory with empty input, discarding its output.
+     */
+    static CommandLineInvocation create(String... args) {
+        return create(args, new ByteArrayOutputStream(), new ByteArrayOutputStream());
+    }
+
+    static CommandLineInvocation create(String[] args, OutputStream out, OutputStream err) {
+        return create(args, "", out, err);
+    }
+
+    static CommandLineInvocation create(String[] args, String input, OutputStream out, OutputStream err) {
+        return create(args, new File("."), input, out, err);
+    }
+
+    static CommandLineInvocation create(String[] args, File workingDirectory, String input, OutputStream out,
+            OutputStream err) {
+        return new CommandLineInvocation(args, workingDirectory, Collections.<String, String>emptyMap(),
+            new ByteArrayInputStream(input.getBytes()), new PrintStream(out), new PrintStream(err));
+    }
+}